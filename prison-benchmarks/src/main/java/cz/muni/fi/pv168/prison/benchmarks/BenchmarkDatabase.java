@@ -0,0 +1,118 @@
+package cz.muni.fi.pv168.prison.benchmarks;
+
+import cz.muni.fi.pv168.prison.backend.CellManagerImpl;
+import cz.muni.fi.pv168.prison.backend.DataGenerator;
+import cz.muni.fi.pv168.prison.backend.PrisonSchema;
+import cz.muni.fi.pv168.prison.backend.PrisonerManagerImpl;
+import cz.muni.fi.pv168.prison.backend.SentenceManagerImpl;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.derby.jdbc.EmbeddedDriver;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.logging.Logger;
+
+/**
+ * Embedded Derby database seeded by {@link DataGenerator} with {@link #rows} prisoners
+ * and one cell per ten prisoners. Databases are stored in directory <code>target/benchmark-db</code>
+ * and seeded only once, later runs reuse them while they have the expected number of prisoners.
+ * Prisoners created by benchmarks are deleted after every iteration.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    private static final Logger logger = Logger.getLogger(
+            BenchmarkDatabase.class.getName());
+
+    private static final long SEED = 1;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    BasicDataSource dataSource;
+    PrisonerManagerImpl prisonerManager;
+    CellManagerImpl cellManager;
+    SentenceManagerImpl sentenceManager;
+
+    long minPrisonerId;
+    long maxPrisonerId;
+    long minCellId;
+    long maxCellId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName(EmbeddedDriver.class.getName());
+        dataSource.setUrl("jdbc:derby:target/benchmark-db/rows-" + rows + ";create=true");
+        PrisonSchema.migrate(dataSource);
+
+        prisonerManager = new PrisonerManagerImpl(dataSource);
+        cellManager = new CellManagerImpl(dataSource);
+        sentenceManager = new SentenceManagerImpl(Clock.systemDefaultZone());
+        sentenceManager.setDataSource(dataSource);
+
+        // a run killed before its iteration tear-down leaves created prisoners behind
+        if (count("prisoner") != rows) {
+            seed();
+        }
+        minPrisonerId = queryLong("SELECT MIN(id) FROM prisoner");
+        maxPrisonerId = queryLong("SELECT MAX(id) FROM prisoner");
+        minCellId = queryLong("SELECT MIN(id) FROM cell");
+        maxCellId = queryLong("SELECT MAX(id) FROM cell");
+    }
+
+    /**
+     * Deletes prisoners created by the benchmarks, so that every iteration and every later run
+     * measures the database of the same size.
+     */
+    @TearDown(Level.Iteration)
+    public void deleteCreatedRows() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement st = conn.prepareStatement("DELETE FROM prisoner WHERE id > ?")) {
+            st.setLong(1, maxPrisonerId);
+            st.executeUpdate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dataSource.close();
+    }
+
+    private void seed() throws SQLException {
+        logger.info("Seeding database with " + rows + " prisoners");
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("DELETE FROM sentence");
+            st.executeUpdate("DELETE FROM prisoner");
+            st.executeUpdate("DELETE FROM cell");
+        }
+        DataGenerator generator = new DataGenerator();
+        generator.setSeed(SEED);
+        generator.setPrisonerCount(rows);
+        generator.setCells(Math.max(1, rows / 10), 10);
+        logger.info(generator.generate(dataSource).toString());
+    }
+
+    private long count(String table) throws SQLException {
+        return queryLong("SELECT COUNT(*) FROM " + table);
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
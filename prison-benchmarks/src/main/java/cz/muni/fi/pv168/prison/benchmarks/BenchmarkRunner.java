@@ -0,0 +1,45 @@
+package cz.muni.fi.pv168.prison.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmarks and stores results as JSON, so that they can be compared between releases.
+ * <p>
+ * Usage: <code>java -jar prison-benchmarks/target/benchmarks.jar [JMH options]</code>.
+ * Results are written to <code>target/jmh-results/&lt;version&gt;-&lt;time&gt;.json</code> unless
+ * the file is given by JMH option <code>-rff</code>; e.g. <code>-p rows=1000</code> runs only the smallest database.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        String version = BenchmarkRunner.class.getPackage().getImplementationVersion();
+        File resultFile = new File("target/jmh-results",
+                (version == null ? "dev" : version) + "-"
+                        + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        resultFile.getParentFile().mkdirs();
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(cmd)
+                .resultFormat(ResultFormatType.JSON)
+                .result(cmd.getResult().orElse(resultFile.getPath()));
+        if (cmd.getIncludes().isEmpty()) {
+            // benchmarks given on the command line are included by the parent options
+            options.include(ManagerBenchmark.class.getName());
+        }
+        new Runner(options.build()).run();
+    }
+}
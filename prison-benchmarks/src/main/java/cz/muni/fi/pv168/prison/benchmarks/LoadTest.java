@@ -0,0 +1,176 @@
+package cz.muni.fi.pv168.prison.benchmarks;
+
+import cz.muni.fi.pv168.common.LatencyHistogram;
+import cz.muni.fi.pv168.common.VirtualThreads;
+import cz.muni.fi.pv168.prison.backend.Prisoner;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test comparing handling of requests in a fixed pool of platform threads, like the thread pool
+ * of Tomcat, with handling of each request in its own virtual thread.
+ * <p>
+ * A fixed number of clients sends requests in a closed loop, each request waits for simulated
+ * I/O (e.g. a remote service) and then finds prisoners in a random cell. Concurrency of database work
+ * is limited by the connection pool in both modes. Throughput and latencies including waiting for
+ * a request thread are printed per mode.
+ * <p>
+ * Usage: <code>java -cp prison-benchmarks/target/benchmarks.jar cz.muni.fi.pv168.prison.benchmarks.LoadTest
+ * [name=value...]</code> with parameters <code>modes</code> (platform,virtual), <code>rows</code> (10000),
+ * <code>clients</code> (400), <code>requestThreads</code> (200), <code>poolSize</code> (16),
+ * <code>ioMillis</code> (5), <code>warmupSeconds</code> (5) and <code>seconds</code> (20).
+ * Mode virtual is skipped when not running on Java 21.
+ */
+public final class LoadTest {
+
+    private final Map<String, String> parameters;
+    private final int clients;
+    private final int requestThreads;
+    private final int poolSize;
+    private final long ioMillis;
+    private final int warmupSeconds;
+    private final int seconds;
+
+    private LoadTest(Map<String, String> parameters) {
+        this.parameters = parameters;
+        this.clients = getInt("clients", 400);
+        this.requestThreads = getInt("requestThreads", 200);
+        this.poolSize = getInt("poolSize", 16);
+        this.ioMillis = getInt("ioMillis", 5);
+        this.warmupSeconds = getInt("warmupSeconds", 5);
+        this.seconds = getInt("seconds", 20);
+    }
+
+    public static void main(String[] args) throws SQLException, InterruptedException {
+        Map<String, String> parameters = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("expected name=value, got " + arg);
+            }
+            parameters.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        LoadTest test = new LoadTest(parameters);
+
+        BenchmarkDatabase db = new BenchmarkDatabase();
+        db.rows = test.getInt("rows", 10000);
+        db.setUp();
+        db.dataSource.setMaxTotal(test.poolSize);
+        db.dataSource.setMaxIdle(test.poolSize);
+        db.dataSource.setMaxWaitMillis(10000);
+        try {
+            System.out.printf("%-9s %8s %10s %9s %9s %9s %7s%n",
+                    "mode", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+            for (String mode : parameters.getOrDefault("modes", "platform,virtual").split(",")) {
+                test.run(mode.trim(), db);
+            }
+        } finally {
+            db.tearDown();
+        }
+    }
+
+    private void run(String mode, BenchmarkDatabase db) throws InterruptedException {
+        ExecutorService requestExecutor;
+        switch (mode) {
+            case "platform":
+                requestExecutor = Executors.newFixedThreadPool(requestThreads);
+                break;
+            case "virtual":
+                if (!VirtualThreads.isSupported()) {
+                    System.out.printf("%-9s skipped, virtual threads require Java 21%n", mode);
+                    return;
+                }
+                requestExecutor = VirtualThreads.newExecutor("request-");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown mode " + mode);
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch finished = new CountDownLatch(clients);
+        try {
+            for (int i = 0; i < clients; i++) {
+                new Client(db, requestExecutor, latencies, errors, measureStart, end, finished).send();
+            }
+            finished.await();
+        } finally {
+            requestExecutor.shutdown();
+            requestExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        System.out.printf("%-9s %8d %10.1f %9.2f %9.2f %9.2f %7d%n", mode, latencies.getCount(),
+                latencies.getCount() / (double) seconds,
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+                millis(latencies.getMax()), errors.sum());
+    }
+
+    private List<Prisoner> handleRequest(BenchmarkDatabase db) {
+        try {
+            Thread.sleep(ioMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return db.sentenceManager.findPrisonersInCell(ManagerBenchmark.randomCell(db));
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Client sending a new request when the previous one is finished.
+     */
+    private final class Client {
+
+        private final BenchmarkDatabase db;
+        private final ExecutorService requestExecutor;
+        private final LatencyHistogram latencies;
+        private final LongAdder errors;
+        private final long measureStart;
+        private final long end;
+        private final CountDownLatch finished;
+
+        private Client(BenchmarkDatabase db, ExecutorService requestExecutor, LatencyHistogram latencies,
+                       LongAdder errors, long measureStart, long end, CountDownLatch finished) {
+            this.db = db;
+            this.requestExecutor = requestExecutor;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.finished = finished;
+        }
+
+        private void send() {
+            long start = System.nanoTime();
+            if (start >= end) {
+                finished.countDown();
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> handleRequest(db), requestExecutor).whenComplete((result, ex) -> {
+                if (start >= measureStart) {
+                    latencies.record(System.nanoTime() - start);
+                    if (ex != null) {
+                        errors.increment();
+                    }
+                }
+                send();
+            });
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package cz.muni.fi.pv168.prison.benchmarks;
+
+import cz.muni.fi.pv168.prison.backend.Cell;
+import cz.muni.fi.pv168.prison.backend.Prisoner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the JDBC managers on embedded Derby.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManagerBenchmark {
+
+    @Benchmark
+    public Prisoner createPrisoner(BenchmarkDatabase db) {
+        Prisoner prisoner = new Prisoner("Bench", "Mark", LocalDate.of(1990, 1, 1));
+        db.prisonerManager.createPrisoner(prisoner);
+        return prisoner;
+    }
+
+    @Benchmark
+    public Prisoner getPrisonerById(BenchmarkDatabase db) {
+        return db.prisonerManager.getPrisonerById(randomId(db.minPrisonerId, db.maxPrisonerId));
+    }
+
+    @Benchmark
+    public Cell getCellById(BenchmarkDatabase db) {
+        return db.cellManager.getCellById(randomId(db.minCellId, db.maxCellId));
+    }
+
+    @Benchmark
+    public List<Cell> findAllCells(BenchmarkDatabase db) {
+        return db.cellManager.findAllCells();
+    }
+
+    @Benchmark
+    public int findFreeCapacity(BenchmarkDatabase db) {
+        return db.sentenceManager.findFreeCapacity(randomCell(db));
+    }
+
+    @Benchmark
+    public List<Cell> findEmptyCells(BenchmarkDatabase db) {
+        return db.sentenceManager.findEmptyCells();
+    }
+
+    @Benchmark
+    public List<Prisoner> findPrisonersInCell(BenchmarkDatabase db) {
+        return db.sentenceManager.findPrisonersInCell(randomCell(db));
+    }
+
+    static Cell randomCell(BenchmarkDatabase db) {
+        Cell cell = new Cell(0, 20);
+        cell.setId(randomId(db.minCellId, db.maxCellId));
+        return cell;
+    }
+
+    static long randomId(long min, long max) {
+        return ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+}
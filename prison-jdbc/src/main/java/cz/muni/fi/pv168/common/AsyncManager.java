@@ -0,0 +1,57 @@
+package cz.muni.fi.pv168.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Asynchronous facade of a manager, calls of the manager are executed by {@link DbExecutor}.
+ * <pre>
+ * CompletableFuture&lt;List&lt;Cell&gt;&gt; cells = asyncCells.supply(CellManager::findAllCells);
+ * CompletableFuture&lt;List&lt;Prisoner&gt;&gt; prisoners = asyncPrisoners.supply(m -&gt; m.findPrisoners(null, 50));
+ * cells.thenCombine(prisoners, ...);
+ * </pre>
+ * Calls run in threads of the executor, so they do not join a {@link TransactionTemplate} transaction
+ * of the caller.
+ *
+ * @param <M> type of the manager
+ */
+public class AsyncManager<M> {
+
+    private final M manager;
+    private final DbExecutor executor;
+
+    public AsyncManager(M manager, DbExecutor executor) {
+        if (manager == null || executor == null) {
+            throw new IllegalArgumentException("manager or executor is null");
+        }
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    /**
+     * @return wrapped manager for synchronous calls
+     */
+    public M getManager() {
+        return manager;
+    }
+
+    /**
+     * Calls the manager asynchronously.
+     * @param call call of the manager
+     * @param <T> type of result
+     * @return future of the result, see {@link DbExecutor#supply(java.util.function.Supplier)}
+     */
+    public <T> CompletableFuture<T> supply(Function<? super M, ? extends T> call) {
+        return executor.supply(() -> call.apply(manager));
+    }
+
+    /**
+     * Calls the manager asynchronously, e.g. <code>run(m -&gt; m.deleteCell(cell))</code>.
+     * @param call call of the manager
+     * @return future completed when the call finishes
+     */
+    public CompletableFuture<Void> run(Consumer<? super M> call) {
+        return executor.run(() -> call.accept(manager));
+    }
+}
@@ -0,0 +1,255 @@
+package cz.muni.fi.pv168.common;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inserts many entities using JDBC batches. Entities are split into chunks, every chunk
+ * is inserted in its own transaction on one connection. When a chunk fails, its entities
+ * are inserted one by one, so that only the broken rows are reported as failures.
+ *
+ * @param <T> type of inserted entities
+ */
+public abstract class BatchInserter<T> {
+
+    /**
+     * Default number of rows sent to the database in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Logger logger = Logger.getLogger(
+            BatchInserter.class.getName());
+
+    private final String table;
+    private final String insertSql;
+    private final boolean generatedId;
+
+    /**
+     * @param table name of the table rows are inserted into
+     * @param insertSql INSERT statement with parameters bound by {@link #bind(PreparedStatement, Object)}
+     * @param generatedId flag if the table has generated id which should be stored into entities
+     */
+    protected BatchInserter(String table, String insertSql, boolean generatedId) {
+        this.table = table;
+        this.insertSql = insertSql;
+        this.generatedId = generatedId;
+    }
+
+    /**
+     * Validates entity before it is inserted.
+     *
+     * @param entity entity to validate
+     * @throws RuntimeException when the entity can not be inserted
+     */
+    protected abstract void validate(T entity);
+
+    /**
+     * Binds parameters of the insert statement.
+     *
+     * @param st insert statement
+     * @param entity inserted entity
+     * @throws SQLException when operation fails
+     */
+    protected abstract void bind(PreparedStatement st, T entity) throws SQLException;
+
+    /**
+     * Stores generated id into entity. Called only when the table has generated id,
+     * inserters of tables without it implement it as no-op.
+     *
+     * @param entity inserted entity
+     * @param id generated id
+     */
+    protected abstract void setId(T entity, Long id);
+
+    /**
+     * Checks entities of one chunk inside of its transaction, just before they are inserted.
+     * Entities which should not be inserted are reported in the returned map.
+     *
+     * @param conn connection of the chunk transaction
+     * @param entities entities of the chunk
+     * @return map from index in given list to the reason of rejection, empty by default
+     * @throws SQLException when operation fails
+     */
+    protected Map<Integer, RuntimeException> checkChunk(Connection conn, List<T> entities) throws SQLException {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Inserts given entities.
+     *
+     * @param dataSource data source
+     * @param entities entities to insert
+     * @param batchSize maximal number of rows in one batch
+     * @return inserted entities and failures of the rest
+     */
+    public BatchResult<T> insert(DataSource dataSource, List<T> entities, int batchSize) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities are null");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size is lower than 1");
+        }
+        BatchResult<T> result = new BatchResult<>();
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < entities.size(); i++) {
+            try {
+                validate(entities.get(i));
+                valid.add(i);
+            } catch (RuntimeException ex) {
+                result.addFailure(i, ex);
+            }
+        }
+
+        for (List<Integer> chunk : DBUtils.partition(valid, batchSize)) {
+            try {
+                insertChunk(dataSource, entities, chunk, result);
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Batch insert into " + table + " failed, inserting rows one by one", ex);
+                for (Integer index : chunk) {
+                    try {
+                        insertChunk(dataSource, entities, Collections.singletonList(index), result);
+                    } catch (SQLException rowEx) {
+                        String msg = "Error when inserting " + entities.get(index) + " into db";
+                        logger.log(Level.SEVERE, msg, rowEx);
+                        result.addFailure(index, new ServiceFailureException(msg, rowEx));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void insertChunk(DataSource dataSource, List<T> entities, List<Integer> indices,
+                             BatchResult<T> result) throws SQLException {
+        Connection conn = null;
+        PreparedStatement st = null;
+        // in a running transaction a failed chunk is undone by a savepoint, not by a rollback
+        Savepoint savepoint = null;
+        boolean done = false;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            conn.setAutoCommit(false);
+            if (TransactionTemplate.getCurrentTransaction(dataSource) != null) {
+                savepoint = conn.setSavepoint();
+            }
+
+            List<T> chunk = new ArrayList<>(indices.size());
+            for (Integer index : indices) {
+                chunk.add(entities.get(index));
+            }
+            Map<Integer, RuntimeException> rejected = checkChunk(conn, chunk);
+            List<Integer> accepted = new ArrayList<>(indices.size());
+            for (int i = 0; i < indices.size(); i++) {
+                if (!rejected.containsKey(i)) {
+                    accepted.add(i);
+                }
+            }
+
+            List<Long> ids = Collections.emptyList();
+            if (!accepted.isEmpty()) {
+                boolean locked = generatedId && lockTableIfNeeded(conn);
+                st = generatedId
+                        ? conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)
+                        : conn.prepareStatement(insertSql);
+                for (Integer i : accepted) {
+                    bind(st, chunk.get(i));
+                    st.addBatch();
+                }
+                for (int count : st.executeBatch()) {
+                    if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+                        throw new SQLException("Unexpected rows count in batch affected: " + count);
+                    }
+                }
+                if (generatedId) {
+                    ids = readGeneratedIds(conn, st, accepted.size(), locked);
+                }
+            }
+            conn.commit();
+            done = true;
+
+            for (int i = 0, a = 0; i < indices.size(); i++) {
+                RuntimeException cause = rejected.get(i);
+                if (cause != null) {
+                    result.addFailure(indices.get(i), cause);
+                    continue;
+                }
+                T entity = chunk.get(i);
+                if (generatedId) {
+                    setId(entity, ids.get(a));
+                }
+                a++;
+                result.addSucceeded(entity);
+            }
+        } finally {
+            if (savepoint == null) {
+                DBUtils.doRollbackQuietly(conn);
+            } else if (!done) {
+                try {
+                    conn.rollback(savepoint);
+                } catch (SQLException ex) {
+                    logger.log(Level.SEVERE, "Error when rolling back to savepoint", ex);
+                }
+            }
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Derby returns only the last generated key of a batch. The table is locked for the rest
+     * of the transaction, so the keys of the batch are consecutive and can be computed from it.
+     */
+    private boolean lockTableIfNeeded(Connection conn) throws SQLException {
+        if (!DBUtils.isDerby(conn)) {
+            return false;
+        }
+        try (Statement lock = conn.createStatement()) {
+            lock.execute("LOCK TABLE " + table + " IN EXCLUSIVE MODE");
+        }
+        return true;
+    }
+
+    private List<Long> readGeneratedIds(Connection conn, PreparedStatement st, int count,
+                                        boolean locked) throws SQLException {
+        List<Long> ids = new ArrayList<>(count);
+        ResultSet keys = st.getGeneratedKeys();
+        while (keys != null && keys.next()) {
+            ids.add(keys.getLong(1));
+        }
+        if (ids.size() == count) {
+            return ids;
+        }
+        if (!locked || ids.size() != 1) {
+            throw new SQLException("Cannot get generated keys of batch: expected " + count
+                    + " keys, got " + ids.size());
+        }
+
+        long last = ids.get(0);
+        long first = last - count + 1;
+        try (PreparedStatement check = conn.prepareStatement(
+                "SELECT COUNT(*) FROM " + table + " WHERE id BETWEEN ? AND ?")) {
+            check.setLong(1, first);
+            check.setLong(2, last);
+            ResultSet rs = check.executeQuery();
+            rs.next();
+            if (rs.getInt(1) != count) {
+                throw new SQLException("Generated keys of batch into " + table + " are not consecutive");
+            }
+        }
+        ids.clear();
+        for (long id = first; id <= last; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
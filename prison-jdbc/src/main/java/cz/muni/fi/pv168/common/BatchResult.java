@@ -0,0 +1,60 @@
+package cz.muni.fi.pv168.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a bulk operation. Holds entities which were processed successfully and
+ * failures of the other ones, identified by their index in the input list.
+ *
+ * @param <T> type of processed entities
+ */
+public class BatchResult<T> {
+
+    private final List<T> succeeded = new ArrayList<>();
+    private final Map<Integer, RuntimeException> failures = new TreeMap<>();
+
+    /**
+     * Returns successfully processed entities in the order of the input list.
+     *
+     * @return unmodifiable list of successfully processed entities
+     */
+    public List<T> getSucceeded() {
+        return Collections.unmodifiableList(succeeded);
+    }
+
+    /**
+     * Returns failures of not processed entities.
+     *
+     * @return unmodifiable map from index in the input list to the cause of the failure
+     */
+    public Map<Integer, RuntimeException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return true when some entity was not processed
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    void addSucceeded(T entity) {
+        succeeded.add(entity);
+    }
+
+    void addFailure(int index, RuntimeException cause) {
+        failures.put(index, cause);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "succeeded=" + succeeded.size() +
+                ", failures=" + failures +
+                '}';
+    }
+}
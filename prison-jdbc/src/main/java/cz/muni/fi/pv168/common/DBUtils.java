@@ -8,8 +8,12 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Some DB tools.
@@ -20,8 +24,29 @@ public class DBUtils {
     private static final Logger logger = Logger.getLogger(
             DBUtils.class.getName());
 
+    private static final Pattern DOLLAR_QUOTE = Pattern.compile("\\$\\w*\\$");
+
+    /**
+     * Maximal number of parameters used in one IN list. Longer lists are split into chunks.
+     */
+    public static final int MAX_IN_LIST_SIZE = 500;
+
+    /**
+     * Returns connection of the transaction running on the data source in the current thread,
+     * see {@link TransactionTemplate}, or a new connection.
+     *
+     * @param ds data source
+     * @return connection, it has to be closed by {@link #closeQuietly(Connection, Statement...)}
+     * @throws SQLException when connection cannot be obtained
+     */
+    public static Connection getConnection(DataSource ds) throws SQLException {
+        TransactionContext ctx = TransactionTemplate.getCurrentTransaction(ds);
+        return ctx == null ? ds.getConnection() : ctx.getConnection();
+    }
+
     /**
-     * Closes connection and logs possible error.
+     * Closes connection and logs possible error. Connection is switched back to autocommit mode
+     * only when it is not in autocommit mode already.
      *
      * @param conn connection to close
      * @param statements  statements to close
@@ -38,7 +63,9 @@ public class DBUtils {
         }
         if (conn != null) {
             try {
-                conn.setAutoCommit(true);
+                if (!conn.getAutoCommit()) {
+                    conn.setAutoCommit(true);
+                }
             } catch (SQLException ex) {
                 logger.log(Level.SEVERE, "Error when switching autocommit mode back to true", ex);
             }
@@ -90,14 +117,25 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Checks if given connection is connected to Apache Derby.
+     *
+     * @param conn connection
+     * @return true for Derby database
+     * @throws SQLException when operation fails
+     */
+    public static boolean isDerby(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().startsWith("Apache Derby");
+    }
+
     /**
      * Reads SQL statements from file. SQL commands in file must be separated by
-     * a semicolon.
+     * a semicolon, see {@link #splitSqlStatements(String)}.
      *
      * @param url url of the file
      * @return array of command  strings
      */
-    private static String[] readSqlStatements(URL url) {
+    static String[] readSqlStatements(URL url) {
         try {
             char buffer[] = new char[256];
             StringBuilder result = new StringBuilder();
@@ -109,33 +147,51 @@ public class DBUtils {
                 }
                 result.append(buffer, 0, count);
             }
-            return result.toString().split(";");
+            return splitSqlStatements(result.toString()).toArray(new String[0]);
         } catch (IOException ex) {
             throw new RuntimeException("Cannot read " + url, ex);
         }
     }
 
     /**
-     * Try to execute script for creating tables. If tables already exist,
-     * appropriate exception is catched and ignored.
+     * Splits SQL script to statements separated by semicolons. Semicolons inside quoted strings,
+     * quoted identifiers, comments and dollar quoted bodies of PostgreSQL functions do not separate statements.
      *
-     * @param ds dataSource
-     * @param scriptUrl url of script for creating tables
-     * @throws SQLException when operation fails
+     * @param script SQL script
+     * @return statements without the separating semicolons
      */
-    public static void tryCreateTables(DataSource ds, URL scriptUrl) throws SQLException {
-        try {
-            executeSqlScript(ds, scriptUrl);
-            logger.warning("Tables created");
-        } catch (SQLException ex) {
-            if ("X0Y32".equals(ex.getSQLState())) {
-                // This code represents "Table/View/... already exists"
-                // This code is Derby specific!
-                return;
+    public static List<String> splitSqlStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (c == ';') {
+                statements.add(script.substring(start, i));
+                start = ++i;
+            } else if (c == '\'' || c == '"') {
+                int end = script.indexOf(c, i + 1);
+                i = end < 0 ? script.length() : end + 1;
+            } else if (script.startsWith("--", i)) {
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? script.length() : end + 1;
+            } else if (script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? script.length() : end + 2;
+            } else if (c == '$') {
+                Matcher tag = DOLLAR_QUOTE.matcher(script).region(i, script.length());
+                if (tag.lookingAt()) {
+                    int end = script.indexOf(tag.group(), tag.end());
+                    i = end < 0 ? script.length() : end + tag.group().length();
+                } else {
+                    i++;
+                }
             } else {
-                throw ex;
+                i++;
             }
         }
+        statements.add(script.substring(start));
+        return statements;
     }
 
     /**
@@ -159,6 +215,55 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Escapes wildcards of LIKE pattern, the pattern has to be used with <code>ESCAPE '\'</code>.
+     *
+     * @param text text matched literally
+     * @return text with escaped backslashes, percent signs and underscores
+     */
+    public static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Creates comma separated list of parameter placeholders for IN list.
+     *
+     * @param count number of placeholders
+     * @return string like "?,?,?"
+     */
+    public static String createPlaceholders(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count is lower than 1");
+        }
+        StringBuilder result = new StringBuilder(2 * count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append('?');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Splits given list into consecutive chunks of at most given size.
+     *
+     * @param list list to split
+     * @param size maximal size of one chunk
+     * @param <T> type of list items
+     * @return list of chunks, empty when given list is empty
+     */
+    public static <T> List<List<T>> partition(List<T> list, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size is lower than 1");
+        }
+        List<List<T>> result = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            result.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return result;
+    }
+
     /**
      * Check if updates count is one. Otherwise appropriate exception is thrown.
      *
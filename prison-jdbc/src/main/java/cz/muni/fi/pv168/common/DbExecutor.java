@@ -0,0 +1,203 @@
+package cz.muni.fi.pv168.common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor of database work, which should be sized to the connection pool.
+ * <p>
+ * At most <code>threads + queueCapacity</code> tasks are accepted at once. When the executor is saturated,
+ * submitting waits at most <code>maxWaitMillis</code> for a free place and then returns a future failed
+ * with {@link RejectedExecutionException}, so that callers slow down instead of piling up work.
+ * Callers which must not block use {@link #trySupply(Supplier)}, which does not wait.
+ * <p>
+ * Dependent stages added without an executor run in database threads, heavy work should use
+ * the <code>*Async</code> methods of {@link CompletableFuture} with another executor.
+ * Tasks must not wait for other tasks of the same executor.
+ * <p>
+ * Executor created by {@link #virtual(String, int, long)} runs each task in its own virtual thread instead,
+ * concurrency of database work is then limited by the connection pool, since tasks waiting
+ * for a connection do not occupy platform threads.
+ */
+public class DbExecutor {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final int capacity;
+    private final boolean virtual;
+    private final Semaphore permits;
+    private final long maxWaitMillis;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name prefix of names of threads
+     * @param threads maximal number of threads, at least 1
+     * @param queueCapacity maximal number of waiting tasks, at least 0
+     * @param maxWaitMillis how long to wait for a free place when the executor is saturated
+     */
+    public DbExecutor(String name, int threads, int queueCapacity, long maxWaitMillis) {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("invalid size of executor " + name);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        this.name = name;
+        this.executor = pool;
+        this.capacity = threads + queueCapacity;
+        this.virtual = false;
+        this.permits = new Semaphore(capacity);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    private DbExecutor(String name, ExecutorService executor, int capacity, long maxWaitMillis) {
+        this.name = name;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.virtual = true;
+        this.permits = new Semaphore(capacity);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * Creates executor which runs each task in a new virtual thread, see {@link VirtualThreads}.
+     * @param name prefix of names of threads
+     * @param maxPending maximal number of running tasks including those waiting for a connection, at least 1
+     * @param maxWaitMillis how long to wait for a free place when the executor is saturated
+     * @return executor
+     * @throws UnsupportedOperationException when virtual threads are not supported
+     */
+    public static DbExecutor virtual(String name, int maxPending, long maxWaitMillis) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("invalid size of executor " + name);
+        }
+        return new DbExecutor(name, VirtualThreads.newExecutor(name + "-"), maxPending, maxWaitMillis);
+    }
+
+    /**
+     * @return whether tasks run in virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Executes work asynchronously.
+     * @param task work
+     * @param <T> type of result
+     * @return future completed by the result of the work, or failed with its exception
+     * or with {@link RejectedExecutionException} when the executor is saturated or shut down
+     */
+    public <T> CompletableFuture<T> supply(Supplier<? extends T> task) {
+        return submit(task, maxWaitMillis);
+    }
+
+    /**
+     * Executes work asynchronously like {@link #supply(Supplier)}, but never waits for a free place,
+     * so that callers which must not block, e.g. the event dispatch thread, can retry later instead.
+     * @param task work
+     * @param <T> type of result
+     * @return future completed by the result of the work, or failed with its exception
+     * or with {@link RejectedExecutionException} when the executor is saturated or shut down
+     */
+    public <T> CompletableFuture<T> trySupply(Supplier<? extends T> task) {
+        return submit(task, 0);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<? extends T> task, long waitMillis) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!acquire(waitMillis)) {
+            rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException("Executor " + name + " is saturated"));
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                T result;
+                try {
+                    result = task.get();
+                } catch (Throwable ex) {
+                    // the place is freed before completion, so that dependent stages can submit new work
+                    permits.release();
+                    future.completeExceptionally(ex);
+                    return;
+                }
+                permits.release();
+                future.complete(result);
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            rejected.increment();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Executes work without result asynchronously, see {@link #supply(Supplier)}.
+     * @param task work
+     * @return future completed when the work finishes
+     */
+    public CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private boolean acquire(long waitMillis) {
+        try {
+            return permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return number of tasks which are running or waiting
+     */
+    public int getPending() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * @return number of tasks rejected because the executor was saturated or shut down
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting tasks, accepted tasks are finished.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until accepted tasks are finished after {@link #shutdown()}.
+     * @param timeout maximal time to wait
+     * @param unit unit of the timeout
+     * @return whether all tasks are finished
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,66 @@
+package cz.muni.fi.pv168.common;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of metrics of one method. Latencies are in milliseconds.
+ */
+public final class MethodMetrics {
+
+    private final String method;
+    private final long calls;
+    private final long errors;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    @ConstructorProperties({"method", "calls", "errors", "mean", "p50", "p90", "p99", "p999", "max"})
+    public MethodMetrics(String method, long calls, long errors, double mean,
+                         double p50, double p90, double p99, double p999, double max) {
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public String getMethod() { return method; }
+
+    public long getCalls() { return calls; }
+
+    public long getErrors() { return errors; }
+
+    public double getMean() { return mean; }
+
+    public double getP50() { return p50; }
+
+    public double getP90() { return p90; }
+
+    public double getP99() { return p99; }
+
+    public double getP999() { return p999; }
+
+    public double getMax() { return max; }
+
+    @Override
+    public String toString() {
+        return "MethodMetrics{" +
+                "method='" + method + '\'' +
+                ", calls=" + calls +
+                ", errors=" + errors +
+                ", mean=" + mean +
+                ", p50=" + p50 +
+                ", p90=" + p90 +
+                ", p99=" + p99 +
+                ", p999=" + p999 +
+                ", max=" + max +
+                '}';
+    }
+}
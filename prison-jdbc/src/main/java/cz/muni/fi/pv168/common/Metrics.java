@@ -0,0 +1,179 @@
+package cz.muni.fi.pv168.common;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Call counts, error counts and latency histograms of methods of one component.
+ * <p>
+ * Calls are usually recorded by {@link MetricsProxy}. The metrics can be exported
+ * to the platform MBean server by {@link #register(String)}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final Logger logger = Logger.getLogger(
+            Metrics.class.getName());
+
+    /**
+     * Domain of object names of registered metrics.
+     */
+    public static final String JMX_DOMAIN = "cz.muni.fi.pv168.prison";
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<String, MethodRecord> methods = new ConcurrentSkipListMap<>();
+    private ObjectName objectName;
+
+    private static final class MethodRecord {
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+    }
+
+    /**
+     * Records one call.
+     * @param method name of the method
+     * @param nanos duration of the call in nanoseconds
+     * @param failed whether the call threw an exception
+     */
+    public void record(String method, long nanos, boolean failed) {
+        MethodRecord record = methods.computeIfAbsent(method, m -> new MethodRecord());
+        record.latencies.record(nanos);
+        if (failed) {
+            record.errors.increment();
+        }
+    }
+
+    /**
+     * @param method name of the method
+     * @return metrics of the method, or null when it was not called
+     */
+    public MethodMetrics getMethod(String method) {
+        MethodRecord record = methods.get(method);
+        return record == null ? null : snapshot(method, record);
+    }
+
+    @Override
+    public List<MethodMetrics> getMethods() {
+        List<MethodMetrics> result = new ArrayList<>();
+        for (Map.Entry<String, MethodRecord> entry : methods.entrySet()) {
+            result.add(snapshot(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public long getCalls() {
+        long calls = 0;
+        for (MethodRecord record : methods.values()) {
+            calls += record.latencies.getCount();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getErrors() {
+        long errors = 0;
+        for (MethodRecord record : methods.values()) {
+            errors += record.errors.sum();
+        }
+        return errors;
+    }
+
+    @Override
+    public void reset() {
+        methods.clear();
+    }
+
+    /**
+     * Registers the metrics to the platform MBean server under name
+     * <code>cz.muni.fi.pv168.prison:type=Metrics,name=&lt;name&gt;</code>.
+     * Metrics registered before under the same name are replaced.
+     * @param name name of the component
+     * @throws IllegalStateException when registration fails
+     */
+    public synchronized void register(String name) {
+        objectName = registerMBean(this, "Metrics", name);
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return name under which the metrics are registered, or null
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Registers MBean to the platform MBean server, MBean registered before under the same name is replaced.
+     * @param mbean MBean
+     * @param type type of the MBean
+     * @param name name of the MBean
+     * @return object name of the registered MBean
+     * @throws IllegalStateException when registration fails
+     */
+    static ObjectName registerMBean(Object mbean, String type, String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            try {
+                server.registerMBean(mbean, on);
+            } catch (InstanceAlreadyExistsException ex) {
+                server.unregisterMBean(on);
+                server.registerMBean(mbean, on);
+            }
+            return on;
+        } catch (MalformedObjectNameException ex) {
+            throw new IllegalArgumentException("invalid MBean name " + name, ex);
+        } catch (JMException ex) {
+            String msg = "cannot register MBean " + name;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new IllegalStateException(msg, ex);
+        }
+    }
+
+    /**
+     * Removes MBean from the platform MBean server, if registered.
+     * @param objectName name of the MBean
+     */
+    static void unregisterMBean(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException ex) {
+            // already replaced or removed
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "cannot unregister MBean " + objectName, ex);
+        }
+    }
+
+    private static MethodMetrics snapshot(String method, MethodRecord record) {
+        LatencyHistogram h = record.latencies;
+        return new MethodMetrics(method, h.getCount(), record.errors.sum(),
+                h.getMean() / NANOS_PER_MILLI,
+                h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                h.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                h.getMax() / NANOS_PER_MILLI);
+    }
+}
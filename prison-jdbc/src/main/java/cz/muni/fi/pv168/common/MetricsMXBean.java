@@ -0,0 +1,29 @@
+package cz.muni.fi.pv168.common;
+
+import java.util.List;
+
+/**
+ * Management interface of {@link Metrics}, exported through JMX.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return metrics of all called methods sorted by name
+     */
+    List<MethodMetrics> getMethods();
+
+    /**
+     * @return number of calls of all methods
+     */
+    long getCalls();
+
+    /**
+     * @return number of calls of all methods which threw an exception
+     */
+    long getErrors();
+
+    /**
+     * Forgets all recorded calls.
+     */
+    void reset();
+}
@@ -0,0 +1,90 @@
+package cz.muni.fi.pv168.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decorator which records duration of every call of an interface to {@link Metrics}.
+ * <p>
+ * Methods of {@link Object} are not recorded. Overloaded methods are recorded separately
+ * with parameter types in the name, e.g. <code>findEmptyCells(Long,int)</code>.
+ * For methods returning a lazy stream only creation of the stream is measured.
+ */
+public final class MetricsProxy implements InvocationHandler {
+
+    private final Object delegate;
+    private final Metrics metrics;
+    private final Map<Method, String> names = new ConcurrentHashMap<>();
+
+    private MetricsProxy(Object delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates instrumented implementation of an interface.
+     * @param type interface
+     * @param delegate implementation which is called
+     * @param metrics metrics where calls are recorded
+     * @param <T> type of the interface
+     * @return instrumented implementation
+     */
+    public static <T> T create(Class<T> type, T delegate, Metrics metrics) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException(type + " is not an interface");
+        }
+        if (delegate == null || metrics == null) {
+            throw new IllegalArgumentException("delegate or metrics is null");
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new MetricsProxy(delegate, metrics)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "MetricsProxy{" + delegate + '}';
+            }
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = method.invoke(delegate, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        } finally {
+            metrics.record(names.computeIfAbsent(method, MetricsProxy::metricName),
+                    System.nanoTime() - start, failed);
+        }
+    }
+
+    private static String metricName(Method method) {
+        int overloads = 0;
+        for (Method m : method.getDeclaringClass().getMethods()) {
+            if (m.getName().equals(method.getName())) {
+                overloads++;
+            }
+        }
+        if (overloads < 2) {
+            return method.getName();
+        }
+        StringJoiner joiner = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes()) {
+            joiner.add(type.getSimpleName());
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package cz.muni.fi.pv168.common;
+
+/**
+ * Management interface of metrics of {@link PooledDataSource}, exported through JMX.
+ * Wait times are in milliseconds.
+ */
+public interface PoolMetricsMXBean {
+
+    /**
+     * @return number of connections borrowed from the pool
+     */
+    int getActive();
+
+    /**
+     * @return number of idle connections in the pool
+     */
+    int getIdle();
+
+    /**
+     * @return maximal number of connections, negative for no limit
+     */
+    int getMaxTotal();
+
+    /**
+     * @return ratio of borrowed connections to maximal number of connections
+     */
+    double getUtilization();
+
+    /**
+     * @return number of threads waiting for a connection
+     */
+    int getWaiting();
+
+    /**
+     * @return number of successful borrows
+     */
+    long getBorrows();
+
+    /**
+     * @return number of borrows which failed, e.g. because of timeout
+     */
+    long getBorrowFailures();
+
+    double getMeanWait();
+
+    double getP99Wait();
+
+    double getMaxWait();
+
+    /**
+     * Forgets recorded borrows and wait times.
+     */
+    void reset();
+}
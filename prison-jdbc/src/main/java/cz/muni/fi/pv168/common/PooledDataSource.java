@@ -0,0 +1,196 @@
+package cz.muni.fi.pv168.common;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+import javax.management.ObjectName;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool configured from properties, which measures waiting for connections.
+ * <p>
+ * Supported properties, all except <code>jdbc.url</code> are optional:
+ * <ul>
+ *     <li><code>jdbc.url</code>, <code>jdbc.user</code>, <code>jdbc.password</code>, <code>jdbc.driver</code></li>
+ *     <li><code>pool.initialSize</code> (default 0), <code>pool.minIdle</code> (0), <code>pool.maxIdle</code> (8),
+ *     <code>pool.maxTotal</code> (8) - numbers of connections</li>
+ *     <li><code>pool.maxWaitMillis</code> (10000) - how long to wait for a free connection, negative for ever</li>
+ *     <li><code>pool.testOnBorrow</code> (true) and <code>pool.validationQuery</code> - validation of borrowed
+ *     connections, {@link Connection#isValid(int)} is used when no query is set</li>
+ *     <li><code>pool.poolPreparedStatements</code> (true) and <code>pool.maxOpenPreparedStatements</code> (50)
+ *     - reusing of prepared statements per connection</li>
+ * </ul>
+ * Returned connections are switched back to autocommit only when they are not in autocommit mode,
+ * the pool caches the mode so checking it does not need a round trip to the database.
+ */
+public class PooledDataSource extends BasicDataSource {
+
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LongAdder borrowFailures = new LongAdder();
+    private final PoolMetrics metrics = new PoolMetrics();
+    private ObjectName objectName;
+
+    public PooledDataSource() {
+        setMaxWaitMillis(10000);
+        setTestOnBorrow(true);
+        setValidationQueryTimeout(5);
+        setPoolPreparedStatements(true);
+        setMaxOpenPreparedStatements(50);
+        setCacheState(true);
+        setEnableAutoCommitOnReturn(true);
+        setRollbackOnReturn(true);
+    }
+
+    /**
+     * Creates pool configured by given properties.
+     * @param conf configuration
+     * @return pool
+     * @throws IllegalArgumentException when jdbc.url is missing or some number is invalid
+     */
+    public static PooledDataSource create(Properties conf) {
+        String url = conf.getProperty("jdbc.url");
+        if (url == null) {
+            throw new IllegalArgumentException("jdbc.url is not set");
+        }
+        PooledDataSource ds = new PooledDataSource();
+        ds.setUrl(url);
+        ds.setUsername(conf.getProperty("jdbc.user"));
+        ds.setPassword(conf.getProperty("jdbc.password"));
+        if (conf.getProperty("jdbc.driver") != null) {
+            ds.setDriverClassName(conf.getProperty("jdbc.driver"));
+        }
+        ds.setInitialSize(getInt(conf, "pool.initialSize", ds.getInitialSize()));
+        ds.setMinIdle(getInt(conf, "pool.minIdle", ds.getMinIdle()));
+        ds.setMaxIdle(getInt(conf, "pool.maxIdle", ds.getMaxIdle()));
+        ds.setMaxTotal(getInt(conf, "pool.maxTotal", ds.getMaxTotal()));
+        ds.setMaxWaitMillis(getInt(conf, "pool.maxWaitMillis", (int) ds.getMaxWaitMillis()));
+        ds.setTestOnBorrow(Boolean.parseBoolean(
+                conf.getProperty("pool.testOnBorrow", String.valueOf(ds.getTestOnBorrow())).trim()));
+        ds.setValidationQuery(conf.getProperty("pool.validationQuery"));
+        ds.setPoolPreparedStatements(Boolean.parseBoolean(
+                conf.getProperty("pool.poolPreparedStatements", String.valueOf(ds.isPoolPreparedStatements())).trim()));
+        ds.setMaxOpenPreparedStatements(getInt(conf, "pool.maxOpenPreparedStatements",
+                ds.getMaxOpenPreparedStatements()));
+        return ds;
+    }
+
+    private static int getInt(Properties conf, String property, int defaultValue) {
+        String value = conf.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid " + property + ": " + value, ex);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection();
+            waits.record(System.nanoTime() - start);
+            return connection;
+        } catch (SQLException | RuntimeException ex) {
+            borrowFailures.increment();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return metrics of the pool
+     */
+    public PoolMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exports metrics of the pool through JMX under name
+     * <code>cz.muni.fi.pv168.prison:type=Pool,name=&lt;name&gt;</code>. They are removed when the pool is closed.
+     * @param name name of the pool
+     */
+    public synchronized void registerMetrics(String name) {
+        objectName = Metrics.registerMBean(metrics, "Pool", name);
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        if (objectName != null) {
+            Metrics.unregisterMBean(objectName);
+            objectName = null;
+        }
+        super.close();
+    }
+
+    private int getWaiters() {
+        GenericObjectPool<?> pool = getConnectionPool();
+        return pool == null ? 0 : pool.getNumWaiters();
+    }
+
+    private final class PoolMetrics implements PoolMetricsMXBean {
+
+        private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+        @Override
+        public int getActive() {
+            return getNumActive();
+        }
+
+        @Override
+        public int getIdle() {
+            return getNumIdle();
+        }
+
+        @Override
+        public int getMaxTotal() {
+            return PooledDataSource.this.getMaxTotal();
+        }
+
+        @Override
+        public double getUtilization() {
+            int max = getMaxTotal();
+            return max <= 0 ? 0 : (double) getNumActive() / max;
+        }
+
+        @Override
+        public int getWaiting() {
+            return getWaiters();
+        }
+
+        @Override
+        public long getBorrows() {
+            return waits.getCount();
+        }
+
+        @Override
+        public long getBorrowFailures() {
+            return borrowFailures.sum();
+        }
+
+        @Override
+        public double getMeanWait() {
+            return waits.getMean() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Wait() {
+            return waits.getValueAtPercentile(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxWait() {
+            return waits.getMax() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public void reset() {
+            waits.reset();
+            borrowFailures.reset();
+        }
+    }
+}
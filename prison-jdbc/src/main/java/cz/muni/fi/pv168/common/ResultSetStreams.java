@@ -0,0 +1,144 @@
+package cz.muni.fi.pv168.common;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads query results row by row, without holding all rows in memory.
+ * <p>
+ * Rows are fetched from the database in chunks of the given fetch size. Connection used by
+ * a stream is released when the stream is closed, or as soon as its last row is read.
+ * Streams should therefore be used in a try-with-resources statement.
+ */
+public final class ResultSetStreams {
+
+    /**
+     * Default number of rows fetched from the database in one round trip.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final Logger logger = Logger.getLogger(
+            ResultSetStreams.class.getName());
+
+    private ResultSetStreams() {
+    }
+
+    /**
+     * Executes query and returns its rows as a lazily populated stream.
+     *
+     * @param dataSource data source
+     * @param sql query without parameters
+     * @param fetchSize number of rows fetched in one round trip
+     * @param mapper mapper of rows to entities
+     * @param <T> type of entities
+     * @return stream of entities, which has to be closed
+     * @throws SQLException when query can not be executed
+     */
+    public static <T> Stream<T> stream(DataSource dataSource, String sql, int fetchSize,
+                                       RowMapper<T> mapper) throws SQLException {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            if (!DBUtils.isDerby(conn)) {
+                // PostgreSQL uses cursor and honours fetch size only inside of a transaction
+                conn.setAutoCommit(false);
+            }
+            st = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            st.setFetchSize(fetchSize);
+            ResultSet rs = st.executeQuery();
+            RowSpliterator<T> spliterator = new RowSpliterator<>(conn, st, rs, mapper, sql);
+            conn = null;
+            st = null;
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Executes query and passes its rows to given action one by one.
+     *
+     * @param dataSource data source
+     * @param sql query without parameters
+     * @param fetchSize number of rows fetched in one round trip
+     * @param mapper mapper of rows to entities
+     * @param action action called for every entity
+     * @param <T> type of entities
+     * @throws SQLException when query can not be executed
+     * @throws ServiceFailureException when reading of rows fails
+     */
+    public static <T> void forEach(DataSource dataSource, String sql, int fetchSize,
+                                   RowMapper<T> mapper, Consumer<? super T> action) throws SQLException {
+        try (Stream<T> stream = stream(dataSource, sql, fetchSize, mapper)) {
+            stream.forEachOrdered(action);
+        }
+    }
+
+    private static class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final Connection conn;
+        private final PreparedStatement st;
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private final String sql;
+        private boolean closed;
+
+        RowSpliterator(Connection conn, PreparedStatement st, ResultSet rs, RowMapper<T> mapper, String sql) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.conn = conn;
+            this.st = st;
+            this.rs = rs;
+            this.mapper = mapper;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T entity;
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                entity = mapper.mapRow(rs);
+            } catch (SQLException ex) {
+                close();
+                String msg = "Error when reading rows of " + sql;
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            }
+            action.accept(entity);
+            return true;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                rs.close();
+            } catch (SQLException ex) {
+                logger.log(Level.SEVERE, "Error when closing result set", ex);
+            }
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+}
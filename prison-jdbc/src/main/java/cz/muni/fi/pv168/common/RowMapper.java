@@ -0,0 +1,22 @@
+package cz.muni.fi.pv168.common;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps current row of a result set to an entity.
+ *
+ * @param <T> type of the entity
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Creates entity from current row. Implementations must not move the cursor.
+     *
+     * @param rs result set positioned on a row
+     * @return entity
+     * @throws SQLException when operation fails
+     */
+    T mapRow(ResultSet rs) throws SQLException;
+}
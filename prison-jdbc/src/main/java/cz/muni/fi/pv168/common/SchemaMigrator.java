@@ -0,0 +1,227 @@
+package cz.muni.fi.pv168.common;
+
+import javax.sql.DataSource;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings database schema to the latest version by executing versioned SQL scripts.
+ * <p>
+ * Scripts are named <code>V&lt;version&gt;__&lt;description&gt;.sql</code> and there is
+ * one directory of scripts for every supported database, e.g. <code>derby/V1__create_tables.sql</code>
+ * and <code>postgresql/V1__create_tables.sql</code>. Applied versions are recorded in table
+ * <code>schema_version</code>, every script runs in its own transaction together with its record.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = Logger.getLogger(
+            SchemaMigrator.class.getName());
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private final Class<?> resourceBase;
+    private final String directory;
+    private final List<String> scripts;
+    private final String baselineTable;
+
+    /**
+     * Creates migrator for given scripts.
+     *
+     * @param resourceBase class used to load the scripts
+     * @param directory directory of the scripts relative to resourceBase, containing subdirectory for every database
+     * @param scripts names of the scripts, ordered by version
+     * @param baselineTable table created by the first script; when it exists in a database without
+     *                      <code>schema_version</code>, the first script is considered applied
+     */
+    public SchemaMigrator(Class<?> resourceBase, String directory, List<String> scripts, String baselineTable) {
+        for (int i = 0; i < scripts.size(); i++) {
+            if (versionOf(scripts.get(i)) != i + 1) {
+                throw new IllegalArgumentException("Script " + scripts.get(i) + " should have version " + (i + 1));
+            }
+        }
+        this.resourceBase = resourceBase;
+        this.directory = directory;
+        this.scripts = Collections.unmodifiableList(new ArrayList<>(scripts));
+        this.baselineTable = baselineTable;
+    }
+
+    /**
+     * @return version of the last script
+     */
+    public int getLatestVersion() {
+        return scripts.size();
+    }
+
+    /**
+     * Executes all scripts which were not applied to given database yet.
+     *
+     * @param ds data source
+     * @return schema version after the migration
+     * @throws SQLException when operation fails
+     */
+    public int migrate(DataSource ds) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            String dialect = dialectOf(conn);
+            int current = prepareVersionTable(conn);
+            for (int version = current + 1; version <= scripts.size(); version++) {
+                applyScript(conn, dialect, scripts.get(version - 1));
+            }
+            return scripts.size();
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Returns schema version of given database.
+     *
+     * @param ds data source
+     * @return applied version, 0 when no script was applied
+     * @throws SQLException when operation fails
+     */
+    public int getCurrentVersion(DataSource ds) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = ds.getConnection();
+            if (!tableExists(conn, "schema_version")) {
+                return 0;
+            }
+            return readVersion(conn);
+        } finally {
+            DBUtils.closeQuietly(conn);
+        }
+    }
+
+    private static String dialectOf(Connection conn) throws SQLException {
+        if (DBUtils.isDerby(conn)) {
+            return "derby";
+        }
+        String product = conn.getMetaData().getDatabaseProductName();
+        if (product.toLowerCase().contains("postgresql")) {
+            return "postgresql";
+        }
+        throw new IllegalStateException("Unsupported database " + product);
+    }
+
+    private int prepareVersionTable(Connection conn) throws SQLException {
+        if (tableExists(conn, "schema_version")) {
+            return readVersion(conn);
+        }
+        boolean legacy = baselineTable != null && tableExists(conn, baselineTable);
+        Statement st = null;
+        try {
+            conn.setAutoCommit(false);
+            st = conn.createStatement();
+            st.executeUpdate("CREATE TABLE schema_version (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "installed_on TIMESTAMP NOT NULL)");
+            if (legacy) {
+                // schema created by scripts predating migrations
+                insertVersion(conn, scripts.get(0));
+                logger.info("Existing schema recorded as version 1");
+            }
+            conn.commit();
+            return legacy ? 1 : 0;
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(null, st);
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void applyScript(Connection conn, String dialect, String script) throws SQLException {
+        URL url = resourceBase.getResource(directory + "/" + dialect + "/" + script);
+        if (url == null) {
+            throw new IllegalStateException("Migration script " + script + " for " + dialect + " not found");
+        }
+        Statement st = null;
+        try {
+            conn.setAutoCommit(false);
+            st = conn.createStatement();
+            for (String sqlStatement : DBUtils.readSqlStatements(url)) {
+                if (!sqlStatement.trim().isEmpty()) {
+                    st.executeUpdate(sqlStatement);
+                }
+            }
+            insertVersion(conn, script);
+            conn.commit();
+            logger.info("Schema migrated to version " + versionOf(script));
+        } catch (SQLException ex) {
+            logger.log(Level.SEVERE, "Migration script " + script + " failed", ex);
+            throw ex;
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(null, st);
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void insertVersion(Connection conn, String script) throws SQLException {
+        PreparedStatement st = null;
+        try {
+            st = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description, installed_on) VALUES (?,?,?)");
+            st.setInt(1, versionOf(script));
+            st.setString(2, descriptionOf(script));
+            st.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            st.executeUpdate();
+        } finally {
+            DBUtils.closeQuietly(null, st);
+        }
+    }
+
+    private static int readVersion(Connection conn) throws SQLException {
+        Statement st = null;
+        try {
+            st = conn.createStatement();
+            ResultSet rs = st.executeQuery("SELECT MAX(version) FROM schema_version");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            DBUtils.closeQuietly(null, st);
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase() : table.toLowerCase();
+        ResultSet rs = metaData.getTables(null, conn.getSchema(), name, new String[]{"TABLE"});
+        try {
+            return rs.next();
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(parse(script).group(1));
+    }
+
+    private static String descriptionOf(String script) {
+        return parse(script).group(2).replace('_', ' ');
+    }
+
+    private static Matcher parse(String script) {
+        Matcher matcher = SCRIPT_NAME.matcher(script);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Wrong migration script name " + script);
+        }
+        return matcher;
+    }
+}
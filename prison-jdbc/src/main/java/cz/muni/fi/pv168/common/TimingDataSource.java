@@ -0,0 +1,325 @@
+package cz.muni.fi.pv168.common;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Data source which measures duration of obtaining connections, executions of statements, commits and rollbacks.
+ * <p>
+ * Durations are recorded to {@link Metrics} per normalized SQL, i.e. SQL with literals replaced by
+ * <code>?</code>, so that statistics of one query are aggregated even when it is not prepared.
+ * Obtaining connections is recorded as <code>getConnection</code>, commits and rollbacks as
+ * <code>COMMIT</code> and <code>ROLLBACK</code>.
+ * <p>
+ * Executions slower than configured threshold are logged with bind parameters, or with the SQL as executed
+ * when the statement is not prepared, to logger {@value #SLOW_QUERY_LOGGER} on level WARNING. Only execution is measured, not reading of results.
+ */
+public class TimingDataSource implements DataSource {
+
+    /**
+     * Name of the logger of slow queries.
+     */
+    public static final String SLOW_QUERY_LOGGER = "cz.muni.fi.pv168.common.TimingDataSource.slow";
+
+    private static final Logger slowLogger = Logger.getLogger(SLOW_QUERY_LOGGER);
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final DataSource delegate;
+    private final Metrics metrics;
+    private volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * @param delegate measured data source
+     * @param metrics metrics where durations are recorded
+     */
+    public TimingDataSource(DataSource delegate, Metrics metrics) {
+        if (delegate == null || metrics == null) {
+            throw new IllegalArgumentException("delegate or metrics is null");
+        }
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets threshold of the slow query log.
+     * @param millis executions taking at least this number of milliseconds are logged, negative disables the log
+     */
+    public void setSlowQueryThreshold(long millis) {
+        this.slowQueryNanos = millis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * @return metrics where durations are recorded
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Normalizes SQL so that executions of one query with different literals have the same text.
+     * Literals are replaced by <code>?</code>, lists of parameters in IN by <code>(?...)</code>
+     * and white space is collapsed.
+     * @param sql SQL statement
+     * @return normalized SQL
+     */
+    public static String normalize(String sql) {
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("(?...)");
+        return WHITESPACE.matcher(result).replaceAll(" ").trim();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Connection connection = wrap(delegate.getConnection());
+            failed = false;
+            return connection;
+        } finally {
+            record("getConnection", null, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Connection connection = wrap(delegate.getConnection(username, password));
+            failed = false;
+            return connection;
+        } finally {
+            record("getConnection", null, System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(TimingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private void record(String name, String detail, long nanos, boolean failed) {
+        metrics.record(name, nanos, failed);
+        if (nanos >= slowQueryNanos) {
+            slowLogger.log(Level.WARNING, "Slow statement ({0} ms): {1}{2}", new Object[]{
+                    TimeUnit.NANOSECONDS.toMillis(nanos), name, detail == null ? "" : " " + detail});
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "TimingConnection{" + connection + '}';
+                case "commit":
+                case "rollback":
+                    if (args == null) {
+                        String name = method.getName().toUpperCase();
+                        long start = System.nanoTime();
+                        boolean failed = true;
+                        try {
+                            Object result = TimingDataSource.invoke(connection, method, null);
+                            failed = false;
+                            return result;
+                        } finally {
+                            record(name, null, System.nanoTime() - start, failed);
+                        }
+                    }
+                    break;
+                case "createStatement":
+                    return wrapStatement(proxy, Statement.class, (Statement) TimingDataSource.invoke(connection, method, args), null);
+                case "prepareStatement":
+                    return wrapStatement(proxy, PreparedStatement.class,
+                            (Statement) TimingDataSource.invoke(connection, method, args), (String) args[0]);
+                case "prepareCall":
+                    return wrapStatement(proxy, CallableStatement.class,
+                            (Statement) TimingDataSource.invoke(connection, method, args), (String) args[0]);
+                default:
+                    break;
+            }
+            return TimingDataSource.invoke(connection, method, args);
+        }
+
+        private Object wrapStatement(Object connectionProxy, Class<? extends Statement> type, Statement statement,
+                                     String sql) {
+            return Proxy.newProxyInstance(TimingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler(connectionProxy, statement, sql));
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Object connectionProxy;
+        private final Statement statement;
+        private final String preparedSql;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private final List<String> batch = new ArrayList<>();
+        private int batchSize;
+
+        private StatementHandler(Object connectionProxy, Statement statement, String preparedSql) {
+            this.connectionProxy = connectionProxy;
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "TimingStatement{" + statement + '}';
+                case "getConnection":
+                    return connectionProxy;
+                case "clearParameters":
+                    parameters.clear();
+                    break;
+                case "addBatch":
+                    batchSize++;
+                    if (args != null && args.length == 1 && args[0] instanceof String) {
+                        batch.add((String) args[0]);
+                    }
+                    break;
+                case "clearBatch":
+                    batchSize = 0;
+                    batch.clear();
+                    break;
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    return execute(method, args, sql(args), false);
+                case "executeBatch":
+                case "executeLargeBatch":
+                    String sql = preparedSql != null ? preparedSql : String.join("; ", batch);
+                    return execute(method, args, sql, true);
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+                    break;
+            }
+            return TimingDataSource.invoke(statement, method, args);
+        }
+
+        private String sql(Object[] args) {
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                return (String) args[0];
+            }
+            return preparedSql;
+        }
+
+        private Object execute(Method method, Object[] args, String sql, boolean isBatch) throws Throwable {
+            String normalized = normalize(sql == null ? "" : sql);
+            String detail = null;
+            if (isBatch) {
+                normalized = "BATCH " + normalized;
+                detail = "batch of " + batchSize;
+            } else if (preparedSql != null && !parameters.isEmpty()) {
+                detail = "parameters " + parameters.values();
+            }
+            if (preparedSql == null && sql != null) {
+                // literals of a statement which is not prepared are known only from its text
+                detail = (detail == null ? "" : detail + " ") + "sql [" + sql + "]";
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = TimingDataSource.invoke(statement, method, args);
+                failed = false;
+                return result;
+            } finally {
+                record(normalized, detail, System.nanoTime() - start, failed);
+                if (isBatch) {
+                    batchSize = 0;
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
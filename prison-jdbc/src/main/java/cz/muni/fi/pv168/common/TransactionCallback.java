@@ -0,0 +1,16 @@
+package cz.muni.fi.pv168.common;
+
+/**
+ * Work executed by {@link TransactionTemplate} in one transaction.
+ *
+ * @param <T> type of result
+ */
+@FunctionalInterface
+public interface TransactionCallback<T> {
+
+    /**
+     * @param ctx context of the transaction
+     * @return result of the work
+     */
+    T doInTransaction(TransactionContext ctx);
+}
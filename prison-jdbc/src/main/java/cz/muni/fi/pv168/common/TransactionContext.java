@@ -0,0 +1,111 @@
+package cz.muni.fi.pv168.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction started by {@link TransactionTemplate}.
+ * <p>
+ * Managers obtain the connection of the transaction by {@link DBUtils#getConnection(javax.sql.DataSource)}.
+ * They get a view of the connection, which ignores closing, commits, rollbacks and changes of
+ * the autocommit mode, so that the transaction is finished only by the template. A rollback of work
+ * which a manager started by disabling the autocommit mode and did not commit marks the transaction
+ * rollback only, so that a failed manager call does not commit partial work even when the caller
+ * catches its exception. The template then reports the rollback by an exception, unlike
+ * the rollback requested by {@link #setRollbackOnly()}.
+ */
+public final class TransactionContext {
+
+    private final Connection connection;
+    private final Connection participant;
+    private final List<Runnable> afterCompletion = new ArrayList<>();
+    private boolean rollbackOnly;
+    private boolean participantRolledBack;
+    /** whether a manager started work on the connection which it did not commit yet */
+    private boolean participantWorking;
+
+    TransactionContext(Connection connection) {
+        this.connection = connection;
+        this.participant = (Connection) Proxy.newProxyInstance(TransactionContext.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "commit":
+                            participantWorking = false;
+                            return null;
+                        case "setAutoCommit":
+                            participantWorking = !((Boolean) args[0]);
+                            return null;
+                        case "rollback":
+                            if (args == null) {
+                                // managers roll back in finally blocks also after their commit
+                                if (participantWorking) {
+                                    participantWorking = false;
+                                    participantRolledBack = true;
+                                }
+                                return null;
+                            }
+                            break;
+                        case "isClosed":
+                            return false;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "TransactionConnection{" + connection + '}';
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+    }
+
+    /**
+     * @return connection of the transaction, it must not be closed or committed
+     */
+    public Connection getConnection() {
+        return participant;
+    }
+
+    /**
+     * Marks the transaction so that it is rolled back instead of committed.
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    /**
+     * @return whether the transaction will be rolled back
+     */
+    public boolean isRollbackOnly() {
+        return rollbackOnly || participantRolledBack;
+    }
+
+    /**
+     * @return whether a manager rolled back its work and the rollback was not requested by {@link #setRollbackOnly()}
+     */
+    boolean isParticipantRolledBack() {
+        return participantRolledBack && !rollbackOnly;
+    }
+
+    /**
+     * Registers action executed after the transaction is committed or rolled back.
+     * @param action action
+     */
+    public void afterCompletion(Runnable action) {
+        afterCompletion.add(action);
+    }
+
+    List<Runnable> getAfterCompletion() {
+        return afterCompletion;
+    }
+}
@@ -0,0 +1,141 @@
+package cz.muni.fi.pv168.common;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes work of several managers in one transaction on one connection.
+ * <p>
+ * <pre>
+ * new TransactionTemplate(dataSource).execute(ctx -&gt; {
+ *     prisonerManager.createPrisoner(prisoner);
+ *     sentence.setPrisonerId(prisoner.getId());
+ *     sentenceManager.createSentence(sentence);
+ *     return sentence;
+ * });
+ * </pre>
+ * The transaction is bound to the current thread, all managers using the same data source join it.
+ * It is committed when the work finishes and rolled back when the work throws an exception
+ * or calls {@link TransactionContext#setRollbackOnly()}. When a manager fails and rolls back its work,
+ * the whole transaction is rolled back and {@link ServiceFailureException} is thrown, even when the work
+ * caught the exception of the manager. Nested execution joins the running transaction.
+ */
+public class TransactionTemplate {
+
+    private static final Logger logger = Logger.getLogger(
+            TransactionTemplate.class.getName());
+
+    private static final ThreadLocal<Map<DataSource, TransactionContext>> TRANSACTIONS =
+            ThreadLocal.withInitial(IdentityHashMap::new);
+
+    private final DataSource dataSource;
+
+    public TransactionTemplate(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Executes work in a transaction.
+     * @param callback work
+     * @param <T> type of result
+     * @return result of the work
+     * @throws ServiceFailureException when transaction cannot be started or committed,
+     * or when it was rolled back because a manager failed
+     */
+    public <T> T execute(TransactionCallback<T> callback) throws ServiceFailureException {
+        Map<DataSource, TransactionContext> transactions = TRANSACTIONS.get();
+        TransactionContext running = transactions.get(dataSource);
+        if (running != null) {
+            return callback.doInTransaction(running);
+        }
+
+        Connection conn = null;
+        TransactionContext ctx = null;
+        boolean committed = false;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            ctx = new TransactionContext(conn);
+            transactions.put(dataSource, ctx);
+            T result = callback.doInTransaction(ctx);
+            if (ctx.isParticipantRolledBack()) {
+                String msg = "Transaction was rolled back because a manager failed";
+                logger.log(Level.WARNING, msg);
+                throw new ServiceFailureException(msg);
+            }
+            if (!ctx.isRollbackOnly()) {
+                conn.commit();
+                committed = true;
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when executing transaction";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            transactions.remove(dataSource);
+            if (transactions.isEmpty()) {
+                TRANSACTIONS.remove();
+            }
+            if (!committed) {
+                DBUtils.doRollbackQuietly(conn);
+            }
+            DBUtils.closeQuietly(conn);
+            if (ctx != null) {
+                for (Runnable action : ctx.getAfterCompletion()) {
+                    action.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dataSource data source
+     * @return transaction of the current thread on the data source, or null
+     */
+    public static TransactionContext getCurrentTransaction(DataSource dataSource) {
+        Map<DataSource, TransactionContext> transactions = TRANSACTIONS.get();
+        TransactionContext ctx = transactions.get(dataSource);
+        if (transactions.isEmpty()) {
+            TRANSACTIONS.remove();
+        }
+        return ctx;
+    }
+
+    /**
+     * @return whether the current thread runs any transaction
+     */
+    public static boolean isTransactionActive() {
+        Map<DataSource, TransactionContext> transactions = TRANSACTIONS.get();
+        if (transactions.isEmpty()) {
+            TRANSACTIONS.remove();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Registers action executed after every running transaction of the current thread finishes,
+     * e.g. invalidation of a cache. Action is executed immediately when there is no transaction.
+     * @param action action
+     */
+    public static void afterCompletion(Runnable action) {
+        Map<DataSource, TransactionContext> transactions = TRANSACTIONS.get();
+        if (transactions.isEmpty()) {
+            TRANSACTIONS.remove();
+            action.run();
+            return;
+        }
+        for (TransactionContext ctx : transactions.values()) {
+            ctx.afterCompletion(action);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cz.muni.fi.pv168.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads of Java 21 from code compiled for Java 8.
+ * <p>
+ * Virtual threads are created by reflection, so the application still runs on older Java
+ * and can check {@link #isSupported()} to fall back to platform threads.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean SUPPORTED = OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null
+            && createFactory("probe-") != null;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return whether the running Java supports virtual threads, i.e. it is Java 21 or newer
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Creates executor which starts a new virtual thread for each task.
+     * @param name prefix of names of threads, they are numbered from 1
+     * @return executor, it has to be shut down when it is not needed
+     * @throws UnsupportedOperationException when virtual threads are not supported
+     */
+    public static ExecutorService newExecutor(String name) {
+        if (!SUPPORTED) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21, running "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, createFactory(name));
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException("Cannot create executor of virtual threads", ex);
+        }
+    }
+
+    private static ThreadFactory createFactory(String name) {
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // preview API of Java 19 and 20 throws UnsupportedOperationException when not enabled
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.CacheStats;
+import cz.muni.fi.pv168.common.LruCache;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cell manager which caches cells returned by {@link #getCellById(Long)}.
+ * All other calls are passed to the wrapped manager, updated and deleted cells are removed from the cache.
+ * The cache is only consistent when the cells are changed through this manager, so
+ * {@link #getCellsByIds(Collection)} reads current rows, e.g. rows changed by other clients.
+ * Inside of a {@link TransactionTemplate} transaction the cache is bypassed.
+ */
+public class CachingCellManager implements CellManager {
+
+    /**
+     * Default maximal number of cached cells.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    private final CellManager delegate;
+    private final LruCache<Long, Cell> cache;
+
+    public CachingCellManager(CellManager delegate) {
+        this(delegate, DEFAULT_CACHE_SIZE);
+    }
+
+    public CachingCellManager(CellManager delegate, int cacheSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+        this.delegate = delegate;
+        this.cache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * @return statistics of the cache
+     */
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Removes all cells from the cache, e.g. after they were changed by another application.
+     */
+    public void clearCache() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void createCell(Cell cell) throws ServiceFailureException {
+        delegate.createCell(cell);
+    }
+
+    @Override
+    public BatchResult<Cell> createCells(List<Cell> cells) throws ServiceFailureException {
+        return delegate.createCells(cells);
+    }
+
+    @Override
+    public Cell getCellById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException("ID is null");
+        }
+        // cached cell is never handed out, callers may modify their copy
+        if (TransactionTemplate.isTransactionActive()) {
+            // uncommitted changes must not get into the cache
+            return delegate.getCellById(id);
+        }
+        return copy(cache.get(id, delegate::getCellById));
+    }
+
+    @Override
+    public Map<Long, Cell> getCellsByIds(Collection<Long> ids) throws ServiceFailureException {
+        return delegate.getCellsByIds(ids);
+    }
+
+    @Override
+    public List<Cell> findAllCells() throws ServiceFailureException {
+        return delegate.findAllCells();
+    }
+
+    @Override
+    public Stream<Cell> streamAllCells() throws ServiceFailureException {
+        return delegate.streamAllCells();
+    }
+
+    @Override
+    public void forEachCell(Consumer<? super Cell> action) throws ServiceFailureException {
+        delegate.forEachCell(action);
+    }
+
+    @Override
+    public List<Cell> findCells(Long afterId, int limit) throws ServiceFailureException {
+        return delegate.findCells(afterId, limit);
+    }
+
+    @Override
+    public List<Cell> findCellsOnFloor(int floor, Long afterId, int limit) throws ServiceFailureException {
+        return delegate.findCellsOnFloor(floor, afterId, limit);
+    }
+
+    @Override
+    public List<Cell> findCellsOrderedByFloor(Cell after, int limit) throws ServiceFailureException {
+        return delegate.findCellsOrderedByFloor(after, limit);
+    }
+
+    @Override
+    public void updateCell(Cell cell) throws ServiceFailureException {
+        try {
+            delegate.updateCell(cell);
+        } finally {
+            invalidate(cell);
+        }
+    }
+
+    @Override
+    public void deleteCell(Cell cell) throws ServiceFailureException {
+        try {
+            delegate.deleteCell(cell);
+        } finally {
+            invalidate(cell);
+        }
+    }
+
+    private void invalidate(Cell cell) {
+        if (cell != null && cell.getId() != null) {
+            Long id = cell.getId();
+            cache.invalidate(id);
+            // a concurrent reader may have cached the row before the transaction committed
+            TransactionTemplate.afterCompletion(() -> cache.invalidate(id));
+        }
+    }
+
+    private static Cell copy(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        Cell copy = new Cell(cell.getFloor(), cell.getCapacity());
+        copy.setId(cell.getId());
+        return copy;
+    }
+}
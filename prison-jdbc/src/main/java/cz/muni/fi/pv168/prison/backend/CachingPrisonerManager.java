@@ -0,0 +1,157 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.CacheStats;
+import cz.muni.fi.pv168.common.LruCache;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Prisoner manager which caches prisoners returned by {@link #getPrisonerById(Long)}.
+ * All other calls are passed to the wrapped manager, updated and deleted prisoners are removed from the cache.
+ * The cache is only consistent when the prisoners are changed through this manager, so
+ * {@link #getPrisonersByIds(Collection)} reads current rows, e.g. rows changed by other clients.
+ * Inside of a {@link TransactionTemplate} transaction the cache is bypassed.
+ */
+public class CachingPrisonerManager implements PrisonerManager {
+
+    /**
+     * Default maximal number of cached prisoners.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    private final PrisonerManager delegate;
+    private final LruCache<Long, Prisoner> cache;
+
+    public CachingPrisonerManager(PrisonerManager delegate) {
+        this(delegate, DEFAULT_CACHE_SIZE);
+    }
+
+    public CachingPrisonerManager(PrisonerManager delegate, int cacheSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+        this.delegate = delegate;
+        this.cache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * @return statistics of the cache
+     */
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Removes all prisoners from the cache, e.g. after they were changed by another application.
+     */
+    public void clearCache() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void createPrisoner(Prisoner prisoner) throws ServiceFailureException {
+        delegate.createPrisoner(prisoner);
+    }
+
+    @Override
+    public BatchResult<Prisoner> createPrisoners(List<Prisoner> prisoners) throws ServiceFailureException {
+        return delegate.createPrisoners(prisoners);
+    }
+
+    @Override
+    public Prisoner getPrisonerById(Long id) throws ServiceFailureException {
+        if (id == null) {
+            throw new IllegalArgumentException("id is null");
+        }
+        // cached prisoner is never handed out, callers may modify their copy
+        if (TransactionTemplate.isTransactionActive()) {
+            // uncommitted changes must not get into the cache
+            return delegate.getPrisonerById(id);
+        }
+        return copy(cache.get(id, delegate::getPrisonerById));
+    }
+
+    @Override
+    public Map<Long, Prisoner> getPrisonersByIds(Collection<Long> ids) throws ServiceFailureException {
+        return delegate.getPrisonersByIds(ids);
+    }
+
+    @Override
+    public List<Prisoner> getPrisonerBySurname(String surname) throws ServiceFailureException {
+        return delegate.getPrisonerBySurname(surname);
+    }
+
+    @Override
+    public List<Prisoner> findAllPrisoners() throws ServiceFailureException {
+        return delegate.findAllPrisoners();
+    }
+
+    @Override
+    public Stream<Prisoner> streamAllPrisoners() throws ServiceFailureException {
+        return delegate.streamAllPrisoners();
+    }
+
+    @Override
+    public void forEachPrisoner(Consumer<? super Prisoner> action) throws ServiceFailureException {
+        delegate.forEachPrisoner(action);
+    }
+
+    @Override
+    public List<Prisoner> findPrisoners(Long afterId, int limit) throws ServiceFailureException {
+        return delegate.findPrisoners(afterId, limit);
+    }
+
+    @Override
+    public List<Prisoner> findPrisonersBySurnamePrefix(String surnamePrefix, Long afterId, int limit)
+            throws ServiceFailureException {
+        return delegate.findPrisonersBySurnamePrefix(surnamePrefix, afterId, limit);
+    }
+
+    @Override
+    public List<Prisoner> findPrisonersOrderedBySurname(Prisoner after, int limit) throws ServiceFailureException {
+        return delegate.findPrisonersOrderedBySurname(after, limit);
+    }
+
+    @Override
+    public void updatePrisoner(Prisoner prisoner) throws ServiceFailureException {
+        try {
+            delegate.updatePrisoner(prisoner);
+        } finally {
+            invalidate(prisoner);
+        }
+    }
+
+    @Override
+    public void deletePrisoner(Prisoner prisoner) throws ServiceFailureException {
+        try {
+            delegate.deletePrisoner(prisoner);
+        } finally {
+            invalidate(prisoner);
+        }
+    }
+
+    private void invalidate(Prisoner prisoner) {
+        if (prisoner != null && prisoner.getId() != null) {
+            Long id = prisoner.getId();
+            cache.invalidate(id);
+            // a concurrent reader may have cached the row before the transaction committed
+            TransactionTemplate.afterCompletion(() -> cache.invalidate(id));
+        }
+    }
+
+    private static Prisoner copy(Prisoner prisoner) {
+        if (prisoner == null) {
+            return null;
+        }
+        Prisoner copy = new Prisoner(prisoner.getName(), prisoner.getSurname(), prisoner.getBorn());
+        copy.setId(prisoner.getId());
+        return copy;
+    }
+}
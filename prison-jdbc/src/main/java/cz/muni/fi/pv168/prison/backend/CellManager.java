@@ -1,8 +1,14 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.ValidationException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Interface for cell manager.
@@ -17,6 +23,16 @@ public interface CellManager {
      */
     void createCell(Cell cell) throws ServiceFailureException;
 
+    /**
+     * Stores new cells into database using batches. Ids of created cells are stored into id attribute.
+     * Cells which can not be stored are reported in the result, the others are stored anyway.
+     * @param cells cells to be created.
+     * @return created cells and failures of the others, indexed by position in the given list.
+     * @throws IllegalArgumentException when cells are null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    BatchResult<Cell> createCells(List<Cell> cells) throws ServiceFailureException;
+
     /**
      * Returns cell with given id.
      * @param id primary key of requested cell.
@@ -26,6 +42,15 @@ public interface CellManager {
      */
     Cell getCellById(Long id) throws ServiceFailureException;
 
+    /**
+     * Returns cells with given ids, using as few queries as possible.
+     * @param ids primary keys of requested cells.
+     * @return map from id to cell in the order of given ids, ids of cells which do not exist are missing.
+     * @throws IllegalArgumentException when ids or some id is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Cell> getCellsByIds(Collection<Long> ids) throws ServiceFailureException;
+
     /**
      * Returns list of all cells in the database.
      * @return list of all cells in database.
@@ -33,6 +58,54 @@ public interface CellManager {
      */
     List<Cell> findAllCells() throws ServiceFailureException;
 
+    /**
+     * Returns all cells in the database as a stream. Rows are read lazily while the stream is consumed,
+     * the stream holds a database connection until it is closed or fully read.
+     * @return stream of all cells, which should be closed after use.
+     * @throws ServiceFailureException when db operation fails, also when reading of the stream fails.
+     */
+    Stream<Cell> streamAllCells() throws ServiceFailureException;
+
+    /**
+     * Passes all cells in the database to given action, one by one as they are read.
+     * @param action action called for every cell.
+     * @throws IllegalArgumentException when action is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    void forEachCell(Consumer<? super Cell> action) throws ServiceFailureException;
+
+    /**
+     * Returns one page of cells ordered by id.
+     * @param afterId id of the last cell of the previous page, or null for the first page.
+     * @param limit maximal number of returned cells.
+     * @return at most limit cells with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Cell> findCells(Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of cells on given floor ordered by id.
+     * @param floor floor of cells.
+     * @param afterId id of the last cell of the previous page, or null for the first page.
+     * @param limit maximal number of returned cells.
+     * @return at most limit cells on the floor with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Cell> findCellsOnFloor(int floor, Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of cells ordered by floor, cells on the same floor are ordered by id.
+     * @param after the last cell of the previous page, or null for the first page.
+     * @param limit maximal number of returned cells.
+     * @return at most limit cells following after, ordered by floor and id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ValidationException when after has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Cell> findCellsOrderedByFloor(Cell after, int limit) throws ServiceFailureException;
+
     /**
      * Updates cell in database.
      * @param cell updated cell to be stored into database.
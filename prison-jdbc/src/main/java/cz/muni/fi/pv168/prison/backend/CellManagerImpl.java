@@ -1,14 +1,25 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchInserter;
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
+import cz.muni.fi.pv168.common.ResultSetStreams;
 import cz.muni.fi.pv168.common.ServiceFailureException;
 import cz.muni.fi.pv168.common.ValidationException;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,6 +32,8 @@ public class CellManagerImpl implements CellManager {
             CellManagerImpl.class.getName());
 
     private DataSource dataSource;
+    private int batchSize = BatchInserter.DEFAULT_BATCH_SIZE;
+    private int fetchSize = ResultSetStreams.DEFAULT_FETCH_SIZE;
 
     public CellManagerImpl() { }
     public CellManagerImpl(DataSource ds) {
@@ -31,6 +44,28 @@ public class CellManagerImpl implements CellManager {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets number of rows sent to the database in one batch by {@link #createCells(List)}.
+     * @param batchSize batch size, at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size is lower than 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets number of rows fetched from the database in one round trip by {@link #streamAllCells()}.
+     * @param fetchSize fetch size, at least 1.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size is lower than 1");
+        }
+        this.fetchSize = fetchSize;
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -49,13 +84,12 @@ public class CellManagerImpl implements CellManager {
         PreparedStatement st = null;
 
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             conn.setAutoCommit(false);
             st = conn.prepareStatement(
                     "INSERT INTO cell (floor, capacity) VALUES (?,?)",
                     Statement.RETURN_GENERATED_KEYS);
-            st.setInt(1,cell.getFloor());
-            st.setInt(2,cell.getCapacity());
+            bindCell(st, cell);
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, cell, true);
             Long id = DBUtils.getId(st.getGeneratedKeys());
@@ -74,6 +108,31 @@ public class CellManagerImpl implements CellManager {
     }
 
 
+    @Override
+    public BatchResult<Cell> createCells(List<Cell> cells) throws ServiceFailureException {
+        checkDataSource();
+        return new BatchInserter<Cell>("cell",
+                "INSERT INTO cell (floor, capacity) VALUES (?,?)", true) {
+            @Override
+            protected void validate(Cell cell) {
+                CellManagerImpl.validate(cell);
+                if (cell.getId() != null) {
+                    throw new IllegalEntityException("cell ID is already set");
+                }
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Cell cell) throws SQLException {
+                bindCell(st, cell);
+            }
+
+            @Override
+            protected void setId(Cell cell, Long id) {
+                cell.setId(id);
+            }
+        }.insert(dataSource, cells, batchSize);
+    }
+
     @Override
     public Cell getCellById(Long id) {
         checkDataSource();
@@ -84,7 +143,7 @@ public class CellManagerImpl implements CellManager {
         PreparedStatement st = null;
 
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             st = conn.prepareStatement(
                     "SELECT id, floor, capacity FROM Cell WHERE id = ?");
             st.setLong(1,id);
@@ -103,6 +162,58 @@ public class CellManagerImpl implements CellManager {
 
 
 
+    @Override
+    public Map<Long, Cell> getCellsByIds(Collection<Long> ids) throws ServiceFailureException {
+        checkDataSource();
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        Set<Long> uniqueIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id is null");
+            }
+            uniqueIds.add(id);
+        }
+        Map<Long, Cell> result = new LinkedHashMap<>();
+        if (uniqueIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Cell> found = new HashMap<>();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(uniqueIds), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = conn.prepareStatement(
+                        "SELECT id, floor, capacity FROM Cell WHERE id IN ("
+                                + DBUtils.createPlaceholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 1, chunk.get(i));
+                }
+                for (Cell cell : executeQueryForMultipleCells(st)) {
+                    found.put(cell.getId(), cell);
+                }
+                st.close();
+                st = null;
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when getting " + uniqueIds.size() + " cells by id from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        for (Long id : uniqueIds) {
+            Cell cell = found.get(id);
+            if (cell != null) {
+                result.put(id, cell);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<Cell> findAllCells() {
         checkDataSource();
@@ -110,7 +221,7 @@ public class CellManagerImpl implements CellManager {
         PreparedStatement st = null;
 
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             st = conn.prepareStatement(
                     "SELECT id, floor, capacity FROM Cell");
             return executeQueryForMultipleCells(st);
@@ -125,6 +236,121 @@ public class CellManagerImpl implements CellManager {
 
     }
 
+    @Override
+    public Stream<Cell> streamAllCells() throws ServiceFailureException {
+        checkDataSource();
+        try {
+            return ResultSetStreams.stream(dataSource, "SELECT id, floor, capacity FROM Cell", fetchSize, CellManagerImpl::resultSetToCell);
+        } catch (SQLException ex) {
+            String msg = "Error when streaming all cells from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public void forEachCell(Consumer<? super Cell> action) throws ServiceFailureException {
+        if (action == null) {
+            throw new IllegalArgumentException("action is null");
+        }
+        try (Stream<Cell> cells = streamAllCells()) {
+            cells.forEachOrdered(action);
+        }
+    }
+
+    @Override
+    public List<Cell> findCells(Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT id, floor, capacity FROM Cell WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(2, limit);
+            return executeQueryForMultipleCells(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting cells after id = " + afterId + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Cell> findCellsOnFloor(int floor, Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT id, floor, capacity FROM Cell WHERE floor = ? AND id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setInt(1, floor);
+            st.setLong(2, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(3, limit);
+            return executeQueryForMultipleCells(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting cells on floor " + floor + " after id = " + afterId + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Cell> findCellsOrderedByFloor(Cell after, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        if (after != null && after.getId() == null) {
+            throw new ValidationException("cell id is null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            if (after == null) {
+                st = conn.prepareStatement(
+                        "SELECT id, floor, capacity FROM Cell ORDER BY floor, id FETCH FIRST ? ROWS ONLY");
+                st.setInt(1, limit);
+            } else {
+                // the first condition lets the database seek in the (floor, id) index
+                st = conn.prepareStatement(
+                        "SELECT id, floor, capacity FROM Cell " +
+                                "WHERE floor >= ? AND (floor > ? OR id > ?) " +
+                                "ORDER BY floor, id FETCH FIRST ? ROWS ONLY");
+                st.setInt(1, after.getFloor());
+                st.setInt(2, after.getFloor());
+                st.setLong(3, after.getId());
+                st.setInt(4, limit);
+            }
+            return executeQueryForMultipleCells(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting cells after " + after + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
 
 
     @Override
@@ -138,7 +364,7 @@ public class CellManagerImpl implements CellManager {
         PreparedStatement st = null;
 
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             conn.setAutoCommit(false);
             st = conn.prepareStatement(
                     "UPDATE Cell SET floor = ?, capacity = ? WHERE id = ?");
@@ -173,7 +399,7 @@ public class CellManagerImpl implements CellManager {
         PreparedStatement st = null;
 
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             conn.setAutoCommit(false);
             st = conn.prepareStatement(
                     "DELETE FROM Cell WHERE id = ?");
@@ -215,7 +441,7 @@ public class CellManagerImpl implements CellManager {
         return result;
     }
 
-    private static Cell resultSetToCell(ResultSet rs) throws SQLException {
+    static Cell resultSetToCell(ResultSet rs) throws SQLException {
         Cell cell = new Cell();
         cell.setId(rs.getLong("id"));
         cell.setCapacity(rs.getInt("capacity"));
@@ -223,6 +449,11 @@ public class CellManagerImpl implements CellManager {
         return cell;
     }
 
+    private static void bindCell(PreparedStatement st, Cell cell) throws SQLException {
+        st.setInt(1, cell.getFloor());
+        st.setInt(2, cell.getCapacity());
+    }
+
     private static void validate(Cell cell) {
         if (cell == null) throw new IllegalArgumentException("cell is null");
         if (cell.getCapacity() < 1) throw new ValidationException("cell capacity is lower than 1");
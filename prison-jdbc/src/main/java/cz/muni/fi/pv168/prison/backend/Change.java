@@ -0,0 +1,67 @@
+package cz.muni.fi.pv168.prison.backend;
+
+/**
+ * This entity represents one record of the change log. Every insert, update and delete of a prisoner,
+ * cell or sentence is recorded by database triggers with increasing version.
+ */
+public class Change {
+
+    /**
+     * Changed table.
+     */
+    public enum Entity {
+        PRISONER, CELL, SENTENCE
+    }
+
+    /**
+     * Kind of the change.
+     */
+    public enum Operation {
+        INSERT('I'), UPDATE('U'), DELETE('D');
+
+        private final char code;
+
+        Operation(char code) {
+            this.code = code;
+        }
+
+        static Operation of(char code) {
+            for (Operation operation : values()) {
+                if (operation.code == code) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("unknown operation " + code);
+        }
+    }
+
+    private final long version;
+    private final Entity entity;
+    private final Long entityId;
+    private final Operation operation;
+
+    public Change(long version, Entity entity, Long entityId, Operation operation) {
+        this.version = version;
+        this.entity = entity;
+        this.entityId = entityId;
+        this.operation = operation;
+    }
+
+    public long getVersion() { return version; }
+
+    public Entity getEntity() { return entity; }
+
+    public Long getEntityId() { return entityId; }
+
+    public Operation getOperation() { return operation; }
+
+    @Override
+    public String toString() {
+        return "Change{" +
+                "version=" + version +
+                ", entity=" + entity +
+                ", entityId=" + entityId +
+                ", operation=" + operation +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.ServiceFailureException;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This service allows to read changes of prisoners, cells and sentences recorded in the change log,
+ * so that clients can update their copies of data incrementally.
+ * <p>
+ * Versions increase in the order the changes were made, but a change of a transaction
+ * which is still running becomes visible only after changes with higher versions may have been read,
+ * see {@link ChangePoller}.
+ */
+public interface ChangeLogManager {
+
+    /**
+     * Returns the highest version in the change log.
+     * @return the latest version, 0 when the log is empty.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    long getLatestVersion() throws ServiceFailureException;
+
+    /**
+     * Returns changes with version greater than given one.
+     * @param afterVersion version of the last change already read.
+     * @param limit maximal number of returned changes.
+     * @return at most limit changes ordered by version.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Change> findChanges(long afterVersion, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns changes with given versions.
+     * @param versions versions of requested changes.
+     * @return changes ordered by version, versions which do not exist are missing.
+     * @throws IllegalArgumentException when versions or some version is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Change> findChanges(Collection<Long> versions) throws ServiceFailureException;
+
+    /**
+     * Deletes old changes, so that the log does not grow without limit.
+     * @param upToVersion changes with this or lower version are deleted.
+     * @return number of deleted changes.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    int deleteChanges(long upToVersion) throws ServiceFailureException;
+
+    /**
+     * Registers a reader of the log at the latest version, changes it has not read yet are kept
+     * by {@link #deleteReadChanges(int)}. A registered reader is registered again.
+     * @param reader unique name of the reader.
+     * @return the latest version, 0 when the log is empty.
+     * @throws IllegalArgumentException when reader is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    long registerReader(String reader) throws ServiceFailureException;
+
+    /**
+     * Records that a registered reader has read all changes up to given version.
+     * @param reader name of the reader.
+     * @param version changes with this or lower version were read.
+     * @return false when the reader is not registered, e.g. it was removed by {@link #deleteReadChanges(int)}
+     * and changes it had not read may have been deleted.
+     * @throws IllegalArgumentException when reader is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    boolean saveReaderVersion(String reader, long version) throws ServiceFailureException;
+
+    /**
+     * Removes readers which have not saved their version for given time and deletes changes
+     * which all remaining readers have read. Nothing is deleted when no reader is registered.
+     * @param readerTimeoutSeconds time after which a silent reader is removed.
+     * @return number of deleted changes.
+     * @throws IllegalArgumentException when readerTimeoutSeconds is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    int deleteReadChanges(int readerTimeoutSeconds) throws ServiceFailureException;
+}
@@ -0,0 +1,279 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements change log manager. The log is written by triggers created by migrations V5 and V6,
+ * updates which do not change any column are not logged. Versions read by registered readers are stored
+ * in table Change_Log_Reader created by migration V7.
+ */
+public class ChangeLogManagerImpl implements ChangeLogManager {
+
+    private static final Logger logger = Logger.getLogger(
+            ChangeLogManagerImpl.class.getName());
+
+    private DataSource dataSource;
+
+    public ChangeLogManagerImpl() { }
+    public ChangeLogManagerImpl(DataSource ds) {
+        this.dataSource = ds;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    @Override
+    public long getLatestVersion() throws ServiceFailureException {
+        checkDataSource();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement("SELECT MAX(version) FROM Change_Log");
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException ex) {
+            String msg = "Error when getting latest version of change log from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Change> findChanges(long afterVersion, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT version, entity, entity_id, operation FROM Change_Log WHERE version > ? "
+                            + "ORDER BY version FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, afterVersion);
+            st.setInt(2, limit);
+            return executeQueryForMultipleChanges(st);
+        } catch (SQLException ex) {
+            String msg = "Error when getting changes after version " + afterVersion + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Change> findChanges(Collection<Long> versions) throws ServiceFailureException {
+        checkDataSource();
+        if (versions == null) {
+            throw new IllegalArgumentException("versions are null");
+        }
+        Set<Long> uniqueVersions = new LinkedHashSet<>();
+        for (Long version : versions) {
+            if (version == null) {
+                throw new IllegalArgumentException("version is null");
+            }
+            uniqueVersions.add(version);
+        }
+        List<Change> result = new ArrayList<>();
+        if (uniqueVersions.isEmpty()) {
+            return result;
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(uniqueVersions), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = conn.prepareStatement(
+                        "SELECT version, entity, entity_id, operation FROM Change_Log WHERE version IN ("
+                                + DBUtils.createPlaceholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 1, chunk.get(i));
+                }
+                result.addAll(executeQueryForMultipleChanges(st));
+                st.close();
+                st = null;
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when getting " + uniqueVersions.size() + " changes by version from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        result.sort(Comparator.comparingLong(Change::getVersion));
+        return result;
+    }
+
+    @Override
+    public int deleteChanges(long upToVersion) throws ServiceFailureException {
+        checkDataSource();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement("DELETE FROM Change_Log WHERE version <= ?");
+            st.setLong(1, upToVersion);
+            return st.executeUpdate();
+        } catch (SQLException ex) {
+            String msg = "Error when deleting changes up to version " + upToVersion + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public long registerReader(String reader) throws ServiceFailureException {
+        checkDataSource();
+        if (reader == null) {
+            throw new IllegalArgumentException("reader is null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            conn.setAutoCommit(false);
+            lockReaders(conn);
+            st = conn.prepareStatement("SELECT MAX(version) FROM Change_Log");
+            ResultSet rs = st.executeQuery();
+            rs.next();
+            long version = rs.getLong(1);
+            st.close();
+            st = conn.prepareStatement("DELETE FROM Change_Log_Reader WHERE reader = ?");
+            st.setString(1, reader);
+            st.executeUpdate();
+            st.close();
+            st = conn.prepareStatement(
+                    "INSERT INTO Change_Log_Reader (reader, version, read_at) VALUES (?, ?, CURRENT_TIMESTAMP)");
+            st.setString(1, reader);
+            st.setLong(2, version);
+            st.executeUpdate();
+            conn.commit();
+            return version;
+        } catch (SQLException ex) {
+            String msg = "Error when registering reader " + reader + " of change log in DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public boolean saveReaderVersion(String reader, long version) throws ServiceFailureException {
+        checkDataSource();
+        if (reader == null) {
+            throw new IllegalArgumentException("reader is null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "UPDATE Change_Log_Reader SET version = ?, read_at = CURRENT_TIMESTAMP WHERE reader = ?");
+            st.setLong(1, version);
+            st.setString(2, reader);
+            return st.executeUpdate() == 1;
+        } catch (SQLException ex) {
+            String msg = "Error when saving version " + version + " of reader " + reader + " of change log in DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public int deleteReadChanges(int readerTimeoutSeconds) throws ServiceFailureException {
+        checkDataSource();
+        if (readerTimeoutSeconds < 1) {
+            throw new IllegalArgumentException("readerTimeoutSeconds is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            conn.setAutoCommit(false);
+            lockReaders(conn);
+            st = conn.prepareStatement("DELETE FROM Change_Log_Reader "
+                    + "WHERE read_at < {fn TIMESTAMPADD(SQL_TSI_SECOND, ?, CURRENT_TIMESTAMP)}");
+            st.setInt(1, -readerTimeoutSeconds);
+            int removed = st.executeUpdate();
+            if (removed > 0) {
+                logger.log(Level.INFO, "removed {0} silent readers of change log", removed);
+            }
+            st.close();
+            st = conn.prepareStatement("DELETE FROM Change_Log "
+                    + "WHERE version <= (SELECT MIN(version) FROM Change_Log_Reader)");
+            int count = st.executeUpdate();
+            conn.commit();
+            return count;
+        } catch (SQLException ex) {
+            String msg = "Error when deleting read changes from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(conn);
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    /**
+     * Serializes registration of readers with deletion of changes, otherwise a reader registered
+     * while changes are deleted could miss changes newer than its version.
+     */
+    private static void lockReaders(Connection conn) throws SQLException {
+        try (Statement lock = conn.createStatement()) {
+            lock.execute("LOCK TABLE Change_Log_Reader IN EXCLUSIVE MODE");
+        }
+    }
+
+    static List<Change> executeQueryForMultipleChanges(PreparedStatement st) throws SQLException {
+        ResultSet rs = st.executeQuery();
+        List<Change> result = new ArrayList<>();
+        while (rs.next()) {
+            result.add(resultSetToChange(rs));
+        }
+        return result;
+    }
+
+    static Change resultSetToChange(ResultSet rs) throws SQLException {
+        return new Change(
+                rs.getLong("version"),
+                Change.Entity.valueOf(rs.getString("entity").trim().toUpperCase(Locale.ROOT)),
+                rs.getLong("entity_id"),
+                Change.Operation.of(rs.getString("operation").charAt(0)));
+    }
+}
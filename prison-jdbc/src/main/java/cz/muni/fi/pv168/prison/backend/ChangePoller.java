@@ -0,0 +1,197 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.ServiceFailureException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads new changes from the change log repeatedly, each change is returned once.
+ * <p>
+ * Versions are assigned when rows are inserted to the log, but they become visible when the transaction
+ * commits, so a change with a lower version can appear after changes with higher versions were read.
+ * Missing versions below the last read one are therefore remembered and checked again
+ * during next {@link #GAP_POLLS} polls. Versions which still do not appear belong to rolled back
+ * transactions or were skipped by the database and are forgotten. At most {@link #MAX_GAPS} versions
+ * are remembered, the oldest ones are forgotten first.
+ * <p>
+ * A poller created with a reader name registers the reader in the log and saves the version it has read,
+ * so that changes it still needs are kept. Every {@link #PRUNE_POLLS} polls it also deletes changes
+ * which all registered readers have read, readers silent for {@link #READER_TIMEOUT_SECONDS} are removed.
+ * A removed reader may have missed changes, the poller registers it again and {@link #checkLost()}
+ * reports that the data have to be loaded again.
+ * <p>
+ * The poller is not thread safe.
+ */
+public class ChangePoller {
+
+    private static final Logger logger = Logger.getLogger(
+            ChangePoller.class.getName());
+
+    public static final int GAP_POLLS = 10;
+    public static final int MAX_GAPS = 1000;
+    public static final int BATCH_SIZE = 500;
+    public static final int PRUNE_POLLS = 30;
+    public static final int READER_TIMEOUT_SECONDS = 3600;
+
+    private final ChangeLogManager changeLogManager;
+    private final String reader;
+    private long lastVersion;
+    private long savedVersion;
+    private int polls;
+    private boolean lost;
+    /** missing versions mapped to number of polls they are still checked during */
+    private final Map<Long, Integer> gaps = new LinkedHashMap<>();
+
+    /**
+     * @param changeLogManager source of changes
+     * @param startVersion changes with this or lower version are not returned, typically
+     *                     {@link ChangeLogManager#getLatestVersion()} read before data were loaded
+     */
+    public ChangePoller(ChangeLogManager changeLogManager, long startVersion) {
+        if (changeLogManager == null) {
+            throw new IllegalArgumentException("changeLogManager is null");
+        }
+        this.changeLogManager = changeLogManager;
+        this.reader = null;
+        this.lastVersion = startVersion;
+    }
+
+    /**
+     * Registers the reader in the log, changes with the latest version or lower are not returned,
+     * so the poller has to be created before data are loaded.
+     * @param changeLogManager source of changes
+     * @param reader unique name of the reader, see {@link ChangeLogManager#registerReader(String)}
+     * @throws ServiceFailureException when db operation fails
+     */
+    public ChangePoller(ChangeLogManager changeLogManager, String reader) throws ServiceFailureException {
+        if (changeLogManager == null) {
+            throw new IllegalArgumentException("changeLogManager is null");
+        }
+        if (reader == null) {
+            throw new IllegalArgumentException("reader is null");
+        }
+        this.changeLogManager = changeLogManager;
+        this.reader = reader;
+        this.lastVersion = changeLogManager.registerReader(reader);
+        this.savedVersion = lastVersion;
+    }
+
+    /**
+     * @return version of the last read change
+     */
+    public long getLastVersion() {
+        return lastVersion;
+    }
+
+    /**
+     * @return number of missing versions which are checked again
+     */
+    public int getGapCount() {
+        return gaps.size();
+    }
+
+    /**
+     * Returns whether the reader was removed from the log since the last call, changes may have been
+     * deleted before it read them then and the data have to be loaded again.
+     * @return whether changes may have been lost
+     */
+    public boolean checkLost() {
+        boolean result = lost;
+        lost = false;
+        return result;
+    }
+
+    /**
+     * Returns changes which were not returned yet. The state of the poller changes only when the whole poll
+     * succeeds, including saving the version of the reader.
+     * @return new changes ordered by version
+     * @throws ServiceFailureException when db operation fails, the poll can be repeated then
+     */
+    public List<Change> poll() throws ServiceFailureException {
+        List<Change> result = new ArrayList<>();
+        long version = lastVersion;
+        Map<Long, Integer> missing = new LinkedHashMap<>(gaps);
+        if (!missing.isEmpty()) {
+            for (Change change : changeLogManager.findChanges(new ArrayList<>(missing.keySet()))) {
+                missing.remove(change.getVersion());
+                result.add(change);
+            }
+            for (Iterator<Map.Entry<Long, Integer>> it = missing.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Integer> gap = it.next();
+                if (gap.getValue() <= 1) {
+                    it.remove();
+                } else {
+                    gap.setValue(gap.getValue() - 1);
+                }
+            }
+        }
+        List<Change> changes;
+        do {
+            changes = changeLogManager.findChanges(version, BATCH_SIZE);
+            for (Change change : changes) {
+                for (long gap = version + 1; gap < change.getVersion(); gap++) {
+                    addGap(missing, gap);
+                }
+                version = change.getVersion();
+                result.add(change);
+            }
+        } while (changes.size() == BATCH_SIZE);
+
+        boolean reregistered = false;
+        long saved = savedVersion;
+        boolean prune = false;
+        if (reader != null) {
+            prune = (polls + 1) % PRUNE_POLLS == 0;
+            // changes in gaps can still appear, so they are not read yet
+            long readVersion = missing.isEmpty() ? version : Math.min(version, missing.keySet().iterator().next() - 1);
+            if (readVersion != savedVersion || prune) {
+                if (changeLogManager.saveReaderVersion(reader, readVersion)) {
+                    saved = readVersion;
+                } else {
+                    version = changeLogManager.registerReader(reader);
+                    saved = version;
+                    missing.clear();
+                    reregistered = true;
+                }
+            }
+            polls++;
+        }
+        lastVersion = version;
+        gaps.clear();
+        gaps.putAll(missing);
+        savedVersion = saved;
+        lost |= reregistered;
+        if (prune) {
+            deleteReadChanges();
+        }
+        result.sort(Comparator.comparingLong(Change::getVersion));
+        return result;
+    }
+
+    /**
+     * Deletes changes read by all readers, a failure does not fail the poll, changes are deleted next time.
+     */
+    private void deleteReadChanges() {
+        try {
+            changeLogManager.deleteReadChanges(READER_TIMEOUT_SECONDS);
+        } catch (ServiceFailureException ex) {
+            logger.log(Level.WARNING, "cannot delete read changes from the change log", ex);
+        }
+    }
+
+    private static void addGap(Map<Long, Integer> gaps, long version) {
+        if (gaps.size() == MAX_GAPS) {
+            Iterator<Long> oldest = gaps.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        gaps.put(version, GAP_POLLS);
+    }
+}
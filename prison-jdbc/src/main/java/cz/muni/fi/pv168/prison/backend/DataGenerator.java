@@ -0,0 +1,397 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.BatchInserter;
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.derby.jdbc.EmbeddedDriver;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates large synthetic data sets for load tests and benchmarks.
+ * <p>
+ * Cells are spread evenly across floors. Every prisoner gets a chain of sentences which do not overlap
+ * each other, the last sentence of the chain is historical, current or future according to configured ratios.
+ * Sentences of different prisoners overlap freely, but current and future sentences never exceed capacity of a cell.
+ * <p>
+ * Data are generated and inserted by chunks of prisoners, so memory usage does not depend on number of prisoners.
+ * The same seed and configuration always produce the same data (ids may differ when tables are not empty).
+ */
+public class DataGenerator {
+
+    private static final Logger logger = Logger.getLogger(
+            DataGenerator.class.getName());
+
+    private static final String[] NAMES = {
+            "Jan", "Jiří", "Petr", "Josef", "Pavel", "Martin", "Tomáš", "Jaroslav", "Miroslav", "Zdeněk",
+            "Marie", "Jana", "Eva", "Hana", "Anna", "Lenka", "Kateřina", "Lucie", "Věra", "Alena"};
+    private static final String[] SURNAMES = {
+            "Novák", "Svoboda", "Novotný", "Dvořák", "Černý", "Procházka", "Kučera", "Veselý", "Horák", "Němec",
+            "Marek", "Pospíšil", "Pokorný", "Hájek", "Král", "Jelínek", "Růžička", "Beneš", "Fiala", "Sedláček"};
+    private static final String[] PUNISHMENTS = {
+            "krádež", "loupež", "podvod", "vydírání", "zpronevěra", "výtržnictví", "ublížení na zdraví", "pašování"};
+
+    private long seed = 42;
+    private int prisonerCount = 1000;
+    private int cellCount = 100;
+    private int floorCount = 10;
+    private int minCapacity = 1;
+    private int maxCapacity = 20;
+    private int minSentencesPerPrisoner = 1;
+    private int maxSentencesPerPrisoner = 3;
+    private int minSentenceDays = 30;
+    private int maxSentenceDays = 3650;
+    private int maxYearsBack = 30;
+    private double currentRatio = 0.4;
+    private double futureRatio = 0.1;
+    private int chunkSize = 10000;
+    private int batchSize = BatchInserter.DEFAULT_BATCH_SIZE;
+    private Clock clock = Clock.systemDefaultZone();
+
+    /**
+     * Sets seed of random generator.
+     * @param seed seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param prisonerCount number of generated prisoners, at least 0
+     */
+    public void setPrisonerCount(int prisonerCount) {
+        if (prisonerCount < 0) {
+            throw new IllegalArgumentException("prisonerCount is negative");
+        }
+        this.prisonerCount = prisonerCount;
+    }
+
+    /**
+     * Sets number of generated cells and floors, cells are spread evenly across floors.
+     * @param cellCount number of cells, at least 1
+     * @param floorCount number of floors, at least 1
+     */
+    public void setCells(int cellCount, int floorCount) {
+        if (cellCount < 1 || floorCount < 1) {
+            throw new IllegalArgumentException("cellCount and floorCount must be positive");
+        }
+        this.cellCount = cellCount;
+        this.floorCount = floorCount;
+    }
+
+    /**
+     * Capacity of every cell is chosen uniformly from given range.
+     * @param min minimal capacity, at least 1
+     * @param max maximal capacity
+     */
+    public void setCapacity(int min, int max) {
+        checkRange(min, max, 1, "capacity");
+        this.minCapacity = min;
+        this.maxCapacity = max;
+    }
+
+    /**
+     * Number of sentences of every prisoner is chosen uniformly from given range.
+     * @param min minimal number of sentences, at least 1
+     * @param max maximal number of sentences
+     */
+    public void setSentencesPerPrisoner(int min, int max) {
+        checkRange(min, max, 1, "sentencesPerPrisoner");
+        this.minSentencesPerPrisoner = min;
+        this.maxSentencesPerPrisoner = max;
+    }
+
+    /**
+     * Length of every sentence in days is chosen uniformly from given range.
+     * @param min minimal length, at least 1
+     * @param max maximal length
+     */
+    public void setSentenceDays(int min, int max) {
+        checkRange(min, max, 1, "sentenceDays");
+        this.minSentenceDays = min;
+        this.maxSentenceDays = max;
+    }
+
+    /**
+     * @param maxYearsBack how many years before today the oldest sentences start, at least 1
+     */
+    public void setMaxYearsBack(int maxYearsBack) {
+        if (maxYearsBack < 1) {
+            throw new IllegalArgumentException("maxYearsBack must be positive");
+        }
+        this.maxYearsBack = maxYearsBack;
+    }
+
+    /**
+     * Sets ratios of prisoners whose last sentence is current and future, the rest of prisoners is released.
+     * When there is no free cell for current or future sentence, the sentence is made historical.
+     * @param currentRatio ratio of prisoners serving a sentence today
+     * @param futureRatio ratio of prisoners with a sentence starting after today
+     */
+    public void setRatios(double currentRatio, double futureRatio) {
+        if (currentRatio < 0 || futureRatio < 0 || currentRatio + futureRatio > 1) {
+            throw new IllegalArgumentException("ratios must be non-negative and their sum at most 1");
+        }
+        this.currentRatio = currentRatio;
+        this.futureRatio = futureRatio;
+    }
+
+    /**
+     * @param chunkSize number of prisoners generated and inserted at once, at least 1
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param batchSize number of rows sent to the database in one batch, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param clock clock which determines today
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Generates data into the database. Tables have to exist already.
+     * @param dataSource data source
+     * @return numbers of generated rows
+     * @throws ServiceFailureException when some row cannot be inserted
+     */
+    public Summary generate(DataSource dataSource) throws ServiceFailureException {
+        Random random = new Random(seed);
+        LocalDate today = LocalDate.now(clock);
+
+        CellManagerImpl cellManager = new CellManagerImpl(dataSource);
+        cellManager.setBatchSize(batchSize);
+        PrisonerManagerImpl prisonerManager = new PrisonerManagerImpl(dataSource);
+        prisonerManager.setBatchSize(batchSize);
+        // capacity is tracked here, manager would refuse historical sentences in full cells
+        BatchInserter<Sentence> sentenceInserter = new BatchInserter<Sentence>("sentence",
+                "INSERT INTO sentence (prisonerId, cellId, startDay, endDay, punishment) VALUES (?,?,?,?,?)", true) {
+            @Override
+            protected void validate(Sentence sentence) {
+            }
+
+            @Override
+            protected void setId(Sentence sentence, Long id) {
+                sentence.setId(id);
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Sentence sentence) throws SQLException {
+                SentenceManagerImpl.bindSentence(st, sentence);
+            }
+        };
+
+        Summary summary = new Summary();
+        List<Cell> cells = new ArrayList<>(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            cells.add(new Cell(i * floorCount / cellCount + 1, between(random, minCapacity, maxCapacity)));
+        }
+        check(cellManager.createCells(cells), "cells");
+        summary.cells = cells.size();
+        int[] free = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            free[i] = cells.get(i).getCapacity();
+        }
+
+        for (int from = 0; from < prisonerCount; from += chunkSize) {
+            int to = Math.min(prisonerCount, from + chunkSize);
+            List<Prisoner> prisoners = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                prisoners.add(new Prisoner(
+                        NAMES[random.nextInt(NAMES.length)],
+                        SURNAMES[random.nextInt(SURNAMES.length)],
+                        today.minusYears(between(random, 18, 80)).minusDays(random.nextInt(365))));
+            }
+            check(prisonerManager.createPrisoners(prisoners), "prisoners");
+            summary.prisoners += prisoners.size();
+
+            List<Sentence> sentences = new ArrayList<>();
+            for (Prisoner prisoner : prisoners) {
+                generateSentences(random, today, prisoner.getId(), cells, free, sentences, summary);
+            }
+            check(sentenceInserter.insert(dataSource, sentences, batchSize), "sentences");
+            logger.log(Level.INFO, "Generated {0} of {1} prisoners", new Object[]{to, prisonerCount});
+        }
+        return summary;
+    }
+
+    private void generateSentences(Random random, LocalDate today, Long prisonerId, List<Cell> cells, int[] free,
+                                   List<Sentence> sentences, Summary summary) {
+        int count = between(random, minSentencesPerPrisoner, maxSentencesPerPrisoner);
+        double status = random.nextDouble();
+        boolean current = status < currentRatio;
+        boolean future = !current && status < currentRatio + futureRatio;
+
+        // chain of historical sentences ending before the last sentence may start
+        LocalDate limit = today.minusDays(maxSentenceDays + 365);
+        LocalDate start = today.minusYears(maxYearsBack).plusDays(random.nextInt(365));
+        for (int i = 0; i < count - 1; i++) {
+            LocalDate end = start.plusDays(between(random, minSentenceDays, maxSentenceDays));
+            if (!end.isBefore(limit)) {
+                break;
+            }
+            sentences.add(sentence(random, prisonerId, cells.get(random.nextInt(cells.size())).getId(), start, end));
+            summary.historical++;
+            start = end.plusDays(between(random, 1, 365));
+        }
+
+        int length = between(random, minSentenceDays, maxSentenceDays);
+        LocalDate end;
+        if (current) {
+            start = today.minusDays(random.nextInt(length));
+            end = start.plusDays(length);
+        } else if (future) {
+            start = today.plusDays(between(random, 1, 365));
+            end = start.plusDays(length);
+        } else {
+            end = today.minusDays(between(random, 1, 365));
+            start = end.minusDays(length);
+        }
+        int cellIndex = random.nextInt(cells.size());
+        if (current || future) {
+            cellIndex = findFreeCell(free, cellIndex);
+            if (cellIndex < 0) {
+                // prison is full, the prisoner is released instead
+                current = false;
+                future = false;
+                end = today.minusDays(between(random, 1, 365));
+                start = end.minusDays(length);
+                cellIndex = random.nextInt(cells.size());
+            } else {
+                free[cellIndex]--;
+            }
+        }
+        sentences.add(sentence(random, prisonerId, cells.get(cellIndex).getId(), start, end));
+        if (current) {
+            summary.current++;
+        } else if (future) {
+            summary.future++;
+        } else {
+            summary.historical++;
+        }
+    }
+
+    private static int findFreeCell(int[] free, int from) {
+        for (int i = 0; i < free.length; i++) {
+            int index = (from + i) % free.length;
+            if (free[index] > 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static Sentence sentence(Random random, Long prisonerId, Long cellId, LocalDate start, LocalDate end) {
+        return new Sentence(prisonerId, cellId, start, end, PUNISHMENTS[random.nextInt(PUNISHMENTS.length)]);
+    }
+
+    private static int between(Random random, int min, int max) {
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private static void checkRange(int min, int max, int lowest, String name) {
+        if (min < lowest || max < min) {
+            throw new IllegalArgumentException(name + " range is invalid: " + min + ".." + max);
+        }
+    }
+
+    private static void check(BatchResult<?> result, String what) {
+        if (result.hasFailures()) {
+            throw new ServiceFailureException("Error when generating " + what + ": " + result.getFailures());
+        }
+    }
+
+    /**
+     * Numbers of rows created by {@link #generate(DataSource)}.
+     */
+    public static class Summary {
+
+        private int cells;
+        private int prisoners;
+        private int historical;
+        private int current;
+        private int future;
+
+        public int getCells() { return cells; }
+
+        public int getPrisoners() { return prisoners; }
+
+        public int getHistoricalSentences() { return historical; }
+
+        public int getCurrentSentences() { return current; }
+
+        public int getFutureSentences() { return future; }
+
+        public int getSentences() { return historical + current + future; }
+
+        @Override
+        public String toString() {
+            return "Summary{" +
+                    "cells=" + cells +
+                    ", prisoners=" + prisoners +
+                    ", historical=" + historical +
+                    ", current=" + current +
+                    ", future=" + future +
+                    '}';
+        }
+    }
+
+    /**
+     * Generates data into Derby database.
+     * <p>
+     * Usage: <code>DataGenerator &lt;jdbc url&gt; [prisoners] [cells] [seed]</code>,
+     * e.g. <code>DataGenerator "jdbc:derby:target/load-db;create=true" 1000000 50000 1</code>.
+     * @param args arguments
+     * @throws SQLException when database cannot be migrated
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 1) {
+            System.err.println("Usage: DataGenerator <jdbc url> [prisoners] [cells] [seed]");
+            System.exit(1);
+        }
+        DataGenerator generator = new DataGenerator();
+        if (args.length > 1) {
+            generator.setPrisonerCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            generator.setCells(Integer.parseInt(args[2]), 10);
+        }
+        if (args.length > 3) {
+            generator.setSeed(Long.parseLong(args[3]));
+        }
+
+        BasicDataSource bds = new BasicDataSource();
+        bds.setDriverClassName(EmbeddedDriver.class.getName());
+        bds.setUrl(args[0]);
+        try {
+            PrisonSchema.migrate(bds);
+            System.out.println(generator.generate(bds));
+        } finally {
+            bds.close();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package cz.muni.fi.pv168.prison.backend;
 
 import cz.muni.fi.pv168.common.IllegalEntityException;
-import org.apache.commons.dbcp2.BasicDataSource;
+import cz.muni.fi.pv168.common.PooledDataSource;
 import org.apache.derby.jdbc.EmbeddedDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,21 +9,29 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 
 import javax.sql.DataSource;
+import java.sql.SQLException;
 import java.time.Clock;
 import java.util.List;
+import java.util.Properties;
 
 public class Main {
 
     final static Logger log = LoggerFactory.getLogger(Main.class);
 
     public static DataSource createMemoryDatabase() {
-        BasicDataSource bds = new BasicDataSource();
+        Properties conf = new Properties();
         //set JDBC driver and URL
-        bds.setDriverClassName(EmbeddedDriver.class.getName());
-        bds.setUrl("jdbc:derby:memory:prisonDB2;create=true");
+        conf.setProperty("jdbc.driver", EmbeddedDriver.class.getName());
+        conf.setProperty("jdbc.url", "jdbc:derby:memory:prisonDB2;create=true");
+        PooledDataSource bds = PooledDataSource.create(conf);
+        bds.registerMetrics("prisonDB");
         //populate db with tables and data
+        try {
+            PrisonSchema.migrate(bds);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("cannot create tables", ex);
+        }
         new ResourceDatabasePopulator(
-                new ClassPathResource("schema-javadb.sql"),
                 new ClassPathResource("test-data.sql"))
                 .execute(bds);
         return bds;
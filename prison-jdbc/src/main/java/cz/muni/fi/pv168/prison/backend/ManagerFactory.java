@@ -0,0 +1,211 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.common.Metrics;
+import cz.muni.fi.pv168.common.MetricsProxy;
+import cz.muni.fi.pv168.common.PooledDataSource;
+import cz.muni.fi.pv168.common.TimingDataSource;
+import cz.muni.fi.pv168.common.TransactionTemplate;
+import cz.muni.fi.pv168.common.VirtualThreads;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Clock;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates managers decorated according to configuration, so that decorators can be switched
+ * without changing the code.
+ * <p>
+ * Supported properties:
+ * <ul>
+ *     <li><code>managers.cache</code> - cache prisoners and cells, default false</li>
+ *     <li><code>managers.cache.size</code> - maximal number of cached entities of each type</li>
+ *     <li><code>managers.sentences.index</code> - keep sentences in {@link SentenceIntervalIndex}, which answers
+ *     occupancy of cells without the database, default false</li>
+ *     <li><code>managers.metrics</code> - record call counts, errors and latencies of all managers
+ *     and export them through JMX, default false</li>
+ *     <li><code>managers.sql.timing</code> - record durations of SQL statements per normalized SQL
+ *     and export them through JMX, default false</li>
+ *     <li><code>managers.sql.slowQueryMillis</code> - statements taking longer are logged with
+ *     parameters, see {@link TimingDataSource}</li>
+ *     <li><code>managers.async.threads</code> - threads of {@link #createExecutor()}, by default
+ *     the maximal size of {@link PooledDataSource}, otherwise 8</li>
+ *     <li><code>managers.async.queue</code> - tasks waiting for a thread, default 10 per thread</li>
+ *     <li><code>managers.async.maxWaitMillis</code> - how long callers wait when the executor is saturated,
+ *     default 100</li>
+ *     <li><code>managers.async.virtual</code> - run asynchronous calls in virtual threads when running on Java 21,
+ *     the connection pool then limits concurrency and at most <code>threads + queue</code> calls are pending,
+ *     default false</li>
+ * </ul>
+ */
+public class ManagerFactory {
+
+    private static final Logger logger = Logger.getLogger(
+            ManagerFactory.class.getName());
+
+    /**
+     * Classpath resource with configuration read by {@link #loadConfiguration()}.
+     */
+    public static final String CONFIGURATION = "/managers.properties";
+
+    public static final String CACHE = "managers.cache";
+    public static final String CACHE_SIZE = "managers.cache.size";
+    public static final String SENTENCE_INDEX = "managers.sentences.index";
+    public static final String METRICS = "managers.metrics";
+    public static final String SQL_TIMING = "managers.sql.timing";
+    public static final String SLOW_QUERY_MILLIS = "managers.sql.slowQueryMillis";
+    public static final String ASYNC_THREADS = "managers.async.threads";
+    public static final String ASYNC_QUEUE = "managers.async.queue";
+    public static final String ASYNC_MAX_WAIT_MILLIS = "managers.async.maxWaitMillis";
+    public static final String ASYNC_VIRTUAL = "managers.async.virtual";
+
+    private final DataSource dataSource;
+    private final int poolSize;
+    private final Properties configuration;
+    private Clock clock = Clock.systemDefaultZone();
+
+    public ManagerFactory(DataSource dataSource, Properties configuration) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.configuration = configuration == null ? new Properties() : configuration;
+        this.poolSize = dataSource instanceof PooledDataSource ? ((PooledDataSource) dataSource).getMaxTotal() : -1;
+        if (isEnabled(SQL_TIMING)) {
+            Metrics metrics = new Metrics();
+            metrics.register("SQL");
+            TimingDataSource timing = new TimingDataSource(dataSource, metrics);
+            timing.setSlowQueryThreshold(getInt(SLOW_QUERY_MILLIS, 100));
+            this.dataSource = timing;
+        } else {
+            this.dataSource = dataSource;
+        }
+    }
+
+    /**
+     * @return data source used by created managers, measured when SQL timing is enabled
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @param clock clock used by created managers
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Loads configuration from classpath resource {@value #CONFIGURATION}, if it exists,
+     * and overrides it by system properties starting with <code>managers.</code>.
+     * @return configuration
+     */
+    public static Properties loadConfiguration() {
+        Properties conf = new Properties();
+        try (InputStream in = ManagerFactory.class.getResourceAsStream(CONFIGURATION)) {
+            if (in != null) {
+                conf.load(in);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "cannot read " + CONFIGURATION, ex);
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("managers.")) {
+                conf.setProperty(name, System.getProperty(name));
+            }
+        }
+        return conf;
+    }
+
+    public PrisonerManager createPrisonerManager() {
+        PrisonerManagerImpl impl = new PrisonerManagerImpl(clock);
+        impl.setDataSource(dataSource);
+        PrisonerManager manager = impl;
+        if (isEnabled(CACHE)) {
+            manager = new CachingPrisonerManager(manager, getInt(CACHE_SIZE, CachingPrisonerManager.DEFAULT_CACHE_SIZE));
+        }
+        return instrument(PrisonerManager.class, manager);
+    }
+
+    public CellManager createCellManager() {
+        CellManagerImpl impl = new CellManagerImpl();
+        impl.setDataSource(dataSource);
+        CellManager manager = impl;
+        if (isEnabled(CACHE)) {
+            manager = new CachingCellManager(manager, getInt(CACHE_SIZE, CachingCellManager.DEFAULT_CACHE_SIZE));
+        }
+        return instrument(CellManager.class, manager);
+    }
+
+    public SentenceManager createSentenceManager() {
+        SentenceManagerImpl impl = new SentenceManagerImpl(clock);
+        impl.setDataSource(dataSource);
+        if (isEnabled(SENTENCE_INDEX)) {
+            impl.enableIntervalIndex();
+        }
+        return instrument(SentenceManager.class, impl);
+    }
+
+    public ChangeLogManager createChangeLogManager() {
+        ChangeLogManagerImpl impl = new ChangeLogManagerImpl();
+        impl.setDataSource(dataSource);
+        return instrument(ChangeLogManager.class, impl);
+    }
+
+    /**
+     * @return template of transactions joined by managers created by this factory
+     */
+    public TransactionTemplate createTransactionTemplate() {
+        return new TransactionTemplate(dataSource);
+    }
+
+    /**
+     * Creates executor of asynchronous calls of managers sized to the connection pool.
+     * It uses virtual threads when they are enabled and supported, otherwise platform threads.
+     * It has to be shut down when it is not needed.
+     * @return executor
+     */
+    public DbExecutor createExecutor() {
+        int threads = getInt(ASYNC_THREADS, poolSize > 0 ? poolSize : 8);
+        int queue = getInt(ASYNC_QUEUE, threads * 10);
+        int maxWait = getInt(ASYNC_MAX_WAIT_MILLIS, 100);
+        if (isEnabled(ASYNC_VIRTUAL)) {
+            if (VirtualThreads.isSupported()) {
+                logger.log(Level.INFO, "Using virtual threads for asynchronous calls");
+                return DbExecutor.virtual("prison-db", threads + queue, maxWait);
+            }
+            logger.log(Level.WARNING, "Virtual threads are not supported by Java {0}, using platform threads",
+                    System.getProperty("java.version"));
+        }
+        return new DbExecutor("prison-db", threads, queue, maxWait);
+    }
+
+    private <T> T instrument(Class<T> type, T manager) {
+        if (!isEnabled(METRICS)) {
+            return manager;
+        }
+        Metrics metrics = new Metrics();
+        metrics.register(type.getSimpleName());
+        return MetricsProxy.create(type, manager, metrics);
+    }
+
+    private boolean isEnabled(String property) {
+        return Boolean.parseBoolean(configuration.getProperty(property, "false").trim());
+    }
+
+    private int getInt(String property, int defaultValue) {
+        String value = configuration.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid " + property + ": " + value, ex);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.SchemaMigrator;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Database schema of the prison. Scripts are stored in directory migration,
+ * every new script has to be appended to the list of scripts.
+ */
+public final class PrisonSchema {
+
+    private static final SchemaMigrator MIGRATOR = new SchemaMigrator(
+            PrisonSchema.class, "migration",
+            Arrays.asList(
+                    "V1__create_tables.sql",
+                    "V2__hot_path_indexes.sql",
+                    "V3__sentence_id.sql",
+                    "V4__keyset_indexes.sql",
+                    "V5__change_log.sql",
+                    "V6__change_log_real_updates.sql",
+                    "V7__change_log_reader.sql"),
+            "cell");
+
+    private PrisonSchema() {
+    }
+
+    /**
+     * Creates tables or upgrades existing ones to the latest version.
+     * @param ds data source
+     * @return schema version after the migration
+     * @throws SQLException when operation fails
+     */
+    public static int migrate(DataSource ds) throws SQLException {
+        return MIGRATOR.migrate(ds);
+    }
+
+    /**
+     * @return version of schema created by {@link #migrate(DataSource)}
+     */
+    public static int getLatestVersion() {
+        return MIGRATOR.getLatestVersion();
+    }
+
+    /**
+     * @return migrator of the prison schema
+     */
+    public static SchemaMigrator getMigrator() {
+        return MIGRATOR;
+    }
+}
@@ -1,8 +1,14 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.ValidationException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Interface for prisoner manager.
@@ -17,6 +23,16 @@ public interface PrisonerManager {
      */
     void createPrisoner(Prisoner prisoner) throws ServiceFailureException;
 
+    /**
+     * Stores new prisoners into database using batches. Ids of created prisoners are stored into id attribute.
+     * Prisoners which can not be stored are reported in the result, the others are stored anyway.
+     * @param prisoners prisoners to be created.
+     * @return created prisoners and failures of the others, indexed by position in the given list.
+     * @throws IllegalArgumentException when prisoners are null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    BatchResult<Prisoner> createPrisoners(List<Prisoner> prisoners) throws ServiceFailureException;
+
     /**
      * Returns prisoner with given id.
      * @param id primary key of requested prisoner.
@@ -26,6 +42,15 @@ public interface PrisonerManager {
      */
     Prisoner getPrisonerById(Long id) throws ServiceFailureException;
 
+    /**
+     * Returns prisoners with given ids, using as few queries as possible.
+     * @param ids primary keys of requested prisoners.
+     * @return map from id to prisoner in the order of given ids, ids of prisoners which do not exist are missing.
+     * @throws IllegalArgumentException when ids or some id is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Prisoner> getPrisonersByIds(Collection<Long> ids) throws ServiceFailureException;
+
     /**
      * Returns list of prisoners with given surname in the database.
      * @param surname key of requested prisoner.
@@ -42,6 +67,54 @@ public interface PrisonerManager {
      */
     List<Prisoner> findAllPrisoners() throws ServiceFailureException;
 
+    /**
+     * Returns all prisoners in the database as a stream. Rows are read lazily while the stream is consumed,
+     * the stream holds a database connection until it is closed or fully read.
+     * @return stream of all prisoners, which should be closed after use.
+     * @throws ServiceFailureException when db operation fails, also when reading of the stream fails.
+     */
+    Stream<Prisoner> streamAllPrisoners() throws ServiceFailureException;
+
+    /**
+     * Passes all prisoners in the database to given action, one by one as they are read.
+     * @param action action called for every prisoner.
+     * @throws IllegalArgumentException when action is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    void forEachPrisoner(Consumer<? super Prisoner> action) throws ServiceFailureException;
+
+    /**
+     * Returns one page of prisoners ordered by id.
+     * @param afterId id of the last prisoner of the previous page, or null for the first page.
+     * @param limit maximal number of returned prisoners.
+     * @return at most limit prisoners with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Prisoner> findPrisoners(Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of prisoners whose surname starts with given prefix, ordered by id.
+     * @param surnamePrefix case sensitive prefix of surname, wildcards are matched literally.
+     * @param afterId id of the last prisoner of the previous page, or null for the first page.
+     * @param limit maximal number of returned prisoners.
+     * @return at most limit matching prisoners with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when surnamePrefix is null or limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Prisoner> findPrisonersBySurnamePrefix(String surnamePrefix, Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of prisoners ordered by surname, prisoners with the same surname are ordered by id.
+     * @param after the last prisoner of the previous page, or null for the first page.
+     * @param limit maximal number of returned prisoners.
+     * @return at most limit prisoners following after, ordered by surname and id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ValidationException when after has null id or surname.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Prisoner> findPrisonersOrderedBySurname(Prisoner after, int limit) throws ServiceFailureException;
+
     /**
      * Updates prisoner in database.
      * @param prisoner updated prisoner to be stored into database.
@@ -1,7 +1,10 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchInserter;
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
+import cz.muni.fi.pv168.common.ResultSetStreams;
 import cz.muni.fi.pv168.common.ServiceFailureException;
 import cz.muni.fi.pv168.common.ValidationException;
 
@@ -10,7 +13,15 @@ import java.sql.*;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +35,8 @@ public class PrisonerManagerImpl implements PrisonerManager {
 
     private DataSource dataSource;
     private Clock clock;
+    private int batchSize = BatchInserter.DEFAULT_BATCH_SIZE;
+    private int fetchSize = ResultSetStreams.DEFAULT_FETCH_SIZE;
 
     public PrisonerManagerImpl(Clock clock) {
         this.clock = clock;
@@ -36,6 +49,28 @@ public class PrisonerManagerImpl implements PrisonerManager {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets number of rows sent to the database in one batch by {@link #createPrisoners(List)}.
+     * @param batchSize batch size, at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size is lower than 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets number of rows fetched from the database in one round trip by {@link #streamAllPrisoners()}.
+     * @param fetchSize fetch size, at least 1.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size is lower than 1");
+        }
+        this.fetchSize = fetchSize;
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -52,14 +87,12 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-                conn = dataSource.getConnection();
+                conn = DBUtils.getConnection(dataSource);
                 conn.setAutoCommit(false);
                 st = conn.prepareStatement(
                     "INSERT INTO Prisoner (name, surname, born) VALUES (?,?,?)",
                     Statement.RETURN_GENERATED_KEYS);
-            st.setString(1, prisoner.getName());
-            st.setString(2, prisoner.getSurname());
-            st.setDate(3, toSqlDate(prisoner.getBorn()));
+            bindPrisoner(st, prisoner);
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, prisoner, true);
@@ -78,6 +111,31 @@ public class PrisonerManagerImpl implements PrisonerManager {
         }
     }
 
+    @Override
+    public BatchResult<Prisoner> createPrisoners(List<Prisoner> prisoners) throws ServiceFailureException {
+        checkDataSource();
+        return new BatchInserter<Prisoner>("prisoner",
+                "INSERT INTO Prisoner (name, surname, born) VALUES (?,?,?)", true) {
+            @Override
+            protected void validate(Prisoner prisoner) {
+                PrisonerManagerImpl.this.validate(prisoner);
+                if (prisoner.getId() != null) {
+                    throw new IllegalArgumentException("prisoner id is already set");
+                }
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Prisoner prisoner) throws SQLException {
+                bindPrisoner(st, prisoner);
+            }
+
+            @Override
+            protected void setId(Prisoner prisoner, Long id) {
+                prisoner.setId(id);
+            }
+        }.insert(dataSource, prisoners, batchSize);
+    }
+
     /*private Long getKey(ResultSet keyRS, Prisoner prisoner) throws ServiceFailureException, SQLException {
         if (keyRS.next()) {
             if (keyRS.getMetaData().getColumnCount() != 1) {
@@ -110,7 +168,7 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             st = conn.prepareStatement(
                     "SELECT id, name, surname, born FROM Prisoner WHERE id = ?");
             st.setLong(1, id);
@@ -124,6 +182,58 @@ public class PrisonerManagerImpl implements PrisonerManager {
         }
     }
 
+    @Override
+    public Map<Long, Prisoner> getPrisonersByIds(Collection<Long> ids) throws ServiceFailureException {
+        checkDataSource();
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        Set<Long> uniqueIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id is null");
+            }
+            uniqueIds.add(id);
+        }
+        Map<Long, Prisoner> result = new LinkedHashMap<>();
+        if (uniqueIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Prisoner> found = new HashMap<>();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(uniqueIds), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = conn.prepareStatement(
+                        "SELECT id, name, surname, born FROM Prisoner WHERE id IN ("
+                                + DBUtils.createPlaceholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 1, chunk.get(i));
+                }
+                for (Prisoner prisoner : executeQueryForMultiplePrisoners(st)) {
+                    found.put(prisoner.getId(), prisoner);
+                }
+                st.close();
+                st = null;
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when getting " + uniqueIds.size() + " prisoners by id from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+        for (Long id : uniqueIds) {
+            Prisoner prisoner = found.get(id);
+            if (prisoner != null) {
+                result.put(id, prisoner);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<Prisoner> getPrisonerBySurname(String surname) throws ServiceFailureException {
         checkDataSource();
@@ -133,7 +243,7 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             st = conn.prepareStatement(
                     "SELECT id, name, surname, born FROM Prisoner WHERE surname = ?");
             st.setString(1,surname);
@@ -167,7 +277,7 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             st = conn.prepareStatement("SELECT id,name,surname,born FROM prisoner");
             return executeQueryForMultiplePrisoners(st);
         } catch (SQLException ex) {
@@ -179,6 +289,122 @@ public class PrisonerManagerImpl implements PrisonerManager {
         }
     }
 
+    @Override
+    public Stream<Prisoner> streamAllPrisoners() throws ServiceFailureException {
+        checkDataSource();
+        try {
+            return ResultSetStreams.stream(dataSource, "SELECT id,name,surname,born FROM prisoner", fetchSize, PrisonerManagerImpl::rowToPrisoner);
+        } catch (SQLException ex) {
+            String msg = "Error when streaming all prisoners from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public void forEachPrisoner(Consumer<? super Prisoner> action) throws ServiceFailureException {
+        if (action == null) {
+            throw new IllegalArgumentException("action is null");
+        }
+        try (Stream<Prisoner> prisoners = streamAllPrisoners()) {
+            prisoners.forEachOrdered(action);
+        }
+    }
+
+    @Override
+    public List<Prisoner> findPrisoners(Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT id,name,surname,born FROM prisoner WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(2, limit);
+            return executeQueryForMultiplePrisoners(st);
+        } catch (SQLException ex) {
+            String msg = "Error when getting prisoners after id = " + afterId + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Prisoner> findPrisonersBySurnamePrefix(String surnamePrefix, Long afterId, int limit)
+            throws ServiceFailureException {
+        checkDataSource();
+        if (surnamePrefix == null) {
+            throw new IllegalArgumentException("surname prefix is null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT id,name,surname,born FROM prisoner WHERE surname LIKE ? ESCAPE '\\' AND id > ? "
+                            + "ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setString(1, DBUtils.escapeLike(surnamePrefix) + "%");
+            st.setLong(2, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(3, limit);
+            return executeQueryForMultiplePrisoners(st);
+        } catch (SQLException ex) {
+            String msg = "Error when getting prisoners with surname prefix " + surnamePrefix
+                    + " after id = " + afterId + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
+    @Override
+    public List<Prisoner> findPrisonersOrderedBySurname(Prisoner after, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        if (after != null && (after.getId() == null || after.getSurname() == null)) {
+            throw new ValidationException("prisoner id or surname is null");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            if (after == null) {
+                st = conn.prepareStatement(
+                        "SELECT id,name,surname,born FROM prisoner " +
+                                "ORDER BY surname, id FETCH FIRST ? ROWS ONLY");
+                st.setInt(1, limit);
+            } else {
+                // the first condition lets the database seek in the (surname, id) index
+                st = conn.prepareStatement(
+                        "SELECT id,name,surname,born FROM prisoner " +
+                                "WHERE surname >= ? AND (surname > ? OR id > ?) " +
+                                "ORDER BY surname, id FETCH FIRST ? ROWS ONLY");
+                st.setString(1, after.getSurname());
+                st.setString(2, after.getSurname());
+                st.setLong(3, after.getId());
+                st.setInt(4, limit);
+            }
+            return executeQueryForMultiplePrisoners(st);
+        } catch (SQLException ex) {
+            String msg = "Error when getting prisoners after " + after + " from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
+    }
+
     @Override
     public void updatePrisoner(Prisoner prisoner) throws ServiceFailureException {
         checkDataSource();
@@ -189,7 +415,7 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             conn.setAutoCommit(false);
             st = conn.prepareStatement(
                 "UPDATE Prisoner SET name = ?, surname = ?, born = ? WHERE id =?");
@@ -223,7 +449,7 @@ public class PrisonerManagerImpl implements PrisonerManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
             conn.setAutoCommit(false);
             st = conn.prepareStatement(
                 "DELETE FROM prisoner WHERE id = ?");
@@ -275,6 +501,12 @@ public class PrisonerManagerImpl implements PrisonerManager {
         return result;
     }
 
+    private static void bindPrisoner(PreparedStatement st, Prisoner prisoner) throws SQLException {
+        st.setString(1, prisoner.getName());
+        st.setString(2, prisoner.getSurname());
+        st.setDate(3, toSqlDate(prisoner.getBorn()));
+    }
+
     private void validate(Prisoner prisoner) {
         if (prisoner == null) {
             throw new IllegalArgumentException("grave is null");
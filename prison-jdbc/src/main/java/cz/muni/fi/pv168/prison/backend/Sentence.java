@@ -1,6 +1,7 @@
 package cz.muni.fi.pv168.prison.backend;
 
 import java.time.LocalDate;
+import java.util.Objects;
 
 /**
  * This entity represents sentence. Sentence holds information about prisoner and cell, where prisoner is.
@@ -8,6 +9,7 @@ import java.time.LocalDate;
  */
 public class Sentence {
 
+    private Long id;
     private Long prisonerId;
     private Long cellId;
     private LocalDate startDay;
@@ -24,6 +26,9 @@ public class Sentence {
 
     public Sentence() { }
 
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
     public Long getPrisonerId() { return prisonerId; }
     public void setPrisonerId(Long prisonerId) { this.prisonerId = prisonerId; }
 
@@ -42,7 +47,8 @@ public class Sentence {
     @Override
     public String toString() {
         return "Sentence{" +
-                "prisonerId=" + prisonerId +
+                "id=" + id +
+                ", prisonerId=" + prisonerId +
                 ", cellId=" + cellId +
                 ", startDay=" + startDay +
                 ", endDay=" + endDay +
@@ -57,20 +63,16 @@ public class Sentence {
 
         Sentence sentence = (Sentence) o;
 
-        if (!prisonerId.equals(sentence.prisonerId)) return false;
-        if (!cellId.equals(sentence.cellId)) return false;
-        if (!startDay.equals(sentence.startDay)) return false;
-        if (!endDay.equals(sentence.endDay)) return false;
-        return punishment != null ? punishment.equals(sentence.punishment) : sentence.punishment == null;
+        if (!Objects.equals(id, sentence.id)) return false;
+        if (!Objects.equals(prisonerId, sentence.prisonerId)) return false;
+        if (!Objects.equals(cellId, sentence.cellId)) return false;
+        if (!Objects.equals(startDay, sentence.startDay)) return false;
+        if (!Objects.equals(endDay, sentence.endDay)) return false;
+        return Objects.equals(punishment, sentence.punishment);
     }
 
     @Override
     public int hashCode() {
-        int result = prisonerId.hashCode();
-        result = 31 * result + cellId.hashCode();
-        result = 31 * result + startDay.hashCode();
-        result = 31 * result + endDay.hashCode();
-        result = 31 * result + (punishment != null ? punishment.hashCode() : 0);
-        return result;
+        return Objects.hash(id, prisonerId, cellId, startDay, endDay, punishment);
     }
 }
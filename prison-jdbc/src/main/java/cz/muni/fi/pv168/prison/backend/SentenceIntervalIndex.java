@@ -0,0 +1,309 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of sentences by cell and by prisoner, which answers occupancy on a day without the database.
+ * <p>
+ * A sentence occupies its cell on days from its start day to the day before its end day, the same way as
+ * {@link SentenceManager#findFreeCapacity(Cell)} counts sentences which did not end yet. Days are kept as
+ * epoch days in sorted primitive arrays for each cell and prisoner: entries sorted by end day and start days
+ * sorted separately. The number of sentences occupying a cell on a day is the number of start days up to
+ * the day minus the number of end days up to the day, both found by binary search, so counting takes
+ * logarithmic time. Listing occupants skips ended sentences by binary search and tests only sentences which
+ * did not end yet. Adding and removing a sentence shifts the arrays of its cell and prisoner.
+ * <p>
+ * The index is thread safe. It is kept current by {@link SentenceManagerImpl} when it is enabled there,
+ * sentences changed by other processes or removed by cascades are not seen until it is rebuilt.
+ */
+public class SentenceIntervalIndex {
+
+    /**
+     * Intervals of one cell or prisoner.
+     */
+    private static final class Intervals {
+        /** entries sorted by end day and sentence id */
+        private long[] ends = new long[4];
+        private long[] starts = new long[4];
+        private long[] sentenceIds = new long[4];
+        /** prisoner ids in intervals of a cell, cell ids in intervals of a prisoner */
+        private long[] others = new long[4];
+        /** start days in ascending order */
+        private long[] sortedStarts = new long[4];
+        private int size;
+
+        private void add(long start, long end, long sentenceId, long other) {
+            if (size == ends.length) {
+                int capacity = size * 2;
+                ends = Arrays.copyOf(ends, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                sentenceIds = Arrays.copyOf(sentenceIds, capacity);
+                others = Arrays.copyOf(others, capacity);
+                sortedStarts = Arrays.copyOf(sortedStarts, capacity);
+            }
+            int index = entryIndex(end, sentenceId);
+            index = index < 0 ? -index - 1 : index;
+            shiftRight(ends, index);
+            shiftRight(starts, index);
+            shiftRight(sentenceIds, index);
+            shiftRight(others, index);
+            ends[index] = end;
+            starts[index] = start;
+            sentenceIds[index] = sentenceId;
+            others[index] = other;
+            int startIndex = countAtMost(sortedStarts, start);
+            shiftRight(sortedStarts, startIndex);
+            sortedStarts[startIndex] = start;
+            size++;
+        }
+
+        private void remove(long start, long end, long sentenceId) {
+            int index = entryIndex(end, sentenceId);
+            if (index < 0) {
+                return;
+            }
+            shiftLeft(ends, index);
+            shiftLeft(starts, index);
+            shiftLeft(sentenceIds, index);
+            shiftLeft(others, index);
+            shiftLeft(sortedStarts, countAtMost(sortedStarts, start) - 1);
+            size--;
+        }
+
+        /**
+         * @return number of intervals containing the day
+         */
+        private int countOn(long day) {
+            return countAtMost(sortedStarts, day) - countAtMost(ends, day);
+        }
+
+        /**
+         * @return number of intervals ending after the day
+         */
+        private int countNotEnded(long day) {
+            return size - countAtMost(ends, day);
+        }
+
+        private void collectOn(long day, List<Long> result) {
+            for (int i = countAtMost(ends, day); i < size; i++) {
+                if (starts[i] <= day) {
+                    result.add(others[i]);
+                }
+            }
+        }
+
+        /** binary search of the entry, see {@link Arrays#binarySearch(long[], long)} */
+        private int entryIndex(long end, long sentenceId) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = ends[middle] != end ? Long.compare(ends[middle], end)
+                        : Long.compare(sentenceIds[middle], sentenceId);
+                if (result < 0) {
+                    low = middle + 1;
+                } else if (result > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /** number of the first <code>size</code> values which are lower than or equal to the value */
+        private int countAtMost(long[] sorted, long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sorted[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void shiftRight(long[] array, int index) {
+            System.arraycopy(array, index, array, index + 1, size - index);
+        }
+
+        private void shiftLeft(long[] array, int index) {
+            System.arraycopy(array, index + 1, array, index, size - index - 1);
+        }
+    }
+
+    /**
+     * Indexed sentence.
+     */
+    private static final class Entry {
+        private final long prisonerId;
+        private final long cellId;
+        private final long start;
+        private final long end;
+
+        private Entry(long prisonerId, long cellId, long start, long end) {
+            this.prisonerId = prisonerId;
+            this.cellId = cellId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<Long, Intervals> byCell = new HashMap<>();
+    private final Map<Long, Intervals> byPrisoner = new HashMap<>();
+
+    /**
+     * Adds sentence, or replaces the sentence with the same id.
+     *
+     * @param id id of the sentence
+     * @param sentence sentence, its id is ignored
+     */
+    public synchronized void put(Long id, Sentence sentence) {
+        if (id == null) {
+            throw new IllegalArgumentException("sentence id is null");
+        }
+        remove(id);
+        long start = sentence.getStartDay().toEpochDay();
+        // the end is never before the start, so that counts cannot be negative
+        long end = Math.max(start, sentence.getEndDay().toEpochDay());
+        Entry entry = new Entry(sentence.getPrisonerId(), sentence.getCellId(), start, end);
+        entries.put(id, entry);
+        byCell.computeIfAbsent(entry.cellId, cellId -> new Intervals()).add(start, end, id, entry.prisonerId);
+        byPrisoner.computeIfAbsent(entry.prisonerId, prisonerId -> new Intervals()).add(start, end, id, entry.cellId);
+    }
+
+    /**
+     * @param id id of the sentence
+     * @return true when the sentence was indexed
+     */
+    public synchronized boolean remove(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        remove(byCell, entry.cellId, entry, id);
+        remove(byPrisoner, entry.prisonerId, entry, id);
+        return true;
+    }
+
+    private static void remove(Map<Long, Intervals> index, long key, Entry entry, long id) {
+        Intervals intervals = index.get(key);
+        intervals.remove(entry.start, entry.end, id);
+        if (intervals.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Removes all sentences.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byCell.clear();
+        byPrisoner.clear();
+    }
+
+    /**
+     * @return number of indexed sentences
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds id of a sentence by its columns, for sentences which are identified by them.
+     *
+     * @param sentence sentence without id
+     * @return id of an indexed sentence with the same prisoner, cell, start day and end day, or null
+     */
+    public synchronized Long findId(Sentence sentence) {
+        Intervals intervals = byPrisoner.get(sentence.getPrisonerId());
+        if (intervals == null) {
+            return null;
+        }
+        long start = sentence.getStartDay().toEpochDay();
+        long end = sentence.getEndDay().toEpochDay();
+        for (int i = intervals.countAtMost(intervals.ends, end - 1); i < intervals.size && intervals.ends[i] == end; i++) {
+            if (intervals.starts[i] == start && intervals.others[i] == sentence.getCellId()) {
+                return intervals.sentenceIds[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param cellId id of the cell
+     * @param day day
+     * @return number of sentences occupying the cell on the day
+     */
+    public synchronized int countOccupants(Long cellId, LocalDate day) {
+        Intervals intervals = byCell.get(cellId);
+        return intervals == null ? 0 : intervals.countOn(day.toEpochDay());
+    }
+
+    /**
+     * Counts sentences which did not end on the day, including those which start later,
+     * the way capacity of cells is checked.
+     *
+     * @param cellId id of the cell
+     * @param day day
+     * @return number of sentences in the cell ending after the day
+     */
+    public synchronized int countNotEnded(Long cellId, LocalDate day) {
+        Intervals intervals = byCell.get(cellId);
+        return intervals == null ? 0 : intervals.countNotEnded(day.toEpochDay());
+    }
+
+    /**
+     * @param cellId id of the cell
+     * @param day day
+     * @return ids of prisoners occupying the cell on the day, in the order of end days of their sentences
+     */
+    public synchronized List<Long> findPrisonerIdsInCell(Long cellId, LocalDate day) {
+        List<Long> result = new ArrayList<>();
+        Intervals intervals = byCell.get(cellId);
+        if (intervals != null) {
+            intervals.collectOn(day.toEpochDay(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @param prisonerId id of the prisoner
+     * @param day day
+     * @return ids of cells where the prisoner is on the day, usually at most one
+     */
+    public synchronized List<Long> findCellIdsOfPrisoner(Long prisonerId, LocalDate day) {
+        List<Long> result = new ArrayList<>();
+        Intervals intervals = byPrisoner.get(prisonerId);
+        if (intervals != null) {
+            intervals.collectOn(day.toEpochDay(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @param cells cells with ids
+     * @param day day
+     * @return map from cell id to capacity minus number of sentences occupying the cell on the day,
+     * in the order of cells
+     */
+    public synchronized Map<Long, Integer> findFreeCapacities(Collection<Cell> cells, LocalDate day) {
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (Cell cell : cells) {
+            result.put(cell.getId(), cell.getCapacity() - countOccupants(cell.getId(), day));
+        }
+        return result;
+    }
+}
@@ -1,8 +1,16 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.IllegalEntityException;
 import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.ValidationException;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Interface for cell manager.
@@ -10,14 +18,25 @@ import java.util.List;
 public interface SentenceManager {
 
     /**
-     * Stores new sentence into database.
+     * Stores new sentence into database. Id for the new sentence is automatically generated and stored into id attribute.
      * @param sentence sentence to be created.
      * @throws IllegalArgumentException when sentence is null, or has null prisoner or cell, or has wrong dates,
-     *          or if Cell is full.
+     *          or if Cell is full, or sentence has already assigned id.
      * @throws ServiceFailureException when db operation fails.
      */
     void createSentence(Sentence sentence) throws ServiceFailureException;
 
+    /**
+     * Stores new sentences into database using batches. Ids of created sentences are stored into id attribute.
+     * Sentences which can not be stored, e.g. because
+     * their cell is full, are reported in the result, the others are stored anyway.
+     * @param sentences sentences to be created.
+     * @return created sentences and failures of the others, indexed by position in the given list.
+     * @throws IllegalArgumentException when sentences are null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    BatchResult<Sentence> createSentences(List<Sentence> sentences) throws ServiceFailureException;
+
 
     /**
      * Returns list of all sentences in the database.
@@ -27,7 +46,95 @@ public interface SentenceManager {
     List<Sentence> findAllSentences() throws ServiceFailureException;
 
     /**
-     * Updates sentence in database.
+     * Returns all sentences in the database as a stream. Rows are read lazily while the stream is consumed,
+     * the stream holds a database connection until it is closed or fully read.
+     * @return stream of all sentences, which should be closed after use.
+     * @throws ServiceFailureException when db operation fails, also when reading of the stream fails.
+     */
+    Stream<Sentence> streamAllSentences() throws ServiceFailureException;
+
+    /**
+     * Passes all sentences in the database to given action, one by one as they are read.
+     * @param action action called for every sentence.
+     * @throws IllegalArgumentException when action is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    void forEachSentence(Consumer<? super Sentence> action) throws ServiceFailureException;
+
+    /**
+     * Returns one page of sentences ordered by id.
+     * @param afterId id of the last sentence of the previous page, or null for the first page.
+     * @param limit maximal number of returned sentences.
+     * @return at most limit sentences with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Sentence> findSentences(Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of sentences in given cell ordered by id.
+     * @param cellId id of the cell.
+     * @param afterId id of the last sentence of the previous page, or null for the first page.
+     * @param limit maximal number of returned sentences.
+     * @return at most limit sentences in the cell with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when cellId is null or limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Sentence> findSentencesForCell(Long cellId, Long afterId, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns one page of sentences ending in given range of days ordered by id.
+     * @param from first end day, or null when the range is not limited from below.
+     * @param to last end day, or null when the range is not limited from above.
+     * @param afterId id of the last sentence of the previous page, or null for the first page.
+     * @param limit maximal number of returned sentences.
+     * @return at most limit sentences ending in the range with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Sentence> findSentencesEndingBetween(LocalDate from, LocalDate to, Long afterId, int limit)
+            throws ServiceFailureException;
+
+    /**
+     * Returns one page of sentences ordered by end day, sentences with the same end day are ordered by id.
+     * @param after the last sentence of the previous page, or null for the first page.
+     * @param limit maximal number of returned sentences.
+     * @return at most limit sentences following after, ordered by end day and id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ValidationException when after has null id or end day.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Sentence> findSentencesOrderedByEndDay(Sentence after, int limit) throws ServiceFailureException;
+
+    /**
+     * Returns sentence with given id.
+     * @param id primary key of requested sentence.
+     * @return sentence with given id or null if such sentence does not exist.
+     * @throws IllegalArgumentException when given id is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Sentence getSentenceById(Long id) throws ServiceFailureException;
+
+    /**
+     * Returns sentences with given ids, using as few queries as possible.
+     * @param ids primary keys of requested sentences.
+     * @return map from id to sentence in the order of given ids, ids of sentences which do not exist are missing.
+     * @throws IllegalArgumentException when ids or some id is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Sentence> getSentencesByIds(Collection<Long> ids) throws ServiceFailureException;
+
+    /**
+     * Updates sentence with the id of given sentence in database.
+     * @param sentence updated sentence to be stored into database.
+     * @throws IllegalArgumentException when sentence is null, or sentence has null id, prisoner or cell.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    void updateSentence(Sentence sentence) throws ServiceFailureException;
+
+    /**
+     * Updates sentence in database. When old sentence has id, the sentence is found by it,
+     * otherwise by its prisoner, cell, start day and end day.
      * @param oldSentence old sentence that should be updated
      * @param newSentence updated sentence to be stored into database.
      * @throws IllegalArgumentException when one of sentences is null, or sentence has null prisoner or cell.
@@ -36,7 +143,8 @@ public interface SentenceManager {
     void updateSentence(Sentence oldSentence, Sentence newSentence) throws ServiceFailureException;
 
     /**
-     * Deleted sentence from database.
+     * Deleted sentence from database. When sentence has id, the sentence is found by it,
+     * otherwise by its prisoner, cell, start day and end day.
      * @param sentence sentence to be deleted from db.
      * @throws IllegalArgumentException when sentence is null, or sentence has null prisoner or cell.
      * @throws ServiceFailureException when db operation fails.
@@ -61,6 +169,37 @@ public interface SentenceManager {
      */
     List<Sentence> findSentencesForCell(Cell cell) throws ServiceFailureException;
 
+    /**
+     * Returns cell where given prisoner currently is, i.e. cell of the prisoner's current sentence.
+     * When the prisoner has more current sentences, the cell of the earliest one is returned.
+     * @param prisoner prisoner we want to find.
+     * @return cell with the prisoner, or null when the prisoner has no current sentence.
+     * @throws IllegalArgumentException when prisoner is null.
+     * @throws ValidationException when prisoner has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Cell findCellWithPrisoner(Prisoner prisoner) throws ServiceFailureException;
+
+    /**
+     * Returns cells where given prisoners currently are, see {@link #findCellWithPrisoner(Prisoner)}.
+     * @param prisoners prisoners we want to find.
+     * @return map from prisoner id to cell, prisoners without current sentence are missing.
+     * @throws IllegalArgumentException when prisoners or some prisoner is null.
+     * @throws ValidationException when some prisoner has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Cell> findCellsWithPrisoners(Collection<Prisoner> prisoners) throws ServiceFailureException;
+
+    /**
+     * Returns prisoners currently in given cell, i.e. prisoners having current sentence in the cell.
+     * @param cell cell where we want to find prisoners.
+     * @return list of prisoners in the cell ordered by id.
+     * @throws IllegalArgumentException when cell is null.
+     * @throws IllegalEntityException when cell has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Prisoner> findPrisonersInCell(Cell cell) throws ServiceFailureException;
+
     /**
      * Returns free capacity of given cell.
      * @param cell cell we want to find free capacity.
@@ -69,4 +208,55 @@ public interface SentenceManager {
      * @throws ServiceFailureException when db operation fails.
      */
     int findFreeCapacity(Cell cell) throws ServiceFailureException;
+
+    /**
+     * Returns free capacities of given cells, computed in as few queries as possible.
+     * @param cells cells we want to find free capacity.
+     * @return map from cell id to number of free capacity, in the order of given cells.
+     * @throws IllegalArgumentException when cells or some cell is null.
+     * @throws ValidationException when some cell has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Integer> findFreeCapacities(Collection<Cell> cells) throws ServiceFailureException;
+
+    /**
+     * Returns free capacities of given cells on given day. Sentence occupies its cell from its start day
+     * to the day before its end day.
+     * @param cells cells we want to find free capacity.
+     * @param day day of occupancy.
+     * @return map from cell id to number of free capacity, in the order of given cells.
+     * @throws IllegalArgumentException when cells, some cell or day is null.
+     * @throws ValidationException when some cell has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, Integer> findFreeCapacities(Collection<Cell> cells, LocalDate day) throws ServiceFailureException;
+
+    /**
+     * Returns ids of prisoners occupying given cell on given day, see {@link #findFreeCapacities(Collection, LocalDate)}.
+     * @param cell cell.
+     * @param day day of occupancy.
+     * @return ids of prisoners ordered by end day of their sentences.
+     * @throws IllegalArgumentException when cell or day is null.
+     * @throws ValidationException when cell has null id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Long> findPrisonerIdsInCell(Cell cell, LocalDate day) throws ServiceFailureException;
+
+    /**
+     * Returns list of cells without any current sentence. Sentence is current when its end day
+     * is after today.
+     * @return list of empty cells ordered by id.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Cell> findEmptyCells() throws ServiceFailureException;
+
+    /**
+     * Returns one page of cells without any current sentence.
+     * @param afterId id of the last cell of the previous page, or null for the first page.
+     * @param limit maximal number of returned cells.
+     * @return at most limit empty cells with id greater than afterId, ordered by id.
+     * @throws IllegalArgumentException when limit is lower than 1.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Cell> findEmptyCells(Long afterId, int limit) throws ServiceFailureException;
 }
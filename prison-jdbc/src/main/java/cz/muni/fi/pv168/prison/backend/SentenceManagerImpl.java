@@ -1,8 +1,12 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchInserter;
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
+import cz.muni.fi.pv168.common.ResultSetStreams;
 import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.TransactionTemplate;
 import cz.muni.fi.pv168.common.ValidationException;
 
 import javax.sql.DataSource;
@@ -10,7 +14,18 @@ import java.sql.*;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 import java.util.logging.Level;
@@ -26,6 +41,9 @@ public class SentenceManagerImpl implements SentenceManager {
             CellManagerImpl.class.getName());
     private DataSource dataSource;
     private Clock clock;
+    private int batchSize = BatchInserter.DEFAULT_BATCH_SIZE;
+    private int fetchSize = ResultSetStreams.DEFAULT_FETCH_SIZE;
+    private volatile SentenceIntervalIndex intervalIndex;
 
     public SentenceManagerImpl(Clock clock) {
         this.clock = clock;
@@ -40,6 +58,48 @@ public class SentenceManagerImpl implements SentenceManager {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets number of rows sent to the database in one batch by {@link #createSentences(List)}.
+     * @param batchSize batch size, at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size is lower than 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets number of rows fetched from the database in one round trip by {@link #streamAllSentences()}.
+     * @param fetchSize fetch size, at least 1.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetch size is lower than 1");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Loads all sentences into {@link SentenceIntervalIndex}, which then answers occupancy of cells
+     * without the database and is kept current by writes of this manager. Writes of other threads made
+     * while the index is loaded may be missed, so it should be enabled before the manager is shared.
+     */
+    public void enableIntervalIndex() {
+        checkDataSource();
+        SentenceIntervalIndex index = new SentenceIntervalIndex();
+        forEachSentence(sentence -> index.put(sentence.getId(), sentence));
+        intervalIndex = index;
+        logger.log(Level.INFO, "interval index of {0} sentences loaded", index.size());
+    }
+
+    /**
+     * @return interval index of sentences, or null when it is not enabled.
+     */
+    public SentenceIntervalIndex getIntervalIndex() {
+        return intervalIndex;
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -52,24 +112,27 @@ public class SentenceManagerImpl implements SentenceManager {
     public void createSentence(Sentence sentence) throws ServiceFailureException {
         checkDataSource();
         validate(sentence);
-        checkCell(sentence.getCellId());
+        if (sentence.getId() != null) {
+            throw new IllegalArgumentException("sentence id is already set");
+        }
         Connection connection = null;
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             connection.setAutoCommit(false);
+            checkCell(connection, sentence.getCellId());
             st = connection.prepareStatement(
-                    "INSERT INTO sentence (prisonerId, cellId, startDay, endDay, punishment) VALUES (?,?,?,?,?)");
-            st.setLong(1, sentence.getPrisonerId());
-            st.setLong(2, sentence.getCellId());
-            st.setDate(3, toSqlDate(sentence.getStartDay()));
-            st.setDate(4, toSqlDate(sentence.getEndDay()));
-            st.setString(5, sentence.getPunishment());
+                    "INSERT INTO sentence (prisonerId, cellId, startDay, endDay, punishment) VALUES (?,?,?,?,?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            bindSentence(st, sentence);
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, sentence, true);
+            Long id = DBUtils.getId(st.getGeneratedKeys());
             connection.commit();
+            sentence.setId(id);
+            reindex(id, sentence);
 
         }catch (SQLException ex) {
             String msg = "Error when inserting sentence into db";
@@ -83,6 +146,59 @@ public class SentenceManagerImpl implements SentenceManager {
 
     }
 
+    @Override
+    public BatchResult<Sentence> createSentences(List<Sentence> sentences) throws ServiceFailureException {
+        checkDataSource();
+        BatchResult<Sentence> result = new BatchInserter<Sentence>("sentence",
+                "INSERT INTO sentence (prisonerId, cellId, startDay, endDay, punishment) VALUES (?,?,?,?,?)", true) {
+            @Override
+            protected void validate(Sentence sentence) {
+                SentenceManagerImpl.this.validate(sentence);
+                if (sentence.getId() != null) {
+                    throw new IllegalEntityException("sentence id is already set");
+                }
+            }
+
+            @Override
+            protected void setId(Sentence sentence, Long id) {
+                sentence.setId(id);
+            }
+
+            @Override
+            protected void bind(PreparedStatement st, Sentence sentence) throws SQLException {
+                bindSentence(st, sentence);
+            }
+
+            @Override
+            protected Map<Integer, RuntimeException> checkChunk(Connection conn, List<Sentence> chunk)
+                    throws SQLException {
+                Set<Long> cellIds = new HashSet<>();
+                for (Sentence sentence : chunk) {
+                    cellIds.add(sentence.getCellId());
+                }
+                Map<Long, Integer> free = lockCells(conn, cellIds);
+                Map<Integer, RuntimeException> rejected = new HashMap<>();
+                LocalDate today = today();
+                for (int i = 0; i < chunk.size(); i++) {
+                    Sentence sentence = chunk.get(i);
+                    Integer cellFree = free.get(sentence.getCellId());
+                    if (cellFree == null) {
+                        rejected.put(i, new ValidationException("Error, cell with this id is not in database"));
+                    } else if (cellFree <= 0) {
+                        rejected.put(i, new ValidationException("Error, cell capacity is to low"));
+                    } else if (sentence.getEndDay().isAfter(today)) {
+                        free.put(sentence.getCellId(), cellFree - 1);
+                    }
+                }
+                return rejected;
+            }
+        }.insert(dataSource, sentences, batchSize);
+        for (Sentence sentence : result.getSucceeded()) {
+            reindex(sentence.getId(), sentence);
+        }
+        return result;
+    }
+
     @Override
     public List<Sentence> findAllSentences() throws ServiceFailureException {
         checkDataSource();
@@ -90,9 +206,9 @@ public class SentenceManagerImpl implements SentenceManager {
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             st = connection.prepareStatement(
-                    "SELECT prisonerId, cellId, startDay, endDay, punishment FROM sentence");
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence");
             return executeQueryFromMultipleSentence(st);
 
         }catch (SQLException ex) {
@@ -105,6 +221,235 @@ public class SentenceManagerImpl implements SentenceManager {
 
     }
 
+    @Override
+    public Stream<Sentence> streamAllSentences() throws ServiceFailureException {
+        checkDataSource();
+        try {
+            return ResultSetStreams.stream(dataSource, "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence", fetchSize, SentenceManagerImpl::rowToSentence);
+        } catch (SQLException ex) {
+            String msg = "Error when streaming all sentences from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }
+    }
+
+    @Override
+    public void forEachSentence(Consumer<? super Sentence> action) throws ServiceFailureException {
+        if (action == null) {
+            throw new IllegalArgumentException("action is null");
+        }
+        try (Stream<Sentence> sentences = streamAllSentences()) {
+            sentences.forEachOrdered(action);
+        }
+    }
+
+    @Override
+    public List<Sentence> findSentences(Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            st = connection.prepareStatement(
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                            "WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(2, limit);
+            return executeQueryFromMultipleSentence(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting sentences after id = " + afterId + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public List<Sentence> findSentencesForCell(Long cellId, Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (cellId == null) {
+            throw new IllegalArgumentException("cell id is null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            st = connection.prepareStatement(
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                            "WHERE cellId = ? AND id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, cellId);
+            st.setLong(2, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(3, limit);
+            return executeQueryFromMultipleSentence(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting sentences for cell " + cellId + " after id = " + afterId + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public List<Sentence> findSentencesEndingBetween(LocalDate from, LocalDate to, Long afterId, int limit)
+            throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            st = connection.prepareStatement(
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                            "WHERE endDay >= ? AND endDay <= ? AND id > ? ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setDate(1, toSqlDate(from == null ? LocalDate.of(1, 1, 1) : from));
+            st.setDate(2, toSqlDate(to == null ? LocalDate.of(9999, 12, 31) : to));
+            st.setLong(3, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setInt(4, limit);
+            return executeQueryFromMultipleSentence(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting sentences ending between " + from + " and " + to
+                    + " after id = " + afterId + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public List<Sentence> findSentencesOrderedByEndDay(Sentence after, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        if (after != null && (after.getId() == null || after.getEndDay() == null)) {
+            throw new ValidationException("Error, sentence id or endDay is null");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            if (after == null) {
+                st = connection.prepareStatement(
+                        "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                                "ORDER BY endDay, id FETCH FIRST ? ROWS ONLY");
+                st.setInt(1, limit);
+            } else {
+                // the first condition lets the database seek in the (endDay, id) index
+                st = connection.prepareStatement(
+                        "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                                "WHERE endDay >= ? AND (endDay > ? OR id > ?) " +
+                                "ORDER BY endDay, id FETCH FIRST ? ROWS ONLY");
+                st.setDate(1, toSqlDate(after.getEndDay()));
+                st.setDate(2, toSqlDate(after.getEndDay()));
+                st.setLong(3, after.getId());
+                st.setInt(4, limit);
+            }
+            return executeQueryFromMultipleSentence(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting sentences after " + after + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public Sentence getSentenceById(Long id) throws ServiceFailureException {
+        checkDataSource();
+        if (id == null) {
+            throw new IllegalArgumentException("ID is null");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            st = connection.prepareStatement(
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence WHERE id = ?");
+            st.setLong(1, id);
+            return executeQueryForSingleSentence(st);
+
+        }catch (SQLException ex) {
+            String msg = "Error when getting sentence with id = " + id + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public Map<Long, Sentence> getSentencesByIds(Collection<Long> ids) throws ServiceFailureException {
+        checkDataSource();
+        if (ids == null) {
+            throw new IllegalArgumentException("ids are null");
+        }
+        Set<Long> uniqueIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id == null) {
+                throw new IllegalArgumentException("id is null");
+            }
+            uniqueIds.add(id);
+        }
+        Map<Long, Sentence> result = new LinkedHashMap<>();
+        if (uniqueIds.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Sentence> found = new HashMap<>();
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(uniqueIds), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = connection.prepareStatement(
+                        "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence WHERE id IN ("
+                                + DBUtils.createPlaceholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 1, chunk.get(i));
+                }
+                for (Sentence sentence : executeQueryFromMultipleSentence(st)) {
+                    found.put(sentence.getId(), sentence);
+                }
+                st.close();
+                st = null;
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when getting " + uniqueIds.size() + " sentences by id from DB";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+        for (Long id : uniqueIds) {
+            Sentence sentence = found.get(id);
+            if (sentence != null) {
+                result.put(id, sentence);
+            }
+        }
+        return result;
+    }
+
     static List<Sentence> executeQueryFromMultipleSentence(PreparedStatement st) throws SQLException{
         ResultSet rs = st.executeQuery();
         List<Sentence> list = new ArrayList<>();
@@ -131,6 +476,7 @@ public class SentenceManagerImpl implements SentenceManager {
 
     static private Sentence rowToSentence(ResultSet rs) throws SQLException {
         Sentence sentence = new Sentence();
+        sentence.setId(rs.getLong("id"));
         sentence.setPrisonerId(rs.getLong("prisonerId"));
         sentence.setCellId(rs.getLong("cellId"));
         sentence.setStartDay(toLocalDate(rs.getDate("startDay")));
@@ -139,17 +485,57 @@ public class SentenceManagerImpl implements SentenceManager {
         return sentence;
     }
 
+    @Override
+    public void updateSentence(Sentence sentence) throws ServiceFailureException {
+        checkDataSource();
+        validate(sentence);
+        if (sentence.getId() == null) {
+            throw new ValidationException("sentence id is null");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            connection.setAutoCommit(false);
+            st = connection.prepareStatement(
+                    "UPDATE sentence SET prisonerId = ?, cellId = ?, startDay = ?, endDay = ?, punishment = ? " +
+                            "WHERE id = ?");
+            bindSentence(st, sentence);
+            st.setLong(6, sentence.getId());
+
+            int count = st.executeUpdate();
+            DBUtils.checkUpdatesCount(count, sentence, false);
+            connection.commit();
+            reindex(sentence.getId(), sentence);
+
+        }catch(SQLException ex) {
+            String msg = "Error when updating sentence in db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        }finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection,st);
+        }
+    }
+
     @Override
     public void updateSentence(Sentence oldSentence, Sentence newSentence) throws ServiceFailureException {
         checkDataSource();
         validate(oldSentence);
         validate(newSentence);
+        if (oldSentence.getId() != null) {
+            newSentence.setId(oldSentence.getId());
+            updateSentence(newSentence);
+            return;
+        }
+        Long id = findIndexedId(oldSentence);
 
         Connection connection = null;
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
                     "UPDATE sentence SET prisonerId = ?, cellId = ?, startDay = ?, endDay = ?, punishment = ? " +
@@ -168,6 +554,7 @@ public class SentenceManagerImpl implements SentenceManager {
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, newSentence, false);
             connection.commit();
+            reindex(id, newSentence);
 
         }catch(SQLException ex) {
             String msg = "Error when updating sentence in db";
@@ -189,18 +576,26 @@ public class SentenceManagerImpl implements SentenceManager {
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             connection.setAutoCommit(false);
-            st = connection.prepareStatement(
-                    "DELETE FROM sentence WHERE prisonerId = ? AND cellId = ? AND startDay = ? AND endDay = ?");
-            st.setLong(1, sentence.getPrisonerId());
-            st.setLong(2, sentence.getCellId());
-            st.setDate(3, toSqlDate(sentence.getStartDay()));
-            st.setDate(4, toSqlDate(sentence.getEndDay()));
+            if (sentence.getId() != null) {
+                st = connection.prepareStatement(
+                        "DELETE FROM sentence WHERE id = ?");
+                st.setLong(1, sentence.getId());
+            } else {
+                // sentence created before it had an id, found by its columns
+                st = connection.prepareStatement(
+                        "DELETE FROM sentence WHERE prisonerId = ? AND cellId = ? AND startDay = ? AND endDay = ?");
+                st.setLong(1, sentence.getPrisonerId());
+                st.setLong(2, sentence.getCellId());
+                st.setDate(3, toSqlDate(sentence.getStartDay()));
+                st.setDate(4, toSqlDate(sentence.getEndDay()));
+            }
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, sentence, false);
             connection.commit();
+            reindex(sentence.getId() != null ? sentence.getId() : findIndexedId(sentence), null);
 
         }catch (SQLException ex) {
             String msg = "Error when deleting sentence from db";
@@ -226,9 +621,9 @@ public class SentenceManagerImpl implements SentenceManager {
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             st = connection.prepareStatement(
-                    "SELECT prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
                             "WHERE prisonerId = ?");
             st.setLong(1, prisoner.getId());
             return executeQueryFromMultipleSentence(st);
@@ -257,9 +652,9 @@ public class SentenceManagerImpl implements SentenceManager {
         PreparedStatement st = null;
 
         try {
-            connection = dataSource.getConnection();
+            connection = DBUtils.getConnection(dataSource);
             st = connection.prepareStatement(
-                    "SELECT prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
+                    "SELECT id, prisonerId, cellId, startDay, endDay, punishment FROM sentence " +
                             "WHERE cellId = ?");
             st.setLong(1, cell.getId());
 
@@ -279,33 +674,296 @@ public class SentenceManagerImpl implements SentenceManager {
 
     @Override
     public int findFreeCapacity(Cell cell) throws ServiceFailureException {
+        checkDataSource();
         if (cell == null) {
             throw new IllegalArgumentException("Error, cell is null");
         }
+        if (cell.getId() == null) {
+            throw new ValidationException("Error, cells id is null");
+        }
+        SentenceIntervalIndex index = intervalIndex;
+        if (index != null) {
+            return cell.getCapacity() - index.countNotEnded(cell.getId(), today());
+        }
+        Connection connection = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            Integer occupied = countCurrentSentences(connection, Collections.singletonList(cell.getId()))
+                    .get(cell.getId());
+            return cell.getCapacity() - (occupied == null ? 0 : occupied);
+        } catch (SQLException ex) {
+            String msg = "Error when getting free capacity of cell = " + cell + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
+        }
+    }
 
-        List<Sentence> list;
-        list = findSentencesForCell(cell);
-        return cell.getCapacity() - getCurrentSentenceFromList(list).size();
+    @Override
+    public Map<Long, Integer> findFreeCapacities(Collection<Cell> cells) throws ServiceFailureException {
+        checkDataSource();
+        if (cells == null) {
+            throw new IllegalArgumentException("Error, cells are null");
+        }
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (Cell cell : cells) {
+            if (cell == null) {
+                throw new IllegalArgumentException("Error, cell is null");
+            }
+            if (cell.getId() == null) {
+                throw new ValidationException("Error, cells id is null");
+            }
+            result.put(cell.getId(), cell.getCapacity());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+        SentenceIntervalIndex index = intervalIndex;
+        if (index != null) {
+            LocalDate today = today();
+            result.replaceAll((cellId, capacity) -> capacity - index.countNotEnded(cellId, today));
+            return result;
+        }
+
+        Connection connection = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            Map<Long, Integer> occupied = countCurrentSentences(connection, result.keySet());
+            for (Map.Entry<Long, Integer> entry : occupied.entrySet()) {
+                result.put(entry.getKey(), result.get(entry.getKey()) - entry.getValue());
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when getting free capacities of " + result.size() + " cells from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
+        }
     }
 
-    public Cell findCellWithPrisoner(Prisoner prisoner) {
-        if (prisoner == null) {
-            throw new IllegalArgumentException("Error, prisoner is null");
+    @Override
+    public Map<Long, Integer> findFreeCapacities(Collection<Cell> cells, LocalDate day)
+            throws ServiceFailureException {
+        checkDataSource();
+        if (cells == null) {
+            throw new IllegalArgumentException("Error, cells are null");
+        }
+        if (day == null) {
+            throw new IllegalArgumentException("Error, day is null");
+        }
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (Cell cell : cells) {
+            if (cell == null) {
+                throw new IllegalArgumentException("Error, cell is null");
+            }
+            if (cell.getId() == null) {
+                throw new ValidationException("Error, cells id is null");
+            }
+            result.put(cell.getId(), cell.getCapacity());
+        }
+        if (result.isEmpty()) {
+            return result;
+        }
+        SentenceIntervalIndex index = intervalIndex;
+        if (index != null) {
+            result.replaceAll((cellId, capacity) -> capacity - index.countOccupants(cellId, day));
+            return result;
         }
 
-        List<Sentence> list = findSentencesForPrisoner(prisoner);
-        if (list.size() == 0) {
-            return null;
+        Connection connection = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            Map<Long, Integer> occupied = countSentences(connection, result.keySet(), day, day);
+            for (Map.Entry<Long, Integer> entry : occupied.entrySet()) {
+                result.put(entry.getKey(), result.get(entry.getKey()) - entry.getValue());
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when getting free capacities of " + result.size() + " cells on " + day + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
         }
-        Sentence sentence =  list.get(0);
-        CellManagerImpl cm = new CellManagerImpl();
-        cm.setDataSource(dataSource);
-        Cell cell = cm.getCellById(sentence.getCellId());
-        return cell;
+    }
 
+    @Override
+    public List<Long> findPrisonerIdsInCell(Cell cell, LocalDate day) throws ServiceFailureException {
+        checkDataSource();
+        if (cell == null) {
+            throw new IllegalArgumentException("Error, cell is null");
+        }
+        if (day == null) {
+            throw new IllegalArgumentException("Error, day is null");
+        }
+        if (cell.getId() == null) {
+            throw new ValidationException("Error, cells id is null");
+        }
+        SentenceIntervalIndex index = intervalIndex;
+        if (index != null) {
+            return index.findPrisonerIdsInCell(cell.getId(), day);
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT prisonerId FROM sentence " +
+                            "WHERE cellId = ? AND startDay <= ? AND endDay > ? ORDER BY endDay, id");
+            st.setLong(1, cell.getId());
+            st.setDate(2, toSqlDate(day));
+            st.setDate(3, toSqlDate(day));
+            ResultSet rs = st.executeQuery();
+            List<Long> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(rs.getLong("prisonerId"));
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when trying to find prisoners in cell " + cell + " on " + day;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
     }
 
+    /**
+     * Counts current sentences in given cells, i.e. sentences whose end day is after today.
+     * @return map from cell id to number of current sentences, cells without them are missing.
+     */
+    private Map<Long, Integer> countCurrentSentences(Connection connection, Collection<Long> cellIds)
+            throws SQLException {
+        return countSentences(connection, cellIds, null, today());
+    }
 
+    /**
+     * Counts sentences in given cells which end after given day.
+     * @param startedBy the latest start day of counted sentences, or null to count also sentences starting later.
+     * @return map from cell id to number of sentences, cells without them are missing.
+     */
+    private Map<Long, Integer> countSentences(Connection connection, Collection<Long> cellIds,
+            LocalDate startedBy, LocalDate endedAfter) throws SQLException {
+        Map<Long, Integer> result = new HashMap<>();
+        PreparedStatement st = null;
+        try {
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(cellIds), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = connection.prepareStatement(
+                        "SELECT cellId, COUNT(*) AS occupied FROM sentence " +
+                                "WHERE endDay > ? " + (startedBy == null ? "" : "AND startDay <= ? ") +
+                                "AND cellId IN (" + DBUtils.createPlaceholders(chunk.size()) + ") " +
+                                "GROUP BY cellId");
+                int parameter = 1;
+                st.setDate(parameter++, toSqlDate(endedAfter));
+                if (startedBy != null) {
+                    st.setDate(parameter++, toSqlDate(startedBy));
+                }
+                for (Long cellId : chunk) {
+                    st.setLong(parameter++, cellId);
+                }
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    result.put(rs.getLong("cellId"), rs.getInt("occupied"));
+                }
+                st.close();
+                st = null;
+            }
+            return result;
+        } finally {
+            if (st != null) {
+                st.close();
+            }
+        }
+    }
+
+    @Override
+    public Cell findCellWithPrisoner(Prisoner prisoner) throws ServiceFailureException {
+        checkDataSource();
+        if (prisoner == null) {
+            throw new IllegalArgumentException("Error, prisoner is null");
+        }
+        if (prisoner.getId() == null) {
+            throw new ValidationException("Error, prisoners id is null");
+        }
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            // the earliest current sentence is the one being served now
+            st = connection.prepareStatement(
+                    "SELECT cell.id, cell.floor, cell.capacity " +
+                            "FROM sentence JOIN cell ON cell.id = sentence.cellId " +
+                            "WHERE sentence.prisonerId = ? AND sentence.endDay > ? " +
+                            "ORDER BY sentence.startDay, sentence.id FETCH FIRST 1 ROWS ONLY");
+            st.setLong(1, prisoner.getId());
+            st.setDate(2, toSqlDate(today()));
+            return CellManagerImpl.executeQueryForSingleCell(st);
+        } catch (SQLException ex) {
+            String msg = "Error when getting cell with prisoner = " + prisoner + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public Map<Long, Cell> findCellsWithPrisoners(Collection<Prisoner> prisoners) throws ServiceFailureException {
+        checkDataSource();
+        if (prisoners == null) {
+            throw new IllegalArgumentException("Error, prisoners are null");
+        }
+        Set<Long> prisonerIds = new LinkedHashSet<>();
+        for (Prisoner prisoner : prisoners) {
+            if (prisoner == null) {
+                throw new IllegalArgumentException("Error, prisoner is null");
+            }
+            if (prisoner.getId() == null) {
+                throw new ValidationException("Error, prisoners id is null");
+            }
+            prisonerIds.add(prisoner.getId());
+        }
+        Map<Long, Cell> result = new HashMap<>();
+        if (prisonerIds.isEmpty()) {
+            return result;
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = DBUtils.getConnection(dataSource);
+            for (List<Long> chunk : DBUtils.partition(new ArrayList<>(prisonerIds), DBUtils.MAX_IN_LIST_SIZE)) {
+                st = connection.prepareStatement(
+                        "SELECT sentence.prisonerId, cell.id, cell.floor, cell.capacity " +
+                                "FROM sentence JOIN cell ON cell.id = sentence.cellId " +
+                                "WHERE sentence.endDay > ? " +
+                                "AND sentence.prisonerId IN (" + DBUtils.createPlaceholders(chunk.size()) + ") " +
+                                "ORDER BY sentence.prisonerId, sentence.startDay, sentence.id");
+                st.setDate(1, toSqlDate(today()));
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 2, chunk.get(i));
+                }
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    Long prisonerId = rs.getLong("prisonerId");
+                    if (!result.containsKey(prisonerId)) {
+                        result.put(prisonerId, CellManagerImpl.resultSetToCell(rs));
+                    }
+                }
+                st.close();
+                st = null;
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when getting cells with " + prisonerIds.size() + " prisoners from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
 
     public void putPrisonerIntoCell(Prisoner prisoner, Cell cell) {
     }
@@ -325,6 +983,7 @@ public class SentenceManagerImpl implements SentenceManager {
         return retList;
     }*/
 
+    @Override
     public List<Prisoner> findPrisonersInCell(Cell cell) throws ServiceFailureException, IllegalEntityException {
         checkDataSource();
         if (cell == null) {
@@ -336,12 +995,15 @@ public class SentenceManagerImpl implements SentenceManager {
         Connection conn = null;
         PreparedStatement st = null;
         try {
-            conn = dataSource.getConnection();
+            conn = DBUtils.getConnection(dataSource);
+            // semi-join, prisoner with more current sentences in the cell is returned once
             st = conn.prepareStatement(
-                    "SELECT prisonerid " +
-                            "FROM sentence JOIN Cell ON Cell.id = sentence.cellId " +
-                            "WHERE Cell.id = ?");
+                    "SELECT id, name, surname, born FROM prisoner " +
+                            "WHERE id IN (SELECT prisonerId FROM sentence " +
+                            "WHERE sentence.cellId = ? AND sentence.endDay > ?) " +
+                            "ORDER BY id");
             st.setLong(1, cell.getId());
+            st.setDate(2, toSqlDate(today()));
             return PrisonerManagerImpl.executeQueryForMultiplePrisoners(st);
         } catch (SQLException ex) {
             String msg = "Error when trying to find prisoners in cell " + cell;
@@ -352,19 +1014,56 @@ public class SentenceManagerImpl implements SentenceManager {
         }
     }
 
-    public List<Cell> findEmptyCells() {
-        List<Sentence> list = findAllSentences();
-        List<Sentence> currentSentences = getCurrentSentenceFromList(list);
-        CellManagerImpl cm = new CellManagerImpl();
-        cm.setDataSource(dataSource);
-        List<Cell> allCells = cm.findAllCells();
-        Cell cellToDelete;
-        for (Sentence s :currentSentences) {
-            cellToDelete = cm.getCellById(s.getCellId());
-            allCells.remove(cellToDelete);
+    @Override
+    public List<Cell> findEmptyCells() throws ServiceFailureException {
+        checkDataSource();
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            // the interval index knows only cells with sentences, so the anti-join is used even when it is enabled
+            st = conn.prepareStatement(
+                    "SELECT id, floor, capacity FROM cell " +
+                            "WHERE NOT EXISTS (SELECT 1 FROM sentence " +
+                            "WHERE sentence.cellId = cell.id AND sentence.endDay > ?) " +
+                            "ORDER BY id");
+            st.setDate(1, toSqlDate(today()));
+            return CellManagerImpl.executeQueryForMultipleCells(st);
+        } catch (SQLException ex) {
+            String msg = "Error when trying to find empty cells";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
         }
-        return allCells;
+    }
 
+    @Override
+    public List<Cell> findEmptyCells(Long afterId, int limit) throws ServiceFailureException {
+        checkDataSource();
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit is lower than 1");
+        }
+        Connection conn = null;
+        PreparedStatement st = null;
+        try {
+            conn = DBUtils.getConnection(dataSource);
+            st = conn.prepareStatement(
+                    "SELECT id, floor, capacity FROM cell " +
+                            "WHERE id > ? AND NOT EXISTS (SELECT 1 FROM sentence " +
+                            "WHERE sentence.cellId = cell.id AND sentence.endDay > ?) " +
+                            "ORDER BY id FETCH FIRST ? ROWS ONLY");
+            st.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            st.setDate(2, toSqlDate(today()));
+            st.setInt(3, limit);
+            return CellManagerImpl.executeQueryForMultipleCells(st);
+        } catch (SQLException ex) {
+            String msg = "Error when trying to find empty cells after id = " + afterId;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(conn, st);
+        }
     }
 
     /*
@@ -399,20 +1098,64 @@ public class SentenceManagerImpl implements SentenceManager {
         }
     }
 
-    private void checkCell(Long cellId) {
-        CellManagerImpl cm = new CellManagerImpl();
-        cm.setDataSource(dataSource);
-        Cell cell = cm.getCellById(cellId);
-        if (cell == null) {
+    /**
+     * Locks the row of given cell until the end of current transaction and checks that the cell
+     * has some free capacity. Concurrent inserts into the same cell are serialized by the lock,
+     * so the capacity can not be exceeded.
+     */
+    private void checkCell(Connection connection, Long cellId) throws SQLException {
+        Integer free = lockCells(connection, Collections.singleton(cellId)).get(cellId);
+        if (free == null) {
             throw new ValidationException("Error, cell with this id is not in database");
         }
+        if (free <= 0) {
+            throw new ValidationException("Error, cell capacity is to low");
+        }
+    }
 
-        List<Sentence> list = findSentencesForCell(cell);
+    /**
+     * Locks rows of given cells until the end of current transaction. Cells are locked in the order
+     * of their ids, so that two transactions locking the same cells can not deadlock.
+     * @return map from cell id to free capacity, cells which are not in database are missing.
+     */
+    private Map<Long, Integer> lockCells(Connection connection, Collection<Long> cellIds) throws SQLException {
+        List<Long> sortedIds = new ArrayList<>(new TreeSet<>(cellIds));
+        Map<Long, Integer> result = new HashMap<>();
+        PreparedStatement st = null;
+        try {
+            st = connection.prepareStatement(
+                    "UPDATE cell SET capacity = capacity WHERE id = ?");
+            for (Long cellId : sortedIds) {
+                st.setLong(1, cellId);
+                st.executeUpdate();
+            }
+            st.close();
+            st = null;
+            for (List<Long> chunk : DBUtils.partition(sortedIds, DBUtils.MAX_IN_LIST_SIZE)) {
+                st = connection.prepareStatement(
+                        "SELECT id, capacity FROM cell WHERE id IN (" + DBUtils.createPlaceholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    st.setLong(i + 1, chunk.get(i));
+                }
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    result.put(rs.getLong("id"), rs.getInt("capacity"));
+                }
+                st.close();
+                st = null;
+            }
+        } finally {
+            if (st != null) {
+                st.close();
+            }
+        }
 
-        if (getCurrentSentenceFromList(list).size() >= cell.getCapacity()) {
-            throw new ValidationException("Error, cell capacity is to low");
+        for (Map.Entry<Long, Integer> entry : countCurrentSentences(connection, result.keySet()).entrySet()) {
+            result.put(entry.getKey(), result.get(entry.getKey()) - entry.getValue());
         }
+        return result;
     }
+
     /*private void checkPrisoner(Long prisonerId) {
         PrisonerManagerImpl pm = new PrisonerManagerImpl();
         pm.setDataSource(dataSource);
@@ -424,23 +1167,69 @@ public class SentenceManagerImpl implements SentenceManager {
 
     public List<Sentence> getCurrentSentenceFromList(List<Sentence> list) {
         List<Sentence> retList = new ArrayList<>();
-        
-        if (this.clock != null) {
-            for (Sentence s : list) {
-                if (s.getEndDay().isAfter(LocalDate.now(clock))) {
-                    retList.add(s);
-                }
-            }
-        } else {
-            for (Sentence s : list) {
-                if (s.getEndDay().isAfter(LocalDate.now())) {
-                    retList.add(s);
-                }
+        LocalDate today = today();
+        for (Sentence s : list) {
+            if (s.getEndDay().isAfter(today)) {
+                retList.add(s);
             }
         }
         return retList;
     }
 
+    /**
+     * @return id of indexed sentence with the same columns, or null when there is no index.
+     */
+    private Long findIndexedId(Sentence sentence) {
+        SentenceIntervalIndex index = intervalIndex;
+        return index == null ? null : index.findId(sentence);
+    }
+
+    /**
+     * Applies written sentence to the interval index. In a transaction of {@link TransactionTemplate}
+     * the sentence is read again after the transaction completes, since the transaction may be rolled back.
+     * @param id id of the sentence.
+     * @param sentence written sentence, or null when it was deleted.
+     */
+    private void reindex(Long id, Sentence sentence) {
+        SentenceIntervalIndex index = intervalIndex;
+        if (index == null || id == null) {
+            return;
+        }
+        if (!TransactionTemplate.isTransactionActive()) {
+            if (sentence == null) {
+                index.remove(id);
+            } else {
+                index.put(id, sentence);
+            }
+            return;
+        }
+        TransactionTemplate.afterCompletion(() -> {
+            try {
+                Sentence current = getSentenceById(id);
+                if (current == null) {
+                    index.remove(id);
+                } else {
+                    index.put(id, current);
+                }
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "cannot read sentence " + id + " into interval index", ex);
+                index.remove(id);
+            }
+        });
+    }
+
+    static void bindSentence(PreparedStatement st, Sentence sentence) throws SQLException {
+        st.setLong(1, sentence.getPrisonerId());
+        st.setLong(2, sentence.getCellId());
+        st.setDate(3, toSqlDate(sentence.getStartDay()));
+        st.setDate(4, toSqlDate(sentence.getEndDay()));
+        st.setString(5, sentence.getPunishment());
+    }
+
+    private LocalDate today() {
+        return clock != null ? LocalDate.now(clock) : LocalDate.now();
+    }
+
     private static LocalDate toLocalDate(Date date) {
         return date == null ? null : date.toLocalDate();
     }
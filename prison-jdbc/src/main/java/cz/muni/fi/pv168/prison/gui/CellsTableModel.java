@@ -2,24 +2,19 @@
 package cz.muni.fi.pv168.prison.gui;
 
 import cz.muni.fi.pv168.prison.backend.Cell;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import javax.swing.table.AbstractTableModel;
 
 /**
  *
  * @author Zita
  */
-public class CellsTableModel extends AbstractTableModel {
+public class CellsTableModel extends PagedTableModel<Cell> {
     
     private static ResourceBundle resourceBundle = ResourceBundle.getBundle("cz/muni/fi/pv168/prison/gui/strings", Locale.getDefault());
-    private List<Cell> cells = new ArrayList<Cell>();
 
-    @Override
-    public int getRowCount() {
-        return cells.size();
+    public CellsTableModel() {
+        super(Cell::getId);
     }
     
     @Override
@@ -28,8 +23,7 @@ public class CellsTableModel extends AbstractTableModel {
     }
     
     @Override
-    public Object getValueAt(int rowIndex, int columnIndex){
-        Cell cell = cells.get(rowIndex);
+    protected Object getColumnValue(Cell cell, int columnIndex) {
         switch (columnIndex) {
             case 0:
                 return cell.getId();
@@ -42,24 +36,16 @@ public class CellsTableModel extends AbstractTableModel {
         }
     }
     
-    public void addCell(Cell cell){
-        cells.add(cell);
-        int lastRow = cells.size() - 1;
-        fireTableRowsInserted(lastRow, lastRow);
+    public void addCell(Cell cell) {
+        addRow(cell);
     }
     
     public void deleteCell(int index) {
-        this.cells.remove(index);
-        fireTableRowsDeleted(index, index);
+        removeRow(index);
     }
     
     public void updateCell(Cell cell, int index) {
-        cells.set(index, cell);
-        fireTableRowsUpdated(index, index);
-    }
-    
-    public void refresh() {
-        this.cells.clear();
+        updateRow(cell, index);
     }
     
     @Override
@@ -92,7 +78,10 @@ public class CellsTableModel extends AbstractTableModel {
     
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-        Cell cell = cells.get(rowIndex);
+        Cell cell = getRow(rowIndex);
+        if (cell == null) {
+            return;
+        }
         switch(columnIndex) {
             case 0:
                 cell.setId((Long) aValue);
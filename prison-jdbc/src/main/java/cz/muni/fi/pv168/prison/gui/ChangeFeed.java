@@ -0,0 +1,118 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.prison.backend.Change;
+import cz.muni.fi.pv168.prison.backend.ChangePoller;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Polls the change log periodically and reloads changed rows of registered table models,
+ * so that changes made by other clients appear without refreshing whole tables.
+ * <p>
+ * Each poll runs in the background and reloads every changed row once, even when it was changed many times.
+ * When the poller reports that changes were lost, the models are refreshed whole.
+ * The feed has to be used only in the event dispatch thread.
+ */
+public class ChangeFeed {
+
+    private static final Logger logger = Logger.getLogger(
+            ChangeFeed.class.getName());
+
+    public static final int DEFAULT_PERIOD_MILLIS = 2000;
+
+    private final ChangePoller poller;
+    private final DbExecutor executor;
+    private final Map<Change.Entity, PagedTableModel<?>> models = new EnumMap<>(Change.Entity.class);
+    private final Timer timer;
+    private boolean polling;
+
+    /**
+     * @param poller poller created before the models were loaded
+     * @param executor executor of polls
+     */
+    public ChangeFeed(ChangePoller poller, DbExecutor executor) {
+        this.poller = poller;
+        this.executor = executor;
+        this.timer = new Timer(DEFAULT_PERIOD_MILLIS, e -> poll());
+    }
+
+    /**
+     * @param entity changed entity
+     * @param model model of the entity
+     */
+    public void register(Change.Entity entity, PagedTableModel<?> model) {
+        models.put(entity, model);
+    }
+
+    /**
+     * @param periodMillis time between polls
+     */
+    public void start(int periodMillis) {
+        timer.setDelay(periodMillis);
+        timer.setInitialDelay(periodMillis);
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Reads new changes in the background, unless the previous poll is still running.
+     * The poll does not wait for a saturated executor, the timer repeats it.
+     */
+    public void poll() {
+        if (polling) {
+            return;
+        }
+        polling = true;
+        // null means that changes were lost
+        executor.trySupply(() -> {
+            List<Change> changes = poller.poll();
+            return poller.checkLost() ? null : changes;
+        }).whenComplete((changes, ex) ->
+                SwingUtilities.invokeLater(() -> {
+                    polling = false;
+                    if (ex instanceof RejectedExecutionException) {
+                        logger.log(Level.FINE, "executor is saturated, changes are read by the next poll");
+                        return;
+                    }
+                    if (ex != null) {
+                        logger.log(Level.WARNING, "cannot read changes from DB", ex);
+                        return;
+                    }
+                    if (changes == null) {
+                        logger.log(Level.WARNING, "changes were deleted before they were read, refreshing tables");
+                        models.values().forEach(PagedTableModel::refresh);
+                        return;
+                    }
+                    apply(changes);
+                }));
+    }
+
+    private void apply(List<Change> changes) {
+        Map<Change.Entity, Set<Long>> changedIds = new EnumMap<>(Change.Entity.class);
+        for (Change change : changes) {
+            changedIds.computeIfAbsent(change.getEntity(), entity -> new LinkedHashSet<>()).add(change.getEntityId());
+        }
+        for (Map.Entry<Change.Entity, Set<Long>> entry : changedIds.entrySet()) {
+            PagedTableModel<?> model = models.get(entry.getKey());
+            if (model != null) {
+                model.reloadRows(entry.getValue());
+            }
+        }
+        if (!changes.isEmpty()) {
+            logger.log(Level.FINE, "applied {0} changes up to version {1}",
+                    new Object[]{changes.size(), poller.getLastVersion()});
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import java.util.Objects;
+
+/**
+ * Condition on values of one column of a table, see {@link IndexedRowSorter}.
+ * <p>
+ * Filters are immutable. Each kind of filter is a separate class, so that a {@link PagedTableModel.FilterLoader}
+ * can translate it to a query of a manager. Other subclasses are evaluated only in memory.
+ */
+public abstract class ColumnFilter {
+
+    private final int column;
+
+    protected ColumnFilter(int column) {
+        if (column < 0) {
+            throw new IllegalArgumentException("column is negative");
+        }
+        this.column = column;
+    }
+
+    /**
+     * @param column index of the column in the model
+     * @param prefix case sensitive prefix of values
+     * @return filter of text values starting with the prefix
+     */
+    public static Prefix prefix(int column, String prefix) {
+        return new Prefix(column, prefix);
+    }
+
+    /**
+     * @param column index of the column in the model
+     * @param value required value
+     * @return filter of values equal to the value
+     */
+    public static EqualTo equalTo(int column, Object value) {
+        return new EqualTo(column, value);
+    }
+
+    /**
+     * @param column index of the column in the model
+     * @param from the lowest value, or null when the range is not limited from below
+     * @param to the highest value, or null when the range is not limited from above
+     * @param <C> type of values
+     * @return filter of values in the closed range
+     */
+    public static <C extends Comparable<? super C>> Between<C> between(int column, C from, C to) {
+        return new Between<>(column, from, to);
+    }
+
+    /**
+     * @return index of the column in the model
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @param value value of the column, may be null
+     * @return true when the value passes the filter
+     */
+    public abstract boolean matches(Object value);
+
+    /**
+     * Tells whether every value passing this filter passes also the previous one, so that only rows which passed
+     * the previous filter have to be tested, as when a letter is appended to the prefix.
+     *
+     * @param previous filter applied before
+     * @return true when this filter is narrower or equal
+     */
+    public abstract boolean narrows(ColumnFilter previous);
+
+    /**
+     * Text values starting with a prefix.
+     */
+    public static final class Prefix extends ColumnFilter {
+
+        private final String prefix;
+
+        private Prefix(int column, String prefix) {
+            super(column);
+            this.prefix = Objects.requireNonNull(prefix, "prefix");
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return value != null && value.toString().startsWith(prefix);
+        }
+
+        @Override
+        public boolean narrows(ColumnFilter previous) {
+            return previous instanceof Prefix && previous.getColumn() == getColumn()
+                    && prefix.startsWith(((Prefix) previous).prefix);
+        }
+
+        @Override
+        public String toString() {
+            return "Prefix{column=" + getColumn() + ", prefix=" + prefix + '}';
+        }
+    }
+
+    /**
+     * Values equal to a value.
+     */
+    public static final class EqualTo extends ColumnFilter {
+
+        private final Object value;
+
+        private EqualTo(int column, Object value) {
+            super(column);
+            this.value = Objects.requireNonNull(value, "value");
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            return this.value.equals(value);
+        }
+
+        @Override
+        public boolean narrows(ColumnFilter previous) {
+            return previous.getColumn() == getColumn() && previous.matches(value);
+        }
+
+        @Override
+        public String toString() {
+            return "EqualTo{column=" + getColumn() + ", value=" + value + '}';
+        }
+    }
+
+    /**
+     * Values in a closed range.
+     *
+     * @param <C> type of values
+     */
+    public static final class Between<C extends Comparable<? super C>> extends ColumnFilter {
+
+        private final C from;
+        private final C to;
+
+        private Between(int column, C from, C to) {
+            super(column);
+            if (from != null && to != null && from.compareTo(to) > 0) {
+                throw new IllegalArgumentException("from is greater than to");
+            }
+            this.from = from;
+            this.to = to;
+        }
+
+        public C getFrom() {
+            return from;
+        }
+
+        public C getTo() {
+            return to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean matches(Object value) {
+            if (value == null) {
+                return false;
+            }
+            C comparable = (C) value;
+            return (from == null || from.compareTo(comparable) <= 0) && (to == null || to.compareTo(comparable) >= 0);
+        }
+
+        @Override
+        public boolean narrows(ColumnFilter previous) {
+            if (!(previous instanceof Between) || previous.getColumn() != getColumn()) {
+                return false;
+            }
+            Between<?> range = (Between<?>) previous;
+            return (range.from == null || from != null && range.matches(from))
+                    && (range.to == null || to != null && range.matches(to));
+        }
+
+        @Override
+        public String toString() {
+            return "Between{column=" + getColumn() + ", from=" + from + ", to=" + to + '}';
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.prison.backend.Change;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Queue of changes made in the GUI, which writes them to the database in the background in the order
+ * they were made.
+ * <p>
+ * Only one batch of commands is written at a time, commands made meanwhile wait in the queue. A waiting update
+ * or delete of a row is replaced by the next command for the same row at its position in the queue, so only
+ * the last of rapid repeated edits is written, and consecutive creations of rows of one entity are written by one call of the manager.
+ * Written rows are applied to the registered models, progress and failures are reported to the listener.
+ * <p>
+ * At most {@link #MAX_PENDING} commands wait, further commands are rejected and reported as failures.
+ * The queue has to be used only in the event dispatch thread.
+ */
+public class CommandQueue {
+
+    private static final Logger logger = Logger.getLogger(
+            CommandQueue.class.getName());
+
+    public static final int MAX_PENDING = 1000;
+    public static final int MAX_BATCH = 100;
+
+    /**
+     * Writes rows of one entity to the database.
+     *
+     * @param <T> type of rows
+     */
+    public interface Writer<T> {
+        /**
+         * @param rows new rows, their ids are set
+         * @return result with failures of rows which were not created
+         */
+        BatchResult<T> create(List<T> rows);
+
+        /**
+         * @param row changed row
+         */
+        void update(T row);
+
+        /**
+         * @param row deleted row
+         */
+        void delete(T row);
+
+        /**
+         * @param create creates rows, typically <code>createXxx(List)</code> of a manager
+         * @param update updates one row
+         * @param delete deletes one row
+         * @param <T> type of rows
+         * @return writer calling the functions
+         */
+        static <T> Writer<T> of(Function<List<T>, BatchResult<T>> create, Consumer<T> update, Consumer<T> delete) {
+            return new Writer<T>() {
+                @Override
+                public BatchResult<T> create(List<T> rows) {
+                    return create.apply(rows);
+                }
+
+                @Override
+                public void update(T row) {
+                    update.accept(row);
+                }
+
+                @Override
+                public void delete(T row) {
+                    delete.accept(row);
+                }
+            };
+        }
+    }
+
+    /**
+     * Receives reports of the queue in the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * @param pending number of commands which are waiting or being written
+         */
+        void progress(int pending);
+
+        /**
+         * @param entity entity of the command
+         * @param operation operation of the command
+         * @param cause cause of the failure
+         */
+        void failed(Change.Entity entity, Change.Operation operation, RuntimeException cause);
+    }
+
+    private static final class Target<T> {
+        private final PagedTableModel<T> model;
+        private final Writer<T> writer;
+
+        private Target(PagedTableModel<T> model, Writer<T> writer) {
+            this.model = model;
+            this.writer = writer;
+        }
+    }
+
+    private static final class Command {
+        private final Change.Entity entity;
+        private final Change.Operation operation;
+        private final Object row;
+        /** set in the background thread when writing fails */
+        private RuntimeException failure;
+
+        private Command(Change.Entity entity, Change.Operation operation, Object row) {
+            this.entity = entity;
+            this.operation = operation;
+            this.row = row;
+        }
+    }
+
+    private final DbExecutor executor;
+    private final Map<Change.Entity, Target<?>> targets = new EnumMap<>(Change.Entity.class);
+    /** waiting commands by row, commands creating rows are keys of themselves */
+    private final Map<Object, Command> waiting = new LinkedHashMap<>();
+    /** batch being written, null when the queue is idle */
+    private List<Command> writing;
+    private Listener listener;
+    private long coalesced;
+
+    /**
+     * @param executor executor of writes, which is not shared with loading of tables
+     */
+    public CommandQueue(DbExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param entity entity
+     * @param model model showing rows of the entity
+     * @param writer writer of rows of the entity
+     * @param <T> type of rows
+     */
+    public <T> void register(Change.Entity entity, PagedTableModel<T> model, Writer<T> writer) {
+        targets.put(entity, new Target<>(model, writer));
+    }
+
+    /**
+     * @param listener receiver of progress and failures, or null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param entity entity of the row
+     * @param row new row without id
+     */
+    public void create(Change.Entity entity, Object row) {
+        submit(new Command(entity, Change.Operation.INSERT, row));
+    }
+
+    /**
+     * @param entity entity of the row
+     * @param row new value of the row, it replaces waiting update of the row
+     */
+    public void update(Change.Entity entity, Object row) {
+        submit(new Command(entity, Change.Operation.UPDATE, row));
+    }
+
+    /**
+     * @param entity entity of the row
+     * @param row deleted row, waiting update of the row is dropped
+     */
+    public void delete(Change.Entity entity, Object row) {
+        submit(new Command(entity, Change.Operation.DELETE, row));
+    }
+
+    /**
+     * @return number of commands which are waiting or being written
+     */
+    public int getPendingCount() {
+        return waiting.size() + (writing == null ? 0 : writing.size());
+    }
+
+    /**
+     * @return number of commands replaced by a later command for the same row
+     */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    private void submit(Command command) {
+        Object key = command.operation == Change.Operation.INSERT ? command
+                : Arrays.asList(command.entity, idOf(command));
+        Command previous = waiting.get(key);
+        if (previous != null) {
+            if (previous.operation == Change.Operation.DELETE) {
+                logger.log(Level.FINE, "row {0} is being deleted, {1} is ignored", new Object[]{key, command.operation});
+                return;
+            }
+            // the command replaces the previous one in place, so the row keeps its position in the queue
+            coalesced++;
+        } else if (waiting.size() >= MAX_PENDING) {
+            fail(command, new RejectedExecutionException("too many pending changes"));
+            return;
+        }
+        waiting.put(key, command);
+        writeNext();
+        fireProgress();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Long idOf(Command command) {
+        Target<T> target = (Target<T>) target(command.entity);
+        Long id = target.model.getId((T) command.row);
+        if (id == null) {
+            throw new IllegalArgumentException(command.entity + " has no id");
+        }
+        return id;
+    }
+
+    private Target<?> target(Change.Entity entity) {
+        Target<?> target = targets.get(entity);
+        if (target == null) {
+            throw new IllegalArgumentException("entity " + entity + " is not registered");
+        }
+        return target;
+    }
+
+    private void writeNext() {
+        if (writing != null || waiting.isEmpty()) {
+            return;
+        }
+        List<Command> batch = new ArrayList<>();
+        Iterator<Command> iterator = waiting.values().iterator();
+        while (iterator.hasNext() && batch.size() < MAX_BATCH) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        writing = batch;
+        executor.run(() -> write(batch)).whenComplete((ignored, ex) ->
+                SwingUtilities.invokeLater(() -> written(batch, ex)));
+    }
+
+    /**
+     * Writes commands in the background, consecutive creations of one entity at once.
+     */
+    private void write(List<Command> batch) {
+        int start = 0;
+        while (start < batch.size()) {
+            Command first = batch.get(start);
+            int end = start + 1;
+            if (first.operation == Change.Operation.INSERT) {
+                while (end < batch.size() && batch.get(end).operation == Change.Operation.INSERT
+                        && batch.get(end).entity == first.entity) {
+                    end++;
+                }
+            }
+            write(first.entity, batch.subList(start, end));
+            start = end;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void write(Change.Entity entity, List<Command> commands) {
+        Writer<T> writer = (Writer<T>) target(entity).writer;
+        Command first = commands.get(0);
+        try {
+            switch (first.operation) {
+                case INSERT:
+                    List<T> rows = new ArrayList<>();
+                    for (Command command : commands) {
+                        rows.add((T) command.row);
+                    }
+                    BatchResult<T> result = writer.create(rows);
+                    for (Map.Entry<Integer, RuntimeException> failure : result.getFailures().entrySet()) {
+                        commands.get(failure.getKey()).failure = failure.getValue();
+                    }
+                    break;
+                case UPDATE:
+                    writer.update((T) first.row);
+                    break;
+                case DELETE:
+                    writer.delete((T) first.row);
+                    break;
+                default:
+                    throw new IllegalArgumentException("operation " + first.operation);
+            }
+        } catch (RuntimeException ex) {
+            for (Command command : commands) {
+                command.failure = ex;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void written(List<Command> batch, Throwable ex) {
+        writing = null;
+        for (Command command : batch) {
+            RuntimeException failure = ex == null ? command.failure : asRuntimeException(ex);
+            if (failure != null) {
+                fail(command, failure);
+            } else {
+                PagedTableModel<T> model = (PagedTableModel<T>) target(command.entity).model;
+                model.applySaved((T) command.row, command.operation == Change.Operation.DELETE);
+            }
+        }
+        writeNext();
+        fireProgress();
+    }
+
+    private static RuntimeException asRuntimeException(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof RuntimeException ? (RuntimeException) cause
+                : new ServiceFailureException("writing changes failed", cause);
+    }
+
+    private void fail(Command command, RuntimeException cause) {
+        logger.log(Level.SEVERE, "cannot " + command.operation + " " + command.entity, cause);
+        if (listener != null) {
+            listener.failed(command.entity, command.operation, cause);
+        }
+    }
+
+    private void fireProgress() {
+        if (listener != null) {
+            listener.progress(getPendingCount());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Text field which filters rows of a table by {@link IndexedRowSorter} while the user types.
+ * The filter is set when the user stops typing for {@link #DELAY_MILLIS}, text which cannot be parsed
+ * is shown in red and does not change the filter.
+ */
+public class FilterField extends JPanel {
+
+    private static final Logger logger = Logger.getLogger(
+            FilterField.class.getName());
+
+    public static final int DELAY_MILLIS = 300;
+
+    private final JTextField textField = new JTextField();
+    private final IndexedRowSorter<?> sorter;
+    private final Function<String, ColumnFilter> parser;
+    private final Timer timer;
+
+    /**
+     * @param label label of the field
+     * @param sorter sorter of the table
+     * @param parser creates filter from trimmed text which is not empty, it throws RuntimeException
+     *               when the text is not valid
+     */
+    public FilterField(String label, IndexedRowSorter<?> sorter, Function<String, ColumnFilter> parser) {
+        super(new BorderLayout(5, 0));
+        this.sorter = sorter;
+        this.parser = parser;
+        timer = new Timer(DELAY_MILLIS, e -> applyFilter());
+        timer.setRepeats(false);
+        add(new JLabel(label), BorderLayout.WEST);
+        add(textField, BorderLayout.CENTER);
+        textField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+        });
+    }
+
+    private void applyFilter() {
+        String text = textField.getText().trim();
+        ColumnFilter filter;
+        try {
+            filter = text.isEmpty() ? null : parser.apply(text);
+        } catch (RuntimeException ex) {
+            logger.log(Level.FINE, "invalid filter " + text, ex);
+            textField.setForeground(Color.RED);
+            return;
+        }
+        textField.setForeground(UIManager.getColor("TextField.foreground"));
+        sorter.setFilter(filter);
+    }
+}
@@ -0,0 +1,524 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
+
+/**
+ * Row sorter for large tables, which sorts by precomputed keys and filters incrementally.
+ * <p>
+ * Values of sorted and filtered columns are read from the model once and kept in column indexes together with
+ * their sort keys, collation keys of texts, so neither sorting nor filtering asks the model for values again.
+ * The sorted order of all rows is kept while the filter changes, so a new filter takes linear time instead of
+ * sorting again. A filter which narrows the previous one, as when a letter is appended to a prefix,
+ * tests only rows which passed the previous filter.
+ * <p>
+ * When the model is a {@link PagedTableModel} which does not hold all its rows, or which is filtered already,
+ * filters are pushed down to the model, which loads only passing rows. Such rows are not sortable,
+ * they keep the order of the model until all of them are loaded, sort keys are dropped and the listener set by
+ * {@link #setUnsortableListener(Runnable)} is told when the user asks to sort them.
+ * <p>
+ * Inserted and deleted rows are put to the indexes in place, only the new rows are read from the model.
+ * <p>
+ * The sorter has to be used only in the event dispatch thread.
+ *
+ * @param <M> type of the model
+ */
+public class IndexedRowSorter<M extends TableModel> extends RowSorter<M> {
+
+    private static final int MAX_SORT_KEYS = 3;
+
+    private final M model;
+    private final Collator collator = Collator.getInstance();
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private ColumnFilter filter;
+    /** values of columns by model row, computed when the column is sorted or filtered */
+    private final Map<Integer, Object[]> values = new HashMap<>();
+    /** sort keys of columns by model row */
+    private final Map<Integer, Object[]> keys = new HashMap<>();
+    /** model rows in sorted order, null when rows are not sorted */
+    private int[] sorted;
+    /** model rows which pass the filter, null when there is no filter */
+    private BitSet passing;
+    /** model rows by view row, null when the view is the same as the model */
+    private int[] viewToModel;
+    private int[] modelToView;
+    /** number of model rows the indexes were built for */
+    private int indexedRowCount;
+    private Runnable unsortableListener;
+
+    public IndexedRowSorter(M model) {
+        this.model = model;
+        this.indexedRowCount = model.getRowCount();
+    }
+
+    @Override
+    public M getModel() {
+        return model;
+    }
+
+    /**
+     * Sets filter of rows, it is pushed down to a paged model which does not hold all rows.
+     *
+     * @param filter filter of rows, or null to show all rows
+     */
+    public void setFilter(ColumnFilter filter) {
+        if (model instanceof PagedTableModel) {
+            PagedTableModel<?> paged = (PagedTableModel<?>) model;
+            if (paged.getFilter() != null || !paged.isFullyLoaded() && (filter != null || this.filter != null)) {
+                this.filter = null;
+                passing = null;
+                paged.setFilter(filter);
+                return;
+            }
+        }
+        ColumnFilter previous = this.filter;
+        this.filter = filter;
+        int[] lastViewToModel = currentViewToModel();
+        filter(previous);
+        buildView();
+        fireRowSorterChanged(lastViewToModel);
+    }
+
+    /**
+     * @return filter of rows, the one pushed down to a paged model included, or null when all rows are shown
+     */
+    public ColumnFilter getFilter() {
+        if (filter == null && model instanceof PagedTableModel) {
+            return ((PagedTableModel<?>) model).getFilter();
+        }
+        return filter;
+    }
+
+    /**
+     * @param listener called when sort keys are set while rows are not sortable, or null
+     */
+    public void setUnsortableListener(Runnable listener) {
+        this.unsortableListener = listener;
+    }
+
+    /**
+     * @return true when rows can be sorted, false while a paged model does not hold all its rows
+     */
+    public boolean isSortable() {
+        return isIndexed();
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        checkColumn(column);
+        List<SortKey> newKeys = new ArrayList<>(sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        for (int i = 0; i < newKeys.size(); i++) {
+            if (newKeys.get(i).getColumn() == column) {
+                if (i == 0 && newKeys.get(i).getSortOrder() == SortOrder.ASCENDING) {
+                    order = SortOrder.DESCENDING;
+                }
+                newKeys.remove(i);
+                break;
+            }
+        }
+        newKeys.add(0, new SortKey(column, order));
+        if (newKeys.size() > MAX_SORT_KEYS) {
+            newKeys = newKeys.subList(0, MAX_SORT_KEYS);
+        }
+        setSortKeys(newKeys);
+    }
+
+    /**
+     * Sets sort keys and sorts rows, keys set while rows are not sortable are ignored
+     * and reported to the unsortable listener.
+     *
+     * @param keys sort keys, or null to keep the order of the model
+     */
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> newKeys = keys == null ? Collections.<SortKey>emptyList() : new ArrayList<>(keys);
+        for (SortKey key : newKeys) {
+            checkColumn(key.getColumn());
+        }
+        if (!newKeys.isEmpty() && !isIndexed()) {
+            if (unsortableListener != null) {
+                unsortableListener.run();
+            }
+            return;
+        }
+        if (newKeys.equals(sortKeys)) {
+            return;
+        }
+        sortKeys = Collections.unmodifiableList(newKeys);
+        int[] lastViewToModel = currentViewToModel();
+        sort();
+        buildView();
+        fireSortOrderChanged();
+        fireRowSorterChanged(lastViewToModel);
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("invalid view index " + index);
+            }
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (modelToView == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("invalid model index " + index);
+            }
+            return index;
+        }
+        return index < modelToView.length ? modelToView[index] : -1;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel == null ? model.getRowCount() : viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        filter = null;
+        rebuild();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        rebuild();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        if (!isIndexed() || indexedRowCount + count != model.getRowCount()) {
+            rebuild();
+            return;
+        }
+        for (Map.Entry<Integer, Object[]> column : values.entrySet()) {
+            Object[] columnValues = insert(column.getValue(), firstRow, count);
+            Object[] columnKeys = keys.containsKey(column.getKey())
+                    ? insert(keys.get(column.getKey()), firstRow, count) : null;
+            for (int row = firstRow; row <= endRow; row++) {
+                columnValues[row] = model.getValueAt(row, column.getKey());
+                if (columnKeys != null) {
+                    columnKeys[row] = keyOf(columnValues[row]);
+                }
+            }
+            column.setValue(columnValues);
+            if (columnKeys != null) {
+                keys.put(column.getKey(), columnKeys);
+            }
+        }
+        indexedRowCount += count;
+        if (passing != null) {
+            BitSet shifted = new BitSet(indexedRowCount);
+            for (int row = passing.nextSetBit(0); row >= 0; row = passing.nextSetBit(row + 1)) {
+                shifted.set(row < firstRow ? row : row + count);
+            }
+            Object[] filtered = values(filter.getColumn());
+            for (int row = firstRow; row <= endRow; row++) {
+                shifted.set(row, filter.matches(filtered[row]));
+            }
+            passing = shifted;
+        }
+        if (sorted != null) {
+            Comparator<Integer> comparator = comparator();
+            int[] result = new int[indexedRowCount];
+            int size = 0;
+            for (int modelRow : sorted) {
+                result[size++] = modelRow < firstRow ? modelRow : modelRow + count;
+            }
+            for (int row = firstRow; row <= endRow; row++) {
+                int position = insertionPoint(result, size, row, comparator);
+                System.arraycopy(result, position, result, position + 1, size - position);
+                result[position] = row;
+                size++;
+            }
+            sorted = result;
+        }
+        buildView();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        if (!isIndexed() || indexedRowCount - count != model.getRowCount()) {
+            rebuild();
+            return;
+        }
+        values.replaceAll((column, columnValues) -> delete(columnValues, firstRow, count));
+        keys.replaceAll((column, columnKeys) -> delete(columnKeys, firstRow, count));
+        indexedRowCount -= count;
+        if (passing != null) {
+            BitSet shifted = new BitSet(indexedRowCount);
+            for (int row = passing.nextSetBit(0); row >= 0; row = passing.nextSetBit(row + 1)) {
+                if (row < firstRow) {
+                    shifted.set(row);
+                } else if (row > endRow) {
+                    shifted.set(row - count);
+                }
+            }
+            passing = shifted;
+        }
+        if (sorted != null) {
+            int[] result = new int[indexedRowCount];
+            int size = 0;
+            for (int modelRow : sorted) {
+                if (modelRow < firstRow) {
+                    result[size++] = modelRow;
+                } else if (modelRow > endRow) {
+                    result[size++] = modelRow - count;
+                }
+            }
+            sorted = result;
+        }
+        buildView();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        int rowCount = model.getRowCount();
+        if (!isIndexed() || indexedRowCount != rowCount) {
+            rebuild();
+            return;
+        }
+        int last = Math.min(endRow, rowCount - 1);
+        for (Map.Entry<Integer, Object[]> column : values.entrySet()) {
+            Object[] columnKeys = keys.get(column.getKey());
+            for (int row = firstRow; row <= last; row++) {
+                Object value = model.getValueAt(row, column.getKey());
+                column.getValue()[row] = value;
+                if (columnKeys != null) {
+                    columnKeys[row] = keyOf(value);
+                }
+            }
+        }
+        if (passing != null) {
+            Object[] filtered = values(filter.getColumn());
+            for (int row = firstRow; row <= last; row++) {
+                passing.set(row, filter.matches(filtered[row]));
+            }
+        }
+        if (sorted != null) {
+            sort();
+        }
+        buildView();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated(firstRow, endRow);
+    }
+
+    private boolean isIndexed() {
+        return !(model instanceof PagedTableModel) || ((PagedTableModel<?>) model).isFullyLoaded();
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= model.getColumnCount()) {
+            throw new IndexOutOfBoundsException("column " + column + " of " + model.getColumnCount());
+        }
+    }
+
+    /**
+     * Drops column indexes, sorts and filters all rows again.
+     */
+    private void rebuild() {
+        values.clear();
+        keys.clear();
+        indexedRowCount = model.getRowCount();
+        if (filter != null && !isIndexed()) {
+            // rows of the paged model are not all in memory any more, so the filter is evaluated by the model
+            ColumnFilter pending = filter;
+            filter = null;
+            SwingUtilities.invokeLater(() -> setFilter(pending));
+        }
+        if (!sortKeys.isEmpty() && !isIndexed()) {
+            // the header shows that rows are not sorted any more
+            sortKeys = Collections.emptyList();
+            fireSortOrderChanged();
+        }
+        sort();
+        filter(null);
+        buildView();
+    }
+
+    private void sort() {
+        if (sortKeys.isEmpty() || !isIndexed()) {
+            sorted = null;
+            return;
+        }
+        sorted = IntStream.range(0, model.getRowCount()).boxed().sorted(comparator()).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return comparator of model rows by sort keys, rows with equal keys keep the order of the model
+     */
+    private Comparator<Integer> comparator() {
+        List<Object[]> sortColumns = new ArrayList<>();
+        for (SortKey key : sortKeys) {
+            sortColumns.add(keys(key.getColumn()));
+        }
+        return (a, b) -> {
+            for (int i = 0; i < sortKeys.size(); i++) {
+                Object[] columnKeys = sortColumns.get(i);
+                int result = compareKeys(columnKeys[a], columnKeys[b]);
+                if (result != 0) {
+                    return sortKeys.get(i).getSortOrder() == SortOrder.DESCENDING ? -result : result;
+                }
+            }
+            return Integer.compare(a, b);
+        };
+    }
+
+    /** binary search of the position of a new row among sorted rows */
+    private static int insertionPoint(int[] rows, int size, int row, Comparator<Integer> comparator) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(rows[middle], row) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static Object[] insert(Object[] array, int first, int count) {
+        Object[] result = new Object[array.length + count];
+        System.arraycopy(array, 0, result, 0, first);
+        System.arraycopy(array, first, result, first + count, array.length - first);
+        return result;
+    }
+
+    private static Object[] delete(Object[] array, int first, int count) {
+        Object[] result = new Object[array.length - count];
+        System.arraycopy(array, 0, result, 0, first);
+        System.arraycopy(array, first + count, result, first, result.length - first);
+        return result;
+    }
+
+    /**
+     * @param previous filter applied before, rows which did not pass it are not tested when the filter narrows it
+     */
+    private void filter(ColumnFilter previous) {
+        if (filter == null || !isIndexed()) {
+            passing = null;
+            return;
+        }
+        Object[] filtered = values(filter.getColumn());
+        BitSet result = new BitSet(filtered.length);
+        if (previous != null && passing != null && filter.narrows(previous)) {
+            for (int row = passing.nextSetBit(0); row >= 0; row = passing.nextSetBit(row + 1)) {
+                result.set(row, filter.matches(filtered[row]));
+            }
+        } else {
+            for (int row = 0; row < filtered.length; row++) {
+                result.set(row, filter.matches(filtered[row]));
+            }
+        }
+        passing = result;
+    }
+
+    private void buildView() {
+        if (sorted == null && passing == null) {
+            viewToModel = null;
+            modelToView = null;
+            return;
+        }
+        int rowCount = model.getRowCount();
+        viewToModel = new int[passing == null ? rowCount : passing.cardinality()];
+        modelToView = new int[rowCount];
+        Arrays.fill(modelToView, -1);
+        int viewRow = 0;
+        for (int i = 0; i < rowCount; i++) {
+            int modelRow = sorted == null ? i : sorted[i];
+            if (passing == null || passing.get(modelRow)) {
+                viewToModel[viewRow] = modelRow;
+                modelToView[modelRow] = viewRow++;
+            }
+        }
+    }
+
+    private int[] currentViewToModel() {
+        if (viewToModel != null) {
+            return viewToModel.clone();
+        }
+        return IntStream.range(0, model.getRowCount()).toArray();
+    }
+
+    private Object[] values(int column) {
+        Object[] columnValues = values.get(column);
+        if (columnValues == null) {
+            columnValues = new Object[model.getRowCount()];
+            for (int row = 0; row < columnValues.length; row++) {
+                columnValues[row] = model.getValueAt(row, column);
+            }
+            values.put(column, columnValues);
+        }
+        return columnValues;
+    }
+
+    private Object[] keys(int column) {
+        Object[] columnKeys = keys.get(column);
+        if (columnKeys == null) {
+            Object[] columnValues = values(column);
+            columnKeys = new Object[columnValues.length];
+            for (int row = 0; row < columnKeys.length; row++) {
+                columnKeys[row] = keyOf(columnValues[row]);
+            }
+            keys.put(column, columnKeys);
+        }
+        return columnKeys;
+    }
+
+    private Object keyOf(Object value) {
+        if (value == null || value instanceof Comparable && !(value instanceof String)) {
+            return value;
+        }
+        return collator.getCollationKey(value.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareKeys(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a == null) {
+            return -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
@@ -0,0 +1,598 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model which loads rows ordered by id in pages in the background, as the table asks for them.
+ * <p>
+ * Rows are loaded by keyset pagination, the first page when a loader is set and every next page
+ * when the table shows a row of the last loaded page, so the table grows while the user scrolls down.
+ * At most <code>maxPages</code> pages are held in memory, the least recently shown pages are dropped
+ * and loaded again when they are shown. Rows which are not loaded yet have null values.
+ * Each loaded page fires one change event.
+ * <p>
+ * Rows can be filtered by {@link #setFilter(ColumnFilter)}. A filter which the {@link FilterLoader} translates
+ * to a query is evaluated by the database, other filters are evaluated in the background while pages are loaded.
+ * <p>
+ * Rows changed elsewhere are applied by {@link #reloadRows(Collection)} or {@link #applyChange(Long, Object)}
+ * without loading whole pages again.
+ * <p>
+ * Loads are submitted without waiting, loads rejected by a saturated executor are repeated
+ * after {@link #RETRY_DELAY_MILLIS}, not when the table is painted again.
+ * <p>
+ * The model has to be used only in the event dispatch thread.
+ *
+ * @param <T> type of rows
+ */
+public abstract class PagedTableModel<T> extends AbstractTableModel {
+
+    private static final Logger logger = Logger.getLogger(
+            PagedTableModel.class.getName());
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_MAX_PAGES = 25;
+    public static final int RETRY_DELAY_MILLIS = 200;
+
+    /**
+     * Loads one page of rows ordered by id.
+     *
+     * @param <T> type of rows
+     */
+    public interface PageLoader<T> {
+        /**
+         * @param afterId id of the last row of the previous page, or null for the first page
+         * @param limit maximal number of rows
+         * @return rows with greater id, ordered by id
+         */
+        List<T> load(Long afterId, int limit);
+    }
+
+    /**
+     * Translates filters to page loaders which evaluate them in the database.
+     *
+     * @param <T> type of rows
+     */
+    public interface FilterLoader<T> {
+        /**
+         * @param filter filter of rows
+         * @return loader of rows passing the filter, ordered by id, or null when the filter is not supported
+         */
+        PageLoader<T> forFilter(ColumnFilter filter);
+    }
+
+    /**
+     * Loads rows with given ids at once, so that changed rows are reloaded by one query.
+     *
+     * @param <T> type of rows
+     */
+    public interface RowsLoader<T> {
+        /**
+         * @param ids ids of rows
+         * @return rows with given ids which exist, in any order
+         */
+        Collection<T> load(Collection<Long> ids);
+    }
+
+    private static final class Page<T> {
+        /** id of the last row of the previous page */
+        private final Long after;
+        private int size;
+        private List<T> rows;
+        private boolean loading;
+
+        private Page(Long after) {
+            this.after = after;
+        }
+    }
+
+    private final Function<T, Long> idOf;
+    private final List<Page<T>> pages = new ArrayList<>();
+    /** indexes of loaded pages, the least recently used first */
+    private final Set<Integer> loadedPages = new LinkedHashSet<>();
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int maxPages = DEFAULT_MAX_PAGES;
+    private DbExecutor executor;
+    /** loader of all rows */
+    private PageLoader<T> sourceLoader;
+    /** loader of rows passing the filter */
+    private PageLoader<T> loader;
+    private FilterLoader<T> filterLoader;
+    private RowsLoader<T> rowsLoader;
+    private ColumnFilter filter;
+    private int rowCount;
+    private boolean complete;
+    /** incremented by refresh, so that pages loaded before are ignored */
+    private int generation;
+    /** loads rejected by the executor, repeated by the retry timer */
+    private final List<Runnable> retries = new ArrayList<>();
+    private final Timer retryTimer;
+
+    protected PagedTableModel(Function<T, Long> idOf) {
+        this.idOf = idOf;
+        this.retryTimer = new Timer(RETRY_DELAY_MILLIS, e -> retry());
+        this.retryTimer.setRepeats(false);
+    }
+
+    /**
+     * @param pageSize number of rows loaded at once
+     * @param maxPages maximal number of pages held in memory, at least 2
+     */
+    public void setPaging(int pageSize, int maxPages) {
+        if (pageSize < 1 || maxPages < 2) {
+            throw new IllegalArgumentException("invalid paging");
+        }
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Sets source of rows and loads the first page.
+     *
+     * @param executor executor of loading
+     * @param loader loader of pages
+     */
+    public void load(DbExecutor executor, PageLoader<T> loader) {
+        this.executor = executor;
+        this.sourceLoader = loader;
+        this.loader = filter == null ? loader : createLoader(filter);
+        refresh();
+    }
+
+    /**
+     * @param rowsLoader loader of rows by ids used by {@link #reloadRows(Collection)}
+     */
+    public void setRowsLoader(RowsLoader<T> rowsLoader) {
+        this.rowsLoader = rowsLoader;
+    }
+
+    /**
+     * @param filterLoader translation of filters to queries, filters which it does not support
+     *                     are evaluated while rows are loaded
+     */
+    public void setFilterLoader(FilterLoader<T> filterLoader) {
+        this.filterLoader = filterLoader;
+    }
+
+    /**
+     * Sets filter of rows and loads the first page of passing rows.
+     *
+     * @param filter filter of rows, or null to show all rows
+     */
+    public void setFilter(ColumnFilter filter) {
+        this.filter = filter;
+        if (sourceLoader != null) {
+            loader = filter == null ? sourceLoader : createLoader(filter);
+        }
+        refresh();
+    }
+
+    /**
+     * @return filter of rows, or null when all rows are shown
+     */
+    public ColumnFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return true when all rows passing the filter are held in memory
+     */
+    public boolean isFullyLoaded() {
+        return complete && getLoadedRowCount() == rowCount;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        T row = getRow(rowIndex);
+        if (row == null) {
+            return null;
+        }
+        return getColumnValue(row, columnIndex);
+    }
+
+    /**
+     * @param row row of the table
+     * @param columnIndex index of the column
+     * @return value of the column, it may be called outside of the event dispatch thread
+     */
+    protected abstract Object getColumnValue(T row, int columnIndex);
+
+    /**
+     * Drops all rows and loads the first page again.
+     */
+    public void refresh() {
+        generation++;
+        retries.clear();
+        pages.clear();
+        loadedPages.clear();
+        rowCount = 0;
+        complete = false;
+        fireTableDataChanged();
+        if (loader != null) {
+            pages.add(new Page<>(null));
+            loadPage(0);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns row with given index, loads its page when it is not loaded.
+     *
+     * @param rowIndex index of the row
+     * @return the row, or null when it is not loaded yet
+     */
+    public T getRow(int rowIndex) {
+        int pageIndex = 0;
+        int offset = rowIndex;
+        while (pageIndex < pages.size() && offset >= pages.get(pageIndex).size) {
+            offset -= pages.get(pageIndex).size;
+            pageIndex++;
+        }
+        if (pageIndex == pages.size()) {
+            throw new IndexOutOfBoundsException("row " + rowIndex + " of " + rowCount);
+        }
+        Page<T> page = pages.get(pageIndex);
+        if (pageIndex == pages.size() - 1 && !complete) {
+            loadNextPage();
+        }
+        if (page.rows == null) {
+            loadPage(pageIndex);
+            return null;
+        }
+        touch(pageIndex);
+        return page.rows.get(offset);
+    }
+
+    /**
+     * Appends new row, which has the greatest id, when all rows are loaded.
+     * Otherwise the row is loaded with its page when the user scrolls to the end.
+     *
+     * @param row new row
+     */
+    public void addRow(T row) {
+        if (!complete || pages.isEmpty()) {
+            return;
+        }
+        Page<T> last = pages.get(pages.size() - 1);
+        if (last.rows == null) {
+            return;
+        }
+        last.rows.add(row);
+        last.size++;
+        rowCount++;
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+    }
+
+    /**
+     * @param rowIndex index of removed row
+     */
+    public void removeRow(int rowIndex) {
+        int[] position = locate(rowIndex);
+        Page<T> page = pages.get(position[0]);
+        if (page.rows != null) {
+            page.rows.remove(position[1]);
+        }
+        page.size--;
+        rowCount--;
+        fireTableRowsDeleted(rowIndex, rowIndex);
+    }
+
+    /**
+     * @param row new value of the row
+     * @param rowIndex index of the row
+     */
+    public void updateRow(T row, int rowIndex) {
+        int[] position = locate(rowIndex);
+        Page<T> page = pages.get(position[0]);
+        if (page.rows != null) {
+            page.rows.set(position[1], row);
+        }
+        fireTableRowsUpdated(rowIndex, rowIndex);
+    }
+
+    /**
+     * Loads current state of rows with given ids in the background by one call of the {@link RowsLoader}
+     * and applies it by {@link #applyChange(Long, Object)}. Nothing is reloaded until the rows loader and
+     * the source of rows are set.
+     *
+     * @param ids ids of changed rows
+     */
+    public void reloadRows(Collection<Long> ids) {
+        if (sourceLoader == null || rowsLoader == null || ids.isEmpty()) {
+            return;
+        }
+        int loadGeneration = generation;
+        RowsLoader<T> byIds = rowsLoader;
+        ColumnFilter rowFilter = filter;
+        List<Long> changed = new ArrayList<>(ids);
+        executor.trySupply(() -> {
+            Map<Long, T> found = new HashMap<>();
+            for (T row : byIds.load(changed)) {
+                found.put(idOf.apply(row), row);
+            }
+            // deleted rows and rows which do not pass the filter any more are removed
+            Map<Long, T> rows = new LinkedHashMap<>();
+            for (Long id : changed) {
+                T row = found.get(id);
+                if (row != null && rowFilter != null && !rowFilter.matches(getColumnValue(row, rowFilter.getColumn()))) {
+                    row = null;
+                }
+                rows.put(id, row);
+            }
+            return rows;
+        }).whenComplete((rows, ex) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (loadGeneration != generation) {
+                        return;
+                    }
+                    if (ex instanceof RejectedExecutionException) {
+                        retryLater(() -> reloadRows(changed));
+                        return;
+                    }
+                    if (ex != null) {
+                        logger.log(Level.SEVERE, "cannot load changed rows from DB", ex);
+                        return;
+                    }
+                    rows.forEach(this::applyChange);
+                }));
+    }
+
+    /**
+     * Applies current state of one row, so that the row is inserted, updated or removed.
+     * Applying the same state again does not change anything.
+     * Rows of pages which are not held in memory are ignored, they are loaded with their page,
+     * and so are rows after the last loaded row until all rows are loaded.
+     *
+     * @param id id of the row
+     * @param row current value of the row, or null when the row was deleted
+     */
+    public void applyChange(Long id, T row) {
+        int pageIndex = pages.size() - 1;
+        while (pageIndex > 0 && pages.get(pageIndex).after >= id) {
+            pageIndex--;
+        }
+        if (pageIndex < 0) {
+            return;
+        }
+        Page<T> page = pages.get(pageIndex);
+        if (page.rows == null || page.loading) {
+            return;
+        }
+        int offset = indexOf(page.rows, id);
+        int first = 0;
+        for (int i = 0; i < pageIndex; i++) {
+            first += pages.get(i).size;
+        }
+        if (offset >= 0) {
+            if (row == null) {
+                page.rows.remove(offset);
+                page.size--;
+                rowCount--;
+                fireTableRowsDeleted(first + offset, first + offset);
+            } else {
+                page.rows.set(offset, row);
+                fireTableRowsUpdated(first + offset, first + offset);
+            }
+        } else if (row != null) {
+            offset = -offset - 1;
+            if (pageIndex == pages.size() - 1 && offset == page.rows.size() && !complete) {
+                return;
+            }
+            page.rows.add(offset, row);
+            page.size++;
+            rowCount++;
+            fireTableRowsInserted(first + offset, first + offset);
+        }
+    }
+
+    /**
+     * @param row row of the table
+     * @return id of the row
+     */
+    public Long getId(T row) {
+        return idOf.apply(row);
+    }
+
+    /**
+     * Applies row written to the database by this client, see {@link #applyChange(Long, Object)}.
+     * A row which does not pass the filter is removed.
+     *
+     * @param row written row with its id
+     * @param deleted true when the row was deleted
+     */
+    public void applySaved(T row, boolean deleted) {
+        boolean passing = filter == null || filter.matches(getColumnValue(row, filter.getColumn()));
+        applyChange(idOf.apply(row), deleted || !passing ? null : row);
+    }
+
+    /**
+     * @return number of rows held in memory
+     */
+    public int getLoadedRowCount() {
+        int count = 0;
+        for (int pageIndex : loadedPages) {
+            count += pages.get(pageIndex).rows.size();
+        }
+        return count;
+    }
+
+    private int[] locate(int rowIndex) {
+        int offset = rowIndex;
+        for (int pageIndex = 0; pageIndex < pages.size(); pageIndex++) {
+            int size = pages.get(pageIndex).size;
+            if (offset < size) {
+                return new int[]{pageIndex, offset};
+            }
+            offset -= size;
+        }
+        throw new IndexOutOfBoundsException("row " + rowIndex + " of " + rowCount);
+    }
+
+    private PageLoader<T> createLoader(ColumnFilter rowFilter) {
+        PageLoader<T> pushedDown = filterLoader == null ? null : filterLoader.forFilter(rowFilter);
+        if (pushedDown != null) {
+            return pushedDown;
+        }
+        PageLoader<T> source = sourceLoader;
+        return (afterId, limit) -> {
+            List<T> result = new ArrayList<>();
+            Long after = afterId;
+            while (result.size() < limit) {
+                List<T> rows = source.load(after, limit);
+                for (T row : rows) {
+                    if (rowFilter.matches(getColumnValue(row, rowFilter.getColumn()))) {
+                        result.add(row);
+                        if (result.size() == limit) {
+                            break;
+                        }
+                    }
+                }
+                if (rows.size() < limit) {
+                    break;
+                }
+                after = idOf.apply(rows.get(rows.size() - 1));
+            }
+            return result;
+        };
+    }
+
+    /** binary search of rows ordered by id */
+    private int indexOf(List<T> rows, Long id) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compared = idOf.apply(rows.get(middle)).compareTo(id);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void loadNextPage() {
+        Page<T> last = pages.get(pages.size() - 1);
+        if (last.rows == null || last.rows.isEmpty()) {
+            return;
+        }
+        pages.add(new Page<>(idOf.apply(last.rows.get(last.rows.size() - 1))));
+        loadPage(pages.size() - 1);
+    }
+
+    private void loadPage(int pageIndex) {
+        Page<T> page = pages.get(pageIndex);
+        if (page.loading) {
+            return;
+        }
+        page.loading = true;
+        int loadGeneration = generation;
+        PageLoader<T> pageLoader = loader;
+        int limit = pageSize;
+        executor.trySupply(() -> pageLoader.load(page.after, limit)).whenComplete((rows, ex) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (loadGeneration != generation) {
+                        return;
+                    }
+                    if (ex instanceof RejectedExecutionException) {
+                        // the page stays loading, so that painting does not submit it again
+                        retryLater(() -> {
+                            page.loading = false;
+                            int index = pages.indexOf(page);
+                            if (index >= 0) {
+                                loadPage(index);
+                            }
+                        });
+                        return;
+                    }
+                    page.loading = false;
+                    if (ex != null) {
+                        logger.log(Level.SEVERE, "cannot load rows from DB", ex);
+                        if (pageIndex == pages.size() - 1 && page.size == 0) {
+                            // the page can be requested again when the table asks for the last row
+                            pages.remove(pageIndex);
+                        }
+                        return;
+                    }
+                    pageLoaded(pageIndex, rows);
+                }));
+    }
+
+    private void retryLater(Runnable load) {
+        retries.add(load);
+        if (!retryTimer.isRunning()) {
+            retryTimer.start();
+        }
+    }
+
+    private void retry() {
+        List<Runnable> loads = new ArrayList<>(retries);
+        retries.clear();
+        loads.forEach(Runnable::run);
+    }
+
+    private void pageLoaded(int pageIndex, List<T> rows) {
+        Page<T> page = pages.get(pageIndex);
+        int first = 0;
+        for (int i = 0; i < pageIndex; i++) {
+            first += pages.get(i).size;
+        }
+        List<T> loaded = new ArrayList<>(rows);
+        if (pageIndex + 1 < pages.size()) {
+            // rows of the next page, which could move to this page since it was loaded, are not repeated
+            Long nextAfter = pages.get(pageIndex + 1).after;
+            loaded.removeIf(row -> idOf.apply(row) > nextAfter);
+        } else if (rows.size() < pageSize) {
+            complete = true;
+        }
+        int oldSize = page.size;
+        page.rows = loaded;
+        page.size = loaded.size();
+        rowCount += page.size - oldSize;
+        touch(pageIndex);
+        if (oldSize == 0 && page.size > 0) {
+            fireTableRowsInserted(first, first + page.size - 1);
+        } else if (oldSize == page.size && page.size > 0) {
+            fireTableRowsUpdated(first, first + page.size - 1);
+        } else if (oldSize != page.size) {
+            fireTableDataChanged();
+        }
+        if (pageIndex == pages.size() - 1 && page.size == 0 && pageIndex > 0) {
+            pages.remove(pageIndex);
+            loadedPages.remove(pageIndex);
+        }
+    }
+
+    private void touch(int pageIndex) {
+        loadedPages.remove(pageIndex);
+        loadedPages.add(pageIndex);
+        Iterator<Integer> eldest = loadedPages.iterator();
+        while (loadedPages.size() > maxPages) {
+            int evicted = eldest.next();
+            eldest.remove();
+            pages.get(evicted).rows = null;
+        }
+    }
+}
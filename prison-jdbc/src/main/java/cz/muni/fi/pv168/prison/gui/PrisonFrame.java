@@ -1,32 +1,42 @@
 
 package cz.muni.fi.pv168.prison.gui;
 
-import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.common.PooledDataSource;
 import cz.muni.fi.pv168.prison.backend.Cell;
 import cz.muni.fi.pv168.prison.backend.CellManager;
-import cz.muni.fi.pv168.prison.backend.CellManagerImpl;
+import cz.muni.fi.pv168.prison.backend.Change;
+import cz.muni.fi.pv168.prison.backend.ChangeLogManager;
+import cz.muni.fi.pv168.prison.backend.ChangePoller;
+import cz.muni.fi.pv168.prison.backend.ManagerFactory;
 import cz.muni.fi.pv168.prison.backend.Prisoner;
 import cz.muni.fi.pv168.prison.backend.PrisonerManager;
-import cz.muni.fi.pv168.prison.backend.PrisonerManagerImpl;
+import cz.muni.fi.pv168.prison.backend.PrisonSchema;
 import cz.muni.fi.pv168.prison.backend.SentenceManager;
-import cz.muni.fi.pv168.prison.backend.SentenceManagerImpl;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.text.MessageFormat;
 import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Function;
 import java.util.logging.Level;
 import javax.sql.DataSource;
-import org.apache.commons.dbcp2.BasicDataSource;
 import java.util.logging.Logger;
 import cz.muni.fi.pv168.prison.backend.Sentence;
 
 import java.time.LocalDate;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutionException;
-import javax.swing.SwingWorker;
+import javax.swing.GroupLayout;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.TableModel;
 //import javafx.scene.control.Cell;
 /**
  *
@@ -38,9 +48,14 @@ public class PrisonFrame extends javax.swing.JFrame {
     private static final Logger logger = Logger.getLogger(
             PrisonFrame.class.getName());
     private DataSource dataSource = getDatasource();
-    private SentenceManager sM = new SentenceManagerImpl(this.dataSource);
-    private CellManager cM = new CellManagerImpl(this.dataSource);
-    private PrisonerManager pM = new PrisonerManagerImpl(this.dataSource);
+    private ManagerFactory managerFactory = new ManagerFactory(dataSource, ManagerFactory.loadConfiguration());
+    private SentenceManager sM = managerFactory.createSentenceManager();
+    private CellManager cM = managerFactory.createCellManager();
+    private PrisonerManager pM = managerFactory.createPrisonerManager();
+    private ChangeLogManager changeLogManager = managerFactory.createChangeLogManager();
+    private DbExecutor dbExecutor = managerFactory.createExecutor();
+    private CommandQueue commandQueue = new CommandQueue(new DbExecutor("prison-gui", 1, 1, 0));
+    private JLabel statusLabel = new JLabel(" ");
 
     /**
      * Creates new form PrisonFrame
@@ -51,53 +66,180 @@ public class PrisonFrame extends javax.swing.JFrame {
         PrisonersTableModel model_prisoners = (PrisonersTableModel) jTablePrisoners.getModel();
         CellsTableModel model_cells = (CellsTableModel) jTableCells.getModel();
         SentencesTableModel model_sentences = (SentencesTableModel) jTableSentences.getModel();
+        ChangePoller changePoller = createChangePoller();
         addAllCells(model_cells);
         addAllSentences(model_sentences);
         addAllPrisoners(model_prisoners);
-        
+
+        ChangeFeed changeFeed = new ChangeFeed(changePoller, dbExecutor);
+        changeFeed.register(Change.Entity.PRISONER, model_prisoners);
+        changeFeed.register(Change.Entity.CELL, model_cells);
+        changeFeed.register(Change.Entity.SENTENCE, model_sentences);
+        changeFeed.start(ChangeFeed.DEFAULT_PERIOD_MILLIS);
+
+        commandQueue.register(Change.Entity.PRISONER, model_prisoners,
+                CommandQueue.Writer.of(pM::createPrisoners, pM::updatePrisoner, pM::deletePrisoner));
+        commandQueue.register(Change.Entity.CELL, model_cells,
+                CommandQueue.Writer.of(cM::createCells, cM::updateCell, cM::deleteCell));
+        commandQueue.register(Change.Entity.SENTENCE, model_sentences,
+                CommandQueue.Writer.of(sM::createSentences, sM::updateSentence, sM::deleteSentence));
+        addStatusBar();
+
+        addFilter(jTablePrisoners, jScrollPane2, resourceBundle.getString("filter_prisoners"),
+                text -> ColumnFilter.prefix(2, text));
+        addFilter(jTableCells, jScrollPane4, resourceBundle.getString("filter_cells"),
+                text -> ColumnFilter.equalTo(1, Integer.valueOf(text)));
+        addFilter(jTableSentences, jScrollPane3, resourceBundle.getString("filter_sentences"),
+                PrisonFrame::parseSentenceFilter);
     }
 
     /**
-     * method find all sentences in db and fill them to SentencesTableModel
-     * @param model_sentences SentencesTableModel
+     * method installs sorter of the table and puts filter field above the table,
+     * header of the table tells when rows cannot be sorted as they are not all loaded
+     * @param table filtered table
+     * @param scrollPane scroll pane of the table
+     * @param label label of filter field
+     * @param parser creates filter from text of filter field
      */
-    private void addAllSentences(SentencesTableModel model_sentences) {
-        logger.log(Level.INFO, "adding all sentences from DB to sentenceModel");
-        List<Sentence> ls = sM.findAllSentences();
+    private void addFilter(JTable table, JScrollPane scrollPane, String label, Function<String, ColumnFilter> parser) {
+        IndexedRowSorter<TableModel> sorter = new IndexedRowSorter<>(table.getModel());
+        table.setRowSorter(sorter);
+        String unsortable = resourceBundle.getString("status_unsortable");
+        sorter.setUnsortableListener(() -> statusLabel.setText(unsortable));
+        table.getModel().addTableModelListener(e ->
+                table.getTableHeader().setToolTipText(sorter.isSortable() ? null : unsortable));
+        JPanel panel = new JPanel(new BorderLayout(0, 2));
+        ((GroupLayout) scrollPane.getParent().getLayout()).replace(scrollPane, panel);
+        panel.add(new FilterField(label, sorter, parser), BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+    }
 
-        for (Sentence s : ls) {
-            model_sentences.addSentence(s);
-        }
+    /**
+     * method puts status label below the tabs, it shows number of changes which are being saved,
+     * changes which cannot be saved are reported by a dialog
+     */
+    private void addStatusBar() {
+        JPanel panel = new JPanel(new BorderLayout(0, 2));
+        ((GroupLayout) getContentPane().getLayout()).replace(jTabbedPanePrison, panel);
+        panel.add(jTabbedPanePrison, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        commandQueue.setListener(new CommandQueue.Listener() {
+            @Override
+            public void progress(int pending) {
+                statusLabel.setText(pending == 0 ? " "
+                        : MessageFormat.format(resourceBundle.getString("status_pending"), pending));
+            }
+
+            @Override
+            public void failed(Change.Entity entity, Change.Operation operation, RuntimeException cause) {
+                JOptionPane.showMessageDialog(PrisonFrame.this,
+                        MessageFormat.format(resourceBundle.getString("error_save"), cause.getMessage()),
+                        resourceBundle.getString("main_title"), JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     /**
-     * method find all cells in db and fill them to CellsTableModel
-     * @param model_cells CellsTableModel
+     * method parses filter of sentences, either cell id or range of end days like 2016-01-01..2016-12-31,
+     * where one of the days can be omitted
+     * @param text text of filter field
+     * @return filter of sentences
      */
-    private void addAllCells(CellsTableModel model_cells) {
-        logger.log(Level.INFO, "adding all cells from DB to cellModel");
-        List<Cell> ls = cM.findAllCells();
+    private static ColumnFilter parseSentenceFilter(String text) {
+        int separator = text.indexOf("..");
+        if (separator < 0) {
+            return ColumnFilter.equalTo(1, Long.valueOf(text));
+        }
+        String from = text.substring(0, separator).trim();
+        String to = text.substring(separator + 2).trim();
+        return ColumnFilter.between(3, from.isEmpty() ? null : LocalDate.parse(from),
+                to.isEmpty() ? null : LocalDate.parse(to));
+    }
 
+    /**
+     * @param table table
+     * @return index of selected row in the model of the table, or -1 when no row is selected
+     */
+    private static int selectedModelRow(JTable table) {
+        int row = table.getSelectedRow();
+        return row < 0 ? row : table.convertRowIndexToModel(row);
+    }
 
-        for (Cell c : ls) {
-            model_cells.addCell(c);
+    /**
+     * method registers this window as a reader of the change log before tables are loaded,
+     * changes made later are applied to the tables by ChangeFeed
+     * @return poller of changes, it reads the whole log when the reader cannot be registered
+     */
+    private ChangePoller createChangePoller() {
+        try {
+            return new ChangePoller(changeLogManager, "gui-" + UUID.randomUUID());
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "cannot register reader of change log", ex);
+            return new ChangePoller(changeLogManager, 0);
         }
     }
 
     /**
-     * method find all prisoners in db and fill them to PrisonersTableModel
-     * @param model_prisoners prisonersTableModel
+     * method sets source of sentences of SentencesTableModel,
+     * sentences are loaded in pages in background as the table is scrolled,
+     * filters by cell and end day are evaluated by the database
+     * @param model_sentences SentencesTableModel
      */
-    private void addAllPrisoners(PrisonersTableModel model_prisoners) {
-        /*Prisoner prisoner = new Prisoner("Oldrich", "Konecny", LocalDate.of(1994, 8, 1));
-        pM.createPrisoner(prisoner);*/
-        logger.log(Level.INFO, "adding all prisoners from DB to prisonerModel");
-        List<Prisoner> ls = pM.findAllPrisoners();
+    private void addAllSentences(SentencesTableModel model_sentences) {
+        logger.log(Level.INFO, "loading sentences from DB to sentenceModel");
+        model_sentences.setFilterLoader(filter -> {
+            if (filter instanceof ColumnFilter.EqualTo && filter.getColumn() == 1) {
+                Long cellId = (Long) ((ColumnFilter.EqualTo) filter).getValue();
+                return (afterId, limit) -> sM.findSentencesForCell(cellId, afterId, limit);
+            }
+            if (filter instanceof ColumnFilter.Between && filter.getColumn() == 3) {
+                ColumnFilter.Between<?> range = (ColumnFilter.Between<?>) filter;
+                LocalDate from = (LocalDate) range.getFrom();
+                LocalDate to = (LocalDate) range.getTo();
+                return (afterId, limit) -> sM.findSentencesEndingBetween(from, to, afterId, limit);
+            }
+            return null;
+        });
+        model_sentences.setRowsLoader(ids -> sM.getSentencesByIds(ids).values());
+        model_sentences.load(dbExecutor, sM::findSentences);
+    }
 
+    /**
+     * method sets source of cells of CellsTableModel,
+     * cells are loaded in pages in background as the table is scrolled,
+     * filter by floor is evaluated by the database
+     * @param model_cells CellsTableModel
+     */
+    private void addAllCells(CellsTableModel model_cells) {
+        logger.log(Level.INFO, "loading cells from DB to cellModel");
+        model_cells.setFilterLoader(filter -> {
+            if (filter instanceof ColumnFilter.EqualTo && filter.getColumn() == 1) {
+                int floor = (Integer) ((ColumnFilter.EqualTo) filter).getValue();
+                return (afterId, limit) -> cM.findCellsOnFloor(floor, afterId, limit);
+            }
+            return null;
+        });
+        model_cells.setRowsLoader(ids -> cM.getCellsByIds(ids).values());
+        model_cells.load(dbExecutor, cM::findCells);
+    }
 
-        for (Prisoner p : ls) {
-            model_prisoners.addPrisoner(p);
-        }
+    /**
+     * method sets source of prisoners of PrisonersTableModel,
+     * prisoners are loaded in pages in background as the table is scrolled,
+     * filter by surname prefix is evaluated by the database
+     * @param model_prisoners prisonersTableModel
+     */
+    private void addAllPrisoners(PrisonersTableModel model_prisoners) {
+        logger.log(Level.INFO, "loading prisoners from DB to prisonerModel");
+        model_prisoners.setFilterLoader(filter -> {
+            if (filter instanceof ColumnFilter.Prefix && filter.getColumn() == 2) {
+                String prefix = ((ColumnFilter.Prefix) filter).getPrefix();
+                return (afterId, limit) -> pM.findPrisonersBySurnamePrefix(prefix, afterId, limit);
+            }
+            return null;
+        });
+        model_prisoners.setRowsLoader(ids -> pM.getPrisonersByIds(ids).values());
+        model_prisoners.load(dbExecutor, pM::findPrisoners);
     }
 
     /**
@@ -115,16 +257,14 @@ public class PrisonFrame extends javax.swing.JFrame {
             logger.log(Level.SEVERE, "cannot reach configuration.properties file", ex);
         }
 
-        BasicDataSource ds = new BasicDataSource();
-        ds.setUrl(myConf.getProperty("jdbc.url"));
-        ds.setUsername(myConf.getProperty("jdbc.user"));
-        ds.setPassword(myConf.getProperty("jdbc.password"));
+        PooledDataSource ds = PooledDataSource.create(myConf);
+        ds.registerMetrics("prison");
 
         logger.log(Level.INFO, "creating tables in database");
         try {
-            DBUtils.executeSqlScript(ds,SentenceManager.class.getResource("createTables.sql"));
+            PrisonSchema.migrate(ds);
         } catch (SQLException ex) {
-            logger.log(Level.SEVERE, "cannot reach createTables.sql", ex);
+            logger.log(Level.SEVERE, "cannot migrate database schema", ex);
         }
         return ds;
         
@@ -800,183 +940,45 @@ public class PrisonFrame extends javax.swing.JFrame {
         int month = (Integer) jSpinnerPrisonerCreateMonth.getValue();
         int year = (Integer) jSpinnerPrisonerCreateYear.getValue();
         LocalDate born = LocalDate.of(year, month, day);
-        PrisonersTableModel model = (PrisonersTableModel) jTablePrisoners.getModel();
-        CreatePrisonerSwingWorker cpsw = new CreatePrisonerSwingWorker(model,name, surname, born);
-        cpsw.execute();
+        commandQueue.create(Change.Entity.PRISONER, new Prisoner(name, surname, born));
     }//GEN-LAST:event_jButtonCreatePrisonerActionPerformed
-    private class CreatePrisonerSwingWorker extends SwingWorker<Prisoner,Void> {
-        private PrisonersTableModel model;
-        private String name;
-        private String surname;
-        private LocalDate born;
-
-        public CreatePrisonerSwingWorker(PrisonersTableModel model, String name, String surname, LocalDate born) {
-            this.model = model;
-            this.name =  name;
-            this.surname = surname;
-            this.born = born;
-        }
-
-        @Override
-        protected Prisoner doInBackground() throws Exception {
-
-
-            Prisoner prisoner = new Prisoner(name, surname, born);
-            pM.createPrisoner(prisoner);
-            return prisoner;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.addPrisoner(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "creating cell interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "creating cell failed something is wrong");
-            }
-        }
-        
-    }
     
     
     private void jButtonCreateCellActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonCreateCellActionPerformed
         logger.log(Level.INFO, "trying to create cell");
-        CellsTableModel model = (CellsTableModel) jTableCells.getModel();
         int floor = jComboBoxCreateCellFloor.getSelectedIndex() + 1;
         int capacity = (Integer) jSpinnerCreateCellCapacity.getValue();
-        CreateCellSwingWorker ccsw = new CreateCellSwingWorker(model, floor, capacity);
-        ccsw.execute();
+        commandQueue.create(Change.Entity.CELL, new Cell(floor, capacity));
     }//GEN-LAST:event_jButtonCreateCellActionPerformed
-    private class CreateCellSwingWorker extends SwingWorker<Cell,Void> {
-        private int floor;
-        private CellsTableModel model;
-        private int capacity;
-
-        public CreateCellSwingWorker(CellsTableModel model, int floor, int capacity) {
-            this.floor = floor;
-            this.capacity = capacity;
-            this.model = model;
-        }
-
-        @Override
-        protected Cell doInBackground() throws Exception {
-            Cell cell = new Cell(floor,capacity);
-            cM.createCell(cell);
-            
-            return cell;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.addCell(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "creating cell interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "creating cell failed something is wrong");
-            }
-        }
-        
-    }
 
 
     private void jButtonDeleteCellActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonDeleteCellActionPerformed
         logger.log(Level.INFO, "trying to delete cell");
         CellsTableModel model = (CellsTableModel) jTableCells.getModel();
-        int rowIndex = jTableCells.getSelectedRow();
-        Long id = (Long) model.getValueAt(rowIndex, 0);
-
-        DeleteCellSwingWorker dcsw = new DeleteCellSwingWorker(model, rowIndex, id);
-        dcsw.execute();
+        int rowIndex = selectedModelRow(jTableCells);
+        commandQueue.delete(Change.Entity.CELL, model.getRow(rowIndex));
     }//GEN-LAST:event_jButtonDeleteCellActionPerformed
-    private class DeleteCellSwingWorker extends SwingWorker<Integer,Void> {
-        private CellsTableModel model;
-        private Long id;
-        private int rowIndex;
-
-        public DeleteCellSwingWorker(CellsTableModel model, int rowIndex, Long id) {
-            this.model = model;
-            this.id = id;
-            this.rowIndex = rowIndex;
-        }
-
-        @Override
-        protected Integer doInBackground() throws Exception {
-
-            cM.deleteCell(cM.getCellById(id));
-            
-            return rowIndex;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.deleteCell(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "deleting cell interupted (this should never happen)");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "deleting cell failed, something is wrong..");
-            }
-        }
-        
-    }
     
     
     private void jButtonUpdateCellActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonUpdateCellActionPerformed
         logger.log(Level.INFO, "trying to update cell");
         CellsTableModel model = (CellsTableModel) jTableCells.getModel();
-        int rowIndex = jTableCells.getSelectedRow();
+        int rowIndex = selectedModelRow(jTableCells);
         Long id = (Long) model.getValueAt(rowIndex, 0);
         int floor = jComboBoxUpdateCellFloor.getSelectedIndex() + 1;
         int capacity = (Integer) jSpinnerUpdateCellCapacity.getValue();
-        UpdateCellSwingWorker ucsw = new UpdateCellSwingWorker(model, rowIndex, id, floor, capacity);
-        ucsw.execute();
+        Cell cell = new Cell(floor, capacity);
+        cell.setId(id);
+        commandQueue.update(Change.Entity.CELL, cell);
     }//GEN-LAST:event_jButtonUpdateCellActionPerformed
-    private class UpdateCellSwingWorker extends SwingWorker<Cell,Void> {
-        private CellsTableModel model;
-        private int rowIndex;
-        private Long id;
-        private int floor;
-        private int capacity;
-
-        public UpdateCellSwingWorker(CellsTableModel model, int rowIndex, Long id, int floor, int capacity) {
-            this. model = model;
-            this.rowIndex = rowIndex;
-            this.id = id;
-            this.floor = floor;
-            this.capacity = capacity;
-        }
-
-        @Override
-        protected Cell doInBackground() throws Exception {
-            Cell cell = new Cell(floor, capacity);
-            cell.setId(id);
-            cM.updateCell(cell);
-            return cell;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.updateCell(get(), rowIndex);
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "creating prisoner interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "creating prisoner failed something is wrong");
-            }
-        }
-        
-    }
     
 
     private void jButtonCreateSentenceActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonCreateSentenceActionPerformed
         logger.log(Level.INFO, "trying to create sentence");
         CellsTableModel cellsModel = (CellsTableModel) jTableCells.getModel();
         PrisonersTableModel prisonersModel = (PrisonersTableModel) jTablePrisoners.getModel();
-        SentencesTableModel sentenceModel = (SentencesTableModel) jTableSentences.getModel();
-        Long prisonerId = (Long) prisonersModel.getValueAt(jTablePrisoners.getSelectedRow(), 0);
-        Long cellId = (Long) cellsModel.getValueAt(jTableCells.getSelectedRow(), 0);
+        Long prisonerId = (Long) prisonersModel.getValueAt(selectedModelRow(jTablePrisoners), 0);
+        Long cellId = (Long) cellsModel.getValueAt(selectedModelRow(jTableCells), 0);
         LocalDate from = LocalDate.of((Integer) jSpinnerSentenceStartYear.getValue()
                 ,(Integer) jSpinnerSentenceStartMonth.getValue()
                 , (Integer) jSpinnerSentenceStartDay.getValue());
@@ -984,52 +986,8 @@ public class PrisonFrame extends javax.swing.JFrame {
                 , (Integer) jSpinnerSentenceEndMonth.getValue()
                 , (Integer) jSpinnerSentenceEndDay.getValue());
         String punishment = jTextFieldSentenceCreatePunishment.getText();
-        CreateSentenceSwingWorker cssw = new CreateSentenceSwingWorker(cellsModel, prisonersModel, sentenceModel, prisonerId
-            , cellId, from, to, punishment);
-        cssw.execute();
+        commandQueue.create(Change.Entity.SENTENCE, new Sentence(prisonerId, cellId, from, to, punishment));
     }//GEN-LAST:event_jButtonCreateSentenceActionPerformed
-    private class CreateSentenceSwingWorker extends SwingWorker<Sentence,Void> {
-        private CellsTableModel cellsModel;
-        private PrisonersTableModel prisonersModel;
-        private SentencesTableModel sentenceModel;
-        private Long prisonerId;
-        private Long cellId;
-        private LocalDate from;
-        private LocalDate to;
-        private String punishment;
-
-        public CreateSentenceSwingWorker(CellsTableModel cellsModel, PrisonersTableModel prisonersModel
-                ,SentencesTableModel sentenceModel, Long prisonerId
-                , Long cellId, LocalDate from, LocalDate to, String punishment) {
-            this.cellsModel = cellsModel;
-            this.prisonersModel = prisonersModel;
-            this.sentenceModel = sentenceModel;
-            this.prisonerId = prisonerId;
-            this.cellId = cellId;
-            this.from = from;
-            this.to = to;
-            this.punishment = punishment;
-        }
-
-        @Override
-        protected Sentence doInBackground() throws Exception {
-            Sentence sentence = new Sentence(prisonerId, cellId, from, to, punishment);
-            sM.createSentence(sentence);
-            return sentence;
-        }
-
-        @Override
-        protected void done() {
-            try {
-                sentenceModel.addSentence(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "create sentence interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "create sentecne failed thing is wrong");
-            }
-        }
-        
-    }
     
     
     private void jButtonUpdatePrisonerActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonUpdatePrisonerActionPerformed
@@ -1041,90 +999,19 @@ public class PrisonFrame extends javax.swing.JFrame {
         int year = (Integer) jSpinnerPrisonerUpdateYear.getValue();
         PrisonersTableModel model = (PrisonersTableModel) jTablePrisoners.getModel();
         LocalDate born = LocalDate.of(year, month, day);
-        Long id = (Long) model.getValueAt(jTablePrisoners.getSelectedRow(), 0);
-        int rowIndex = jTablePrisoners.getSelectedRow();
-
-        UpdatePrisonerSwingWorker upsw = new UpdatePrisonerSwingWorker(model, name, surname, born, id, rowIndex);
-        upsw.execute();
+        Long id = (Long) model.getValueAt(selectedModelRow(jTablePrisoners), 0);
+        Prisoner prisoner = new Prisoner(name, surname, born);
+        prisoner.setId(id);
+        commandQueue.update(Change.Entity.PRISONER, prisoner);
     }//GEN-LAST:event_jButtonUpdatePrisonerActionPerformed
-    private class UpdatePrisonerSwingWorker extends SwingWorker<Prisoner,Void> {
-        private PrisonersTableModel model;
-        private String name;
-        private String surname;
-        private LocalDate born;
-        private Long id;
-        private int rowIndex;
-
-        public UpdatePrisonerSwingWorker(PrisonersTableModel model, String name, String surname, LocalDate born, Long id, int rowIndex) {
-            this.model = model;
-            this.name = name;
-            this.surname = surname;
-            this.born = born;
-            this.id = id;
-            this.rowIndex = rowIndex;
-        }
-
-        @Override
-        protected Prisoner doInBackground() throws Exception {
-
-            Prisoner prisoner = new Prisoner(name, surname, born);
-            prisoner.setId(id);
-            pM.updatePrisoner(prisoner);
-            return prisoner;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.updatePrisoner(get(), rowIndex);
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "updating prisoner interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "updating prisoner failed thing is wrong");
-            }
-        }
-        
-    }
     
     
     private void jButtonDeletePrisonerActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonDeletePrisonerActionPerformed
         logger.log(Level.INFO, "trying to delete prisoner");
         PrisonersTableModel model = (PrisonersTableModel) jTablePrisoners.getModel();
-        int index = jTablePrisoners.getSelectedRow();
-        Long id = (Long) model.getValueAt(index, 0);
-        DeletePrisonerSwingWorker dpsw = new DeletePrisonerSwingWorker(model, id, index);
-        dpsw.execute();
+        int index = selectedModelRow(jTablePrisoners);
+        commandQueue.delete(Change.Entity.PRISONER, model.getRow(index));
     }//GEN-LAST:event_jButtonDeletePrisonerActionPerformed
-    private class DeletePrisonerSwingWorker extends SwingWorker<Integer,Void> {
-        private PrisonersTableModel model;
-        private int index;
-        private Long id;
-
-        public DeletePrisonerSwingWorker(PrisonersTableModel model, Long id, int index) {
-            this.model = model;
-            this.id = id;
-            this.index = index;
-        }
-
-        @Override
-        protected Integer doInBackground() throws Exception {
-
-            pM.deletePrisoner(pM.getPrisonerById(id));
-            return index;
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.deleterisoner(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "deleting prisoner interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "deleting prisoner failed something is wrong");
-            }
-        }
-        
-    }
     
     
     private void jComboBoxCreateCellFloorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jComboBoxCreateCellFloorActionPerformed
@@ -1138,9 +1025,6 @@ public class PrisonFrame extends javax.swing.JFrame {
         model_cells.refresh();
         model_prisoners.refresh();
         model_sentences.refresh();
-        addAllCells(model_cells);
-        addAllSentences(model_sentences);
-        addAllPrisoners(model_prisoners);
     }//GEN-LAST:event_jButtonRefreshAllActionPerformed
 
     private void jComboBoxUpdateCellFloorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jComboBoxUpdateCellFloorActionPerformed
@@ -1154,59 +1038,19 @@ public class PrisonFrame extends javax.swing.JFrame {
     private void jButtonSentenceDeleteActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonSentenceDeleteActionPerformed
         logger.log(Level.INFO, "trying to delete sentence");
         SentencesTableModel sentenceModel = (SentencesTableModel) jTableSentences.getModel();
-        int index = jTableSentences.getSelectedRow();
-        Long prisonerId = (Long) sentenceModel.getValueAt(index, 0);
-        Long cellId = (Long) sentenceModel.getValueAt(index, 1);
-        LocalDate from = (LocalDate) sentenceModel.getValueAt(index, 2);
-        LocalDate to = (LocalDate) sentenceModel.getValueAt(index, 3);
-        String punishment = (String) sentenceModel.getValueAt(index, 4);
-        Sentence sentence = new Sentence(prisonerId, cellId, from, to ,punishment);
-
-        DeleteSentenceSwingWorker dssw = new DeleteSentenceSwingWorker(sentenceModel, sentence, index);
-        dssw.execute();
+        int index = selectedModelRow(jTableSentences);
+        Sentence sentence = sentenceModel.getSentence(index);
+        commandQueue.delete(Change.Entity.SENTENCE, sentence);
     }//GEN-LAST:event_jButtonSentenceDeleteActionPerformed
-    private class DeleteSentenceSwingWorker extends SwingWorker<Integer,Void> {
-        private SentencesTableModel sentenceModel;
-        private Sentence sentence;
-        private  int index;
-
-        public DeleteSentenceSwingWorker(SentencesTableModel sentenceModel, Sentence sentence, int index) {
-            this.sentenceModel = sentenceModel;
-            this.sentence = sentence;
-            this.index = index;
-        }
-
-        @Override
-        protected Integer doInBackground() throws Exception {
-            sM.deleteSentence(sentence);
-            return index;
-        }
-
-        @Override
-        protected void done() {
-            try {
-                sentenceModel.deleteSentence(get());
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "delete sentence interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "delete sentence failed thing is wrong");
-            }
-        }
-
-    }
 
 
     private void jButtonSentenceUpdateActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonSentenceUpdateActionPerformed
         logger.log(Level.INFO, "trying to update sentence");
         SentencesTableModel model = (SentencesTableModel) jTableSentences.getModel();
-        int index = jTableSentences.getSelectedRow();
-        Long prisonerId = (Long) model.getValueAt(index, 0);
-        Long cellId = (Long) model.getValueAt(index, 1);
-        LocalDate from = (LocalDate) model.getValueAt(index , 2);
-        LocalDate to = (LocalDate) model.getValueAt(index, 3);
-        String punishment = (String) model.getValueAt(index, 4);
-
-        Sentence oldS = new Sentence(prisonerId, cellId, from, to, punishment);
+        int index = selectedModelRow(jTableSentences);
+        Sentence oldS = model.getSentence(index);
+        Long prisonerId = oldS.getPrisonerId();
+        Long cellId = oldS.getCellId();
 
         LocalDate newFrom = LocalDate.of((Integer) jSpinnerUpdateSentenceStartYear.getValue()
                 , (Integer) jSpinnerUpdateSentenceStartMonth.getValue()
@@ -1219,41 +1063,9 @@ public class PrisonFrame extends javax.swing.JFrame {
         String newPunishment = jTextFieldSentenceUpdate.getText();
 
         Sentence newS = new Sentence(prisonerId, cellId, newFrom, newTo, newPunishment);
-        UpdateSentenceSwingWorker ussw = new UpdateSentenceSwingWorker(model, index, oldS, newS);
-        ussw.execute();
+        newS.setId(oldS.getId());
+        commandQueue.update(Change.Entity.SENTENCE, newS);
     }//GEN-LAST:event_jButtonSentenceUpdateActionPerformed
-    private class UpdateSentenceSwingWorker extends SwingWorker<Sentence,Void> {
-        private SentencesTableModel model;
-        private int index;
-        private Sentence oldS;
-        private Sentence newS;
-
-        public UpdateSentenceSwingWorker(SentencesTableModel model, int index, Sentence oldS, Sentence newS) {
-            this.model = model;
-            this.index = index;
-            this.oldS = oldS;
-            this.newS = newS;
-        }
-
-        @Override
-        protected Sentence doInBackground() throws Exception {
-            sM.updateSentence(oldS, newS);
-            return newS;
-            
-        }
-        
-        @Override
-        protected void done() {
-            try {
-                model.updateSentence(get(), index);
-            } catch (InterruptedException ex) {
-                logger.log(Level.SEVERE, "update sentence interupted (this should never happen");
-            } catch (ExecutionException ex) {
-                logger.log(Level.SEVERE, "update sentecne failed thing is wrong");
-            }
-        }
-        
-    }
     
 
     
@@ -2,24 +2,19 @@ package cz.muni.fi.pv168.prison.gui;
 
 import cz.muni.fi.pv168.prison.backend.Prisoner;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import javax.swing.table.AbstractTableModel;
 
 /**
  *
  * @author Zita
  */
-public class PrisonersTableModel extends AbstractTableModel {
+public class PrisonersTableModel extends PagedTableModel<Prisoner> {
     
     private static ResourceBundle resourceBundle = ResourceBundle.getBundle("cz/muni/fi/pv168/prison/gui/strings", Locale.getDefault());
-    private List<Prisoner> prisoners = new ArrayList<Prisoner>();
 
-    @Override
-    public int getRowCount() {
-        return prisoners.size();
+    public PrisonersTableModel() {
+        super(Prisoner::getId);
     }
     
     @Override
@@ -28,8 +23,7 @@ public class PrisonersTableModel extends AbstractTableModel {
     }
     
     @Override
-    public Object getValueAt(int rowIndex, int columnIndex){
-        Prisoner prisoner = prisoners.get(rowIndex);
+    protected Object getColumnValue(Prisoner prisoner, int columnIndex) {
         switch (columnIndex) {
             case 0:
                 return prisoner.getId();
@@ -44,25 +38,16 @@ public class PrisonersTableModel extends AbstractTableModel {
         }
     }
     
-    public void addPrisoner(Prisoner prisoner){
-        prisoners.add(prisoner);
-        int lastRow = prisoners.size() - 1;
-        fireTableRowsInserted(lastRow, lastRow);
+    public void addPrisoner(Prisoner prisoner) {
+        addRow(prisoner);
     }
     
     public void deleterisoner(int index) {
-        this.prisoners.remove(index);
-        fireTableRowsDeleted(index, index);
+        removeRow(index);
     }
     
     public void updatePrisoner(Prisoner prisoner, int index) {
-        prisoners.set(index, prisoner);
-        fireTableRowsUpdated(index, index);
-        
-    }
-    
-    public void refresh() {
-        this.prisoners.clear();
+        updateRow(prisoner, index);
     }
     
     @Override
@@ -99,7 +84,10 @@ public class PrisonersTableModel extends AbstractTableModel {
     
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-        Prisoner prisoner = prisoners.get(rowIndex);
+        Prisoner prisoner = getRow(rowIndex);
+        if (prisoner == null) {
+            return;
+        }
         switch(columnIndex) {
             case 0:
                 prisoner.setId((Long) aValue);
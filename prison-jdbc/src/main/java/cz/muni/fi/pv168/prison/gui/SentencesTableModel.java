@@ -2,9 +2,6 @@
 package cz.muni.fi.pv168.prison.gui;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import javax.swing.table.AbstractTableModel;
 import cz.muni.fi.pv168.prison.backend.Sentence;
 import java.util.Locale;
 import java.util.ResourceBundle;
@@ -13,13 +10,11 @@ import java.util.ResourceBundle;
  *
  * @author Zita
  */
-public class SentencesTableModel extends AbstractTableModel {
-    private List<Sentence> sentences = new ArrayList<Sentence>();
+public class SentencesTableModel extends PagedTableModel<Sentence> {
     private static ResourceBundle resourceBundle = ResourceBundle.getBundle("cz/muni/fi/pv168/prison/gui/strings", Locale.getDefault());
     
-    @Override
-    public int getRowCount() {
-        return sentences.size();
+    public SentencesTableModel() {
+        super(Sentence::getId);
     }
     
     @Override
@@ -30,8 +25,7 @@ public class SentencesTableModel extends AbstractTableModel {
     
     
     @Override
-    public Object getValueAt(int rowIndex, int columnIndex) {
-        Sentence sentence = sentences.get(rowIndex);
+    protected Object getColumnValue(Sentence sentence, int columnIndex) {
         switch(columnIndex) {
             case 0:
                 return sentence.getPrisonerId();
@@ -48,24 +42,20 @@ public class SentencesTableModel extends AbstractTableModel {
         }
     }
     
+    public Sentence getSentence(int index) {
+        return getRow(index);
+    }
+    
     public void addSentence(Sentence sentence) {
-        sentences.add(sentence);
-        int lastRow = sentences.size() -1;
-        fireTableRowsInserted(lastRow, lastRow);
+        addRow(sentence);
     }
     
     public void deleteSentence(int index) {
-        sentences.remove(index);
-        fireTableRowsDeleted(index, index);
+        removeRow(index);
     }
     
     public void updateSentence(Sentence sentence, int index) {
-        this.sentences.set(index, sentence);
-        fireTableRowsUpdated(index, index);
-    }
-    
-    public void refresh() {
-        this.sentences.clear();
+        updateRow(sentence, index);
     }
     
     @Override
@@ -106,7 +96,10 @@ public class SentencesTableModel extends AbstractTableModel {
     
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-        Sentence sentence = sentences.get(rowIndex);
+        Sentence sentence = getRow(rowIndex);
+        if (sentence == null) {
+            return;
+        }
         switch(columnIndex) {
             case 0:
                 sentence.setPrisonerId((Long) aValue);
@@ -122,6 +115,7 @@ public class SentencesTableModel extends AbstractTableModel {
                 break;
             case 4:
                 sentence.setPunishment((String) aValue);
+                break;
             default:
                 throw new IllegalArgumentException("columnIndex");
         }
@@ -1,3 +1,6 @@
 DROP TABLE "SENTENCE";
 DROP TABLE "PRISONER";
 DROP TABLE "CELL";
+DROP TABLE "CHANGE_LOG_READER";
+DROP TABLE "CHANGE_LOG";
+DROP TABLE "SCHEMA_VERSION";
\ No newline at end of file
@@ -0,0 +1,7 @@
+CREATE INDEX "SENTENCE_CELL_END" ON "SENTENCE" ("CELLID", "ENDDAY");
+
+CREATE INDEX "SENTENCE_PRISONER_END" ON "SENTENCE" ("PRISONERID", "ENDDAY");
+
+CREATE INDEX "SENTENCE_END" ON "SENTENCE" ("ENDDAY");
+
+CREATE INDEX "PRISONER_SURNAME" ON "PRISONER" ("SURNAME");
@@ -0,0 +1,3 @@
+ALTER TABLE "SENTENCE" ADD COLUMN "ID" BIGINT NOT NULL GENERATED ALWAYS AS IDENTITY;
+
+ALTER TABLE "SENTENCE" ADD CONSTRAINT "SENTENCE_PK" PRIMARY KEY ("ID");
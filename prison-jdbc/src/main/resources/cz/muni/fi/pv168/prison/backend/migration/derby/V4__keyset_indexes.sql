@@ -0,0 +1,9 @@
+CREATE INDEX "PRISONER_SURNAME_ID" ON "PRISONER" ("SURNAME", "ID");
+
+DROP INDEX "PRISONER_SURNAME";
+
+CREATE INDEX "CELL_FLOOR_ID" ON "CELL" ("FLOOR", "ID");
+
+CREATE INDEX "SENTENCE_END_ID" ON "SENTENCE" ("ENDDAY", "ID");
+
+DROP INDEX "SENTENCE_END";
@@ -0,0 +1,33 @@
+CREATE TABLE "CHANGE_LOG" (
+    "VERSION" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    "ENTITY" VARCHAR(16) NOT NULL,
+    "ENTITY_ID" BIGINT NOT NULL,
+    "OPERATION" CHAR(1) NOT NULL
+);
+
+CREATE TRIGGER "PRISONER_INSERT_LOG" AFTER INSERT ON "PRISONER" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('prisoner', N."ID", 'I');
+
+CREATE TRIGGER "PRISONER_UPDATE_LOG" AFTER UPDATE ON "PRISONER" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('prisoner', N."ID", 'U');
+
+CREATE TRIGGER "PRISONER_DELETE_LOG" AFTER DELETE ON "PRISONER" REFERENCING OLD AS O FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('prisoner', O."ID", 'D');
+
+CREATE TRIGGER "CELL_INSERT_LOG" AFTER INSERT ON "CELL" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('cell', N."ID", 'I');
+
+CREATE TRIGGER "CELL_UPDATE_LOG" AFTER UPDATE ON "CELL" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('cell', N."ID", 'U');
+
+CREATE TRIGGER "CELL_DELETE_LOG" AFTER DELETE ON "CELL" REFERENCING OLD AS O FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('cell', O."ID", 'D');
+
+CREATE TRIGGER "SENTENCE_INSERT_LOG" AFTER INSERT ON "SENTENCE" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('sentence', N."ID", 'I');
+
+CREATE TRIGGER "SENTENCE_UPDATE_LOG" AFTER UPDATE ON "SENTENCE" REFERENCING NEW AS N FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('sentence', N."ID", 'U');
+
+CREATE TRIGGER "SENTENCE_DELETE_LOG" AFTER DELETE ON "SENTENCE" REFERENCING OLD AS O FOR EACH ROW
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('sentence', O."ID", 'D');
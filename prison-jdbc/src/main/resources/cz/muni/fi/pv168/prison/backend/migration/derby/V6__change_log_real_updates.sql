@@ -0,0 +1,26 @@
+DROP TRIGGER "PRISONER_UPDATE_LOG";
+
+CREATE TRIGGER "PRISONER_UPDATE_LOG" AFTER UPDATE ON "PRISONER" REFERENCING OLD AS O NEW AS N FOR EACH ROW
+    WHEN (O."NAME" <> N."NAME" OR O."SURNAME" <> N."SURNAME"
+        OR O."BORN" <> N."BORN" OR O."BORN" IS NULL AND N."BORN" IS NOT NULL OR O."BORN" IS NOT NULL AND N."BORN" IS NULL)
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('prisoner', N."ID", 'U');
+
+DROP TRIGGER "CELL_UPDATE_LOG";
+
+CREATE TRIGGER "CELL_UPDATE_LOG" AFTER UPDATE ON "CELL" REFERENCING OLD AS O NEW AS N FOR EACH ROW
+    WHEN (O."FLOOR" <> N."FLOOR" OR O."CAPACITY" <> N."CAPACITY")
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('cell', N."ID", 'U');
+
+DROP TRIGGER "SENTENCE_UPDATE_LOG";
+
+CREATE TRIGGER "SENTENCE_UPDATE_LOG" AFTER UPDATE ON "SENTENCE" REFERENCING OLD AS O NEW AS N FOR EACH ROW
+    WHEN (O."PUNISHMENT" <> N."PUNISHMENT"
+        OR O."PRISONERID" <> N."PRISONERID" OR O."PRISONERID" IS NULL AND N."PRISONERID" IS NOT NULL
+        OR O."PRISONERID" IS NOT NULL AND N."PRISONERID" IS NULL
+        OR O."CELLID" <> N."CELLID" OR O."CELLID" IS NULL AND N."CELLID" IS NOT NULL
+        OR O."CELLID" IS NOT NULL AND N."CELLID" IS NULL
+        OR O."STARTDAY" <> N."STARTDAY" OR O."STARTDAY" IS NULL AND N."STARTDAY" IS NOT NULL
+        OR O."STARTDAY" IS NOT NULL AND N."STARTDAY" IS NULL
+        OR O."ENDDAY" <> N."ENDDAY" OR O."ENDDAY" IS NULL AND N."ENDDAY" IS NOT NULL
+        OR O."ENDDAY" IS NOT NULL AND N."ENDDAY" IS NULL)
+    INSERT INTO "CHANGE_LOG" ("ENTITY", "ENTITY_ID", "OPERATION") VALUES ('sentence', N."ID", 'U');
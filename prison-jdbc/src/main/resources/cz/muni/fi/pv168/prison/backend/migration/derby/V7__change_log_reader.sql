@@ -0,0 +1,5 @@
+CREATE TABLE "CHANGE_LOG_READER" (
+    "READER" VARCHAR(64) NOT NULL PRIMARY KEY,
+    "VERSION" BIGINT NOT NULL,
+    "READ_AT" TIMESTAMP NOT NULL
+);
@@ -1,6 +1,3 @@
--- schema-javadb.sql
--- DDL commands for JavaDB/Derby
-
 CREATE TABLE cell (
     id       INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     floor    INT,
@@ -0,0 +1,7 @@
+CREATE INDEX sentence_cell_end ON sentence (cellId, endDay);
+
+CREATE INDEX sentence_prisoner_end ON sentence (prisonerId, endDay);
+
+CREATE INDEX sentence_end ON sentence (endDay);
+
+CREATE INDEX prisoner_surname ON prisoner (surname);
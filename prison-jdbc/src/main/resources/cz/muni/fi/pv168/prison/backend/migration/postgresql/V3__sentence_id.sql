@@ -0,0 +1,3 @@
+ALTER TABLE sentence ADD COLUMN id INT GENERATED ALWAYS AS IDENTITY;
+
+ALTER TABLE sentence ADD CONSTRAINT sentence_pk PRIMARY KEY (id);
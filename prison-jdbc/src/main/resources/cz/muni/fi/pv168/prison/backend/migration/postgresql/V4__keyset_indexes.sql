@@ -0,0 +1,9 @@
+CREATE INDEX prisoner_surname_id ON prisoner (surname, id);
+
+DROP INDEX prisoner_surname;
+
+CREATE INDEX cell_floor_id ON cell (floor, id);
+
+CREATE INDEX sentence_end_id ON sentence (endDay, id);
+
+DROP INDEX sentence_end;
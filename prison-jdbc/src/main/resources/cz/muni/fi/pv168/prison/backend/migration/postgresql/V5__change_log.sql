@@ -0,0 +1,26 @@
+CREATE TABLE change_log (
+    version BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    entity VARCHAR(16) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    operation CHAR(1) NOT NULL
+);
+
+CREATE FUNCTION log_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        INSERT INTO change_log (entity, entity_id, operation) VALUES (TG_TABLE_NAME, OLD.id, 'D');
+        RETURN OLD;
+    END IF;
+    INSERT INTO change_log (entity, entity_id, operation) VALUES (TG_TABLE_NAME, NEW.id, substr(TG_OP, 1, 1));
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER prisoner_change_log AFTER INSERT OR UPDATE OR DELETE ON prisoner
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
+
+CREATE TRIGGER cell_change_log AFTER INSERT OR UPDATE OR DELETE ON cell
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
+
+CREATE TRIGGER sentence_change_log AFTER INSERT OR UPDATE OR DELETE ON sentence
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
@@ -0,0 +1,23 @@
+DROP TRIGGER prisoner_change_log ON prisoner;
+
+CREATE TRIGGER prisoner_change_log AFTER INSERT OR DELETE ON prisoner
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
+
+CREATE TRIGGER prisoner_update_log AFTER UPDATE ON prisoner
+    FOR EACH ROW WHEN (OLD IS DISTINCT FROM NEW) EXECUTE PROCEDURE log_change();
+
+DROP TRIGGER cell_change_log ON cell;
+
+CREATE TRIGGER cell_change_log AFTER INSERT OR DELETE ON cell
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
+
+CREATE TRIGGER cell_update_log AFTER UPDATE ON cell
+    FOR EACH ROW WHEN (OLD IS DISTINCT FROM NEW) EXECUTE PROCEDURE log_change();
+
+DROP TRIGGER sentence_change_log ON sentence;
+
+CREATE TRIGGER sentence_change_log AFTER INSERT OR DELETE ON sentence
+    FOR EACH ROW EXECUTE PROCEDURE log_change();
+
+CREATE TRIGGER sentence_update_log AFTER UPDATE ON sentence
+    FOR EACH ROW WHEN (OLD IS DISTINCT FROM NEW) EXECUTE PROCEDURE log_change();
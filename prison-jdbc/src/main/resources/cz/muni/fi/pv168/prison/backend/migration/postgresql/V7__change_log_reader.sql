@@ -0,0 +1,5 @@
+CREATE TABLE change_log_reader (
+    reader VARCHAR(64) PRIMARY KEY,
+    version BIGINT NOT NULL,
+    read_at TIMESTAMP NOT NULL
+);
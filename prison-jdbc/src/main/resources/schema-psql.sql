@@ -1,24 +0,0 @@
-DROP TABLE IF EXISTS sentence;
-DROP TABLE IF EXISTS prisoner;
-DROP TABLE IF EXISTS cell;
-
-CREATE TABLE cell (
-    id       INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
-    floor    INT,
-    capacity INT
-);
-
-CREATE TABLE prisoner (
-    id INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
-    name VARCHAR(255),
-    surname VARCHAR(255),
-    born DATE
-);
-
-CREATE TABLE sentence (
-    prisonerId INT REFERENCES prisoner(id) ON DELETE CASCADE,
-	  cellId INT REFERENCES cell(id) ON DELETE CASCADE,
-    punishment VARCHAR(255),
-    startDay DATE,
-    endDay DATE
-);
\ No newline at end of file
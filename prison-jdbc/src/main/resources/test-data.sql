@@ -1,6 +1,6 @@
-INSERT INTO PRISONER (NAME, BORN) VALUES ('Babička Hopsalova','1846-06-03');
+INSERT INTO PRISONER (NAME, SURNAME, BORN) VALUES ('Babička', 'Hopsalova','1846-06-03');
 
-INSERT INTO PRISONER (NAME, AUTHOR) VALUES ('Vinnetou Amok','1567-12-21');
+INSERT INTO PRISONER (NAME, SURNAME, BORN) VALUES ('Vinnetou', 'Amok','1567-12-21');
 
 INSERT INTO CELL (FLOOR, CAPACITY) VALUES (1, 5);
 
@@ -0,0 +1,157 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.AsyncManager;
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.common.VirtualThreads;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests of {@link AsyncManager} and {@link DbExecutor}.
+ */
+public class AsyncManagerTest {
+
+    private DataSource dataSource;
+    private DbExecutor executor;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:async-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        executor = new DbExecutor("test-db", 2, 1, 0);
+    }
+
+    @After
+    public void tearDown() throws SQLException, InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void callsAreComposedInParallel() throws Exception {
+        AsyncManager<CellManager> cells = new AsyncManager<>(new CellManagerImpl(dataSource), executor);
+        AsyncManager<PrisonerManager> prisoners = new AsyncManager<>(new PrisonerManagerImpl(dataSource), executor);
+
+        CompletableFuture<Void> created = cells.run(m -> m.createCell(new Cell(1, 2)))
+                .thenCompose(v -> prisoners.run(m -> m.createPrisoner(
+                        new Prisoner("Jan", "Novák", LocalDate.of(1980, 1, 1)))));
+        created.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<List<Cell>> allCells = cells.supply(CellManager::findAllCells);
+        CompletableFuture<String> thread = cells.supply(m -> Thread.currentThread().getName());
+        int count = allCells.thenCombine(prisoners.supply(PrisonerManager::findAllPrisoners),
+                (c, p) -> c.size() + p.size()).get(10, TimeUnit.SECONDS);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(thread.get()).startsWith("test-db-");
+    }
+
+    @Test
+    public void exceptionsFailTheFuture() throws Exception {
+        AsyncManager<CellManager> cells = new AsyncManager<>(new CellManagerImpl(dataSource), executor);
+        try {
+            cells.run(m -> m.createCell(null)).get(10, TimeUnit.SECONDS);
+            fail("exception expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void saturatedExecutorRejectsWork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        List<CompletableFuture<Void>> blocked = Arrays.asList(
+                executor.run(() -> await(started, release)),
+                executor.run(() -> await(started, release)),
+                executor.run(() -> await(started, release)));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Void> rejected = executor.run(() -> { });
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+        try {
+            rejected.get();
+            fail("exception expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+        assertThat(executor.getRejected()).isEqualTo(1);
+
+        release.countDown();
+        CompletableFuture.allOf(blocked.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        executor.run(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void trySupplyDoesNotWait() throws Exception {
+        DbExecutor waiting = new DbExecutor("test-wait", 1, 0, 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            CompletableFuture<Void> blocked = waiting.run(() -> await(started, release));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            long start = System.nanoTime();
+            CompletableFuture<String> rejected = waiting.trySupply(() -> "never");
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+            assertThat(rejected.isCompletedExceptionally()).isTrue();
+            assertThat(waiting.getRejected()).isEqualTo(1);
+
+            release.countDown();
+            blocked.get(10, TimeUnit.SECONDS);
+            assertThat(waiting.trySupply(() -> "done").get(10, TimeUnit.SECONDS)).isEqualTo("done");
+        } finally {
+            release.countDown();
+            waiting.shutdown();
+        }
+    }
+
+    @Test
+    public void virtualThreadsAreUsedWhenSupported() throws Exception {
+        Properties conf = new Properties();
+        conf.setProperty(ManagerFactory.ASYNC_THREADS, "2");
+        conf.setProperty(ManagerFactory.ASYNC_VIRTUAL, "true");
+        DbExecutor virtual = new ManagerFactory(dataSource, conf).createExecutor();
+        try {
+            assertThat(virtual.isVirtual()).isEqualTo(VirtualThreads.isSupported());
+            AsyncManager<CellManager> cells = new AsyncManager<>(new CellManagerImpl(dataSource), virtual);
+            cells.run(m -> m.createCell(new Cell(1, 2))).get(10, TimeUnit.SECONDS);
+            assertThat(cells.supply(CellManager::findAllCells).get(10, TimeUnit.SECONDS)).hasSize(1);
+            assertThat(virtual.supply(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS))
+                    .startsWith("prison-db-");
+        } finally {
+            virtual.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch started, CountDownLatch release) {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
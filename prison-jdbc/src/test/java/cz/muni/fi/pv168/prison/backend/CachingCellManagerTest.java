@@ -0,0 +1,119 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.CacheStats;
+import cz.muni.fi.pv168.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link CachingCellManager}.
+ */
+public class CachingCellManagerTest {
+
+    private DataSource dataSource;
+    private CellManager cellManager;
+    private CachingCellManager manager;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:cellcache-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        cellManager = new CellManagerImpl(dataSource);
+        manager = new CachingCellManager(cellManager, 2);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void getCellByIdIsCached() {
+        Cell cell = new Cell(1, 4);
+        manager.createCell(cell);
+
+        assertThat(manager.getCellById(cell.getId())).isEqualToComparingFieldByField(cell);
+        Cell cached = manager.getCellById(cell.getId());
+        assertThat(cached).isEqualToComparingFieldByField(cell);
+
+        // copy of the cached cell is returned
+        cached.setCapacity(10);
+        assertThat(manager.getCellById(cell.getId()).getCapacity()).isEqualTo(4);
+
+        CacheStats stats = manager.getCacheStats();
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void missingCellIsNotCached() {
+        assertThat(manager.getCellById(1L)).isNull();
+        assertThat(manager.getCellById(1L)).isNull();
+
+        assertThat(manager.getCacheStats().getMisses()).isEqualTo(2);
+        assertThat(manager.getCacheStats().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void updateAndDeleteInvalidateCell() {
+        Cell cell = new Cell(1, 4);
+        manager.createCell(cell);
+        manager.getCellById(cell.getId());
+
+        cell.setCapacity(6);
+        manager.updateCell(cell);
+        assertThat(manager.getCellById(cell.getId()).getCapacity()).isEqualTo(6);
+
+        manager.deleteCell(cell);
+        assertThat(manager.getCellById(cell.getId())).isNull();
+    }
+
+    @Test
+    public void getCellsByIdsReadsCurrentRows() {
+        Cell cell = new Cell(1, 4);
+        manager.createCell(cell);
+        manager.getCellById(cell.getId());
+
+        // changed by another client, the cached copy is stale
+        cell.setCapacity(6);
+        cellManager.updateCell(cell);
+
+        assertThat(manager.getCellsByIds(Arrays.asList(cell.getId())).get(cell.getId()).getCapacity()).isEqualTo(6);
+        assertThat(manager.getCacheStats().getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void leastRecentlyUsedCellIsEvicted() {
+        Cell c1 = new Cell(1, 1);
+        Cell c2 = new Cell(2, 2);
+        Cell c3 = new Cell(3, 3);
+        manager.createCell(c1);
+        manager.createCell(c2);
+        manager.createCell(c3);
+
+        manager.getCellById(c1.getId());
+        manager.getCellById(c2.getId());
+        manager.getCellById(c1.getId());
+        manager.getCellById(c3.getId());
+        manager.getCellById(c1.getId());
+        manager.getCellById(c2.getId());
+
+        CacheStats stats = manager.getCacheStats();
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getMisses()).isEqualTo(4);
+        assertThat(stats.getEvictions()).isEqualTo(2);
+        assertThat(stats.getSize()).isEqualTo(2);
+    }
+}
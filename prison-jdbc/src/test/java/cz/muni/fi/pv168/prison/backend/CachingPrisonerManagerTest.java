@@ -0,0 +1,122 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.CacheStats;
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.TransactionTemplate;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link CachingPrisonerManager}.
+ */
+public class CachingPrisonerManagerTest {
+
+    private DataSource dataSource;
+    private PrisonerManager prisonerManager;
+    private CachingPrisonerManager manager;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:prisonercache-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        prisonerManager = new PrisonerManagerImpl(dataSource);
+        manager = new CachingPrisonerManager(prisonerManager, 2);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    private static Prisoner prisoner(String name) {
+        return new Prisoner(name, "Novák", LocalDate.of(1980, 1, 1));
+    }
+
+    @Test
+    public void getPrisonerByIdIsCached() {
+        Prisoner prisoner = prisoner("Jan");
+        manager.createPrisoner(prisoner);
+
+        assertThat(manager.getPrisonerById(prisoner.getId())).isEqualToComparingFieldByField(prisoner);
+        Prisoner cached = manager.getPrisonerById(prisoner.getId());
+        assertThat(cached).isEqualToComparingFieldByField(prisoner);
+
+        // copy of the cached prisoner is returned
+        cached.setName("Petr");
+        assertThat(manager.getPrisonerById(prisoner.getId()).getName()).isEqualTo("Jan");
+
+        CacheStats stats = manager.getCacheStats();
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void missingPrisonerIsNotCached() {
+        assertThat(manager.getPrisonerById(1L)).isNull();
+        assertThat(manager.getPrisonerById(1L)).isNull();
+
+        assertThat(manager.getCacheStats().getMisses()).isEqualTo(2);
+        assertThat(manager.getCacheStats().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void updateAndDeleteInvalidatePrisoner() {
+        Prisoner prisoner = prisoner("Jan");
+        manager.createPrisoner(prisoner);
+        manager.getPrisonerById(prisoner.getId());
+
+        prisoner.setName("Petr");
+        manager.updatePrisoner(prisoner);
+        assertThat(manager.getPrisonerById(prisoner.getId()).getName()).isEqualTo("Petr");
+
+        manager.deletePrisoner(prisoner);
+        assertThat(manager.getPrisonerById(prisoner.getId())).isNull();
+    }
+
+    @Test
+    public void getPrisonersByIdsReadsCurrentRows() {
+        Prisoner jan = prisoner("Jan");
+        Prisoner petr = prisoner("Petr");
+        manager.createPrisoner(jan);
+        manager.createPrisoner(petr);
+        manager.getPrisonerById(jan.getId());
+
+        // changed by another client, the cached copy is stale
+        jan.setName("Josef");
+        prisonerManager.updatePrisoner(jan);
+
+        assertThat(manager.getPrisonersByIds(Arrays.asList(petr.getId(), jan.getId())).values())
+                .extracting(Prisoner::getName).containsExactly("Petr", "Josef");
+        assertThat(manager.getCacheStats().getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void cacheIsBypassedInTransaction() {
+        Prisoner prisoner = prisoner("Jan");
+        manager.createPrisoner(prisoner);
+
+        new TransactionTemplate(dataSource).execute(ctx -> {
+            prisoner.setName("Petr");
+            manager.updatePrisoner(prisoner);
+            assertThat(manager.getPrisonerById(prisoner.getId()).getName()).isEqualTo("Petr");
+            ctx.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(manager.getCacheStats().getSize()).isEqualTo(0);
+        assertThat(manager.getPrisonerById(prisoner.getId()).getName()).isEqualTo("Jan");
+    }
+}
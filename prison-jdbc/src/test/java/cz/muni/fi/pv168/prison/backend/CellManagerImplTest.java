@@ -1,5 +1,6 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
 import cz.muni.fi.pv168.common.ServiceFailureException;
@@ -16,6 +17,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.sql.SQLException;
 import javax.sql.DataSource;
 
@@ -43,7 +45,7 @@ public class CellManagerImplTest {
     @Before
     public void setUp() throws SQLException {
         dataSource = prepareDataSource();
-        DBUtils.executeSqlScript(dataSource,CellManager.class.getResource("createTables.sql"));
+        PrisonSchema.migrate(dataSource);
         manager = new CellManagerImpl();
         manager.setDataSource(dataSource);
     }
@@ -100,6 +102,63 @@ public class CellManagerImplTest {
     }
 
 
+    @Test
+    public void testFindCellsOnFloor() {
+        Cell c1 = sampleBigCellBuilder().floor(2).build();
+        Cell c2 = sampleSmallCellBuilder().floor(1).build();
+        Cell c3 = sampleSmallCellBuilder().floor(2).build();
+        manager.createCell(c1);
+        manager.createCell(c2);
+        manager.createCell(c3);
+
+        assertThat(manager.findCellsOnFloor(2, null, 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c1, c3);
+        assertThat(manager.findCellsOnFloor(2, c1.getId(), 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c3);
+        assertThat(manager.findCellsOnFloor(5, null, 5)).isEmpty();
+    }
+
+    @Test
+    public void testFindCellsPaged() {
+        Cell c1 = sampleBigCellBuilder().floor(2).build();
+        Cell c2 = sampleSmallCellBuilder().floor(1).build();
+        Cell c3 = sampleSmallCellBuilder().floor(2).build();
+        manager.createCell(c1);
+        manager.createCell(c2);
+        manager.createCell(c3);
+
+        assertThat(manager.findCells(c1.getId(), 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c2, c3);
+
+        List<Cell> first = manager.findCellsOrderedByFloor(null, 2);
+        assertThat(first)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c2, c1);
+        assertThat(manager.findCellsOrderedByFloor(first.get(1), 2))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c3);
+    }
+
+    @Test
+    public void getCellsByIds() {
+        Cell c1 = sampleSmallCellBuilder().build();
+        Cell c2 = sampleBigCellBuilder().build();
+        manager.createCell(c1);
+        manager.createCell(c2);
+
+        Map<Long, Cell> cells = manager.getCellsByIds(
+                Arrays.asList(c2.getId(), c1.getId() + 100, c1.getId(), c2.getId()));
+
+        assertThat(cells.keySet()).containsExactly(c2.getId(), c1.getId());
+        assertThat(cells.values())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c2, c1);
+        assertThat(manager.getCellsByIds(Collections.emptyList())).isEmpty();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testCreateWithNull() {
         manager.createCell(null);
@@ -291,6 +350,26 @@ public class CellManagerImplTest {
     }
 
 
+    @Test
+    public void testCreateCells() {
+        manager.setBatchSize(2);
+        Cell small = sampleSmallCellBuilder().build();
+        Cell big = sampleBigCellBuilder().build();
+        Cell withId = sampleSmallCellBuilder().id(1L).build();
+        Cell empty = sampleSmallCellBuilder().capacity(0).build();
+        Cell other = sampleBigCellBuilder().floor(2).build();
+
+        BatchResult<Cell> result = manager.createCells(Arrays.asList(small, withId, big, empty, other));
+
+        assertThat(result.getSucceeded()).containsExactly(small, big, other);
+        assertThat(result.getFailures()).containsOnlyKeys(1, 3);
+        assertThat(result.getFailures().get(1)).isInstanceOf(IllegalEntityException.class);
+        assertThat(result.getFailures().get(3)).isInstanceOf(ValidationException.class);
+        assertThat(manager.findAllCells())
+                .usingFieldByFieldElementComparator()
+                .containsOnly(small, big, other);
+    }
+
     private static Cell newCell(int floor, int capacity) {
         Cell cell = new Cell();
         cell.setFloor(floor);
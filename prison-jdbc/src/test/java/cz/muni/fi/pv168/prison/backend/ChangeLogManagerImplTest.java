@@ -0,0 +1,329 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Tests of {@link ChangeLogManagerImpl}, triggers writing the change log and {@link ChangePoller}.
+ */
+public class ChangeLogManagerImplTest {
+
+    private ChangeLogManagerImpl manager;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:changelog-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        manager = new ChangeLogManagerImpl(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void changesAreLoggedByTriggers() {
+        assertThat(manager.getLatestVersion()).isEqualTo(0);
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        PrisonerManagerImpl prisonerManager = new PrisonerManagerImpl(Clock.systemDefaultZone());
+        prisonerManager.setDataSource(dataSource);
+        SentenceManagerImpl sentenceManager = new SentenceManagerImpl(Clock.systemDefaultZone());
+        sentenceManager.setDataSource(dataSource);
+
+        Cell cell = new Cell(1, 2);
+        cellManager.createCell(cell);
+        Prisoner prisoner = new PrisonerBuilder().name("Jan").surname("Novak").born(LocalDate.of(1980, 1, 1)).build();
+        prisonerManager.createPrisoner(prisoner);
+        Sentence sentence = new SentenceBuilder().prisonerId(prisoner.getId()).cellId(cell.getId())
+                .startDay(LocalDate.now()).endDay(LocalDate.now().plusYears(1)).punishment("work").build();
+        sentenceManager.createSentence(sentence);
+        cell.setCapacity(3);
+        cellManager.updateCell(cell);
+        sentenceManager.deleteSentence(sentence);
+
+        List<Change> changes = manager.findChanges(0, 100);
+        assertThat(changes).extracting(Change::getEntity, Change::getEntityId, Change::getOperation).containsExactly(
+                tuple(Change.Entity.CELL, cell.getId(), Change.Operation.INSERT),
+                tuple(Change.Entity.PRISONER, prisoner.getId(), Change.Operation.INSERT),
+                tuple(Change.Entity.SENTENCE, sentence.getId(), Change.Operation.INSERT),
+                tuple(Change.Entity.CELL, cell.getId(), Change.Operation.UPDATE),
+                tuple(Change.Entity.SENTENCE, sentence.getId(), Change.Operation.DELETE));
+        assertThat(changes).isSortedAccordingTo((a, b) -> Long.compare(a.getVersion(), b.getVersion()));
+        Change last = changes.get(changes.size() - 1);
+        assertThat(manager.getLatestVersion()).isEqualTo(last.getVersion());
+
+        // paging and lookup by versions
+        assertThat(manager.findChanges(changes.get(1).getVersion(), 2)).extracting(Change::getVersion)
+                .containsExactly(changes.get(2).getVersion(), changes.get(3).getVersion());
+        assertThat(manager.findChanges(Arrays.asList(changes.get(3).getVersion(), changes.get(0).getVersion(), -1L)))
+                .extracting(Change::getVersion)
+                .containsExactly(changes.get(0).getVersion(), changes.get(3).getVersion());
+        assertThat(manager.findChanges(Collections.emptyList())).isEmpty();
+
+        assertThat(manager.deleteChanges(changes.get(2).getVersion())).isEqualTo(3);
+        assertThat(manager.findChanges(0, 100)).hasSize(changes.size() - 3);
+        assertThat(manager.getLatestVersion()).isEqualTo(last.getVersion());
+    }
+
+    @Test
+    public void lockingCellOfNewSentenceIsNotLogged() {
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        PrisonerManagerImpl prisonerManager = new PrisonerManagerImpl(Clock.systemDefaultZone());
+        prisonerManager.setDataSource(dataSource);
+        SentenceManagerImpl sentenceManager = new SentenceManagerImpl(Clock.systemDefaultZone());
+        sentenceManager.setDataSource(dataSource);
+        Cell cell = new Cell(1, 3);
+        cellManager.createCell(cell);
+        Prisoner prisoner = new PrisonerBuilder().name("Jan").surname("Novak").born(LocalDate.of(1980, 1, 1)).build();
+        prisonerManager.createPrisoner(prisoner);
+        long version = manager.getLatestVersion();
+
+        SentenceBuilder sentence = new SentenceBuilder().prisonerId(prisoner.getId()).cellId(cell.getId())
+                .startDay(LocalDate.now()).endDay(LocalDate.now().plusYears(1)).punishment("work");
+        sentenceManager.createSentence(sentence.build());
+        sentenceManager.createSentences(Arrays.asList(sentence.build(), sentence.build()));
+
+        assertThat(manager.findChanges(version, 100)).extracting(Change::getEntity, Change::getOperation).containsExactly(
+                tuple(Change.Entity.SENTENCE, Change.Operation.INSERT),
+                tuple(Change.Entity.SENTENCE, Change.Operation.INSERT),
+                tuple(Change.Entity.SENTENCE, Change.Operation.INSERT));
+    }
+
+    @Test
+    public void pollerReturnsEachChangeOnce() {
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        Cell cell = new Cell(1, 2);
+        cellManager.createCell(cell);
+        ChangePoller poller = new ChangePoller(manager, manager.getLatestVersion());
+
+        assertThat(poller.poll()).isEmpty();
+        cell.setFloor(2);
+        cellManager.updateCell(cell);
+        cellManager.deleteCell(cell);
+        assertThat(poller.poll()).extracting(Change::getOperation)
+                .containsExactly(Change.Operation.UPDATE, Change.Operation.DELETE);
+        assertThat(poller.poll()).isEmpty();
+        assertThat(poller.getGapCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void pollerReturnsLateCommittedChanges() {
+        FakeChangeLog log = new FakeChangeLog();
+        ChangePoller poller = new ChangePoller(log, 0);
+        log.add(1);
+        log.add(3);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(1L, 3L);
+        assertThat(poller.getGapCount()).isEqualTo(1);
+
+        // version 2 was committed after version 3 was read
+        log.add(2);
+        log.add(4);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(2L, 4L);
+        assertThat(poller.getGapCount()).isEqualTo(0);
+
+        // version 5 is never committed, it is forgotten after GAP_POLLS polls
+        log.add(6);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(6L);
+        for (int i = 0; i < ChangePoller.GAP_POLLS; i++) {
+            assertThat(poller.poll()).isEmpty();
+        }
+        assertThat(poller.getGapCount()).isEqualTo(0);
+        log.add(5);
+        assertThat(poller.poll()).isEmpty();
+    }
+
+    @Test
+    public void readChangesAreDeleted() throws SQLException {
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        cellManager.createCell(new Cell(1, 2));
+        assertThat(manager.deleteReadChanges(60)).isEqualTo(0);
+        long first = manager.registerReader("first");
+        assertThat(manager.registerReader("second")).isEqualTo(first);
+        cellManager.createCell(new Cell(2, 2));
+        cellManager.createCell(new Cell(3, 2));
+        long latest = manager.getLatestVersion();
+
+        assertThat(manager.saveReaderVersion("first", latest)).isTrue();
+        assertThat(manager.deleteReadChanges(60)).isEqualTo(1);
+        assertThat(manager.findChanges(0, 100)).extracting(Change::getVersion).containsExactly(latest - 1, latest);
+
+        // a silent reader is removed and changes it has not read are deleted
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE Change_Log_Reader SET read_at = "
+                    + "{fn TIMESTAMPADD(SQL_TSI_HOUR, -2, CURRENT_TIMESTAMP)} WHERE reader = 'second'");
+        }
+        assertThat(manager.deleteReadChanges(3600)).isEqualTo(2);
+        assertThat(manager.findChanges(0, 100)).isEmpty();
+        assertThat(manager.saveReaderVersion("second", latest)).isFalse();
+        assertThat(manager.saveReaderVersion("first", latest)).isTrue();
+    }
+
+    @Test
+    public void pollerKeepsChangesItHasNotRead() {
+        FakeChangeLog log = new FakeChangeLog();
+        log.add(1);
+        ChangePoller poller = new ChangePoller(log, "gui");
+        assertThat(log.readers).containsEntry("gui", 1L);
+        log.add(2);
+        log.add(4);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(2L, 4L);
+        // version 3 can still be committed
+        assertThat(log.readers).containsEntry("gui", 2L);
+        log.deleteReadChanges(60);
+        assertThat(log.changes.keySet()).containsExactly(4L);
+
+        // version 3 is forgotten and the poller deletes changes read by all readers
+        for (int i = 1; i < ChangePoller.PRUNE_POLLS; i++) {
+            assertThat(poller.poll()).isEmpty();
+        }
+        assertThat(log.readers).containsEntry("gui", 4L);
+        assertThat(log.changes).isEmpty();
+        assertThat(poller.checkLost()).isFalse();
+
+        // the reader was removed as silent, changes it has not read may have been deleted
+        log.readers.clear();
+        log.add(5);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(5L);
+        assertThat(poller.checkLost()).isTrue();
+        assertThat(poller.checkLost()).isFalse();
+        assertThat(log.readers).containsEntry("gui", 5L);
+    }
+
+    @Test
+    public void failedPollCanBeRepeated() {
+        FakeChangeLog log = new FakeChangeLog();
+        ChangePoller poller = new ChangePoller(log, 0);
+        log.add(1);
+        log.add(3);
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(1L, 3L);
+
+        // version 2 is found among gaps by the first call, the second call fails
+        log.add(2);
+        log.add(4);
+        log.failOnCall(2);
+        try {
+            poller.poll();
+            fail("exception expected");
+        } catch (ServiceFailureException ex) {
+            assertThat(poller.getLastVersion()).isEqualTo(3);
+            assertThat(poller.getGapCount()).isEqualTo(1);
+        }
+        assertThat(poller.poll()).extracting(Change::getVersion).containsExactly(2L, 4L);
+
+        // saving the version of the reader fails after changes were read
+        ChangePoller reading = new ChangePoller(log, "gui");
+        log.add(5);
+        log.failOnCall(2);
+        try {
+            reading.poll();
+            fail("exception expected");
+        } catch (ServiceFailureException ex) {
+            assertThat(reading.getLastVersion()).isEqualTo(4);
+        }
+        assertThat(log.readers).containsEntry("gui", 4L);
+        assertThat(reading.poll()).extracting(Change::getVersion).containsExactly(5L);
+        assertThat(log.readers).containsEntry("gui", 5L);
+    }
+
+    private static class FakeChangeLog implements ChangeLogManager {
+
+        private final TreeMap<Long, Change> changes = new TreeMap<>();
+        private final Map<String, Long> readers = new HashMap<>();
+        private int calls;
+        private int failingCall;
+
+        /**
+         * @param call number of the failing call counted from now, 1 for the next call
+         */
+        void failOnCall(int call) {
+            calls = 0;
+            failingCall = call;
+        }
+
+        private void call() {
+            if (++calls == failingCall) {
+                throw new ServiceFailureException("call " + calls + " failed");
+            }
+        }
+
+        void add(long version) {
+            changes.put(version, new Change(version, Change.Entity.CELL, version, Change.Operation.UPDATE));
+        }
+
+        @Override
+        public long getLatestVersion() {
+            return changes.isEmpty() ? 0 : changes.lastKey();
+        }
+
+        @Override
+        public List<Change> findChanges(long afterVersion, int limit) {
+            call();
+            return changes.tailMap(afterVersion, false).values().stream().limit(limit).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<Change> findChanges(Collection<Long> versions) {
+            call();
+            List<Change> result = new ArrayList<>();
+            for (Change change : changes.values()) {
+                if (versions.contains(change.getVersion())) {
+                    result.add(change);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int deleteChanges(long upToVersion) {
+            int size = changes.size();
+            changes.headMap(upToVersion, true).clear();
+            return size - changes.size();
+        }
+
+        @Override
+        public long registerReader(String reader) {
+            readers.put(reader, getLatestVersion());
+            return readers.get(reader);
+        }
+
+        @Override
+        public boolean saveReaderVersion(String reader, long version) {
+            call();
+            return readers.replace(reader, version) != null;
+        }
+
+        @Override
+        public int deleteReadChanges(int readerTimeoutSeconds) {
+            return readers.isEmpty() ? 0 : deleteChanges(Collections.min(readers.values()));
+        }
+    }
+}
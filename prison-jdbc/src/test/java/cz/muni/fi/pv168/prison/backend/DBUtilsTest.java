@@ -0,0 +1,28 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link DBUtils} used by migration scripts.
+ */
+public class DBUtilsTest {
+
+    @Test
+    public void splitSqlStatements() {
+        // semicolons inside the dollar quoted function body do not split the statement
+        String script = "CREATE TABLE \"A;B\" (X VARCHAR(1) DEFAULT ';');\n"
+                + "-- comment; with semicolon\n"
+                + "CREATE FUNCTION f() RETURNS trigger AS $$\nBEGIN\n  INSERT INTO t VALUES (1);\n  RETURN NULL;\nEND;\n$$ LANGUAGE plpgsql;\n"
+                + "/* block; comment */ DROP TABLE t";
+        List<String> statements = DBUtils.splitSqlStatements(script);
+        assertThat(statements).hasSize(3);
+        assertThat(statements.get(0)).isEqualTo("CREATE TABLE \"A;B\" (X VARCHAR(1) DEFAULT ';')");
+        assertThat(statements.get(1)).contains("INSERT INTO t VALUES (1);", "RETURN NULL;").endsWith("LANGUAGE plpgsql");
+        assertThat(statements.get(2)).endsWith("DROP TABLE t");
+    }
+}
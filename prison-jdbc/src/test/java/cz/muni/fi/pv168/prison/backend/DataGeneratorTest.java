@@ -0,0 +1,128 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link DataGenerator}.
+ */
+public class DataGeneratorTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2016-03-01T12:00:00Z"), ZoneId.of("UTC"));
+    private static final LocalDate TODAY = LocalDate.now(CLOCK);
+
+    private DataSource dataSource;
+    private DataGenerator generator;
+    private CellManagerImpl cellManager;
+    private PrisonerManagerImpl prisonerManager;
+    private SentenceManagerImpl sentenceManager;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:generator-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+
+        generator = new DataGenerator();
+        generator.setClock(CLOCK);
+        generator.setPrisonerCount(200);
+        generator.setCells(12, 3);
+        generator.setCapacity(1, 4);
+        generator.setChunkSize(64);
+        generator.setBatchSize(50);
+
+        cellManager = new CellManagerImpl(dataSource);
+        prisonerManager = new PrisonerManagerImpl(dataSource);
+        sentenceManager = new SentenceManagerImpl(CLOCK);
+        sentenceManager.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void generatesConfiguredCounts() {
+        DataGenerator.Summary summary = generator.generate(dataSource);
+
+        assertThat(summary.getCells()).isEqualTo(12);
+        assertThat(summary.getPrisoners()).isEqualTo(200);
+        assertThat(cellManager.findAllCells()).hasSize(12)
+                .extracting("floor").containsOnly(1, 2, 3);
+        assertThat(prisonerManager.findAllPrisoners()).hasSize(200);
+
+        List<Sentence> sentences = sentenceManager.findAllSentences();
+        assertThat(sentences).hasSize(summary.getSentences());
+        long current = sentences.stream()
+                .filter(s -> !s.getStartDay().isAfter(TODAY) && s.getEndDay().isAfter(TODAY)).count();
+        long future = sentences.stream().filter(s -> s.getStartDay().isAfter(TODAY)).count();
+        assertThat(current).isEqualTo(summary.getCurrentSentences());
+        assertThat(future).isEqualTo(summary.getFutureSentences());
+        assertThat(summary.getHistoricalSentences()).isPositive();
+    }
+
+    @Test
+    public void currentAndFutureSentencesRespectCapacity() {
+        generator.setRatios(0.7, 0.3);
+        DataGenerator.Summary summary = generator.generate(dataSource);
+
+        int capacity = 0;
+        for (Cell cell : cellManager.findAllCells()) {
+            capacity += cell.getCapacity();
+            assertThat(sentenceManager.findFreeCapacity(cell)).isEqualTo(0);
+        }
+        // more prisoners than places, the rest is released
+        assertThat(summary.getCurrentSentences() + summary.getFutureSentences()).isEqualTo(capacity);
+    }
+
+    @Test
+    public void sentencesOfPrisonerDoNotOverlap() {
+        generator.setSentencesPerPrisoner(2, 5);
+        generator.generate(dataSource);
+
+        Map<Long, List<Sentence>> byPrisoner = new HashMap<>();
+        for (Sentence sentence : sentenceManager.findAllSentences()) {
+            byPrisoner.computeIfAbsent(sentence.getPrisonerId(), id -> new ArrayList<>()).add(sentence);
+        }
+        for (List<Sentence> sentences : byPrisoner.values()) {
+            sentences.sort((a, b) -> a.getStartDay().compareTo(b.getStartDay()));
+            for (int i = 1; i < sentences.size(); i++) {
+                assertThat(sentences.get(i).getStartDay()).isAfter(sentences.get(i - 1).getEndDay());
+            }
+        }
+    }
+
+    @Test
+    public void sameSeedGeneratesSameData() throws SQLException {
+        generator.setSeed(7);
+        generator.generate(dataSource);
+        List<Prisoner> prisoners = prisonerManager.findAllPrisoners();
+        List<Sentence> sentences = sentenceManager.findAllSentences();
+
+        tearDown();
+        PrisonSchema.migrate(dataSource);
+        generator.generate(dataSource);
+
+        assertThat(prisonerManager.findAllPrisoners()).isEqualTo(prisoners);
+        assertThat(sentenceManager.findAllSentences()).isEqualTo(sentences);
+    }
+}
@@ -0,0 +1,50 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.LruCache;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link LruCache} used by caching managers.
+ */
+public class LruCacheTest {
+
+    private final LruCache<Long, String> cache = new LruCache<>(2);
+
+    @Test
+    public void leastRecentlyUsedValueIsEvicted() {
+        cache.get(1L, id -> "a");
+        cache.get(2L, id -> "b");
+        assertThat(cache.get(1L, id -> "x")).isEqualTo("a");
+        cache.get(3L, id -> "c");
+
+        assertThat(cache.get(1L, id -> "x")).isEqualTo("a");
+        assertThat(cache.get(2L, id -> "y")).isEqualTo("y");
+        assertThat(cache.getStats().getEvictions()).isEqualTo(2);
+        assertThat(cache.getStats().getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void valueLoadedDuringInvalidationIsNotCached() {
+        // the value is loaded before a concurrent update commits and invalidates it
+        assertThat(cache.get(1L, id -> {
+            cache.invalidate(id);
+            return "old";
+        })).isEqualTo("old");
+
+        assertThat(cache.getStats().getSize()).isEqualTo(0);
+        assertThat(cache.get(1L, id -> "new")).isEqualTo("new");
+        assertThat(cache.get(1L, id -> "newer")).isEqualTo("new");
+    }
+
+    @Test
+    public void invalidateAll() {
+        cache.get(1L, id -> "a");
+        cache.get(2L, id -> "b");
+        cache.invalidateAll();
+
+        assertThat(cache.getStats().getSize()).isEqualTo(0);
+        assertThat(cache.get(1L, id -> "c")).isEqualTo("c");
+    }
+}
@@ -0,0 +1,145 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.LatencyHistogram;
+import cz.muni.fi.pv168.common.MethodMetrics;
+import cz.muni.fi.pv168.common.Metrics;
+import cz.muni.fi.pv168.common.TimingDataSource;
+import cz.muni.fi.pv168.common.ValidationException;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests of {@link ManagerFactory} and metrics of managers.
+ */
+public class ManagerFactoryTest {
+
+    private DataSource dataSource;
+    private Properties conf;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:factory-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        conf = new Properties();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void plainManagersByDefault() {
+        ManagerFactory factory = new ManagerFactory(dataSource, conf);
+
+        assertThat(factory.createPrisonerManager()).isInstanceOf(PrisonerManagerImpl.class);
+        assertThat(factory.createCellManager()).isInstanceOf(CellManagerImpl.class);
+        assertThat(factory.createSentenceManager()).isInstanceOf(SentenceManagerImpl.class);
+    }
+
+    @Test
+    public void cacheIsConfigurable() {
+        conf.setProperty(ManagerFactory.CACHE, "true");
+        conf.setProperty(ManagerFactory.CACHE_SIZE, "10");
+        ManagerFactory factory = new ManagerFactory(dataSource, conf);
+
+        assertThat(factory.createPrisonerManager()).isInstanceOf(CachingPrisonerManager.class);
+        assertThat(factory.createCellManager()).isInstanceOf(CachingCellManager.class);
+    }
+
+    @Test
+    public void metricsAreRecordedAndExported() throws Exception {
+        conf.setProperty(ManagerFactory.METRICS, "true");
+        ManagerFactory factory = new ManagerFactory(dataSource, conf);
+        CellManager cellManager = factory.createCellManager();
+        SentenceManager sentenceManager = factory.createSentenceManager();
+
+        Cell cell = new Cell(1, 2);
+        cellManager.createCell(cell);
+        cellManager.getCellById(cell.getId());
+        cellManager.getCellById(cell.getId());
+        try {
+            cellManager.createCell(new Cell(1, -1));
+            fail("ValidationException expected");
+        } catch (ValidationException ex) {
+            // expected, exception is passed unchanged
+        }
+        sentenceManager.findEmptyCells();
+        sentenceManager.findEmptyCells(null, 10);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.JMX_DOMAIN + ":type=Metrics,name=\"CellManager\"");
+        assertThat(server.getAttribute(name, "Calls")).isEqualTo(4L);
+        assertThat(server.getAttribute(name, "Errors")).isEqualTo(1L);
+        CompositeData[] methods = (CompositeData[]) server.getAttribute(name, "Methods");
+        assertThat(methods).extracting(m -> m.get("method")).containsExactly("createCell", "getCellById");
+        assertThat(methods[0].get("calls")).isEqualTo(2L);
+        assertThat(methods[0].get("errors")).isEqualTo(1L);
+        assertThat((Double) methods[1].get("p99")).isPositive();
+
+        ObjectName sentences = new ObjectName(Metrics.JMX_DOMAIN + ":type=Metrics,name=\"SentenceManager\"");
+        CompositeData[] sentenceMethods = (CompositeData[]) server.getAttribute(sentences, "Methods");
+        assertThat(sentenceMethods).extracting(m -> m.get("method"))
+                .containsExactly("findEmptyCells()", "findEmptyCells(Long,int)");
+
+        server.invoke(name, "reset", null, null);
+        assertThat(server.getAttribute(name, "Calls")).isEqualTo(0L);
+    }
+
+    @Test
+    public void sqlTimingRecordsStatementsOfManagers() {
+        conf.setProperty(ManagerFactory.SQL_TIMING, "true");
+        ManagerFactory factory = new ManagerFactory(dataSource, conf);
+        assertThat(factory.getDataSource()).isInstanceOf(TimingDataSource.class);
+        Metrics metrics = ((TimingDataSource) factory.getDataSource()).getMetrics();
+
+        CellManager cellManager = factory.createCellManager();
+        Cell cell = new Cell(3, 2);
+        cellManager.createCell(cell);
+        cellManager.getCellById(cell.getId());
+        cellManager.getCellById(cell.getId());
+
+        assertThat(metrics.getMethod("getConnection").getCalls()).isEqualTo(3);
+        assertThat(metrics.getMethod("COMMIT").getCalls()).isEqualTo(1);
+        assertThat(metrics.getMethods()).extracting("method")
+                .contains("SELECT id, floor, capacity FROM Cell WHERE id = ?");
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(10000);
+        assertThat(histogram.getMax()).isEqualTo(10_000_000);
+        assertThat(histogram.getMean()).isEqualTo(5_000_500.0);
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(5_000_000L, 5_000_000L * 104 / 100);
+        assertThat(histogram.getValueAtPercentile(99)).isBetween(9_900_000L, 9_900_000L * 104 / 100);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10_000_000);
+
+        MethodMetrics metrics = new MethodMetrics("m", 1, 0, 1, 1, 1, 1, 1, 1);
+        assertThat(metrics.getMethod()).isEqualTo("m");
+        histogram.reset();
+        assertThat(histogram.getCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,109 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.Metrics;
+import cz.muni.fi.pv168.common.PoolMetricsMXBean;
+import cz.muni.fi.pv168.common.PooledDataSource;
+import org.apache.derby.jdbc.EmbeddedDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests of {@link PooledDataSource}.
+ */
+public class PooledDataSourceTest {
+
+    private PooledDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        Properties conf = new Properties();
+        conf.setProperty("jdbc.driver", EmbeddedDriver.class.getName());
+        conf.setProperty("jdbc.url", "jdbc:derby:memory:pool-test;create=true");
+        conf.setProperty("pool.maxTotal", "2");
+        conf.setProperty("pool.maxIdle", "2");
+        conf.setProperty("pool.maxWaitMillis", "100");
+        conf.setProperty("pool.maxOpenPreparedStatements", "10");
+        dataSource = PooledDataSource.create(conf);
+        PrisonSchema.migrate(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        if (!dataSource.isClosed()) {
+            DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void configurationIsApplied() {
+        assertThat(dataSource.getMaxTotal()).isEqualTo(2);
+        assertThat(dataSource.getMaxWaitMillis()).isEqualTo(100);
+        assertThat(dataSource.isPoolPreparedStatements()).isTrue();
+        assertThat(dataSource.getMaxOpenPreparedStatements()).isEqualTo(10);
+        assertThat(dataSource.getEnableAutoCommitOnReturn()).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingUrl() {
+        PooledDataSource.create(new Properties());
+    }
+
+    @Test
+    public void borrowsAndFailuresAreMeasured() throws SQLException {
+        PoolMetricsMXBean metrics = dataSource.getMetrics();
+        metrics.reset();
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertThat(metrics.getActive()).isEqualTo(2);
+        assertThat(metrics.getUtilization()).isEqualTo(1.0);
+        try {
+            dataSource.getConnection();
+            fail("pool is exhausted");
+        } catch (SQLException ex) {
+            // expected
+        }
+        first.setAutoCommit(false);
+        DBUtils.closeQuietly(first);
+        DBUtils.closeQuietly(second);
+
+        assertThat(metrics.getBorrows()).isEqualTo(2);
+        assertThat(metrics.getBorrowFailures()).isEqualTo(1);
+        assertThat(metrics.getActive()).isEqualTo(0);
+        assertThat(metrics.getMaxWait()).isGreaterThanOrEqualTo(metrics.getMeanWait());
+
+        Connection again = dataSource.getConnection();
+        assertThat(again.getAutoCommit()).isTrue();
+        again.close();
+    }
+
+    @Test
+    public void metricsAreExported() throws Exception {
+        dataSource.registerMetrics("test");
+        ObjectName name = new ObjectName(Metrics.JMX_DOMAIN + ":type=Pool,name=\"test\"");
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MaxTotal")).isEqualTo(2);
+
+        // managers work with pooled prepared statements
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        for (int i = 0; i < 20; i++) {
+            cellManager.createCell(new Cell(i, 1));
+        }
+        assertThat(cellManager.findAllCells()).hasSize(20);
+
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+        dataSource.close();
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+    }
+}
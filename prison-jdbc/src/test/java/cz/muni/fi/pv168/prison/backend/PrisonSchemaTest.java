@@ -0,0 +1,129 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of prison schema migrations.
+ */
+public class PrisonSchemaTest {
+
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:prisonschema-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void migrateEmptyDatabase() throws SQLException {
+        assertThat(PrisonSchema.getMigrator().getCurrentVersion(dataSource)).isEqualTo(0);
+
+        assertThat(PrisonSchema.migrate(dataSource)).isEqualTo(PrisonSchema.getLatestVersion());
+
+        assertThat(PrisonSchema.getMigrator().getCurrentVersion(dataSource))
+                .isEqualTo(PrisonSchema.getLatestVersion());
+        assertThat(indexesOf("SENTENCE")).contains("SENTENCE_CELL_END", "SENTENCE_PRISONER_END", "SENTENCE_END_ID");
+        assertThat(indexesOf("PRISONER")).contains("PRISONER_SURNAME_ID");
+    }
+
+    @Test
+    public void migrateTwice() throws SQLException {
+        PrisonSchema.migrate(dataSource);
+        new CellManagerImpl(dataSource).createCell(new Cell(1, 2));
+
+        assertThat(PrisonSchema.migrate(dataSource)).isEqualTo(PrisonSchema.getLatestVersion());
+
+        assertThat(new CellManagerImpl(dataSource).findAllCells()).hasSize(1);
+    }
+
+    @Test
+    public void migrateSchemaWithoutVersion() throws SQLException {
+        // tables created before migrations existed
+        execute("CREATE TABLE \"CELL\" (\"ID\" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
+                + "\"FLOOR\" INTEGER NOT NULL, \"CAPACITY\" INTEGER NOT NULL)");
+        execute("CREATE TABLE \"PRISONER\" (\"ID\" BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY, "
+                + "\"NAME\" VARCHAR(255) NOT NULL, \"SURNAME\" VARCHAR(255) NOT NULL, \"BORN\" DATE)");
+        execute("CREATE TABLE \"SENTENCE\" (\"PRISONERID\" BIGINT REFERENCES PRISONER(ID), "
+                + "\"CELLID\" BIGINT REFERENCES CELL(ID), \"PUNISHMENT\" VARCHAR(255) NOT NULL, "
+                + "\"STARTDAY\" DATE, \"ENDDAY\" DATE)");
+
+        assertThat(PrisonSchema.migrate(dataSource)).isEqualTo(PrisonSchema.getLatestVersion());
+
+        assertThat(indexesOf("PRISONER")).contains("PRISONER_SURNAME_ID");
+    }
+
+    @Test
+    public void changeLogTriggers() throws SQLException {
+        PrisonSchema.migrate(dataSource);
+
+        assertThat(indexesOf("CHANGE_LOG")).isNotEmpty();
+        execute("INSERT INTO cell (floor, capacity) VALUES (1, 2)");
+        assertThat(changeLog()).containsExactly("cell I");
+        execute("UPDATE cell SET capacity = capacity");
+        assertThat(changeLog()).containsExactly("cell I");
+        execute("UPDATE cell SET capacity = 3");
+        assertThat(changeLog()).containsExactly("cell I", "cell U");
+        execute("DELETE FROM cell");
+        assertThat(changeLog()).containsExactly("cell I", "cell U", "cell D");
+
+        // nullable columns
+        execute("DELETE FROM change_log");
+        execute("INSERT INTO prisoner (name, surname) VALUES ('Jan', 'Novak')");
+        execute("UPDATE prisoner SET born = NULL");
+        assertThat(changeLog()).containsExactly("prisoner I");
+        execute("UPDATE prisoner SET born = DATE('1980-01-01')");
+        execute("UPDATE prisoner SET born = DATE('1980-01-01')");
+        execute("UPDATE prisoner SET born = NULL");
+        assertThat(changeLog()).containsExactly("prisoner I", "prisoner U", "prisoner U");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate(sql);
+        }
+    }
+
+    private List<String> changeLog() throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT entity, operation FROM change_log ORDER BY version")) {
+            while (rs.next()) {
+                result.add(rs.getString("entity") + " " + rs.getString("operation"));
+            }
+        }
+        return result;
+    }
+
+    private List<String> indexesOf(String table) throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             ResultSet rs = conn.getMetaData().getIndexInfo(null, null, table, false, false)) {
+            while (rs.next()) {
+                result.add(rs.getString("INDEX_NAME"));
+            }
+        }
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
 import cz.muni.fi.pv168.common.ServiceFailureException;
@@ -14,7 +15,13 @@ import org.junit.rules.ExpectedException;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -51,8 +58,7 @@ public class PrisonerManagerImplTest {
     @Before
     public void setUp() throws SQLException {
         dataSource = prepareDataSource();
-        //System.out.print(CellManager.class.getResource("createTables.sql"));
-        DBUtils.executeSqlScript(dataSource,CellManager.class.getResource("createTables.sql"));
+        PrisonSchema.migrate(dataSource);
         manager = new PrisonerManagerImpl(prepareClockMock(NOW));
         manager.setDataSource(dataSource);
     }
@@ -104,6 +110,79 @@ public class PrisonerManagerImplTest {
             .containsOnly(adam, boris);
     }
 
+    @Test
+    public void findPrisonersPaged() {
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        Prisoner cyril = sampleBorisBodyBuilder().name("Cyril").build();
+        manager.createPrisoner(adam);
+        manager.createPrisoner(boris);
+        manager.createPrisoner(cyril);
+
+        List<Prisoner> first = manager.findPrisoners(null, 2);
+        assertThat(first)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(adam, boris);
+        assertThat(manager.findPrisoners(first.get(1).getId(), 2))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(cyril);
+        assertThat(manager.findPrisoners(cyril.getId(), 2)).isEmpty();
+    }
+
+    @Test
+    public void findPrisonersOrderedBySurname() {
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        Prisoner cyril = sampleBorisBodyBuilder().name("Cyril").build();
+        manager.createPrisoner(adam);
+        manager.createPrisoner(boris);
+        manager.createPrisoner(cyril);
+
+        // page boundary between two prisoners with the same surname
+        List<Prisoner> first = manager.findPrisonersOrderedBySurname(null, 1);
+        assertThat(first)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(boris);
+        assertThat(manager.findPrisonersOrderedBySurname(first.get(0), 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(cyril, adam);
+    }
+
+    @Test
+    public void findPrisonersBySurnamePrefix() {
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        Prisoner cyril = sampleBorisBodyBuilder().name("Cyril").surname("Cechovy").build();
+        Prisoner percent = sampleBorisBodyBuilder().name("Dan").surname("C%ech").build();
+        manager.createPrisoner(adam);
+        manager.createPrisoner(boris);
+        manager.createPrisoner(cyril);
+        manager.createPrisoner(percent);
+
+        List<Prisoner> first = manager.findPrisonersBySurnamePrefix("Ce", null, 1);
+        assertThat(first)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(boris);
+        assertThat(manager.findPrisonersBySurnamePrefix("Ce", first.get(0).getId(), 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(cyril);
+        // wildcards are matched literally, the match is case sensitive
+        assertThat(manager.findPrisonersBySurnamePrefix("C%", null, 5))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(percent);
+        assertThat(manager.findPrisonersBySurnamePrefix("C_", null, 5)).isEmpty();
+        assertThat(manager.findPrisonersBySurnamePrefix("ce", null, 5)).isEmpty();
+        assertThat(manager.findPrisonersBySurnamePrefix("", null, 5)).hasSize(4);
+        assertThatThrownBy(() -> manager.findPrisonersBySurnamePrefix(null, null, 5))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void findPrisonersWithWrongLimit() {
+        assertThatThrownBy(() -> manager.findPrisoners(null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void createNullPrisoner() {
         manager.createPrisoner(null);
@@ -345,6 +424,54 @@ public class PrisonerManagerImplTest {
         testExpectedServiceFailureException((prisonerManager) -> prisonerManager.findAllPrisoners());
     }
 
+    @Test
+    public void streamAllPrisonersWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((prisonerManager) -> prisonerManager.streamAllPrisoners());
+    }
+
+    @Test
+    public void streamAllPrisoners() {
+        manager.setFetchSize(1);
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        manager.createPrisoner(adam);
+        manager.createPrisoner(boris);
+
+        try (Stream<Prisoner> prisoners = manager.streamAllPrisoners()) {
+            assertThat(prisoners.map(Prisoner::getSurname).collect(Collectors.toList()))
+                    .containsOnly(adam.getSurname(), boris.getSurname());
+        }
+
+        List<Prisoner> visited = new ArrayList<>();
+        manager.forEachPrisoner(visited::add);
+        assertThat(visited)
+                .usingFieldByFieldElementComparator()
+                .containsOnly(adam, boris);
+    }
+
+    @Test
+    public void getPrisonersByIds() {
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        manager.createPrisoner(adam);
+        manager.createPrisoner(boris);
+
+        Map<Long, Prisoner> prisoners = manager.getPrisonersByIds(
+                Arrays.asList(boris.getId(), adam.getId() + 100, adam.getId(), boris.getId()));
+
+        assertThat(prisoners.keySet()).containsExactly(boris.getId(), adam.getId());
+        assertThat(prisoners.values())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(boris, adam);
+        assertThat(manager.getPrisonersByIds(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void getPrisonersByIdsWithNullId() {
+        assertThatThrownBy(() -> manager.getPrisonersByIds(Arrays.asList(1L, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void testGetPrisonerBySurname() {
         Prisoner prisoner = sampleAdamBodyBuilder().build();
@@ -354,4 +481,43 @@ public class PrisonerManagerImplTest {
         assertThat(manager.getPrisonerBySurname(prisoner.getSurname())).containsOnly(prisoner);
     }
 
+    @Test
+    public void createPrisoners() {
+        manager.setBatchSize(2);
+        Prisoner adam = sampleAdamBodyBuilder().build();
+        Prisoner boris = sampleBorisBodyBuilder().build();
+        Prisoner withoutName = sampleAdamBodyBuilder().name(null).build();
+        Prisoner cyril = sampleBorisBodyBuilder().name("Cyril").build();
+
+        BatchResult<Prisoner> result = manager.createPrisoners(Arrays.asList(adam, withoutName, boris, cyril));
+
+        assertThat(result.getSucceeded()).containsExactly(adam, boris, cyril);
+        assertThat(result.getFailures()).containsOnlyKeys(1);
+        assertThat(result.getFailures().get(1)).isInstanceOf(ValidationException.class);
+        assertThat(adam.getId()).isNotNull();
+        assertThat(boris.getId()).isNotNull();
+        assertThat(cyril.getId()).isNotNull();
+        assertThat(withoutName.getId()).isNull();
+        assertThat(manager.findAllPrisoners())
+                .usingFieldByFieldElementComparator()
+                .containsOnly(adam, boris, cyril);
+    }
+
+    @Test
+    public void createPrisonersWithSqlExceptionThrown() throws SQLException {
+        SQLException sqlException = new SQLException();
+        DataSource failingDataSource = mock(DataSource.class);
+        when(failingDataSource.getConnection()).thenThrow(sqlException);
+        manager.setDataSource(failingDataSource);
+
+        BatchResult<Prisoner> result = manager.createPrisoners(Arrays.asList(
+                sampleAdamBodyBuilder().build(), sampleBorisBodyBuilder().build()));
+
+        assertThat(result.getSucceeded()).isEmpty();
+        assertThat(result.getFailures()).containsOnlyKeys(0, 1);
+        assertThat(result.getFailures().get(0))
+                .isInstanceOf(ServiceFailureException.class)
+                .hasCause(sqlException);
+    }
+
 }
@@ -7,12 +7,18 @@ import java.time.LocalDate;
  */
 public class SentenceBuilder {
 
+    private Long id;
     private Long prisonerId;
     private Long cellId;
     private LocalDate startDay;
     private LocalDate endDay;
     private String punishment;
 
+    public SentenceBuilder id(Long id) {
+        this.id = id;
+        return this;
+    }
+
     public SentenceBuilder prisonerId(Long prisonerId) {
         this.prisonerId = prisonerId;
         return this;
@@ -40,6 +46,7 @@ public class SentenceBuilder {
 
     public Sentence build() {
         Sentence sentence = new Sentence();
+        sentence.setId(id);
         sentence.setPrisonerId(prisonerId);
         sentence.setCellId(cellId);
         sentence.setStartDay(startDay);
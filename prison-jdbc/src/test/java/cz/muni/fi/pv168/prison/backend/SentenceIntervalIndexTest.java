@@ -0,0 +1,119 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Tests of {@link SentenceIntervalIndex}.
+ */
+public class SentenceIntervalIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+
+    private static Sentence sentence(long prisonerId, long cellId, LocalDate start, LocalDate end) {
+        return new SentenceBuilder().prisonerId(prisonerId).cellId(cellId).startDay(start).endDay(end)
+                .punishment("p").build();
+    }
+
+    @Test
+    public void occupancyOnDay() {
+        SentenceIntervalIndex index = new SentenceIntervalIndex();
+        index.put(1L, sentence(10, 100, DAY.minusDays(10), DAY.plusDays(10)));
+        index.put(2L, sentence(11, 100, DAY, DAY.plusDays(1)));
+        index.put(3L, sentence(12, 100, DAY.plusDays(1), DAY.plusDays(5)));
+        index.put(4L, sentence(13, 100, DAY.minusDays(5), DAY));
+        index.put(5L, sentence(14, 200, DAY.minusDays(5), DAY.plusDays(5)));
+
+        assertThat(index.countOccupants(100L, DAY)).isEqualTo(2);
+        assertThat(index.findPrisonerIdsInCell(100L, DAY)).containsExactly(11L, 10L);
+        assertThat(index.countOccupants(100L, DAY.minusDays(1))).isEqualTo(2);
+        assertThat(index.findPrisonerIdsInCell(100L, DAY.minusDays(1))).containsExactly(13L, 10L);
+        assertThat(index.countOccupants(100L, DAY.plusDays(1))).isEqualTo(2);
+        assertThat(index.countNotEnded(100L, DAY)).isEqualTo(3);
+        assertThat(index.countOccupants(300L, DAY)).isZero();
+        assertThat(index.findCellIdsOfPrisoner(14L, DAY)).containsExactly(200L);
+        assertThat(index.findCellIdsOfPrisoner(13L, DAY)).isEmpty();
+
+        Cell cell = new Cell(1, 3);
+        cell.setId(100L);
+        Cell other = new Cell(1, 1);
+        other.setId(200L);
+        assertThat(index.findFreeCapacities(Arrays.asList(cell, other), DAY))
+                .containsExactly(entry(100L, 1), entry(200L, 0));
+    }
+
+    @Test
+    public void sentencesAreReplacedAndRemoved() {
+        SentenceIntervalIndex index = new SentenceIntervalIndex();
+        Sentence sentence = sentence(10, 100, DAY.minusDays(1), DAY.plusDays(1));
+        index.put(1L, sentence);
+        assertThat(index.findId(sentence)).isEqualTo(1L);
+        assertThat(index.findId(sentence(10, 200, DAY.minusDays(1), DAY.plusDays(1)))).isNull();
+
+        // moved to another cell
+        index.put(1L, sentence(10, 200, DAY.minusDays(1), DAY.plusDays(1)));
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.countOccupants(100L, DAY)).isZero();
+        assertThat(index.countOccupants(200L, DAY)).isEqualTo(1);
+        assertThat(index.findCellIdsOfPrisoner(10L, DAY)).containsExactly(200L);
+
+        assertThat(index.remove(1L)).isTrue();
+        assertThat(index.remove(1L)).isFalse();
+        assertThat(index.size()).isZero();
+        assertThat(index.countOccupants(200L, DAY)).isZero();
+    }
+
+    @Test
+    public void answersAsLinearScan() {
+        Random random = new Random(42);
+        SentenceIntervalIndex index = new SentenceIntervalIndex();
+        Map<Long, Sentence> sentences = new HashMap<>();
+        for (long id = 1; id <= 2000; id++) {
+            LocalDate start = DAY.plusDays(random.nextInt(200) - 100);
+            Sentence sentence = sentence(random.nextInt(50), random.nextInt(5), start, start.plusDays(random.nextInt(60)));
+            sentence.setId(id);
+            sentences.put(id, sentence);
+            index.put(id, sentence);
+            if (random.nextInt(4) == 0) {
+                long removed = 1 + random.nextInt((int) id);
+                assertThat(index.remove(removed)).isEqualTo(sentences.remove(removed) != null);
+            }
+        }
+        assertThat(index.size()).isEqualTo(sentences.size());
+
+        for (int i = 0; i < 200; i++) {
+            long cellId = random.nextInt(5);
+            LocalDate day = DAY.plusDays(random.nextInt(300) - 150);
+            List<Long> expected = new ArrayList<>();
+            int notEnded = 0;
+            for (Sentence sentence : sentences.values().stream()
+                    .sorted(Comparator.comparing(Sentence::getEndDay).thenComparing(Sentence::getId))
+                    .collect(Collectors.toList())) {
+                if (sentence.getCellId() != cellId) {
+                    continue;
+                }
+                if (sentence.getEndDay().isAfter(day)) {
+                    notEnded++;
+                    if (!sentence.getStartDay().isAfter(day)) {
+                        expected.add(sentence.getPrisonerId());
+                    }
+                }
+            }
+            assertThat(index.findPrisonerIdsInCell(cellId, day)).isEqualTo(expected);
+            assertThat(index.countOccupants(cellId, day)).isEqualTo(expected.size());
+            assertThat(index.countNotEnded(cellId, day)).isEqualTo(notEnded);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package cz.muni.fi.pv168.prison.backend;
 
+import cz.muni.fi.pv168.common.BatchResult;
 import cz.muni.fi.pv168.common.DBUtils;
 import cz.muni.fi.pv168.common.IllegalEntityException;
 import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.TransactionTemplate;
 import cz.muni.fi.pv168.common.ValidationException;
 import org.apache.derby.jdbc.EmbeddedDataSource;
 import org.junit.After;
@@ -14,10 +16,23 @@ import org.junit.rules.ExpectedException;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -53,7 +68,7 @@ public class SentenceManagerImplTest {
     @Before
     public void setUp() throws SQLException {
         dataSource = prepareDataSource();
-        DBUtils.executeSqlScript(dataSource,SentenceManager.class.getResource("createTables.sql"));
+        PrisonSchema.migrate(dataSource);
         manager = new SentenceManagerImpl(prepareClockMock(NOW));
         manager.setDataSource(dataSource);
         prisonerManager = new PrisonerManagerImpl(Clock.fixed(NOW.toInstant(), NOW.getZone()));
@@ -303,6 +318,135 @@ public class SentenceManagerImplTest {
         assertFalse(list.contains(sentence));
     }
 
+    @Test
+    public void testGetSentenceById() throws Exception {
+        Sentence sentence = createCorrectSentence();
+        manager.createSentence(sentence);
+
+        assertThat(sentence.getId()).isNotNull();
+        assertThat(manager.getSentenceById(sentence.getId())).isEqualTo(sentence);
+        assertThat(manager.getSentenceById(sentence.getId() + 1)).isNull();
+    }
+
+    @Test
+    public void getSentencesByIds() {
+        Sentence sentence = createCorrectSentence();
+        Sentence other = createCorrectSentence();
+        manager.createSentence(sentence);
+        manager.createSentence(other);
+
+        Map<Long, Sentence> sentences = manager.getSentencesByIds(
+                Arrays.asList(other.getId(), sentence.getId() + 100, sentence.getId(), other.getId()));
+
+        assertThat(sentences.keySet()).containsExactly(other.getId(), sentence.getId());
+        assertThat(sentences.values()).containsExactly(other, sentence);
+        assertThat(manager.getSentencesByIds(Collections.emptyList())).isEmpty();
+        assertThatThrownBy(() -> manager.getSentencesByIds(Arrays.asList(1L, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testUpdateSentenceById() throws Exception {
+        Sentence sentence = createCorrectSentence();
+        Sentence duplicate = createCorrectSentence();
+        duplicate.setPrisonerId(sentence.getPrisonerId());
+        duplicate.setCellId(sentence.getCellId());
+        manager.createSentence(sentence);
+        manager.createSentence(duplicate);
+
+        sentence.setPunishment("thief");
+        sentence.setEndDay(LocalDate.of(2030, 1, 1));
+        manager.updateSentence(sentence);
+
+        assertThat(manager.getSentenceById(sentence.getId())).isEqualTo(sentence);
+        assertThat(manager.getSentenceById(duplicate.getId())).isEqualTo(duplicate);
+    }
+
+    @Test
+    public void testUpdateSentenceWithNullId() throws Exception {
+        Sentence sentence = createCorrectSentence();
+
+        assertThatThrownBy(() -> manager.updateSentence(sentence))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    public void testDeleteSentenceById() throws Exception {
+        Sentence sentence = createCorrectSentence();
+        Sentence duplicate = createCorrectSentence();
+        duplicate.setPrisonerId(sentence.getPrisonerId());
+        duplicate.setCellId(sentence.getCellId());
+        manager.createSentence(sentence);
+        manager.createSentence(duplicate);
+
+        manager.deleteSentence(sentence);
+
+        assertThat(manager.findAllSentences()).containsOnly(duplicate);
+    }
+
+    @Test
+    public void testFindSentencesPaged() throws Exception {
+        Sentence late = createCorrectSentence();
+        Sentence early = createCorrectSentence();
+        early.setEndDay(LocalDate.of(2010, 1, 1));
+        Sentence early2 = createCorrectSentence();
+        early2.setEndDay(LocalDate.of(2010, 1, 1));
+        manager.createSentence(late);
+        manager.createSentence(early);
+        manager.createSentence(early2);
+
+        assertThat(manager.findSentences(null, 2)).containsExactly(late, early);
+        assertThat(manager.findSentences(early.getId(), 2)).containsExactly(early2);
+
+        List<Sentence> first = manager.findSentencesOrderedByEndDay(null, 1);
+        assertThat(first).containsExactly(early);
+        assertThat(manager.findSentencesOrderedByEndDay(first.get(0), 5)).containsExactly(early2, late);
+    }
+
+    @Test
+    public void testFindSentencesFiltered() throws Exception {
+        Sentence late = createCorrectSentence();
+        Sentence early = createCorrectSentence();
+        early.setEndDay(LocalDate.of(2010, 1, 1));
+        Sentence early2 = createCorrectSentence();
+        early2.setEndDay(LocalDate.of(2010, 6, 1));
+        early2.setCellId(early.getCellId());
+        manager.createSentence(late);
+        manager.createSentence(early);
+        manager.createSentence(early2);
+
+        assertThat(manager.findSentencesForCell(early.getCellId(), null, 1)).containsExactly(early);
+        assertThat(manager.findSentencesForCell(early.getCellId(), early.getId(), 5)).containsExactly(early2);
+        assertThat(manager.findSentencesForCell(late.getCellId(), null, 5)).containsExactly(late);
+
+        assertThat(manager.findSentencesEndingBetween(LocalDate.of(2010, 1, 1), LocalDate.of(2010, 6, 1), null, 5))
+                .containsExactly(early, early2);
+        assertThat(manager.findSentencesEndingBetween(LocalDate.of(2010, 2, 1), null, null, 5))
+                .containsExactly(late, early2);
+        assertThat(manager.findSentencesEndingBetween(null, LocalDate.of(2010, 2, 1), null, 5))
+                .containsExactly(early);
+        assertThat(manager.findSentencesEndingBetween(null, null, late.getId(), 1))
+                .containsExactly(early);
+    }
+
+    @Test
+    public void testStreamAllSentences() throws Exception {
+        manager.setFetchSize(2);
+        List<Sentence> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Sentence sentence = createCorrectSentence();
+            manager.createSentence(sentence);
+            created.add(sentence);
+        }
+
+        try (Stream<Sentence> sentences = manager.streamAllSentences()) {
+            assertThat(sentences.limit(3).count()).isEqualTo(3);
+        }
+        try (Stream<Sentence> sentences = manager.streamAllSentences()) {
+            assertThat(sentences.collect(Collectors.toList())).containsOnlyElementsOf(created).hasSize(5);
+        }
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testDeleteSentenceWithNullArgument() throws Exception {
         manager.deleteSentence(null);
@@ -441,6 +585,284 @@ public class SentenceManagerImplTest {
                 .containsOnly(c2);
     }*/
 
+    private Sentence sentence(Prisoner prisoner, Cell cell, LocalDate start, LocalDate end) {
+        return sb().prisonerId(prisoner.getId())
+                .cellId(cell.getId())
+                .startDay(start)
+                .endDay(end)
+                .punishment("p").build();
+    }
+
+    @Test
+    public void findCellWithPrisoner() {
+        // ended sentence is created first, it must not be returned
+        manager.createSentence(sentence(p1, c1, ld2000(), ld2015()));
+        manager.createSentence(sentence(p1, c3, ld2015(), ld2030()));
+        manager.createSentence(sentence(p2, c2, ld2000(), ld2015()));
+
+        assertThat(manager.findCellWithPrisoner(p1))
+                .isEqualToComparingFieldByField(c3);
+        assertThat(manager.findCellWithPrisoner(p2)).isNull();
+        assertThat(manager.findCellWithPrisoner(p3)).isNull();
+    }
+
+    @Test
+    public void findCellsWithPrisoners() {
+        manager.createSentence(sentence(p1, c1, ld2000(), ld2015()));
+        manager.createSentence(sentence(p1, c3, ld2015(), ld2030()));
+        manager.createSentence(sentence(p2, c2, ld2000(), ld2015()));
+        manager.createSentence(sentence(p4, c2, ld2000(), ld2030()));
+
+        Map<Long, Cell> cells = manager.findCellsWithPrisoners(Arrays.asList(p1, p2, p3, p4));
+
+        assertThat(cells).containsOnlyKeys(p1.getId(), p4.getId());
+        assertThat(cells.get(p1.getId())).isEqualToComparingFieldByField(c3);
+        assertThat(cells.get(p4.getId())).isEqualToComparingFieldByField(c2);
+        assertThat(manager.findCellsWithPrisoners(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void findCellsWithPrisonerHavingNullId() {
+        assertThatThrownBy(() -> manager.findCellsWithPrisoners(Arrays.asList(p1, prisonerWithNullId)))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    public void findPrisonersInCell() {
+        manager.createSentence(sentence(p1, c3, ld2000(), ld2015()));
+        manager.createSentence(sentence(p2, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p2, c3, ld2015(), ld2030()));
+        manager.createSentence(sentence(p4, c3, ld2015(), ld2030()));
+        manager.createSentence(sentence(p5, c2, ld2015(), ld2030()));
+
+        assertThat(manager.findPrisonersInCell(c1)).isEmpty();
+        assertThat(manager.findPrisonersInCell(c2))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(p5);
+        assertThat(manager.findPrisonersInCell(c3))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(p2, p4);
+    }
+
+    @Test
+    public void findEmptyCells() {
+        assertThat(manager.findEmptyCells())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c1, c2, c3);
+
+        manager.createSentence(sentence(p1, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p3, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p5, c1, ld2000(), ld2030()));
+        manager.createSentence(sentence(p2, c2, ld2000(), ld2015()));
+
+        assertThat(manager.findEmptyCells())
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c2);
+    }
+
+    @Test
+    public void findEmptyCellsPaged() {
+        manager.createSentence(sentence(p1, c2, ld2000(), ld2030()));
+
+        List<Cell> firstPage = manager.findEmptyCells(null, 1);
+        assertThat(firstPage)
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c1);
+        assertThat(manager.findEmptyCells(firstPage.get(0).getId(), 1))
+                .usingFieldByFieldElementComparator()
+                .containsExactly(c3);
+        assertThat(manager.findEmptyCells(c3.getId(), 1)).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findEmptyCellsWithWrongLimit() {
+        manager.findEmptyCells(null, 0);
+    }
+
+    @Test
+    public void findFreeCapacity() {
+        assertThat(manager.findFreeCapacity(c3)).isEqualTo(3);
+
+        manager.createSentence(sentence(p1, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p2, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p3, c3, ld2000(), ld2015()));
+
+        assertThat(manager.findFreeCapacity(c3)).isEqualTo(1);
+    }
+
+    @Test
+    public void findFreeCapacities() {
+        manager.createSentence(sentence(p1, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p2, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p3, c2, ld2000(), ld2030()));
+        manager.createSentence(sentence(p4, c1, ld2000(), ld2015()));
+
+        assertThat(manager.findFreeCapacities(Arrays.asList(c1, c2, c3)))
+                .containsExactly(entry(c1.getId(), 1), entry(c2.getId(), 1), entry(c3.getId(), 1));
+        assertThat(manager.findFreeCapacities(Collections.<Cell>emptyList())).isEmpty();
+    }
+
+    @Test(expected = ValidationException.class)
+    public void findFreeCapacitiesWithNullId() {
+        manager.findFreeCapacities(Arrays.asList(c1, cellWithNullId));
+    }
+
+    @Test
+    public void findOccupancyOnDay() {
+        manager.createSentence(sentence(p1, c3, ld2000(), ld2030()));
+        manager.createSentence(sentence(p2, c3, ld2015(), ld2030()));
+        manager.createSentence(sentence(p3, c3, ld2000(), ld2015()));
+        manager.createSentence(sentence(p4, c2, ld2000(), ld2015()));
+
+        assertThat(manager.findFreeCapacities(Arrays.asList(c1, c2, c3), LocalDate.of(2010, 1, 1)))
+                .containsExactly(entry(c1.getId(), 1), entry(c2.getId(), 1), entry(c3.getId(), 1));
+        // sentence does not occupy its cell on its end day
+        assertThat(manager.findFreeCapacities(Arrays.asList(c2, c3), ld2015()))
+                .containsExactly(entry(c2.getId(), 2), entry(c3.getId(), 1));
+        assertThat(manager.findPrisonerIdsInCell(c3, LocalDate.of(2010, 1, 1))).containsExactly(p3.getId(), p1.getId());
+        assertThat(manager.findPrisonerIdsInCell(c3, ld2015())).containsExactly(p1.getId(), p2.getId());
+        assertThat(manager.findPrisonerIdsInCell(c1, ld2015())).isEmpty();
+    }
+
+    @Test
+    public void intervalIndexIsKeptCurrentByWrites() {
+        Sentence kept = sentence(p1, c3, ld2000(), ld2030());
+        manager.createSentence(kept);
+        manager.enableIntervalIndex();
+        SentenceIntervalIndex index = manager.getIntervalIndex();
+        assertThat(index.size()).isEqualTo(1);
+
+        Sentence moved = sentence(p2, c3, ld2000(), ld2030());
+        manager.createSentence(moved);
+        manager.createSentences(Arrays.asList(sentence(p3, c2, ld2015(), ld2030()), sentence(p4, c1, ld2000(), ld2015())));
+        moved.setCellId(c2.getId());
+        manager.updateSentence(moved);
+        Sentence withoutId = sentence(p4, c1, ld2000(), ld2015());
+        manager.updateSentence(withoutId, sentence(p4, c1, ld2000(), ld2030()));
+        manager.deleteSentence(kept);
+        assertThat(index.size()).isEqualTo(3);
+
+        // rolled back write is not indexed
+        Sentence rolledBack = sentence(p5, c3, ld2000(), ld2030());
+        new TransactionTemplate(dataSource).execute(ctx -> {
+            manager.createSentence(rolledBack);
+            ctx.setRollbackOnly();
+            return null;
+        });
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.countOccupants(c3.getId(), ld2015())).isZero();
+
+        // the index answers the same as the database
+        SentenceManagerImpl withoutIndex = new SentenceManagerImpl(prepareClockMock(NOW));
+        withoutIndex.setDataSource(dataSource);
+        List<Cell> cells = Arrays.asList(c1, c2, c3);
+        for (LocalDate day : Arrays.asList(ld2000(), LocalDate.of(2010, 1, 1), ld2015(), ld2030())) {
+            assertThat(manager.findFreeCapacities(cells, day)).isEqualTo(withoutIndex.findFreeCapacities(cells, day));
+            for (Cell cell : cells) {
+                assertThat(manager.findPrisonerIdsInCell(cell, day))
+                        .isEqualTo(withoutIndex.findPrisonerIdsInCell(cell, day));
+            }
+        }
+        assertThat(manager.findFreeCapacities(cells)).isEqualTo(withoutIndex.findFreeCapacities(cells));
+        assertThat(manager.findFreeCapacity(c2)).isZero();
+        assertThat(manager.findEmptyCells()).isEqualTo(withoutIndex.findEmptyCells());
+    }
+
+    @Test
+    public void createSentenceIntoFullCell() {
+        manager.createSentence(sentence(p1, c1, ld2000(), ld2030()));
+
+        assertThatThrownBy(() -> manager.createSentence(sentence(p2, c1, ld2000(), ld2030())))
+                .isInstanceOf(ValidationException.class);
+        assertThat(manager.findSentencesForCell(c1)).hasSize(1);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void createSentenceIntoCellNotInDB() {
+        manager.createSentence(sentence(p1, cellNotInDB, ld2000(), ld2030()));
+    }
+
+    @Test
+    public void createSentences() {
+        manager.setBatchSize(2);
+        Sentence first = sentence(p1, c2, ld2000(), ld2030());
+        Sentence ended = sentence(p2, c2, ld2000(), ld2015());
+        Sentence second = sentence(p3, c2, ld2000(), ld2030());
+        Sentence overCapacity = sentence(p4, c2, ld2000(), ld2030());
+        Sentence wrongDates = sentence(p5, c3, ld2030(), ld2000());
+        Sentence notInDB = sentence(p5, cellNotInDB, ld2000(), ld2030());
+
+        BatchResult<Sentence> result = manager.createSentences(
+                Arrays.asList(first, ended, second, overCapacity, wrongDates, notInDB));
+
+        assertThat(result.getSucceeded()).containsExactly(first, ended, second);
+        assertThat(result.getFailures()).containsOnlyKeys(3, 4, 5);
+        assertThat(result.getFailures().values()).allMatch(ex -> ex instanceof ValidationException);
+        assertThat(manager.findAllSentences()).containsOnly(first, ended, second);
+        assertThat(manager.findFreeCapacity(c2)).isZero();
+    }
+
+    @Test
+    public void createSentencesWithBrokenRow() {
+        Sentence first = sentence(p1, c3, ld2000(), ld2030());
+        Sentence unknownPrisoner = sentence(prisonerNotInDB, c3, ld2000(), ld2030());
+        Sentence second = sentence(p2, c3, ld2000(), ld2030());
+
+        BatchResult<Sentence> result = manager.createSentences(Arrays.asList(first, unknownPrisoner, second));
+
+        assertThat(result.getSucceeded()).containsExactly(first, second);
+        assertThat(result.getFailures()).containsOnlyKeys(1);
+        assertThat(result.getFailures().get(1)).isInstanceOf(ServiceFailureException.class);
+        assertThat(manager.findAllSentences()).containsOnly(first, second);
+    }
+
+    @Test
+    public void createSentenceConcurrentlyNeverExceedsCapacity() throws Exception {
+        int clerks = 8;
+        int attemptsPerClerk = 4;
+        List<Prisoner> prisoners = new ArrayList<>();
+        for (int i = 0; i < clerks * attemptsPerClerk; i++) {
+            Prisoner prisoner = pb().build();
+            prisonerManager.createPrisoner(prisoner);
+            prisoners.add(prisoner);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(clerks);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int clerk = 0; clerk < clerks; clerk++) {
+                List<Prisoner> ownPrisoners = prisoners.subList(
+                        clerk * attemptsPerClerk, (clerk + 1) * attemptsPerClerk);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (Prisoner prisoner : ownPrisoners) {
+                        try {
+                            manager.createSentence(sentence(prisoner, c3, ld2000(), ld2030()));
+                            created.incrementAndGet();
+                        } catch (ValidationException ex) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(created.get()).isEqualTo(c3.getCapacity());
+        assertThat(rejected.get()).isEqualTo(clerks * attemptsPerClerk - c3.getCapacity());
+        assertThat(manager.findSentencesForCell(c3)).hasSize(c3.getCapacity());
+        assertThat(manager.findFreeCapacity(c3)).isZero();
+    }
+
     /*
     @Test
     public void findCellsWithSomeFreeSpace() {
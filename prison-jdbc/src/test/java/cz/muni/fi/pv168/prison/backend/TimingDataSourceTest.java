@@ -0,0 +1,130 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.Metrics;
+import cz.muni.fi.pv168.common.TimingDataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link TimingDataSource} and its slow query log.
+ */
+public class TimingDataSourceTest {
+
+    private DataSource rawDataSource;
+    private TimingDataSource dataSource;
+    private final List<LogRecord> slow = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            slow.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:timing-test");
+        ds.setCreateDatabase("create");
+        rawDataSource = ds;
+        PrisonSchema.migrate(rawDataSource);
+        dataSource = new TimingDataSource(rawDataSource, new Metrics());
+        dataSource.setSlowQueryThreshold(0);
+        Logger.getLogger(TimingDataSource.SLOW_QUERY_LOGGER).addHandler(handler);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        Logger.getLogger(TimingDataSource.SLOW_QUERY_LOGGER).removeHandler(handler);
+        DBUtils.executeSqlScript(rawDataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void slowPreparedStatementIsLoggedWithParameters() {
+        CellManager cellManager = new CellManagerImpl(dataSource);
+        Cell cell = new Cell(3, 2);
+        cellManager.createCell(cell);
+        cellManager.getCellById(cell.getId());
+
+        assertThat(details()).contains(" parameters [3, 2]");
+        assertThat(slow).extracting(r -> String.valueOf(r.getParameters()[1]))
+                .contains("SELECT id, floor, capacity FROM Cell WHERE id = ?");
+    }
+
+    @Test
+    public void slowStatementIsLoggedWithItsSql() throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeQuery("SELECT id FROM Cell WHERE floor = 3").close();
+            st.addBatch("DELETE FROM Cell WHERE floor = 4");
+            st.addBatch("DELETE FROM Cell WHERE floor = 5");
+            st.executeBatch();
+        }
+
+        assertThat(slow).extracting(r -> String.valueOf(r.getParameters()[1]))
+                .contains("SELECT id FROM Cell WHERE floor = ?");
+        assertThat(details()).contains(" sql [SELECT id FROM Cell WHERE floor = 3]",
+                " batch of 2 sql [DELETE FROM Cell WHERE floor = 4; DELETE FROM Cell WHERE floor = 5]");
+    }
+
+    @Test
+    public void thresholdDisablesLog() throws SQLException {
+        dataSource.setSlowQueryThreshold(-1);
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeQuery("SELECT id FROM Cell").close();
+        }
+
+        assertThat(slow).isEmpty();
+        assertThat(dataSource.getMetrics().getMethod("SELECT id FROM Cell").getCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void thresholdIsConfiguredByFactory() {
+        Properties conf = new Properties();
+        conf.setProperty(ManagerFactory.SQL_TIMING, "true");
+        conf.setProperty(ManagerFactory.SLOW_QUERY_MILLIS, "0");
+        ManagerFactory factory = new ManagerFactory(rawDataSource, conf);
+
+        factory.createCellManager().findAllCells();
+
+        assertThat(slow).extracting(r -> String.valueOf(r.getParameters()[1])).contains("getConnection");
+    }
+
+    @Test
+    public void normalizeSql() {
+        assertThat(TimingDataSource.normalize("SELECT *\n  FROM cell WHERE id IN (1, 2,3) AND floor = -2"))
+                .isEqualTo("SELECT * FROM cell WHERE id IN (?...) AND floor = ?");
+        assertThat(TimingDataSource.normalize("SELECT x1 FROM t WHERE a = 'it''s' AND b IN (?,?)"))
+                .isEqualTo("SELECT x1 FROM t WHERE a = ? AND b IN (?...)");
+    }
+
+    private List<String> details() {
+        List<String> details = new ArrayList<>();
+        for (LogRecord record : slow) {
+            details.add(String.valueOf(record.getParameters()[2]));
+        }
+        return details;
+    }
+}
@@ -0,0 +1,208 @@
+package cz.muni.fi.pv168.prison.backend;
+
+import cz.muni.fi.pv168.common.BatchResult;
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.Metrics;
+import cz.muni.fi.pv168.common.ServiceFailureException;
+import cz.muni.fi.pv168.common.TimingDataSource;
+import cz.muni.fi.pv168.common.TransactionTemplate;
+import cz.muni.fi.pv168.common.ValidationException;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests of {@link TransactionTemplate} with managers.
+ */
+public class TransactionTemplateTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2016-03-01T12:00:00Z"), ZoneId.of("UTC"));
+
+    private DataSource rawDataSource;
+    private TimingDataSource dataSource;
+    private Metrics metrics;
+    private TransactionTemplate template;
+    private PrisonerManagerImpl prisonerManager;
+    private CellManagerImpl cellManager;
+    private SentenceManagerImpl sentenceManager;
+
+    @Before
+    public void setUp() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:transaction-test");
+        ds.setCreateDatabase("create");
+        rawDataSource = ds;
+        PrisonSchema.migrate(rawDataSource);
+
+        metrics = new Metrics();
+        dataSource = new TimingDataSource(rawDataSource, metrics);
+        dataSource.setSlowQueryThreshold(-1);
+        template = new TransactionTemplate(dataSource);
+        prisonerManager = new PrisonerManagerImpl(dataSource);
+        cellManager = new CellManagerImpl(dataSource);
+        sentenceManager = new SentenceManagerImpl(CLOCK);
+        sentenceManager.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(rawDataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void managersShareOneConnectionAndCommit() {
+        Sentence sentence = template.execute(ctx -> {
+            Prisoner prisoner = new Prisoner("Jan", "Novák", LocalDate.of(1980, 1, 1));
+            prisonerManager.createPrisoner(prisoner);
+            Cell cell = new Cell(1, 2);
+            cellManager.createCell(cell);
+            Sentence s = new Sentence(prisoner.getId(), cell.getId(),
+                    LocalDate.of(2016, 1, 1), LocalDate.of(2017, 1, 1), "krádež");
+            sentenceManager.createSentence(s);
+            assertThat(sentenceManager.findPrisonersInCell(cell)).containsExactly(prisoner);
+            return s;
+        });
+
+        assertThat(metrics.getMethod("getConnection").getCalls()).isEqualTo(1);
+        assertThat(metrics.getMethod("COMMIT").getCalls()).isEqualTo(1);
+        assertThat(sentenceManager.getSentenceById(sentence.getId())).isEqualTo(sentence);
+    }
+
+    @Test
+    public void exceptionRollsBackAllManagers() {
+        Prisoner prisoner = new Prisoner("Jan", "Novák", LocalDate.of(1980, 1, 1));
+        try {
+            template.execute(ctx -> {
+                prisonerManager.createPrisoner(prisoner);
+                cellManager.createCell(new Cell(1, 2));
+                throw new IllegalStateException("failure");
+            });
+            fail("exception expected");
+        } catch (IllegalStateException ex) {
+            assertThat(ex).hasMessage("failure");
+        }
+
+        assertThat(prisoner.getId()).isNotNull();
+        assertThat(prisonerManager.findAllPrisoners()).isEmpty();
+        assertThat(cellManager.findAllCells()).isEmpty();
+    }
+
+    @Test
+    public void caughtManagerFailureRollsBackTransaction() {
+        char[] longName = new char[300];
+        Arrays.fill(longName, 'x');
+        try {
+            template.execute(ctx -> {
+                cellManager.createCell(new Cell(1, 2));
+                try {
+                    prisonerManager.createPrisoner(new Prisoner(new String(longName), "Novák", LocalDate.of(1980, 1, 1)));
+                    fail("exception expected");
+                } catch (ServiceFailureException ex) {
+                    // the caller goes on, but the transaction must not commit the cell
+                }
+                assertThat(ctx.isRollbackOnly()).isTrue();
+                return null;
+            });
+            fail("exception expected");
+        } catch (ServiceFailureException ex) {
+            assertThat(ex).hasMessageContaining("rolled back");
+        }
+
+        assertThat(cellManager.findAllCells()).isEmpty();
+        assertThat(metrics.getMethod("COMMIT")).isNull();
+    }
+
+    @Test
+    public void caughtValidationFailureIsReportedByTemplate() {
+        Cell cell = new Cell(1, 1);
+        cellManager.createCell(cell);
+        Prisoner prisoner = new Prisoner("Jan", "Novák", LocalDate.of(1980, 1, 1));
+        prisonerManager.createPrisoner(prisoner);
+        sentenceManager.createSentence(new Sentence(prisoner.getId(), cell.getId(),
+                LocalDate.of(2016, 1, 1), LocalDate.of(2017, 1, 1), "krádež"));
+
+        try {
+            template.execute(ctx -> {
+                prisonerManager.createPrisoner(new Prisoner("Petr", "Novák", LocalDate.of(1981, 1, 1)));
+                try {
+                    sentenceManager.createSentence(new Sentence(prisoner.getId(), cell.getId(),
+                            LocalDate.of(2016, 2, 1), LocalDate.of(2017, 2, 1), "loupež"));
+                    fail("exception expected");
+                } catch (ValidationException ex) {
+                    // the cell is full, the caller ignores it
+                }
+                return null;
+            });
+            fail("exception expected");
+        } catch (ServiceFailureException ex) {
+            assertThat(ex).hasMessage("Transaction was rolled back because a manager failed");
+        }
+
+        assertThat(prisonerManager.findAllPrisoners()).containsExactly(prisoner);
+        assertThat(sentenceManager.findAllSentences()).hasSize(1);
+    }
+
+    @Test
+    public void rollbackOnlyAndNestedTransactions() {
+        template.execute(ctx -> {
+            cellManager.createCell(new Cell(1, 2));
+            template.execute(inner -> {
+                cellManager.createCell(new Cell(2, 2));
+                inner.setRollbackOnly();
+                return null;
+            });
+            return null;
+        });
+
+        assertThat(cellManager.findAllCells()).isEmpty();
+        assertThat(metrics.getMethod("getConnection").getCalls()).isEqualTo(2);
+    }
+
+    @Test
+    public void failedBatchDoesNotLeavePartialRows() {
+        Cell cell = new Cell(1, 10);
+        cellManager.createCell(cell);
+        Prisoner prisoner = new Prisoner("Jan", "Novák", LocalDate.of(1980, 1, 1));
+        prisonerManager.createPrisoner(prisoner);
+
+        BatchResult<Sentence> result = template.execute(ctx -> sentenceManager.createSentences(Arrays.asList(
+                new Sentence(prisoner.getId(), cell.getId(), LocalDate.of(2015, 1, 1), LocalDate.of(2017, 1, 1), "a"),
+                new Sentence(prisoner.getId() + 1000, cell.getId(),
+                        LocalDate.of(2015, 1, 1), LocalDate.of(2017, 1, 1), "b"),
+                new Sentence(prisoner.getId(), cell.getId(), LocalDate.of(2013, 1, 1), LocalDate.of(2014, 1, 1), "c"))));
+
+        assertThat(result.getSucceeded()).hasSize(2);
+        assertThat(result.getFailures()).containsOnlyKeys(1);
+        assertThat(sentenceManager.findAllSentences()).extracting("punishment").containsOnly("a", "c").hasSize(2);
+    }
+
+    @Test
+    public void cachingManagerIsBypassedInTransaction() {
+        CachingCellManager caching = new CachingCellManager(cellManager);
+        Cell cell = new Cell(1, 2);
+        caching.createCell(cell);
+
+        template.execute(ctx -> {
+            cell.setCapacity(5);
+            caching.updateCell(cell);
+            assertThat(caching.getCellById(cell.getId()).getCapacity()).isEqualTo(5);
+            ctx.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(caching.getCacheStats().getSize()).isEqualTo(0);
+        assertThat(caching.getCellById(cell.getId()).getCapacity()).isEqualTo(2);
+    }
+}
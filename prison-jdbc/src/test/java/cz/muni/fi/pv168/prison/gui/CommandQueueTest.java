@@ -0,0 +1,192 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.DBUtils;
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.prison.backend.Cell;
+import cz.muni.fi.pv168.prison.backend.CellManager;
+import cz.muni.fi.pv168.prison.backend.CellManagerImpl;
+import cz.muni.fi.pv168.prison.backend.Change;
+import cz.muni.fi.pv168.prison.backend.PrisonSchema;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.await;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdt;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdtQuietly;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link CommandQueue} writing cells.
+ */
+public class CommandQueueTest {
+
+    private DataSource dataSource;
+    private CellManager cellManager;
+    private DbExecutor loadExecutor;
+    private DbExecutor writeExecutor;
+    private CellsTableModel model;
+    private CommandQueue queue;
+    private final List<Integer> createdBatches = Collections.synchronizedList(new ArrayList<>());
+    private final List<Cell> updated = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> progress = new ArrayList<>();
+    private final List<Change.Operation> failures = new ArrayList<>();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:commandqueue-test");
+        ds.setCreateDatabase("create");
+        dataSource = ds;
+        PrisonSchema.migrate(dataSource);
+        cellManager = new CellManagerImpl(dataSource);
+        loadExecutor = new DbExecutor("test-load", 2, 100, 1000);
+        writeExecutor = new DbExecutor("test-write", 1, 1, 0);
+        CommandQueue.Writer<Cell> writer = CommandQueue.Writer.of(cells -> {
+            createdBatches.add(cells.size());
+            awaitQuietly(released);
+            return cellManager.createCells(cells);
+        }, cell -> {
+            updated.add(cell);
+            cellManager.updateCell(cell);
+        }, cellManager::deleteCell);
+        model = onEdt(() -> {
+            CellsTableModel m = new CellsTableModel();
+            queue = new CommandQueue(writeExecutor);
+            queue.register(Change.Entity.CELL, m, writer);
+            queue.setListener(new CommandQueue.Listener() {
+                @Override
+                public void progress(int pending) {
+                    progress.add(pending);
+                }
+
+                @Override
+                public void failed(Change.Entity entity, Change.Operation operation, RuntimeException cause) {
+                    failures.add(operation);
+                }
+            });
+            return m;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        released.countDown();
+        loadExecutor.shutdown();
+        writeExecutor.shutdown();
+        loadExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        writeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        DBUtils.executeSqlScript(dataSource, CellManager.class.getResource("dropTables.sql"));
+    }
+
+    @Test
+    public void editsAreCoalescedAndCreationsBatched() throws Exception {
+        Cell edited = new Cell(1, 2);
+        Cell deleted = new Cell(1, 2);
+        cellManager.createCell(edited);
+        cellManager.createCell(deleted);
+        loadModel(2);
+
+        onEdt(() -> {
+            // the first creation blocks the writer, the other commands wait meanwhile
+            queue.create(Change.Entity.CELL, new Cell(2, 1));
+            for (int capacity = 3; capacity <= 5; capacity++) {
+                queue.update(Change.Entity.CELL, copy(edited, capacity));
+            }
+            queue.create(Change.Entity.CELL, new Cell(3, 1));
+            queue.create(Change.Entity.CELL, new Cell(3, 2));
+            queue.update(Change.Entity.CELL, copy(deleted, 7));
+            queue.delete(Change.Entity.CELL, copy(deleted, 7));
+            queue.update(Change.Entity.CELL, copy(deleted, 8));
+            assertThat(queue.getPendingCount()).isEqualTo(5);
+            assertThat(queue.getCoalescedCount()).isEqualTo(3);
+            return null;
+        });
+        released.countDown();
+        await(() -> onEdtQuietly(queue::getPendingCount) == 0);
+
+        assertThat(createdBatches).containsExactly(1, 2);
+        assertThat(updated).extracting(Cell::getCapacity).containsExactly(5);
+        assertThat(cellManager.findAllCells().stream().map(Cell::getCapacity).sorted().collect(Collectors.toList()))
+                .containsExactly(1, 1, 2, 5);
+        assertThat(failures).isEmpty();
+        assertThat(progress.get(progress.size() - 1)).isEqualTo(0);
+        assertThat(onEdt(model::getRowCount)).isEqualTo(4);
+        assertThat(onEdt(() -> model.getValueAt(0, 2))).isEqualTo(5);
+    }
+
+    @Test
+    public void coalescedEditKeepsItsPosition() throws Exception {
+        Cell first = new Cell(1, 2);
+        Cell second = new Cell(1, 2);
+        cellManager.createCell(first);
+        cellManager.createCell(second);
+        loadModel(2);
+
+        onEdt(() -> {
+            queue.create(Change.Entity.CELL, new Cell(2, 1));
+            queue.update(Change.Entity.CELL, copy(first, 3));
+            queue.update(Change.Entity.CELL, copy(second, 4));
+            queue.update(Change.Entity.CELL, copy(first, 5));
+            return null;
+        });
+        released.countDown();
+        await(() -> onEdtQuietly(queue::getPendingCount) == 0);
+
+        // the last edit of the first cell is written where its first edit was submitted
+        assertThat(updated).extracting(Cell::getId).containsExactly(first.getId(), second.getId());
+        assertThat(updated).extracting(Cell::getCapacity).containsExactly(5, 4);
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    public void failuresAreReported() throws Exception {
+        released.countDown();
+        loadModel(0);
+        Cell missing = new Cell(1, 2);
+        missing.setId(999L);
+
+        onEdt(() -> {
+            queue.update(Change.Entity.CELL, missing);
+            queue.create(Change.Entity.CELL, new Cell(1, 3));
+            return null;
+        });
+        await(() -> onEdtQuietly(queue::getPendingCount) == 0);
+
+        assertThat(onEdt(() -> new ArrayList<>(failures))).containsExactly(Change.Operation.UPDATE);
+        assertThat(cellManager.findAllCells()).extracting(Cell::getCapacity).containsExactly(3);
+        assertThat(onEdt(model::getRowCount)).isEqualTo(1);
+    }
+
+    private void loadModel(int rowCount) throws Exception {
+        onEdt(() -> {
+            model.load(loadExecutor, cellManager::findCells);
+            return null;
+        });
+        await(() -> onEdtQuietly(model::isFullyLoaded) && onEdtQuietly(model::getRowCount) == rowCount);
+    }
+
+    private static Cell copy(Cell cell, int capacity) {
+        Cell copy = new Cell(cell.getFloor(), capacity);
+        copy.setId(cell.getId());
+        return copy;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Helpers of tests which wait for background work and call models in the event dispatch thread.
+ */
+final class GuiTestUtils {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private GuiTestUtils() {
+    }
+
+    /**
+     * Waits until the condition holds, at most 10 seconds, the caller asserts the result afterwards.
+     *
+     * @param condition awaited condition
+     */
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Same as {@link #onEdt(Callable)}, for conditions of {@link #await(BooleanSupplier)}.
+     */
+    static <R> R onEdtQuietly(Callable<R> action) {
+        try {
+            return onEdt(action);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Calls the action in the event dispatch thread and waits for it.
+     *
+     * @param action called action
+     * @return result of the action
+     */
+    static <R> R onEdt(Callable<R> action) throws Exception {
+        List<R> result = new ArrayList<>();
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.add(action.call());
+            } catch (Exception ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result.get(0);
+    }
+}
@@ -0,0 +1,307 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.prison.backend.Cell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.await;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdt;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdtQuietly;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link IndexedRowSorter} and {@link ColumnFilter}.
+ */
+public class IndexedRowSorterTest {
+
+    private DbExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new DbExecutor("test-sorter", 2, 100, 1000);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void sortsByPrecomputedKeys() {
+        CountingModel model = new CountingModel();
+        model.addRow(new Object[]{1L, "Novak", LocalDate.of(1990, 1, 1)});
+        model.addRow(new Object[]{2L, "Cech", LocalDate.of(1980, 1, 1)});
+        model.addRow(new Object[]{3L, "Čermák", LocalDate.of(1985, 1, 1)});
+        model.addRow(new Object[]{4L, "Cech", LocalDate.of(1970, 1, 1)});
+        IndexedRowSorter<CountingModel> sorter = new IndexedRowSorter<>(model);
+
+        sorter.toggleSortOrder(1);
+        assertThat(viewIds(sorter)).containsExactly(2L, 4L, 3L, 1L);
+        sorter.toggleSortOrder(1);
+        assertThat(viewIds(sorter)).containsExactly(1L, 3L, 2L, 4L);
+        assertThat(sorter.getSortKeys()).hasSize(1);
+        assertThat(sorter.getSortKeys().get(0)).isEqualTo(new RowSorter.SortKey(1, SortOrder.DESCENDING));
+
+        // the surname stays secondary key
+        sorter.toggleSortOrder(2);
+        sorter.toggleSortOrder(1);
+        assertThat(viewIds(sorter)).containsExactly(4L, 2L, 3L, 1L);
+        assertThat(sorter.convertRowIndexToView(0)).isEqualTo(3);
+
+        // values were read once per sorted column
+        assertThat(model.reads.get()).isEqualTo(8);
+    }
+
+    @Test
+    public void filterKeepsSortedOrderAndNarrowsIncrementally() {
+        CountingModel model = new CountingModel();
+        for (long id = 1; id <= 100; id++) {
+            model.addRow(new Object[]{id, (id % 2 == 0 ? "Nov" : "Kos") + (100 - id), null});
+        }
+        IndexedRowSorter<CountingModel> sorter = new IndexedRowSorter<>(model);
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.ASCENDING)));
+        int reads = model.reads.get();
+        CountingFilter filter = new CountingFilter(ColumnFilter.prefix(1, "Nov"));
+
+        sorter.setFilter(filter);
+        assertThat(sorter.getViewRowCount()).isEqualTo(50);
+        assertThat(filter.tests.get()).isEqualTo(100);
+        assertThat(viewIds(sorter).get(0)).isEqualTo(100L);
+
+        // only 50 rows which passed the previous filter are tested
+        CountingFilter narrower = new CountingFilter(ColumnFilter.prefix(1, "Nov1"));
+        sorter.setFilter(narrower);
+        assertThat(narrower.tests.get()).isEqualTo(50);
+        assertThat(viewIds(sorter)).containsExactly(90L, 88L, 86L, 84L, 82L);
+
+        sorter.setFilter(null);
+        assertThat(sorter.getViewRowCount()).isEqualTo(100);
+        assertThat(model.reads.get()).isEqualTo(reads);
+
+        // an edited row is sorted and filtered again
+        sorter.setFilter(ColumnFilter.prefix(1, "Kos"));
+        model.setValueAt("Kos", 99, 1);
+        sorter.rowsUpdated(99, 99);
+        assertThat(sorter.getViewRowCount()).isEqualTo(51);
+        assertThat(viewIds(sorter).get(0)).isEqualTo(100L);
+    }
+
+    @Test
+    public void columnFilters() {
+        assertThat(ColumnFilter.prefix(0, "No").matches("Novak")).isTrue();
+        assertThat(ColumnFilter.prefix(0, "no").matches("Novak")).isFalse();
+        assertThat(ColumnFilter.prefix(0, "No").matches(null)).isFalse();
+        assertThat(ColumnFilter.prefix(0, "Nov").narrows(ColumnFilter.prefix(0, "No"))).isTrue();
+        assertThat(ColumnFilter.prefix(0, "No").narrows(ColumnFilter.prefix(0, "Nov"))).isFalse();
+        assertThat(ColumnFilter.prefix(1, "Nov").narrows(ColumnFilter.prefix(0, "No"))).isFalse();
+
+        ColumnFilter year = ColumnFilter.between(0, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 12, 31));
+        assertThat(year.matches(LocalDate.of(2016, 12, 31))).isTrue();
+        assertThat(year.matches(LocalDate.of(2017, 1, 1))).isFalse();
+        assertThat(ColumnFilter.between(0, LocalDate.of(2016, 3, 1), LocalDate.of(2016, 4, 1)).narrows(year)).isTrue();
+        assertThat(ColumnFilter.between(0, null, LocalDate.of(2016, 4, 1)).narrows(year)).isFalse();
+        assertThat(year.narrows(ColumnFilter.between(0, null, null))).isTrue();
+
+        assertThat(ColumnFilter.equalTo(0, 5L).matches(5L)).isTrue();
+        assertThat(ColumnFilter.equalTo(0, 5L).narrows(ColumnFilter.between(0, 1L, 9L))).isTrue();
+    }
+
+    @Test
+    public void filterIsPushedDownToPagedModel() throws Exception {
+        List<Cell> cells = new ArrayList<>();
+        for (long id = 1; id <= 95; id++) {
+            Cell cell = new Cell((int) id % 5, 2);
+            cell.setId(id);
+            cells.add(cell);
+        }
+        AtomicInteger pushedDown = new AtomicInteger();
+        CellsTableModel model = onEdt(() -> {
+            CellsTableModel m = new CellsTableModel();
+            m.setPaging(10, 3);
+            m.setFilterLoader(filter -> {
+                if (filter instanceof ColumnFilter.EqualTo && filter.getColumn() == 1) {
+                    int floor = (Integer) ((ColumnFilter.EqualTo) filter).getValue();
+                    return (afterId, limit) -> {
+                        pushedDown.incrementAndGet();
+                        return load(cells.stream().filter(c -> c.getFloor() == floor).collect(Collectors.toList()),
+                                afterId, limit);
+                    };
+                }
+                return null;
+            });
+            m.load(executor, (afterId, limit) -> load(cells, afterId, limit));
+            return m;
+        });
+        IndexedRowSorter<CellsTableModel> sorter = onEdt(() -> listen(new IndexedRowSorter<>(model)));
+        AtomicInteger unsortable = new AtomicInteger();
+        sorter.setUnsortableListener(unsortable::incrementAndGet);
+        await(() -> onEdtQuietly(model::getRowCount) == 10);
+
+        // rows are not all loaded, so they are not sorted and the filter is evaluated by the loader
+        onEdt(() -> {
+            sorter.toggleSortOrder(2);
+            sorter.setFilter(ColumnFilter.equalTo(1, 3));
+            return null;
+        });
+        assertThat(onEdt(sorter::getSortKeys)).isEmpty();
+        assertThat(unsortable.get()).isEqualTo(1);
+        awaitFullyLoaded(model);
+        assertThat(onEdt(model::getRowCount)).isEqualTo(19);
+        assertThat(pushedDown.get()).isGreaterThan(0);
+        assertThat(onEdt(sorter::getFilter)).isInstanceOf(ColumnFilter.EqualTo.class);
+
+        // filter which cannot be pushed down is evaluated while pages are loaded
+        onEdt(() -> {
+            sorter.setFilter(ColumnFilter.between(0, 90L, null));
+            return null;
+        });
+        awaitFullyLoaded(model);
+        assertThat(onEdt(model::getRowCount)).isEqualTo(6);
+        assertThat(onEdt(() -> model.getValueAt(0, 0))).isEqualTo(90L);
+
+        // all rows passing the filter are loaded, so they can be sorted
+        assertThat(onEdt(sorter::isSortable)).isTrue();
+        onEdt(() -> {
+            sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(0, SortOrder.DESCENDING)));
+            return null;
+        });
+        assertThat(onEdt(() -> model.getValueAt(sorter.convertRowIndexToModel(0), 0))).isEqualTo(95L);
+        assertThat(unsortable.get()).isEqualTo(1);
+
+        // the sort is dropped, and the header shows it, when rows are loaded again
+        onEdt(() -> {
+            sorter.setFilter(ColumnFilter.between(0, 50L, null));
+            return null;
+        });
+        assertThat(onEdt(sorter::getSortKeys)).isEmpty();
+    }
+
+    @Test
+    public void insertedAndDeletedRowsAreIndexedInPlace() {
+        CountingModel model = new CountingModel();
+        for (long id = 1; id <= 10; id++) {
+            model.addRow(new Object[]{id, (id % 2 == 0 ? "Nov" : "Kos") + id, null});
+        }
+        IndexedRowSorter<CountingModel> sorter = listen(new IndexedRowSorter<>(model));
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.DESCENDING)));
+        sorter.setFilter(ColumnFilter.prefix(1, "Nov"));
+        assertThat(viewIds(sorter)).containsExactly(8L, 6L, 4L, 2L, 10L);
+        int reads = model.reads.get();
+
+        // only the new row is read
+        model.insertRow(3, new Object[]{11L, "Nov5", null});
+        model.insertRow(0, new Object[]{12L, "Kos0", null});
+        assertThat(model.reads.get()).isEqualTo(reads + 2);
+        assertThat(viewIds(sorter)).containsExactly(8L, 6L, 11L, 4L, 2L, 10L);
+        assertThat(sorter.convertRowIndexToView(4)).isEqualTo(2);
+        assertThat(sorter.convertRowIndexToView(0)).isEqualTo(-1);
+
+        model.removeRow(2);
+        model.removeRow(0);
+        assertThat(model.reads.get()).isEqualTo(reads + 2);
+        assertThat(viewIds(sorter)).containsExactly(8L, 6L, 11L, 4L, 10L);
+        assertThat(sorter.getModelRowCount()).isEqualTo(10);
+
+        // the indexes are the same as built from scratch
+        sorter.allRowsChanged();
+        assertThat(viewIds(sorter)).containsExactly(8L, 6L, 11L, 4L, 10L);
+    }
+
+    /** passes events of the model to the sorter, as the table does */
+    private static <M extends TableModel> IndexedRowSorter<M> listen(IndexedRowSorter<M> sorter) {
+        sorter.getModel().addTableModelListener(e -> {
+            if (e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+                sorter.modelStructureChanged();
+            } else if (e.getLastRow() == Integer.MAX_VALUE) {
+                sorter.allRowsChanged();
+            } else if (e.getType() == TableModelEvent.INSERT) {
+                sorter.rowsInserted(e.getFirstRow(), e.getLastRow());
+            } else if (e.getType() == TableModelEvent.DELETE) {
+                sorter.rowsDeleted(e.getFirstRow(), e.getLastRow());
+            } else {
+                sorter.rowsUpdated(e.getFirstRow(), e.getLastRow());
+            }
+        });
+        return sorter;
+    }
+
+    private static List<Cell> load(List<Cell> cells, Long afterId, int limit) {
+        return cells.stream()
+                .filter(c -> afterId == null || c.getId() > afterId)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Object> viewIds(IndexedRowSorter<CountingModel> sorter) {
+        List<Object> ids = new ArrayList<>();
+        for (int row = 0; row < sorter.getViewRowCount(); row++) {
+            ids.add(sorter.getModel().getValueAt(sorter.convertRowIndexToModel(row), 0));
+        }
+        return ids;
+    }
+
+    private static class CountingModel extends DefaultTableModel {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingModel() {
+            super(new Object[]{"id", "surname", "born"}, 0);
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            if (column != 0) {
+                reads.incrementAndGet();
+            }
+            return super.getValueAt(row, column);
+        }
+    }
+
+    private static class CountingFilter extends ColumnFilter {
+
+        private final ColumnFilter filter;
+        private final AtomicInteger tests = new AtomicInteger();
+
+        CountingFilter(ColumnFilter filter) {
+            super(filter.getColumn());
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean matches(Object value) {
+            tests.incrementAndGet();
+            return filter.matches(value);
+        }
+
+        @Override
+        public boolean narrows(ColumnFilter previous) {
+            return filter.narrows(previous instanceof CountingFilter ? ((CountingFilter) previous).filter : previous);
+        }
+    }
+
+    /** reads all rows, as the table does while it is scrolled, until all are loaded */
+    private static void awaitFullyLoaded(CellsTableModel model) throws InterruptedException {
+        await(() -> onEdtQuietly(() -> {
+            for (int row = 0; row < model.getRowCount(); row++) {
+                model.getValueAt(row, 0);
+            }
+            return model.isFullyLoaded();
+        }));
+    }
+}
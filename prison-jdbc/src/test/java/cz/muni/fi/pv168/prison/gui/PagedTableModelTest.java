@@ -0,0 +1,260 @@
+package cz.muni.fi.pv168.prison.gui;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import cz.muni.fi.pv168.prison.backend.Cell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.await;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdt;
+import static cz.muni.fi.pv168.prison.gui.GuiTestUtils.onEdtQuietly;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link PagedTableModel} on {@link CellsTableModel}.
+ */
+public class PagedTableModelTest {
+
+    private DbExecutor executor;
+    private List<Cell> cells;
+    private AtomicInteger loads;
+    private CellsTableModel model;
+    private List<TableModelEvent> events;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new DbExecutor("test-gui", 2, 100, 1000);
+        cells = new ArrayList<>();
+        for (long id = 1; id <= 95; id++) {
+            Cell cell = new Cell((int) id % 5, 2);
+            cell.setId(id);
+            cells.add(cell);
+        }
+        loads = new AtomicInteger();
+        events = new ArrayList<>();
+        model = onEdt(() -> {
+            CellsTableModel m = new CellsTableModel();
+            m.setPaging(10, 3);
+            m.addTableModelListener(events::add);
+            return m;
+        });
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private List<Cell> findCells(Long afterId, int limit) {
+        loads.incrementAndGet();
+        synchronized (cells) {
+            return cells.stream()
+                    .filter(c -> afterId == null || c.getId() > afterId)
+                    .limit(limit)
+                    .map(c -> {
+                        Cell copy = new Cell(c.getFloor(), c.getCapacity());
+                        copy.setId(c.getId());
+                        return copy;
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private List<Cell> findCellsByIds(Collection<Long> ids) {
+        loads.incrementAndGet();
+        synchronized (cells) {
+            return cells.stream()
+                    .filter(c -> ids.contains(c.getId()))
+                    .map(c -> {
+                        Cell copy = new Cell(c.getFloor(), c.getCapacity());
+                        copy.setId(c.getId());
+                        return copy;
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void pagesAreLoadedWhileScrolling() throws Exception {
+        onEdt(() -> {
+            model.load(executor, this::findCells);
+            return null;
+        });
+        awaitRowCount(10);
+        events.clear();
+
+        // reading rows of the last page loads the next one, the table grows to all rows
+        for (int row = 0; row < 95; row++) {
+            int index = row;
+            awaitValue(index);
+            assertThat(onEdt(() -> model.getValueAt(index, 0))).isEqualTo((long) index + 1);
+        }
+        awaitRowCount(95);
+        assertThat(events).allMatch(e -> e.getType() == TableModelEvent.INSERT);
+        // one event per page, not per row
+        assertThat(events.size()).isLessThanOrEqualTo(9);
+    }
+
+    @Test
+    public void rejectedLoadIsRetriedByTimer() throws Exception {
+        DbExecutor saturated = new DbExecutor("test-saturated", 1, 0, 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            saturated.run(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // the load does not wait for the executor, which would block the event dispatch thread
+            long start = System.nanoTime();
+            onEdt(() -> {
+                model.load(saturated, this::findCells);
+                return null;
+            });
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+            assertThat(saturated.getRejected()).isGreaterThanOrEqualTo(1);
+            assertThat(loads.get()).isEqualTo(0);
+
+            // the first page is loaded by the retry timer, the table is not painted meanwhile
+            release.countDown();
+            await(() -> onEdtQuietly(model::getRowCount) == 10);
+            assertThat(onEdt(model::getRowCount)).isEqualTo(10);
+        } finally {
+            release.countDown();
+            saturated.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyBoundedWindowOfRowsIsHeld() throws Exception {
+        onEdt(() -> {
+            model.load(executor, this::findCells);
+            return null;
+        });
+        for (int row = 0; row < 95; row++) {
+            awaitValue(row);
+        }
+        assertThat(onEdt(model::getLoadedRowCount)).isLessThanOrEqualTo(30);
+
+        // dropped page is loaded again
+        int before = loads.get();
+        assertThat(onEdt(() -> model.getValueAt(0, 0))).isNull();
+        awaitValue(0);
+        assertThat(onEdt(() -> model.getValueAt(0, 0))).isEqualTo(1L);
+        assertThat(loads.get()).isGreaterThan(before);
+    }
+
+    @Test
+    public void changesOfRows() throws Exception {
+        onEdt(() -> {
+            model.load(executor, this::findCells);
+            return null;
+        });
+        for (int row = 0; row < 95; row++) {
+            awaitValue(row);
+        }
+        Cell added = new Cell(1, 1);
+        added.setId(96L);
+        Cell updated = new Cell(4, 4);
+        updated.setId(92L);
+        onEdt(() -> {
+            model.addCell(added);
+            model.deleteCell(0);
+            model.updateCell(updated, 90);
+            return null;
+        });
+        assertThat(onEdt(model::getRowCount)).isEqualTo(95);
+        assertThat(onEdt(() -> model.getValueAt(94, 0))).isEqualTo(96L);
+        assertThat(onEdt(() -> model.getValueAt(90, 1))).isEqualTo(4);
+        // the first page was dropped from memory, so the deleted row is not read again
+        assertThat(onEdt(() -> model.getValueAt(0, 0))).isNull();
+
+        onEdt(() -> {
+            model.refresh();
+            return null;
+        });
+        awaitRowCount(10);
+        assertThat(onEdt(() -> model.getValueAt(0, 0))).isEqualTo(1L);
+    }
+
+    @Test
+    public void changedRowsAreReloaded() throws Exception {
+        Cell missing;
+        synchronized (cells) {
+            missing = cells.remove(6);
+        }
+        onEdt(() -> {
+            model.setRowsLoader(this::findCellsByIds);
+            model.load(executor, this::findCells);
+            return null;
+        });
+        for (int row = 0; row < 10; row++) {
+            awaitValue(row);
+        }
+        // reading the last row loaded the second page
+        awaitRowCount(20);
+        events.clear();
+        loads.set(0);
+        synchronized (cells) {
+            cells.add(6, missing);
+            cells.remove(4);
+            cells.get(2).setCapacity(4);
+            cells.get(58).setCapacity(4);
+        }
+        onEdt(() -> {
+            // row 60 was not loaded yet, it is read with its page
+            model.reloadRows(Arrays.asList(7L, 5L, 3L, 60L));
+            return null;
+        });
+        await(() -> events.size() == 3);
+        assertThat(events).extracting(TableModelEvent::getType)
+                .containsExactly(TableModelEvent.INSERT, TableModelEvent.DELETE, TableModelEvent.UPDATE);
+        // all changed rows were loaded at once
+        assertThat(loads.get()).isEqualTo(1);
+        List<Object> ids = onEdt(() -> {
+            List<Object> result = new ArrayList<>();
+            for (int row = 0; row < 10; row++) {
+                result.add(model.getValueAt(row, 0));
+            }
+            return result;
+        });
+        assertThat(ids).containsExactly(1L, 2L, 3L, 4L, 6L, 7L, 8L, 9L, 10L, 11L);
+        assertThat(onEdt(() -> model.getValueAt(2, 2))).isEqualTo(4);
+
+        // the same state applied again does not move rows
+        onEdt(() -> {
+            model.applyChange(7L, missing);
+            model.applyChange(5L, null);
+            return null;
+        });
+        assertThat(onEdt(model::getRowCount)).isEqualTo(20);
+        assertThat(onEdt(() -> model.getValueAt(5, 0))).isEqualTo(7L);
+    }
+
+    private void awaitRowCount(int expected) throws Exception {
+        await(() -> onEdtQuietly(model::getRowCount) == expected);
+        assertThat(onEdt(model::getRowCount)).isEqualTo(expected);
+    }
+
+    private void awaitValue(int row) throws Exception {
+        await(() -> onEdtQuietly(() -> row < model.getRowCount() && model.getValueAt(row, 0) != null));
+    }
+}
@@ -0,0 +1,375 @@
+package cz.muni.fi.pv168.web;
+
+import cz.muni.fi.pv168.prison.backend.Cell;
+import cz.muni.fi.pv168.prison.backend.CellManager;
+import cz.muni.fi.pv168.prison.backend.Prisoner;
+import cz.muni.fi.pv168.prison.backend.PrisonerManager;
+import cz.muni.fi.pv168.prison.backend.Sentence;
+import cz.muni.fi.pv168.prison.backend.SentenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read only JSON API for dashboards.
+ * <p>
+ * Endpoints:
+ * <ul>
+ *     <li><code>/api/prisoners</code>, <code>/api/cells</code>, <code>/api/sentences</code> - pages ordered by id</li>
+ *     <li><code>/api/prisoners/{id}</code>, <code>/api/cells/{id}</code>, <code>/api/sentences/{id}</code></li>
+ *     <li><code>/api/occupancy</code> - page of cells with numbers of occupied and free places</li>
+ *     <li><code>/api/cells/{id}/free-capacity</code> - free capacity of one cell</li>
+ * </ul>
+ * Pages are objects with array <code>items</code> and id <code>next</code> to be passed as parameter
+ * <code>after</code> to get the next page, <code>next</code> is missing on the last page.
+ * Parameter <code>limit</code> sets size of the page (default {@value #DEFAULT_LIMIT}, at most {@value #MAX_LIMIT}),
+ * parameter <code>fields</code> selects comma separated fields of items.
+ * <p>
+ * Responses have ETag computed from the body, requests with matching If-None-Match get 304 without body,
+ * so that polling clients do not transfer and render unchanged data again.
+ * Lists with parameter <code>all=true</code> are sent whole without ETag. They are read in chunks of
+ * {@value #STREAM_CHUNK} entities by the same queries as pages. Each chunk is read by the database executor
+ * and written by a container thread, so that neither a connection nor an executor slot is held while a slow
+ * client receives the response. A failure after the first chunk was sent cannot change the status any more,
+ * the body is then left unterminated, so that clients get invalid JSON instead of a shorter list.
+ */
+@WebServlet(urlPatterns = ApiServlet.URL_MAPPING + "/*", asyncSupported = true)
+public class ApiServlet extends AsyncServlet {
+
+    private final static Logger log = LoggerFactory.getLogger(ApiServlet.class);
+
+    public static final String URL_MAPPING = "/api";
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    public static final int STREAM_CHUNK = 1000;
+
+    private static final String CONTENT_TYPE = "application/json;charset=utf-8";
+
+    private static final JsonView<Prisoner> PRISONER = new JsonView<Prisoner>()
+            .field("id", Prisoner::getId)
+            .field("name", Prisoner::getName)
+            .field("surname", Prisoner::getSurname)
+            .field("born", Prisoner::getBorn);
+    private static final JsonView<Cell> CELL = new JsonView<Cell>()
+            .field("id", Cell::getId)
+            .field("floor", Cell::getFloor)
+            .field("capacity", Cell::getCapacity);
+    private static final JsonView<Sentence> SENTENCE = new JsonView<Sentence>()
+            .field("id", Sentence::getId)
+            .field("prisonerId", Sentence::getPrisonerId)
+            .field("cellId", Sentence::getCellId)
+            .field("startDay", Sentence::getStartDay)
+            .field("endDay", Sentence::getEndDay)
+            .field("punishment", Sentence::getPunishment);
+    private static final JsonView<Occupancy> OCCUPANCY = new JsonView<Occupancy>()
+            .field("id", o -> o.cell.getId())
+            .field("floor", o -> o.cell.getFloor())
+            .field("capacity", o -> o.cell.getCapacity())
+            .field("occupied", o -> o.cell.getCapacity() - o.free)
+            .field("free", o -> o.free);
+
+    private static final class Occupancy {
+        private final Cell cell;
+        private final int free;
+
+        private Occupancy(Cell cell, int free) {
+            this.cell = cell;
+            this.free = free;
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = request.getPathInfo() == null ? "" : request.getPathInfo();
+        String[] segments = path.replaceAll("^/+|/+$", "").split("/+");
+        Long after;
+        int limit;
+        Long id;
+        try {
+            after = getLong(request.getParameter("after"), "after");
+            limit = getLimit(request.getParameter("limit"));
+            id = segments.length > 1 ? getLong(segments[1], "id") : null;
+        } catch (IllegalArgumentException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        boolean all = Boolean.parseBoolean(request.getParameter("all"));
+        String fields = request.getParameter("fields");
+        String route = segments.length > 3 ? path
+                : segments[0] + (segments.length > 1 ? "/{id}" : "") + (segments.length > 2 ? "/" + segments[2] : "");
+        switch (route) {
+            case "prisoners":
+                if (all) {
+                    stream(request, response, PRISONER, fields, Prisoner::getId,
+                            (from, size) -> getPrisonerManager().findPrisoners(from, size));
+                } else {
+                    page(request, response, PRISONER, fields, limit, Prisoner::getId,
+                            () -> getPrisonerManager().findPrisoners(after, limit + 1));
+                }
+                return;
+            case "prisoners/{id}":
+                one(request, response, PRISONER, fields, () -> getPrisonerManager().getPrisonerById(id));
+                return;
+            case "cells":
+                if (all) {
+                    stream(request, response, CELL, fields, Cell::getId, (from, size) -> getCellManager().findCells(from, size));
+                } else {
+                    page(request, response, CELL, fields, limit, Cell::getId, () -> getCellManager().findCells(after, limit + 1));
+                }
+                return;
+            case "cells/{id}":
+                one(request, response, CELL, fields, () -> getCellManager().getCellById(id));
+                return;
+            case "cells/{id}/free-capacity":
+                one(request, response, OCCUPANCY, fields, () -> {
+                    Cell cell = getCellManager().getCellById(id);
+                    return cell == null ? null : new Occupancy(cell, getSentenceManager().findFreeCapacity(cell));
+                });
+                return;
+            case "sentences":
+                if (all) {
+                    stream(request, response, SENTENCE, fields, Sentence::getId,
+                            (from, size) -> getSentenceManager().findSentences(from, size));
+                } else {
+                    page(request, response, SENTENCE, fields, limit, Sentence::getId,
+                            () -> getSentenceManager().findSentences(after, limit + 1));
+                }
+                return;
+            case "sentences/{id}":
+                one(request, response, SENTENCE, fields, () -> getSentenceManager().getSentenceById(id));
+                return;
+            case "occupancy":
+                page(request, response, OCCUPANCY, fields, limit, o -> o.cell.getId(), () -> findOccupancy(after, limit + 1));
+                return;
+            default:
+                sendError(response, HttpServletResponse.SC_NOT_FOUND, "Unknown resource " + path);
+        }
+    }
+
+    private List<Occupancy> findOccupancy(Long after, int limit) {
+        List<Cell> cells = getCellManager().findCells(after, limit);
+        List<Occupancy> occupancy = new ArrayList<>(cells.size());
+        if (cells.isEmpty()) {
+            return occupancy;
+        }
+        Map<Long, Integer> free = getSentenceManager().findFreeCapacities(cells);
+        for (Cell cell : cells) {
+            occupancy.add(new Occupancy(cell, free.get(cell.getId())));
+        }
+        return occupancy;
+    }
+
+    /**
+     * Sends one page of entities, found has to contain one more entity than the limit when there is next page.
+     */
+    private <T> void page(HttpServletRequest request, HttpServletResponse response, JsonView<T> view, String fields, int limit,
+                          Function<T, Long> idOf, Supplier<List<T>> finder) throws IOException {
+        List<String> selected = select(response, view, fields);
+        if (selected == null) {
+            return;
+        }
+        executeAsync(request, "Cannot list " + request.getPathInfo(), asyncResponse -> {
+            List<T> found = finder.get();
+            List<T> items = found.size() > limit ? found.subList(0, limit) : found;
+            sendCached(request, asyncResponse, json -> {
+                json.beginObject().name("items").beginArray();
+                for (T item : items) {
+                    view.write(json, item, selected);
+                }
+                json.endArray();
+                if (found.size() > limit) {
+                    json.name("next").value(idOf.apply(items.get(items.size() - 1)));
+                }
+                json.endObject();
+            });
+        });
+    }
+
+    private <T> void one(HttpServletRequest request, HttpServletResponse response, JsonView<T> view, String fields,
+                         Supplier<T> finder) throws IOException {
+        List<String> selected = select(response, view, fields);
+        if (selected == null) {
+            return;
+        }
+        executeAsync(request, "Cannot get " + request.getPathInfo(), asyncResponse -> {
+            T entity = finder.get();
+            if (entity == null) {
+                sendError(asyncResponse, HttpServletResponse.SC_NOT_FOUND, "Not found " + request.getPathInfo());
+                return;
+            }
+            sendCached(request, asyncResponse, json -> view.write(json, entity, selected));
+        });
+    }
+
+    /**
+     * Sends all entities read in chunks by finder, which gets id of the last sent entity and the chunk size.
+     * The first chunk is read before anything is sent, so that its failure is reported by the status.
+     */
+    private <T> void stream(HttpServletRequest request, HttpServletResponse response, JsonView<T> view, String fields,
+                            Function<T, Long> idOf, BiFunction<Long, Integer, List<T>> finder) throws IOException {
+        List<String> selected = select(response, view, fields);
+        if (selected == null) {
+            return;
+        }
+        new ChunkedStream<>(request.startAsync(), "Cannot stream " + request.getPathInfo(), view, selected, idOf, finder)
+                .readChunk(null);
+    }
+
+    /**
+     * Response of {@link #stream}, chunks are read by the database executor and written by container threads.
+     */
+    private final class ChunkedStream<T> {
+        private final AsyncContext async;
+        private final HttpServletResponse response;
+        private final String errorMessage;
+        private final JsonView<T> view;
+        private final List<String> selected;
+        private final Function<T, Long> idOf;
+        private final BiFunction<Long, Integer, List<T>> finder;
+        private JsonWriter json;
+
+        private ChunkedStream(AsyncContext async, String errorMessage, JsonView<T> view, List<String> selected,
+                              Function<T, Long> idOf, BiFunction<Long, Integer, List<T>> finder) {
+            this.async = async;
+            this.response = (HttpServletResponse) async.getResponse();
+            this.errorMessage = errorMessage;
+            this.view = view;
+            this.selected = selected;
+            this.idOf = idOf;
+            this.finder = finder;
+        }
+
+        private void readChunk(Long after) {
+            getDbExecutor().supply(() -> finder.apply(after, STREAM_CHUNK)).whenComplete((chunk, ex) -> {
+                if (ex == null) {
+                    async.start(() -> writeChunk(chunk));
+                } else if (json == null) {
+                    try {
+                        sendFailure(response, errorMessage, ex);
+                    } finally {
+                        async.complete();
+                    }
+                } else {
+                    // the status was sent already, the body stays unterminated
+                    log.error(errorMessage, ex);
+                    async.complete();
+                }
+            });
+        }
+
+        private void writeChunk(List<T> chunk) {
+            try {
+                if (json == null) {
+                    response.setContentType(CONTENT_TYPE);
+                    json = new JsonWriter(response.getWriter());
+                    json.beginObject().name("items").beginArray();
+                }
+                for (T item : chunk) {
+                    view.write(json, item, selected);
+                }
+                if (chunk.size() < STREAM_CHUNK) {
+                    json.endArray().endObject().flush();
+                    async.complete();
+                    return;
+                }
+                json.flush();
+            } catch (IOException | RuntimeException e) {
+                log.error(errorMessage, e);
+                async.complete();
+                return;
+            }
+            readChunk(idOf.apply(chunk.get(chunk.size() - 1)));
+        }
+    }
+
+    /**
+     * Serializes the body to compute its ETag and sends it unless the client already has it.
+     */
+    private void sendCached(HttpServletRequest request, HttpServletResponse response, CachedJson.Body body)
+            throws IOException {
+        CachedJson cached = CachedJson.of(body);
+        response.setHeader("ETag", cached.getETag());
+        response.setHeader("Cache-Control", "no-cache");
+        if (!cached.isModified(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(cached.size());
+        cached.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * @return selected fields, or null when the projection is wrong and 400 was sent
+     */
+    private <T> List<String> select(HttpServletResponse response, JsonView<T> view, String fields)
+            throws IOException {
+        try {
+            return view.select(fields);
+        } catch (IllegalArgumentException e) {
+            sendError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Long getLong(String value, String name) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong " + name + ": " + value);
+        }
+    }
+
+    private static int getLimit(String value) {
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit >= 1 && limit <= MAX_LIMIT) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Wrong limit " + value + ", expected 1 - " + MAX_LIMIT);
+    }
+
+    /**
+     * Sends errors as JSON objects with property error.
+     */
+    @Override
+    protected void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.reset();
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        JsonWriter json = new JsonWriter(response.getWriter());
+        json.beginObject().name("error").value(message).endObject().flush();
+    }
+
+    private PrisonerManager getPrisonerManager() {
+        return (PrisonerManager) getServletContext().getAttribute("prisonerManager");
+    }
+
+    private CellManager getCellManager() {
+        return (CellManager) getServletContext().getAttribute("cellManager");
+    }
+
+    private SentenceManager getSentenceManager() {
+        return (SentenceManager) getServletContext().getAttribute("sentenceManager");
+    }
+}
@@ -0,0 +1,92 @@
+package cz.muni.fi.pv168.web;
+
+import cz.muni.fi.pv168.common.DbExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Servlet which runs database work by {@link DbExecutor}, so that request threads are not blocked by the database.
+ * Subclasses have to be registered with <code>asyncSupported = true</code>.
+ */
+public abstract class AsyncServlet extends HttpServlet {
+
+    private final static Logger log = LoggerFactory.getLogger(AsyncServlet.class);
+
+    /**
+     * Action run by {@link #executeAsync(HttpServletRequest, String, AsyncAction)}.
+     */
+    protected interface AsyncAction {
+        void run(HttpServletResponse response) throws IOException;
+    }
+
+    /**
+     * Gets executor of database work from ServletContext, where it was stored by {@link StartListener}.
+     *
+     * @return executor, it uses virtual threads when enabled by managers.async.virtual
+     */
+    protected DbExecutor getDbExecutor() {
+        return (DbExecutor) getServletContext().getAttribute("dbExecutor");
+    }
+
+    /**
+     * Runs the action by the database executor and completes the request when it finishes.
+     * When the executor is saturated, 503 is returned, other failures return 500.
+     */
+    protected void executeAsync(HttpServletRequest request, String errorMessage, AsyncAction action) {
+        AsyncContext async = request.startAsync();
+        HttpServletResponse response = (HttpServletResponse) async.getResponse();
+        getDbExecutor().run(() -> {
+            try {
+                action.run(response);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((result, ex) -> {
+            try {
+                if (ex != null) {
+                    sendFailure(response, errorMessage, ex);
+                }
+            } finally {
+                async.complete();
+            }
+        });
+    }
+
+    /**
+     * Logs failure of asynchronous work and sends 503 when the executor was saturated, otherwise 500.
+     * The response carries only the given message, the cause is only logged, as its message can tell
+     * details of the database to clients.
+     */
+    protected void sendFailure(HttpServletResponse response, String message, Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        log.error(message, cause);
+        int status = cause instanceof RejectedExecutionException
+                ? HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            sendError(response, status, status == HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                    ? "Server is busy, try again later" : message);
+        } catch (IOException | IllegalStateException e) {
+            log.error("Cannot send error", e);
+        }
+    }
+
+    /**
+     * Sends error response, subclasses can change its format.
+     */
+    protected void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        response.sendError(status, message);
+    }
+}
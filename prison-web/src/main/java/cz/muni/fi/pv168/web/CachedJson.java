@@ -0,0 +1,111 @@
+package cz.muni.fi.pv168.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * JSON body serialized in memory together with its ETag, so that a client which already has
+ * the same body gets 304 instead of the body.
+ */
+final class CachedJson {
+
+    /**
+     * Writes JSON body.
+     */
+    interface Body {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    private final ByteArrayOutputStream buffer;
+    private final String etag;
+
+    private CachedJson(ByteArrayOutputStream buffer, String etag) {
+        this.buffer = buffer;
+        this.etag = etag;
+    }
+
+    /**
+     * @param body body, it has to be bounded, e.g. one page
+     * @return serialized body with ETag computed from it
+     * @throws IOException when the body cannot be written
+     */
+    static CachedJson of(Body body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DigestOutputStream digest = new DigestOutputStream(buffer, md5());
+        JsonWriter json = new JsonWriter(new OutputStreamWriter(digest, StandardCharsets.UTF_8));
+        body.write(json);
+        json.flush();
+        return new CachedJson(buffer, toETag(digest.getMessageDigest().digest()));
+    }
+
+    /**
+     * @return strong ETag in quotes
+     */
+    String getETag() {
+        return etag;
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match header, or null
+     * @return whether the body has to be sent, otherwise 304 is sent
+     */
+    boolean isModified(String ifNoneMatch) {
+        return !matches(ifNoneMatch, etag);
+    }
+
+    /**
+     * @return length of the body in bytes
+     */
+    int size() {
+        return buffer.size();
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Weak comparison of the If-None-Match header with an ETag, see RFC 7232.
+     *
+     * @param ifNoneMatch comma separated ETags, or <code>*</code>, or null
+     * @param etag ETag of the current body
+     * @return whether the client has the current body
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toETag(byte[] hash) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.append('"').toString();
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+}
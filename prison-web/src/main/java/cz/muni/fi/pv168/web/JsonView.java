@@ -0,0 +1,56 @@
+package cz.muni.fi.pv168.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Named fields of an entity written as a JSON object, clients can select only some of them.
+ *
+ * @param <T> type of the entity
+ */
+class JsonView<T> {
+
+    private final Map<String, Function<? super T, ?>> fields = new LinkedHashMap<>();
+
+    JsonView<T> field(String name, Function<? super T, ?> getter) {
+        fields.put(name, getter);
+        return this;
+    }
+
+    /**
+     * Parses projection given by comma separated names of fields.
+     *
+     * @param projection names of fields, or null or empty for all fields
+     * @return selected fields in the given order
+     * @throws IllegalArgumentException when a field is unknown
+     */
+    List<String> select(String projection) {
+        if (projection == null || projection.trim().isEmpty()) {
+            return new ArrayList<>(fields.keySet());
+        }
+        List<String> selected = new ArrayList<>();
+        for (String name : Arrays.asList(projection.split(","))) {
+            name = name.trim();
+            if (!fields.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown field " + name + ", known fields are " + fields.keySet());
+            }
+            if (!selected.contains(name)) {
+                selected.add(name);
+            }
+        }
+        return selected;
+    }
+
+    void write(JsonWriter json, T entity, List<String> selected) throws IOException {
+        json.beginObject();
+        for (String name : selected) {
+            json.name(name).value(fields.get(name).apply(entity));
+        }
+        json.endObject();
+    }
+}
@@ -0,0 +1,123 @@
+package cz.muni.fi.pv168.web;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal streaming JSON writer, values are written to the underlying writer immediately,
+ * so that large results are not built in memory.
+ * <p>
+ * Strings, numbers, booleans and null are written as JSON values, other objects as strings
+ * by their <code>toString()</code>, e.g. dates in ISO format.
+ */
+class JsonWriter implements Flushable {
+
+    private final Writer out;
+    /** for every open object or array whether it already contains an element */
+    private final Deque<Boolean> nonEmpty = new ArrayDeque<>();
+    private boolean afterName;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        nonEmpty.push(false);
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        nonEmpty.pop();
+        out.write('}');
+        return this;
+    }
+
+    JsonWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        nonEmpty.push(false);
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        nonEmpty.pop();
+        out.write(']');
+        return this;
+    }
+
+    JsonWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(Object value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!nonEmpty.isEmpty()) {
+            if (nonEmpty.peek()) {
+                out.write(',');
+            } else {
+                nonEmpty.pop();
+                nonEmpty.push(true);
+            }
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
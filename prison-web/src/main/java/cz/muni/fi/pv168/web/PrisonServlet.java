@@ -1,27 +1,30 @@
 package cz.muni.fi.pv168.web;
 
-import cz.muni.fi.pv168.common.IllegalEntityException;
+import cz.muni.fi.pv168.common.AsyncManager;
 import cz.muni.fi.pv168.prison.backend.Prisoner;
 import cz.muni.fi.pv168.prison.backend.PrisonerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 /**
  * Servlet for managing prison.
  */
-@WebServlet(PrisonServlet.URL_MAPPING + "/*")
-public class PrisonServlet extends HttpServlet {
+@WebServlet(urlPatterns = PrisonServlet.URL_MAPPING + "/*", asyncSupported = true)
+public class PrisonServlet extends AsyncServlet {
 
     private static final String LIST_JSP = "/list.jsp";
+    private static final int PAGE_SIZE = 50;
     public static final String URL_MAPPING = "/prison";
 
     private final static Logger log = LoggerFactory.getLogger(PrisonServlet.class);
@@ -50,33 +53,30 @@ public class PrisonServlet extends HttpServlet {
                     return;
                 }
                 //zpracování dat - vytvoření záznamu v databázi
+                LocalDate dt;
                 try {
-                    DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-mm-dd");
-                    LocalDate dt = LocalDate.parse(born, dtf);
-
-                    Prisoner prisoner = new Prisoner(name, surname, dt);
+                    dt = LocalDate.parse(born, DateTimeFormatter.ISO_LOCAL_DATE);
+                } catch (DateTimeParseException e) {
+                    request.setAttribute("chyba", "Datum narození musí být ve tvaru rrrr-mm-dd !");
+                    showPrisonersList(request, response);
+                    return;
+                }
+                Prisoner prisoner = new Prisoner(name, surname, dt);
+                executeAsync(request, "Cannot add prisoner", asyncResponse -> {
                     getPrisonerManager().createPrisoner(prisoner);
                     log.debug("created {}",prisoner);
                     //redirect-after-POST je ochrana před vícenásobným odesláním formuláře
-                    response.sendRedirect(request.getContextPath()+URL_MAPPING);
-                    return;
-                } catch (IllegalEntityException e) {
-                    log.error("Cannot add prisoner", e);
-                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
-                    return;
-                }
+                    asyncResponse.sendRedirect(request.getContextPath()+URL_MAPPING);
+                });
+                return;
             case "/delete":
-                try {
-                    Long id = Long.valueOf(request.getParameter("id"));
+                Long id = Long.valueOf(request.getParameter("id"));
+                executeAsync(request, "Cannot delete prisoner", asyncResponse -> {
                     getPrisonerManager().deletePrisoner(getPrisonerManager().getPrisonerById(id));
                     log.debug("deleted prisoner {}",id);
-                    response.sendRedirect(request.getContextPath()+URL_MAPPING);
-                    return;
-                } catch (IllegalEntityException e) {
-                    log.error("Cannot delete prisoner", e);
-                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
-                    return;
-                }
+                    asyncResponse.sendRedirect(request.getContextPath()+URL_MAPPING);
+                });
+                return;
             case "/update":
 
                 return;
@@ -96,16 +96,52 @@ public class PrisonServlet extends HttpServlet {
     }
 
     /**
-     * Stores the list of prisoners to request attribute "prisoners" and forwards to the JSP to display it.
+     * Gets asynchronous PrisonerManager from ServletContext, where it was stored by {@link StartListener}.
+     *
+     * @return asynchronous PrisonerManager
+     */
+    @SuppressWarnings("unchecked")
+    private AsyncManager<PrisonerManager> getAsyncPrisonerManager() {
+        return (AsyncManager<PrisonerManager>) getServletContext().getAttribute("asyncPrisonerManager");
+    }
+
+    /**
+     * Stores one page of prisoners to request attribute "prisoners" and forwards to the JSP to display it.
+     * The page starts after the prisoner with id given in parameter "after", id of its last prisoner
+     * is stored to attribute "nextAfter" when there are more prisoners.
+     * The page is loaded asynchronously, so that the request thread is not blocked by the database;
+     * when the database executor is saturated, 503 is returned.
      */
     private void showPrisonersList(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        Long after;
         try {
-            request.setAttribute("prisoners", getPrisonerManager().findAllPrisoners());
-            request.getRequestDispatcher(LIST_JSP).forward(request, response);
-        } catch (IllegalEntityException e) {
-            log.error("Cannot show prisoners", e);
-            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            String afterParam = request.getParameter("after");
+            after = afterParam == null || afterParam.isEmpty() ? null : Long.valueOf(afterParam);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Wrong parameter after");
+            return;
         }
+        AsyncContext async = request.startAsync();
+        // one more prisoner tells if there is a next page
+        getAsyncPrisonerManager().supply(m -> m.findPrisoners(after, PAGE_SIZE + 1)).whenComplete((found, ex) -> {
+            try {
+                if (ex != null) {
+                    sendFailure((HttpServletResponse) async.getResponse(), "Cannot show prisoners", ex);
+                    async.complete();
+                    return;
+                }
+                List<Prisoner> prisoners = found;
+                if (prisoners.size() > PAGE_SIZE) {
+                    prisoners = prisoners.subList(0, PAGE_SIZE);
+                    request.setAttribute("nextAfter", prisoners.get(PAGE_SIZE - 1).getId());
+                }
+                request.setAttribute("prisoners", prisoners);
+                async.dispatch(LIST_JSP);
+            } catch (RuntimeException e) {
+                log.error("Cannot show prisoners", e);
+                async.complete();
+            }
+        });
     }
 
 }
\ No newline at end of file
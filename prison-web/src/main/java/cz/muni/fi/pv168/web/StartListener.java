@@ -1,8 +1,10 @@
 package cz.muni.fi.pv168.web;
 
-import cz.muni.fi.pv168.prison.backend.CellManagerImpl;
+import cz.muni.fi.pv168.common.AsyncManager;
+import cz.muni.fi.pv168.common.DbExecutor;
 import cz.muni.fi.pv168.prison.backend.Main;
-import cz.muni.fi.pv168.prison.backend.PrisonerManagerImpl;
+import cz.muni.fi.pv168.prison.backend.ManagerFactory;
+import cz.muni.fi.pv168.prison.backend.PrisonerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,7 +13,6 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import javax.sql.DataSource;
-import java.time.Clock;
 
 @WebListener
 public class StartListener implements ServletContextListener {
@@ -23,17 +24,24 @@ public class StartListener implements ServletContextListener {
         log.info("aplikace inicializována");
         ServletContext servletContext = ev.getServletContext();
         DataSource dataSource = Main.createMemoryDatabase();
-        PrisonerManagerImpl prisonerManager = new PrisonerManagerImpl(Clock.systemDefaultZone());
-        prisonerManager.setDataSource(dataSource);
-        CellManagerImpl cellManager = new CellManagerImpl();
-        cellManager.setDataSource(dataSource);
+        ManagerFactory managerFactory = new ManagerFactory(dataSource, ManagerFactory.loadConfiguration());
+        PrisonerManager prisonerManager = managerFactory.createPrisonerManager();
+        DbExecutor executor = managerFactory.createExecutor();
         servletContext.setAttribute("prisonerManager", prisonerManager);
-        servletContext.setAttribute("cellManager", cellManager);
+        servletContext.setAttribute("cellManager", managerFactory.createCellManager());
+        servletContext.setAttribute("sentenceManager", managerFactory.createSentenceManager());
+        servletContext.setAttribute("dbExecutor", executor);
+        servletContext.setAttribute("asyncPrisonerManager", new AsyncManager<>(prisonerManager, executor));
+        log.info("volání databáze běží ve {} vláknech", executor.isVirtual() ? "virtuálních" : "platformních");
         log.info("vytvořeny manažery a uloženy do atributů servletContextu");
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent ev) {
         log.info("aplikace končí");
+        DbExecutor executor = (DbExecutor) ev.getServletContext().getAttribute("dbExecutor");
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 }
\ No newline at end of file
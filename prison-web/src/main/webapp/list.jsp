@@ -10,15 +10,18 @@
         <th>narozen</th>
     </tr>
     </thead>
-    <c:forEach items="${prisoner}" var="prisoner">
+    <c:forEach items="${prisoners}" var="prisoner">
     <tr>
-        <td><c:out value="${prisoner.name}"/></td>
+        <td><c:out value="${prisoner.name} ${prisoner.surname}"/></td>
         <td><c:out value="${prisoner.born}"/></td>
-        <td><form method="post" action="${pageContext.request.contextPath}/prisoner/delete?id=${prisoner.id}"
+        <td><form method="post" action="${pageContext.request.contextPath}/prison/delete?id=${prisoner.id}"
                   style="margin-bottom: 0;"><input type="submit" value="Smazat"></form></td>
     </tr>
     </c:forEach>
     </table>
+    <c:if test="${not empty nextAfter}">
+    <a href="${pageContext.request.contextPath}/prison?after=${nextAfter}">další</a>
+    </c:if>
 
     <h2>Zadejte vězně</h2>
     <c:if test="${not empty chyba}">
@@ -26,12 +29,16 @@
     <c:out value="${chyba}"/>
     </div>
     </c:if>
-    <form action="${pageContext.request.contextPath}/prisoner/add" method="post">
+    <form action="${pageContext.request.contextPath}/prison/add" method="post">
     <table>
     <tr>
         <th>jméno vězně:</th>
         <td><input type="text" name="name" value="<c:out value='${param.name}'/>"/></td>
     </tr>
+    <tr>
+        <th>příjmení vězně:</th>
+        <td><input type="text" name="surname" value="<c:out value='${param.surname}'/>"/></td>
+    </tr>
     <tr>
         <th>datum narození:</th>
         <td><input type="date" name="born" value="<c:out value='${param.born}'/>"/></td>
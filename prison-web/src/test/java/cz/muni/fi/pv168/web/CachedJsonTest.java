@@ -0,0 +1,61 @@
+package cz.muni.fi.pv168.web;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link CachedJson} and If-None-Match handling of {@link ApiServlet}.
+ */
+public class CachedJsonTest {
+
+    private static CachedJson page(String name) throws IOException {
+        return CachedJson.of(json -> json.beginObject().name("items").beginArray()
+                .beginObject().name("name").value(name).endObject()
+                .endArray().endObject());
+    }
+
+    @Test
+    public void bodyAndETag() throws IOException {
+        CachedJson cached = page("Novák");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cached.writeTo(out);
+
+        byte[] expected = "{\"items\":[{\"name\":\"Novák\"}]}".getBytes(StandardCharsets.UTF_8);
+        assertThat(out.toByteArray()).isEqualTo(expected);
+        assertThat(cached.size()).isEqualTo(expected.length);
+        assertThat(cached.getETag()).matches("\"[0-9a-f]{32}\"");
+        assertThat(page("Novák").getETag()).isEqualTo(cached.getETag());
+        assertThat(page("Nováková").getETag()).isNotEqualTo(cached.getETag());
+    }
+
+    @Test
+    public void notModifiedWhenClientHasTheBody() throws IOException {
+        CachedJson cached = page("Novák");
+        String etag = cached.getETag();
+
+        assertThat(cached.isModified(null)).isTrue();
+        assertThat(cached.isModified(etag)).isFalse();
+        assertThat(cached.isModified(page("Nováková").getETag())).isTrue();
+    }
+
+    @Test
+    public void matches() {
+        String etag = "\"abc\"";
+
+        assertThat(CachedJson.matches(null, etag)).isFalse();
+        assertThat(CachedJson.matches("", etag)).isFalse();
+        assertThat(CachedJson.matches("\"abc\"", etag)).isTrue();
+        assertThat(CachedJson.matches("W/\"abc\"", etag)).isTrue();
+        assertThat(CachedJson.matches("\"xyz\", \"abc\"", etag)).isTrue();
+        assertThat(CachedJson.matches("\"xyz\",W/\"abc\"", etag)).isTrue();
+        assertThat(CachedJson.matches("*", etag)).isTrue();
+        assertThat(CachedJson.matches("\"xyz\"", etag)).isFalse();
+        assertThat(CachedJson.matches("abc", etag)).isFalse();
+        assertThat(CachedJson.matches("\"abc", etag)).isFalse();
+    }
+}
@@ -0,0 +1,58 @@
+package cz.muni.fi.pv168.web;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link JsonWriter}.
+ */
+public class JsonWriterTest {
+
+    private final StringWriter out = new StringWriter();
+    private final JsonWriter json = new JsonWriter(out);
+
+    @Test
+    public void writesNestedValues() throws IOException {
+        json.beginObject()
+                .name("items").beginArray()
+                .beginObject().name("id").value(1L).name("born").value(LocalDate.of(1980, 1, 2)).endObject()
+                .beginObject().name("id").value(2L).name("name").value(null).endObject()
+                .endArray()
+                .name("empty").beginArray().endArray()
+                .name("next").value(2L)
+                .name("last").value(false)
+                .endObject().flush();
+
+        assertThat(out.toString()).isEqualTo("{\"items\":[{\"id\":1,\"born\":\"1980-01-02\"},{\"id\":2,\"name\":null}],"
+                + "\"empty\":[],\"next\":2,\"last\":false}");
+    }
+
+    @Test
+    public void escapesStrings() throws IOException {
+        json.beginArray()
+                .value("quote \" backslash \\ slash /")
+                .value("new line \n return \r tab \t")
+                .value("bell \u0007 escape \u001b")
+                .value("line separator \u2028 paragraph separator \u2029")
+                .value("Novák")
+                .endArray().flush();
+
+        assertThat(out.toString()).isEqualTo("[\"quote \\\" backslash \\\\ slash /\","
+                + "\"new line \\n return \\r tab \\t\","
+                + "\"bell \\u0007 escape \\u001b\","
+                + "\"line separator \\u2028 paragraph separator \\u2029\","
+                + "\"Novák\"]");
+    }
+
+    @Test
+    public void escapesNames() throws IOException {
+        json.beginObject().name("a\"b").value(1).endObject().flush();
+
+        assertThat(out.toString()).isEqualTo("{\"a\\\"b\":1}");
+    }
+}